@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.BaseEncoding.base16;
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.io.Payload;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.CreateImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.UpdateImageOptions;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+import org.jclouds.rest.ResourceNotFoundException;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * An {@link ImageApi} that keeps the data of images in a local directory, so that an image read again and again is
+ * only downloaded once.
+ * <p/>
+ * Cached files are named after the id and the checksum of the image. Each call to {@link #getAsStream(String)} makes
+ * one {@link #get(String) HEAD} request: when the checksum returned is one already cached, the data is read from the
+ * cached file through a {@link FileChannel}, and otherwise it is downloaded to the cache first. Versions of the image
+ * with another checksum are removed, as are all versions of an image that no longer exists. Concurrent reads of an
+ * image that is not cached yet share a single download.
+ * <p/>
+ * The cache holds at most {@code maxBytes}; the images read least recently are removed to make room. Images without a
+ * checksum or larger than the cache are not cached. The cache survives restarts: the files found in the directory
+ * are picked up when the cache is created, the ones read most recently first to go last.
+ * <p/>
+ * All other calls are passed to the wrapped api.
+ */
+@Beta
+public class CachingImageApi implements ImageApi {
+
+   private static final String PART_SUFFIX = ".part";
+   private static final Pattern CACHED_FILE = Pattern.compile("(.+)-([0-9a-f]{32})");
+
+   private final ImageApi delegate;
+   private final File directory;
+   private final long maxBytes;
+   private final ImageDownloader downloader;
+   private final Logger logger;
+   // in access order, eldest first; guarded by itself
+   private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   private long cachedBytes;
+   private final ConcurrentMap<String, FutureTask<Entry>> loading = Maps.newConcurrentMap();
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   protected CachingImageApi(Builder builder) {
+      this.delegate = checkNotNull(builder.delegate, "delegate required");
+      this.directory = checkNotNull(builder.directory, "directory required");
+      this.maxBytes = builder.maxBytes;
+      this.downloader = builder.downloader;
+      this.logger = builder.logger;
+      checkArgument(maxBytes > 0, "maxBytes must be positive");
+      checkArgument(directory.isDirectory() || directory.mkdirs(), "could not create directory %s", directory);
+      scan();
+   }
+
+   private void scan() {
+      File[] files = directory.listFiles();
+      if (files == null) {
+         return;
+      }
+      Arrays.sort(files, new Comparator<File>() {
+         @Override
+         public int compare(File left, File right) {
+            return Long.valueOf(left.lastModified()).compareTo(right.lastModified());
+         }
+      });
+      for (File file : files) {
+         String name = file.getName();
+         Matcher matcher = CACHED_FILE.matcher(name);
+         if (name.endsWith(PART_SUFFIX) || name.endsWith(PART_SUFFIX + ImageDownloader.PROGRESS_SUFFIX)) {
+            // left by an interrupted download, which only the downloader can resume
+            if (downloader == null) {
+               delete(file);
+            }
+         }
+         else if (file.isFile() && matcher.matches()) {
+            add(new Entry(matcher.group(1), matcher.group(2), file));
+         }
+      }
+      logger.debug(">> found %d cached images (%d bytes) in %s", entries.size(), cachedBytes, directory);
+   }
+
+   /**
+    * Returns the data of an image, from the cache when the image has not changed since it was cached.
+    */
+   @Override
+   public InputStream getAsStream(String id) {
+      ImageDetails image = delegate.get(id);
+      if (image == null) {
+         evict(id, null);
+         return null;
+      }
+      if (!isCacheable(image)) {
+         return delegate.getAsStream(id);
+      }
+      try {
+         return Channels.newInputStream(open(image));
+      }
+      catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+   }
+
+   /**
+    * Opens the cached data of an image for reading, downloading it first if the image has changed or is not cached
+    * yet. The channel can be {@link FileChannel#map mapped} or {@link FileChannel#transferTo transferred} from, and
+    * must be closed by the caller.
+    *
+    * @return the data of the image, or null if the image does not exist
+    * @throws IllegalArgumentException if the image has no checksum or is larger than the cache
+    */
+   @Nullable
+   public FileChannel getAsChannel(String id) throws IOException {
+      ImageDetails image = delegate.get(id);
+      if (image == null) {
+         evict(id, null);
+         return null;
+      }
+      checkArgument(isCacheable(image), "image %s has no checksum or is larger than the cache", id);
+      return open(image);
+   }
+
+   /**
+    * The number of bytes in the cache.
+    */
+   public long getCachedBytes() {
+      synchronized (entries) {
+         return cachedBytes;
+      }
+   }
+
+   private boolean isCacheable(ImageDetails image) {
+      return image.getChecksum().isPresent() && image.getSize().isPresent() && image.getSize().get() <= maxBytes
+            && CACHED_FILE.matcher(key(image)).matches();
+   }
+
+   private static String key(ImageDetails image) {
+      return image.getId().replaceAll("[^A-Za-z0-9._-]", "_") + "-" + image.getChecksum().get().toLowerCase();
+   }
+
+   private FileChannel open(ImageDetails image) throws IOException {
+      String key = key(image);
+      evict(image.getId(), key);
+      while (true) {
+         synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+               logger.debug("<< image %s read from %s", image.getId(), entry.file);
+               // keeps the order of reads across restarts
+               entry.file.setLastModified(System.currentTimeMillis());
+               return new RandomAccessFile(entry.file, "r").getChannel();
+            }
+         }
+         // the entry can be evicted again before it is opened, in which case it is downloaded again
+         load(image, key);
+      }
+   }
+
+   private void load(final ImageDetails image, final String key) throws IOException {
+      FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+         @Override
+         public Entry call() throws IOException {
+            return add(download(image, key));
+         }
+      });
+      FutureTask<Entry> running = loading.putIfAbsent(key, task);
+      if (running == null) {
+         running = task;
+         try {
+            task.run();
+         }
+         finally {
+            loading.remove(key, task);
+         }
+      }
+      try {
+         running.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("interrupted while waiting for image " + image.getId());
+      }
+      catch (ExecutionException e) {
+         Throwables.propagateIfPossible(e.getCause(), IOException.class);
+         throw Throwables.propagate(e.getCause());
+      }
+   }
+
+   private Entry download(ImageDetails image, String key) throws IOException {
+      String checksum = image.getChecksum().get().toLowerCase();
+      File part = new File(directory, key + PART_SUFFIX);
+      long start = System.currentTimeMillis();
+      try {
+         if (downloader != null) {
+            ImageDetails downloaded = downloader.download(image.getId(), part);
+            if (!checksum.equalsIgnoreCase(downloaded.getChecksum().orNull())) {
+               throw new IOException(format("image %s changed while it was downloaded", image.getId()));
+            }
+         }
+         else {
+            copy(image.getId(), checksum, part);
+         }
+         File file = new File(directory, key);
+         Files.move(part, file);
+         logger.debug("<< cached image %s (%d bytes) in %dms", image.getId(), file.length(),
+               System.currentTimeMillis() - start);
+         return new Entry(image.getId(), checksum, file);
+      }
+      finally {
+         if (downloader == null) {
+            delete(part);
+         }
+      }
+   }
+
+   private void copy(String id, String checksum, File part) throws IOException {
+      InputStream in = delegate.getAsStream(id);
+      if (in == null) {
+         throw new ResourceNotFoundException("image " + id + " was deleted while it was downloaded");
+      }
+      MessageDigest md5;
+      try {
+         md5 = MessageDigest.getInstance("MD5");
+      }
+      catch (NoSuchAlgorithmException e) {
+         Closeables2.closeQuietly(in);
+         throw Throwables.propagate(e);
+      }
+      RandomAccessFile out = new RandomAccessFile(part, "rw");
+      try {
+         FileChannel channel = out.getChannel();
+         ReadableByteChannel source = Channels.newChannel(new DigestInputStream(in, md5));
+         long position = 0;
+         for (long transferred; (transferred = channel.transferFrom(source, position, 8 * 1024 * 1024)) > 0; ) {
+            position += transferred;
+         }
+      }
+      finally {
+         Closeables2.closeQuietly(in);
+         Closeables2.closeQuietly(out);
+      }
+      String actual = base16().lowerCase().encode(md5.digest());
+      if (!actual.equals(checksum)) {
+         throw new IOException(format("image %s was downloaded with checksum %s instead of %s", id, actual,
+               checksum));
+      }
+   }
+
+   /**
+    * Adds an entry as the most recently read, removing the least recently read ones until the cache fits.
+    */
+   private Entry add(Entry entry) {
+      List<Entry> evicted = Lists.newArrayList();
+      synchronized (entries) {
+         Entry previous = entries.put(entry.key, entry);
+         if (previous != null) {
+            cachedBytes -= previous.size;
+         }
+         cachedBytes += entry.size;
+         for (Iterator<Entry> eldest = entries.values().iterator(); cachedBytes > maxBytes && eldest.hasNext(); ) {
+            Entry next = eldest.next();
+            if (next != entry) {
+               eldest.remove();
+               cachedBytes -= next.size;
+               evicted.add(next);
+            }
+         }
+      }
+      for (Entry next : evicted) {
+         logger.debug(">> evicting image %s from the cache", next.id);
+         delete(next.file);
+      }
+      return entry;
+   }
+
+   /**
+    * Removes the versions of an image other than the one with the given key, or all of them when it is null.
+    */
+   private void evict(String id, @Nullable String keep) {
+      List<Entry> evicted = Lists.newArrayList();
+      synchronized (entries) {
+         for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.id.equals(id) && !entry.key.equals(keep)) {
+               it.remove();
+               cachedBytes -= entry.size;
+               evicted.add(entry);
+            }
+         }
+      }
+      for (Entry entry : evicted) {
+         logger.debug(">> evicting stale version %s of image %s from the cache", entry.checksum, id);
+         delete(entry.file);
+      }
+   }
+
+   private void delete(File file) {
+      // readers that have the file open on POSIX systems can still read it
+      if (file.exists() && !file.delete()) {
+         logger.warn("could not delete %s", file);
+      }
+   }
+
+   private static final class Entry {
+      private final String id;
+      private final String checksum;
+      private final String key;
+      private final File file;
+      private final long size;
+
+      private Entry(String id, String checksum, File file) {
+         this.id = id;
+         this.checksum = checksum;
+         this.key = file.getName();
+         this.file = file;
+         this.size = file.length();
+      }
+   }
+
+   @Override
+   public PagedIterable<Image> list() {
+      return delegate.list();
+   }
+
+   @Override
+   public PaginatedCollection<Image> list(ListImageOptions options) {
+      return delegate.list(options);
+   }
+
+   @Override
+   public PagedIterable<ImageDetails> listInDetail() {
+      return delegate.listInDetail();
+   }
+
+   @Override
+   public PaginatedCollection<ImageDetails> listInDetail(ListImageOptions options) {
+      return delegate.listInDetail(options);
+   }
+
+   @Override
+   public ImageDetails get(String id) {
+      return delegate.get(id);
+   }
+
+   @Override
+   public HttpResponse getRange(String id, String range) {
+      return delegate.getRange(id, range);
+   }
+
+   @Override
+   public ImageDetails create(String name, Payload payload, CreateImageOptions... options) {
+      return delegate.create(name, payload, options);
+   }
+
+   @Override
+   public ImageDetails reserve(String name, CreateImageOptions... options) {
+      return delegate.reserve(name, options);
+   }
+
+   @Override
+   public ImageDetails upload(String id, Payload imageData, UpdateImageOptions... options) {
+      ImageDetails image = delegate.upload(id, imageData, options);
+      evict(id, null);
+      return image;
+   }
+
+   @Override
+   public ImageDetails update(String id, UpdateImageOptions... options) {
+      return delegate.update(id, options);
+   }
+
+   @Override
+   public boolean delete(String id) {
+      boolean deleted = delegate.delete(id);
+      evict(id, null);
+      return deleted;
+   }
+
+   public static class Builder {
+      protected ImageApi delegate;
+      protected File directory;
+      protected long maxBytes = 20L * 1024 * 1024 * 1024;
+      protected ImageDownloader downloader;
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * The api the images are read from.
+       */
+      public Builder delegate(ImageApi delegate) {
+         this.delegate = delegate;
+         return this;
+      }
+
+      /**
+       * The directory the images are cached in. It should not be used for anything else.
+       */
+      public Builder directory(File directory) {
+         this.directory = directory;
+         return this;
+      }
+
+      /**
+       * The maximum number of bytes cached. Defaults to 20 GB.
+       */
+      public Builder maxBytes(long maxBytes) {
+         this.maxBytes = maxBytes;
+         return this;
+      }
+
+      /**
+       * Downloads images that are not cached with ranged requests in parallel instead of a single request. The
+       * downloader should be built with the wrapped api. Interrupted downloads are then resumed.
+       */
+      public Builder downloader(ImageDownloader downloader) {
+         this.downloader = downloader;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = logger;
+         return this;
+      }
+
+      public CachingImageApi build() {
+         return new CachingImageApi(this);
+      }
+   }
+}
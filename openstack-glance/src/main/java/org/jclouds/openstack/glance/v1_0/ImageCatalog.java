@@ -0,0 +1,466 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.glance.v1_0.domain.ContainerFormat;
+import org.jclouds.openstack.glance.v1_0.domain.DiskFormat;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.collect.TreeMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A local copy of the images of a region, kept up to date with the changes made since the last poll and indexed so
+ * that images can be looked up by name, property, disk and container format and size without calling Glance.
+ * <p/>
+ * The first call to {@link #sync()} lists all images in detail. The following ones only list the images that changed
+ * since the most recent update seen, using {@link ListImageOptions#changesSince(Date)}, and apply them to the index:
+ * new and updated images replace the previous version, deleted ones are removed. As the time of the last change is
+ * taken from the images themselves, the clocks of the client and the server do not need to agree.
+ * <p/>
+ * Images that stop being visible without being deleted, for instance when they are made private, are not reported as
+ * changes. A full listing can be made every few polls to drop them, see {@link Builder#fullSyncEvery(int)}.
+ */
+@Beta
+public class ImageCatalog implements Closeable {
+
+   private static final Set<Image.Status> GONE = ImmutableSet.of(Image.Status.DELETED, Image.Status.PENDING_DELETE,
+         Image.Status.KILLED);
+
+   private final ImagePager pager;
+   private final int fullSyncEvery;
+   private final ScheduledExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+   // guarded by lock
+   private Index index = new Index();
+   // only accessed by the thread syncing, see sync()
+   private Date lastChange;
+   private int pollsSinceFullSync;
+   private ScheduledFuture<?> polling;
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   protected ImageCatalog(Builder builder) {
+      this.fullSyncEvery = builder.fullSyncEvery;
+      this.logger = builder.logger;
+      this.pager = ImagePager.builder().api(checkNotNull(builder.api, "api required")).pageSize(builder.pageSize)
+            .logger(logger).build();
+      checkArgument(fullSyncEvery >= 0, "fullSyncEvery must not be negative");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newSingleThreadScheduledExecutor(
+               new ThreadFactoryBuilder().setNameFormat("glance-image-catalog-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * Brings the catalog up to date: lists all images on the first call, or when a full listing is due, and only the
+    * images that changed since the previous call otherwise.
+    *
+    * @return the number of images added, updated or removed
+    */
+   public synchronized int sync() {
+      if (lastChange == null || (fullSyncEvery > 0 && pollsSinceFullSync >= fullSyncEvery)) {
+         return fullSync();
+      }
+      pollsSinceFullSync++;
+      Date since = lastChange;
+      List<ImageDetails> changes = Lists.newArrayList(list(since));
+      // apply the changes to an image in the order they were made
+      Collections.sort(changes, BY_LAST_CHANGE);
+      int applied = 0;
+      lock.writeLock().lock();
+      try {
+         for (ImageDetails image : changes) {
+            boolean gone = isGone(image);
+            ImageDetails previous = gone ? index.remove(image.getId()) : index.put(image);
+            if (gone ? previous != null : !image.equals(previous)) {
+               applied++;
+            }
+            lastChange = latest(lastChange, image);
+         }
+      }
+      finally {
+         lock.writeLock().unlock();
+      }
+      logger.debug("<< %d changes to images since %s, %d applied", changes.size(), since, applied);
+      return applied;
+   }
+
+   private int fullSync() {
+      Index full = new Index();
+      Date latest = new Date(0);
+      for (ImageDetails image : list(null)) {
+         if (!isGone(image)) {
+            full.put(image);
+         }
+         latest = latest(latest, image);
+      }
+      int changed = 0;
+      lock.writeLock().lock();
+      try {
+         for (ImageDetails image : full.byId.values()) {
+            if (!image.equals(index.byId.get(image.getId()))) {
+               changed++;
+            }
+         }
+         changed += Sets.difference(index.byId.keySet(), full.byId.keySet()).size();
+         index = full;
+      }
+      finally {
+         lock.writeLock().unlock();
+      }
+      lastChange = latest;
+      pollsSinceFullSync = 0;
+      logger.debug("<< listed %d images", full.byId.size());
+      return changed;
+   }
+
+   /**
+    * Lists the images in detail page by page, following the id of the last image of each full page.
+    */
+   private List<ImageDetails> list(@Nullable Date changesSince) {
+      ListImageOptions options = new ListImageOptions();
+      if (changesSince != null) {
+         options.changesSince(changesSince);
+      }
+      return pager.listInDetail(options).concat().toList();
+   }
+
+   private static boolean isGone(ImageDetails image) {
+      return GONE.contains(image.getStatus()) || image.getDeletedAt().isPresent();
+   }
+
+   private static Date lastChange(ImageDetails image) {
+      return image.getDeletedAt().or(image.getUpdatedAt());
+   }
+
+   private static Date latest(Date date, ImageDetails image) {
+      Date changed = lastChange(image);
+      return changed.after(date) ? changed : date;
+   }
+
+   private static final Comparator<ImageDetails> BY_LAST_CHANGE = new Comparator<ImageDetails>() {
+      @Override
+      public int compare(ImageDetails left, ImageDetails right) {
+         return lastChange(left).compareTo(lastChange(right));
+      }
+   };
+
+   /**
+    * Calls {@link #sync()} at a fixed delay on the executor of the catalog, the first time right away. Failures are
+    * logged and the next poll is made as planned.
+    */
+   public synchronized void start(long delay, TimeUnit unit) {
+      checkArgument(polling == null, "already started");
+      polling = executor.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               sync();
+            }
+            catch (RuntimeException e) {
+               logger.warn(e, "could not sync the image catalog");
+            }
+         }
+      }, 0, delay, unit);
+   }
+
+   @Override
+   public synchronized void close() {
+      if (polling != null) {
+         polling.cancel(false);
+      }
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * @return the image with the given id, or null if it is not in the catalog
+    */
+   @Nullable
+   public ImageDetails getImage(String id) {
+      lock.readLock().lock();
+      try {
+         return index.byId.get(id);
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return all images in the catalog
+    */
+   public Set<ImageDetails> getImages() {
+      lock.readLock().lock();
+      try {
+         return ImmutableSet.copyOf(index.byId.values());
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the images matching all the criteria of the query
+    */
+   public Set<ImageDetails> find(Query query) {
+      checkNotNull(query, "query");
+      lock.readLock().lock();
+      try {
+         Set<String> ids = null;
+         if (query.name != null) {
+            ids = intersect(ids, index.byName.get(query.name));
+         }
+         for (Map.Entry<String, String> property : query.properties.entrySet()) {
+            ids = intersect(ids, index.byProperty.get(property));
+         }
+         if (query.diskFormat != null) {
+            ids = intersect(ids, index.byDiskFormat.get(query.diskFormat));
+         }
+         if (query.containerFormat != null) {
+            ids = intersect(ids, index.byContainerFormat.get(query.containerFormat));
+         }
+         if (query.minSize != null || query.maxSize != null) {
+            long min = query.minSize != null ? query.minSize : 0;
+            long max = query.maxSize != null ? query.maxSize : Long.MAX_VALUE;
+            Set<String> sized = Sets.newHashSet();
+            if (min <= max) {
+               for (Collection<String> withSize : index.bySize.asMap().subMap(min, true, max, true).values()) {
+                  sized.addAll(withSize);
+               }
+            }
+            ids = intersect(ids, sized);
+         }
+         ImmutableSet.Builder<ImageDetails> images = ImmutableSet.builder();
+         for (String id : ids != null ? ids : index.byId.keySet()) {
+            images.add(index.byId.get(id));
+         }
+         return images.build();
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private static Set<String> intersect(@Nullable Set<String> ids, Set<String> matching) {
+      return ids == null ? matching : Sets.intersection(ids, matching);
+   }
+
+   /**
+    * The images of the catalog, indexed by each attribute that can be queried.
+    */
+   private static final class Index {
+      private final Map<String, ImageDetails> byId = Maps.newHashMap();
+      private final SetMultimap<String, String> byName = HashMultimap.create();
+      private final SetMultimap<Map.Entry<String, String>, String> byProperty = HashMultimap.create();
+      private final SetMultimap<DiskFormat, String> byDiskFormat = HashMultimap.create();
+      private final SetMultimap<ContainerFormat, String> byContainerFormat = HashMultimap.create();
+      private final TreeMultimap<Long, String> bySize = TreeMultimap.create();
+
+      private ImageDetails put(ImageDetails image) {
+         ImageDetails previous = remove(image.getId());
+         String id = image.getId();
+         byId.put(id, image);
+         if (image.getName() != null) {
+            byName.put(image.getName(), id);
+         }
+         for (Map.Entry<String, String> property : image.getProperties().entrySet()) {
+            byProperty.put(Maps.immutableEntry(property.getKey(), property.getValue()), id);
+         }
+         if (image.getDiskFormat().isPresent()) {
+            byDiskFormat.put(image.getDiskFormat().get(), id);
+         }
+         if (image.getContainerFormat().isPresent()) {
+            byContainerFormat.put(image.getContainerFormat().get(), id);
+         }
+         if (image.getSize().isPresent()) {
+            bySize.put(image.getSize().get(), id);
+         }
+         return previous;
+      }
+
+      private ImageDetails remove(String id) {
+         ImageDetails image = byId.remove(id);
+         if (image == null) {
+            return null;
+         }
+         if (image.getName() != null) {
+            byName.remove(image.getName(), id);
+         }
+         for (Map.Entry<String, String> property : image.getProperties().entrySet()) {
+            byProperty.remove(Maps.immutableEntry(property.getKey(), property.getValue()), id);
+         }
+         if (image.getDiskFormat().isPresent()) {
+            byDiskFormat.remove(image.getDiskFormat().get(), id);
+         }
+         if (image.getContainerFormat().isPresent()) {
+            byContainerFormat.remove(image.getContainerFormat().get(), id);
+         }
+         if (image.getSize().isPresent()) {
+            bySize.remove(image.getSize().get(), id);
+         }
+         return image;
+      }
+   }
+
+   /**
+    * Criteria images must all match to be {@link ImageCatalog#find(Query) found}, for instance
+    * {@code new Query().property("os_distro", "ubuntu").diskFormat(DiskFormat.QCOW2)}.
+    */
+   public static final class Query {
+      private String name;
+      private final Map<String, String> properties = Maps.newLinkedHashMap();
+      private DiskFormat diskFormat;
+      private ContainerFormat containerFormat;
+      private Long minSize;
+      private Long maxSize;
+
+      public Query name(String name) {
+         this.name = checkNotNull(name, "name");
+         return this;
+      }
+
+      public Query property(String key, String value) {
+         this.properties.put(checkNotNull(key, "key"), checkNotNull(value, "value"));
+         return this;
+      }
+
+      public Query diskFormat(DiskFormat diskFormat) {
+         this.diskFormat = checkNotNull(diskFormat, "diskFormat");
+         return this;
+      }
+
+      public Query containerFormat(ContainerFormat containerFormat) {
+         this.containerFormat = checkNotNull(containerFormat, "containerFormat");
+         return this;
+      }
+
+      /**
+       * Images of at least this size, in bytes.
+       */
+      public Query minSize(long minSize) {
+         this.minSize = minSize;
+         return this;
+      }
+
+      /**
+       * Images of at most this size, in bytes.
+       */
+      public Query maxSize(long maxSize) {
+         this.maxSize = maxSize;
+         return this;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).omitNullValues().add("name", name).add("properties", properties)
+               .add("diskFormat", diskFormat).add("containerFormat", containerFormat).add("minSize", minSize)
+               .add("maxSize", maxSize).toString();
+      }
+   }
+
+   public static class Builder {
+      protected ImageApi api;
+      protected int pageSize = 100;
+      protected int fullSyncEvery;
+      protected ScheduledExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(ImageApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * The number of images requested per page. Defaults to 100.
+       */
+      public Builder pageSize(int pageSize) {
+         this.pageSize = pageSize;
+         return this;
+      }
+
+      /**
+       * Lists all images again after this many incremental polls, to drop the images that are no longer visible
+       * without having been deleted. Defaults to 0, never.
+       */
+      public Builder fullSyncEvery(int polls) {
+         this.fullSyncEvery = polls;
+         return this;
+      }
+
+      /**
+       * Runs the polls started with {@link ImageCatalog#start(long, TimeUnit)}. When not set, a single daemon thread
+       * is created and shut down on close.
+       */
+      public Builder executor(ScheduledExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = logger;
+         return this;
+      }
+
+      public ImageCatalog build() {
+         return new ImageCatalog(this);
+      }
+   }
+}
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.io.BaseEncoding.base16;
+import static java.lang.String.format;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.rest.ResourceNotFoundException;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Downloads the data of an image to a file with several ranged requests in flight.
+ * <p/>
+ * The size and checksum of the image are read first with {@link ImageApi#get(String)}. The file is then preallocated
+ * to that size and split in chunks, each fetched with {@link ImageApi#getRange(String, String)} and transferred from
+ * the response straight into the file at its offset. As soon as the chunks at the start of the file have landed they
+ * are read back and fed to an MD5 digest, so the checksum is known when the last chunk is written instead of requiring
+ * another pass over the whole image.
+ * <p/>
+ * The chunks written are recorded in a file next to the target, named after it with the {@value #PROGRESS_SUFFIX}
+ * suffix. When a download fails or is interrupted, downloading the same image to the same file again only fetches the
+ * missing chunks. The progress file is removed once the download completes.
+ */
+@Beta
+public class ImageDownloader implements Closeable {
+
+   /**
+    * Suffix of the file that records the chunks of an unfinished download.
+    */
+   public static final String PROGRESS_SUFFIX = ".progress";
+
+   private static final int DIGEST_BUFFER_SIZE = 1024 * 1024;
+
+   private final ImageApi api;
+   private final long chunkSize;
+   private final int maxParallelism;
+   private final int maxAttempts;
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   protected ImageDownloader(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.chunkSize = builder.chunkSize;
+      this.maxParallelism = builder.maxParallelism;
+      this.maxAttempts = builder.maxAttempts;
+      this.logger = builder.logger;
+      checkArgument(chunkSize > 0, "chunkSize must be positive");
+      checkArgument(maxParallelism > 0, "maxParallelism must be positive");
+      checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newFixedThreadPool(maxParallelism,
+               new ThreadFactoryBuilder().setNameFormat("glance-image-download-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * Downloads the data of an image to a file, resuming an unfinished download of the same image to that file.
+    *
+    * @return the metadata the image was downloaded with
+    * @throws ResourceNotFoundException if the image does not exist
+    * @throws IOException if a chunk could not be fetched in {@code maxAttempts} attempts, in which case the chunks
+    *            already written are kept for the next call, or if the data does not match the checksum of the image
+    */
+   public ImageDetails download(String imageId, File target) throws IOException {
+      checkNotNull(imageId, "imageId");
+      checkNotNull(target, "target");
+      ImageDetails image = api.get(imageId);
+      if (image == null) {
+         throw new ResourceNotFoundException("image " + imageId + " not found");
+      }
+      checkState(image.getSize().isPresent(), "image %s has no size", imageId);
+      long size = image.getSize().get();
+      String checksum = image.getChecksum().orNull();
+      int chunks = Ints.checkedCast((size + chunkSize - 1) / chunkSize);
+
+      long start = System.currentTimeMillis();
+      String header = format("%s %d %s %d", imageId, size, checksum, chunkSize);
+      Progress progress = Progress.open(new File(target.getPath() + PROGRESS_SUFFIX), header, target, size);
+      RandomAccessFile file = null;
+      try {
+         file = new RandomAccessFile(target, "rw");
+         file.setLength(size);
+         FileChannel channel = file.getChannel();
+         Digest digest = checksum != null ? new Digest(channel, size, chunkSize) : null;
+         BitSet completed = progress.getCompleted();
+         if (completed.cardinality() > 0) {
+            logger.debug(">> resuming download of image %s with %d of %d chunks written", imageId,
+                  completed.cardinality(), chunks);
+         }
+         if (digest != null) {
+            digest.advance(completed);
+         }
+
+         List<Callable<Integer>> tasks = Lists.newArrayList();
+         for (int index = completed.nextClearBit(0); index < chunks; index = completed.nextClearBit(index + 1)) {
+            long offset = index * chunkSize;
+            tasks.add(fetch(imageId, channel, size, index, offset, Math.min(chunkSize, size - offset)));
+         }
+         Throwable failure = run(tasks, completed, progress, digest);
+         if (failure != null) {
+            if (!(failure instanceof HttpResponseException)) {
+               Throwables.propagateIfPossible(failure);
+            }
+            throw new IOException(format("could not download image %s, %d of %d chunks are written to %s", imageId,
+                  completed.cardinality(), chunks, target), failure);
+         }
+
+         if (digest != null) {
+            String actual = digest.hex();
+            if (!actual.equalsIgnoreCase(checksum)) {
+               // the chunks on disk can not be trusted, the next attempt starts over
+               progress.delete();
+               throw new IOException(format("image %s downloaded to %s has checksum %s instead of %s", imageId,
+                     target, actual, checksum));
+            }
+         }
+         channel.force(false);
+         progress.delete();
+         logger.debug("<< downloaded %d bytes of image %s in %dms", size, imageId,
+               System.currentTimeMillis() - start);
+         return image;
+      }
+      finally {
+         Closeables2.closeQuietly(progress);
+         Closeables2.closeQuietly(file);
+      }
+   }
+
+   /**
+    * Runs the tasks with at most {@code maxParallelism} in flight, recording and digesting each chunk as it lands.
+    * Once a task fails no more are started, but the ones in flight are left to finish: interrupting a thread blocked
+    * on the file channel would close it for all of them.
+    *
+    * @return the first failure, or null if all tasks succeeded
+    */
+   private Throwable run(List<Callable<Integer>> tasks, BitSet completed, Progress progress, Digest digest)
+         throws IOException {
+      CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+      Map<Future<Integer>, Boolean> inFlight = Maps.newIdentityHashMap();
+      Iterator<Callable<Integer>> remaining = tasks.iterator();
+      Throwable failure = null;
+      try {
+         while (inFlight.size() < maxParallelism && remaining.hasNext()) {
+            inFlight.put(completion.submit(remaining.next()), Boolean.TRUE);
+         }
+         while (!inFlight.isEmpty()) {
+            Future<Integer> done = completion.take();
+            inFlight.remove(done);
+            try {
+               int index = done.get();
+               completed.set(index);
+               progress.record(index);
+               if (digest != null) {
+                  digest.advance(completed);
+               }
+            }
+            catch (ExecutionException e) {
+               if (failure == null) {
+                  failure = e.getCause();
+               }
+            }
+            if (failure == null && remaining.hasNext()) {
+               inFlight.put(completion.submit(remaining.next()), Boolean.TRUE);
+            }
+         }
+         return failure;
+      }
+      catch (InterruptedException e) {
+         for (Future<Integer> future : inFlight.keySet()) {
+            future.cancel(false);
+         }
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("interrupted while downloading, written chunks are kept for resuming");
+      }
+   }
+
+   private Callable<Integer> fetch(final String imageId, final FileChannel channel, final long size, final int index,
+         final long offset, final long length) {
+      return new Callable<Integer>() {
+         @Override
+         public Integer call() throws Exception {
+            for (int attempt = 1; ; attempt++) {
+               try {
+                  transfer(imageId, channel, size, offset, length);
+                  return index;
+               }
+               catch (IOException | HttpResponseException e) {
+                  if (attempt >= maxAttempts || !channel.isOpen()) {
+                     throw e;
+                  }
+                  logger.warn(e, "<< attempt %d to download chunk %d of image %s failed", attempt, index, imageId);
+               }
+            }
+         }
+      };
+   }
+
+   private void transfer(String imageId, FileChannel channel, long size, long offset, long length)
+         throws IOException {
+      long last = offset + length - 1;
+      HttpResponse response = api.getRange(imageId, "bytes=" + offset + "-" + last);
+      if (response == null) {
+         throw new ResourceNotFoundException("image " + imageId + " was deleted during the download");
+      }
+      try {
+         if (response.getStatusCode() == 206) {
+            String contentRange = response.getFirstHeaderOrNull("Content-Range");
+            if (contentRange != null && !contentRange.startsWith("bytes " + offset + "-" + last + "/")) {
+               throw new IOException(format("asked for bytes %d-%d of image %s but got %s", offset, last, imageId,
+                     contentRange));
+            }
+         }
+         else if (offset != 0 || length != size) {
+            throw new IllegalStateException(format("server answered a range request for image %s with status %d",
+                  imageId, response.getStatusCode()));
+         }
+         ReadableByteChannel source = Channels.newChannel(response.getPayload().openStream());
+         long position = offset;
+         while (position <= last) {
+            long transferred = channel.transferFrom(source, position, last + 1 - position);
+            if (transferred == 0) {
+               throw new EOFException(format("bytes %d-%d of image %s ended at byte %d", offset, last, imageId,
+                     position));
+            }
+            position += transferred;
+         }
+      }
+      finally {
+         Closeables2.closeQuietly(response.getPayload());
+      }
+   }
+
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * MD5 of the chunks at the start of the file that have landed, read back from the file through a direct buffer.
+    */
+   private static final class Digest {
+      private final MessageDigest md5;
+      private final FileChannel channel;
+      private final long size;
+      private final long chunkSize;
+      private final ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE);
+      private int next;
+
+      private Digest(FileChannel channel, long size, long chunkSize) {
+         try {
+            this.md5 = MessageDigest.getInstance("MD5");
+         }
+         catch (NoSuchAlgorithmException e) {
+            throw Throwables.propagate(e);
+         }
+         this.channel = channel;
+         this.size = size;
+         this.chunkSize = chunkSize;
+      }
+
+      private void advance(BitSet completed) throws IOException {
+         for (; completed.get(next); next++) {
+            long position = next * chunkSize;
+            long end = Math.min(position + chunkSize, size);
+            while (position < end) {
+               buffer.clear();
+               buffer.limit((int) Math.min(buffer.capacity(), end - position));
+               int read = channel.read(buffer, position);
+               if (read < 0) {
+                  throw new EOFException("file ended at byte " + position + " of " + size);
+               }
+               buffer.flip();
+               md5.update(buffer);
+               position += read;
+            }
+         }
+      }
+
+      private String hex() {
+         return base16().lowerCase().encode(md5.digest());
+      }
+   }
+
+   /**
+    * The progress file: a header identifying the image and the chunk size, then the index of each chunk written, one
+    * per line. A line is only trusted once its newline is written.
+    */
+   private static final class Progress implements Closeable {
+      private final File file;
+      private final BitSet completed;
+      private final Writer writer;
+
+      private static Progress open(File file, String header, File target, long size) throws IOException {
+         BitSet completed = new BitSet();
+         boolean resume = false;
+         if (file.isFile() && target.isFile() && target.length() == size) {
+            List<String> lines = Splitter.on('\n').splitToList(Files.toString(file, Charsets.UTF_8));
+            if (lines.size() > 1 && lines.get(0).equals(header)) {
+               resume = true;
+               // the last element is either empty or a line whose write was cut short
+               for (String line : lines.subList(1, lines.size() - 1)) {
+                  Integer index = Ints.tryParse(line);
+                  if (index != null && index >= 0) {
+                     completed.set(index);
+                  }
+               }
+            }
+         }
+         Writer writer = new OutputStreamWriter(new FileOutputStream(file, resume), Charsets.UTF_8);
+         if (!resume) {
+            writer.write(header + "\n");
+            writer.flush();
+         }
+         return new Progress(file, completed, writer);
+      }
+
+      private Progress(File file, BitSet completed, Writer writer) {
+         this.file = file;
+         this.completed = completed;
+         this.writer = writer;
+      }
+
+      private BitSet getCompleted() {
+         return completed;
+      }
+
+      private void record(int index) throws IOException {
+         writer.write(index + "\n");
+         writer.flush();
+      }
+
+      private void delete() throws IOException {
+         writer.close();
+         if (file.exists() && !file.delete()) {
+            throw new IOException("could not delete " + file);
+         }
+      }
+
+      @Override
+      public void close() throws IOException {
+         writer.close();
+      }
+   }
+
+   public static class Builder {
+      protected ImageApi api;
+      protected long chunkSize = 64 * 1024 * 1024;
+      protected int maxParallelism = 4;
+      protected int maxAttempts = 3;
+      protected ExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(ImageApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * The number of bytes fetched by each ranged request. Defaults to 64 MB. A download can only be resumed with
+       * the chunk size it was started with.
+       */
+      public Builder chunkSize(long chunkSize) {
+         this.chunkSize = chunkSize;
+         return this;
+      }
+
+      /**
+       * The maximum number of ranged requests in flight. Defaults to 4.
+       */
+      public Builder maxParallelism(int maxParallelism) {
+         this.maxParallelism = maxParallelism;
+         return this;
+      }
+
+      /**
+       * How many times a chunk is requested before the download fails. Defaults to 3.
+       */
+      public Builder maxAttempts(int maxAttempts) {
+         this.maxAttempts = maxAttempts;
+         return this;
+      }
+
+      /**
+       * Runs the ranged requests. When not set, a pool of {@code maxParallelism} daemon threads is created and shut
+       * down on close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = logger;
+         return this;
+      }
+
+      public ImageDownloader build() {
+         return new ImageDownloader(this);
+      }
+   }
+}
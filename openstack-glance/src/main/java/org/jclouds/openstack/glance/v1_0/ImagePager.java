@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Lists images page by page, with a page size, sort order and filters of the caller's choosing.
+ * <p/>
+ * Glance v1 does not return links to the next page of a listing, so {@link ImageApi#list()} and
+ * {@link ImageApi#listInDetail()} stop after the first one. The listings made here ask for a given number of images
+ * and, as long as a page is full, request the next one with the id of its last image as the marker. The summary and
+ * the detailed listings each page on their own endpoint, and every option of the first request, such as
+ * {@link ListImageOptions#sortBy} or {@link ListImageOptions#changesSince}, is repeated on the following ones.
+ * <p/>
+ * With {@link Builder#prefetch(boolean)}, the next page is requested in the background as soon as a full page
+ * arrives, so that it is usually available by the time the current one has been iterated.
+ */
+@Beta
+public class ImagePager implements Closeable {
+
+   private final ImageApi api;
+   private final int pageSize;
+   @Nullable
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   protected ImagePager(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.pageSize = builder.pageSize;
+      this.logger = builder.logger;
+      checkArgument(pageSize > 0, "pageSize must be positive");
+      if (!builder.prefetch) {
+         this.executor = null;
+         this.ownsExecutor = false;
+      }
+      else if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newCachedThreadPool(
+               new ThreadFactoryBuilder().setNameFormat("glance-image-pager-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * Lists the images in summary, one page of {@link Builder#pageSize(int)} images at a time unless the options set
+    * a {@link ListImageOptions#limit(int) limit}.
+    */
+   public PagedIterable<Image> list(ListImageOptions... options) {
+      return page("list", options, new Function<ListImageOptions, Iterable<Image>>() {
+         @Override
+         public Iterable<Image> apply(ListImageOptions input) {
+            return api.list(input);
+         }
+      });
+   }
+
+   /**
+    * Lists the images in detail, one page of {@link Builder#pageSize(int)} images at a time unless the options set
+    * a {@link ListImageOptions#limit(int) limit}.
+    */
+   public PagedIterable<ImageDetails> listInDetail(ListImageOptions... options) {
+      return page("listInDetail", options, new Function<ListImageOptions, Iterable<ImageDetails>>() {
+         @Override
+         public Iterable<ImageDetails> apply(ListImageOptions input) {
+            return api.listInDetail(input);
+         }
+      });
+   }
+
+   /**
+    * Shuts down the prefetching threads, unless they were provided with {@link Builder#executor(ExecutorService)}.
+    */
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   private <T extends Image> PagedIterable<T> page(String name, ListImageOptions[] options,
+         Function<ListImageOptions, ? extends Iterable<T>> fetch) {
+      // the limit goes first, then the caller's parameters in their order; the marker is set for each page
+      Multimap<String, String> params = LinkedHashMultimap.create();
+      Collection<String> limit = ImmutableList.of(Integer.toString(pageSize));
+      for (ListImageOptions option : options) {
+         Multimap<String, String> given = option.buildQueryParameters();
+         if (given.containsKey("limit")) {
+            limit = given.get("limit");
+         }
+      }
+      params.putAll("limit", limit);
+      for (ListImageOptions option : options) {
+         for (Map.Entry<String, String> param : option.buildQueryParameters().entries()) {
+            if (!param.getKey().equals("limit") && !param.getKey().equals("marker")) {
+               params.put(param.getKey(), param.getValue());
+            }
+         }
+      }
+      Pages<T> pages = new Pages<T>(name, params, Integer.parseInt(Iterables.getOnlyElement(limit)), fetch);
+      return PagedIterables.advance(pages.first(), pages);
+   }
+
+   /**
+    * Fetches the page following a marker, taking it from the prefetched one when it matches.
+    */
+   private class Pages<T extends Image> implements Function<Object, IterableWithMarker<T>> {
+      private final String name;
+      private final Multimap<String, String> params;
+      private final int limit;
+      private final Function<ListImageOptions, ? extends Iterable<T>> fetch;
+      private final AtomicReference<Prefetch<T>> ahead = new AtomicReference<Prefetch<T>>();
+
+      Pages(String name, Multimap<String, String> params, int limit,
+            Function<ListImageOptions, ? extends Iterable<T>> fetch) {
+         checkArgument(limit > 0, "limit must be positive");
+         this.name = name;
+         this.params = params;
+         this.limit = limit;
+         this.fetch = fetch;
+      }
+
+      IterableWithMarker<T> first() {
+         return toPage(fetch(null));
+      }
+
+      @Override
+      public IterableWithMarker<T> apply(Object input) {
+         String marker = input.toString();
+         Prefetch<T> prefetch = ahead.getAndSet(null);
+         if (prefetch == null || !prefetch.marker.equals(marker)) {
+            if (prefetch != null) {
+               prefetch.future.cancel(false);
+            }
+            return toPage(fetch(marker));
+         }
+         try {
+            return toPage(Futures.getUnchecked(prefetch.future));
+         }
+         catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+         }
+      }
+
+      private List<T> fetch(@Nullable String marker) {
+         ListImageOptions options = ListImageOptions.Builder.queryParameters(params);
+         if (marker != null) {
+            options.marker(marker);
+         }
+         List<T> page = ImmutableList.copyOf(fetch.apply(options));
+         logger.trace("<< %s(%s) returned %d images", name, options.buildQueryParameters(), page.size());
+         return page;
+      }
+
+      private IterableWithMarker<T> toPage(List<T> page) {
+         // a page that is not full is the last one
+         if (page.size() < limit) {
+            return IterableWithMarkers.from(page);
+         }
+         final String next = Iterables.getLast(page).getId();
+         if (executor != null) {
+            ahead.set(new Prefetch<T>(next, executor.submit(new Callable<List<T>>() {
+               @Override
+               public List<T> call() {
+                  return fetch(next);
+               }
+            })));
+         }
+         return IterableWithMarkers.from(page, next);
+      }
+
+      @Override
+      public String toString() {
+         return name + "(" + params + ")";
+      }
+   }
+
+   private static final class Prefetch<T> {
+      private final String marker;
+      private final Future<List<T>> future;
+
+      Prefetch(String marker, Future<List<T>> future) {
+         this.marker = marker;
+         this.future = future;
+      }
+   }
+
+   public static class Builder {
+      protected ImageApi api;
+      protected int pageSize = 100;
+      protected boolean prefetch;
+      protected ExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(ImageApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * The number of images requested per page when the options do not set a limit. Defaults to 100.
+       */
+      public Builder pageSize(int pageSize) {
+         this.pageSize = pageSize;
+         return this;
+      }
+
+      /**
+       * Requests the next page in the background as soon as a full page arrives. Defaults to false.
+       */
+      public Builder prefetch(boolean prefetch) {
+         this.prefetch = prefetch;
+         return this;
+      }
+
+      /**
+       * Runs the prefetches. When not set, daemon threads are created as needed and shut down on close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = logger;
+         return this;
+      }
+
+      public ImagePager build() {
+         return new ImagePager(this);
+      }
+   }
+}
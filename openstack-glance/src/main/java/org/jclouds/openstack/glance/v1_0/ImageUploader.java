@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.BaseEncoding.base16;
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.jclouds.io.payloads.BasePayload;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.CreateImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.UpdateImageOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+
+/**
+ * Uploads image data from a file, computing its MD5 while it is sent.
+ * <p/>
+ * Passing the checksum in {@link UpdateImageOptions#checksum(String)} means reading the file once to compute it and
+ * once more to send it. Instead, the file is sent without one and the checksum Glance computed from the data it
+ * received, returned in the {@link ImageDetails} of the image, is compared with the one computed from the data that
+ * was read from the file. The file is read from a {@link FileChannel} straight into the buffers of the HTTP driver,
+ * which pulls the payload through an {@link InputStream}, so no driver can transfer it without passing through the
+ * heap; the single pass is what is saved.
+ * <p/>
+ * A {@link ProgressListener} can follow the bytes sent and the throughput.
+ */
+@Beta
+public class ImageUploader {
+
+   /**
+    * Receives the progress of an upload on the thread sending it.
+    */
+   public interface ProgressListener {
+
+      /**
+       * @param bytesSent      the bytes read from the file so far
+       * @param totalBytes     the size of the file
+       * @param bytesPerSecond the average throughput since the upload started
+       */
+      void onProgress(long bytesSent, long totalBytes, double bytesPerSecond);
+   }
+
+   /**
+    * An upload whose data was accepted with a matching checksum.
+    */
+   public static final class Result {
+      private final ImageDetails image;
+      private final String checksum;
+      private final long bytes;
+      private final long millis;
+
+      private Result(ImageDetails image, String checksum, long bytes, long millis) {
+         this.image = image;
+         this.checksum = checksum;
+         this.bytes = bytes;
+         this.millis = millis;
+      }
+
+      /**
+       * The metadata of the image returned by Glance.
+       */
+      public ImageDetails getImage() {
+         return image;
+      }
+
+      /**
+       * The MD5 computed while the file was sent.
+       */
+      public String getChecksum() {
+         return checksum;
+      }
+
+      public long getBytes() {
+         return bytes;
+      }
+
+      public long getMillis() {
+         return millis;
+      }
+
+      public double getBytesPerSecond() {
+         return millis > 0 ? bytes * 1000.0 / millis : bytes;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("image", image.getId()).add("checksum", checksum)
+               .add("bytes", bytes).add("millis", millis).toString();
+      }
+   }
+
+   private final ImageApi api;
+   private final ProgressListener listener;
+   private final long progressInterval;
+   private final Logger logger;
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   protected ImageUploader(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.listener = builder.listener;
+      this.progressInterval = builder.progressInterval;
+      this.logger = builder.logger;
+      checkArgument(progressInterval > 0, "progressInterval must be positive");
+   }
+
+   /**
+    * Creates an image with the data of a file.
+    * <p/>
+    * If the checksum of the created image does not match the data that was sent, the image is deleted.
+    *
+    * @throws IOException if the checksum of the created image does not match the data that was sent
+    * @see ImageApi#create(String, org.jclouds.io.Payload, CreateImageOptions...)
+    */
+   public Result create(String name, File file, CreateImageOptions... options) throws IOException {
+      checkNotNull(name, "name");
+      ChecksummingFilePayload payload = new ChecksummingFilePayload(file);
+      ImageDetails image = api.create(name, payload, options);
+      try {
+         return verify(image, payload);
+      }
+      catch (IOException e) {
+         logger.warn("<< deleting image %s: %s", image.getId(), e.getMessage());
+         api.delete(image.getId());
+         throw e;
+      }
+   }
+
+   /**
+    * Uploads the data of a file to a reserved image.
+    * <p/>
+    * If the checksum returned does not match the data that was sent, the image is left as is for the caller to
+    * decide whether to delete it.
+    *
+    * @throws IOException if the checksum of the image does not match the data that was sent
+    * @see ImageApi#upload(String, org.jclouds.io.Payload, UpdateImageOptions...)
+    */
+   public Result upload(String imageId, File file, UpdateImageOptions... options) throws IOException {
+      checkNotNull(imageId, "imageId");
+      ChecksummingFilePayload payload = new ChecksummingFilePayload(file);
+      return verify(api.upload(imageId, payload, options), payload);
+   }
+
+   private Result verify(ImageDetails image, ChecksummingFilePayload payload) throws IOException {
+      String actual = payload.checksum();
+      long millis = payload.elapsedMillis();
+      if (!image.getChecksum().isPresent()) {
+         logger.warn("<< image %s was returned without a checksum, can not verify it against %s", image.getId(),
+               actual);
+      }
+      else if (!image.getChecksum().get().equalsIgnoreCase(actual)) {
+         throw new IOException(format("image %s has checksum %s but the data sent from %s has checksum %s",
+               image.getId(), image.getChecksum().get(), payload.getRawContent(), actual));
+      }
+      Result result = new Result(image, actual, payload.getContentMetadata().getContentLength(), millis);
+      logger.debug("<< uploaded %d bytes to image %s in %dms (%.0f bytes/s)", result.getBytes(), image.getId(),
+            millis, result.getBytesPerSecond());
+      return result;
+   }
+
+   /**
+    * A file payload that digests the data as the HTTP driver reads it. Each time the payload is opened, for instance
+    * when the request is retried, the digest and the progress start over.
+    */
+   private class ChecksummingFilePayload extends BasePayload<File> {
+      private volatile ChecksummingStream stream;
+
+      private ChecksummingFilePayload(File file) {
+         super(checkNotNull(file, "file"));
+         checkArgument(file.isFile(), "%s is not a file", file);
+         getContentMetadata().setContentLength(file.length());
+      }
+
+      @Override
+      public InputStream openStream() throws IOException {
+         ChecksummingStream opened = new ChecksummingStream(new RandomAccessFile(content, "r").getChannel(),
+               content.length());
+         stream = opened;
+         return opened;
+      }
+
+      private String checksum() throws IOException {
+         ChecksummingStream sent = stream;
+         if (sent == null || sent.position < sent.size) {
+            throw new IOException(format("only %d bytes of %s were sent", sent == null ? 0 : sent.position,
+                  content));
+         }
+         return base16().lowerCase().encode(sent.md5.digest());
+      }
+
+      private long elapsedMillis() {
+         return stream == null ? 0 : System.currentTimeMillis() - stream.start;
+      }
+   }
+
+   private class ChecksummingStream extends InputStream {
+      private final FileChannel channel;
+      private final long size;
+      private final MessageDigest md5;
+      private final long start = System.currentTimeMillis();
+      private long position;
+      private long nextProgress;
+
+      private ChecksummingStream(FileChannel channel, long size) {
+         this.channel = channel;
+         this.size = size;
+         this.nextProgress = progressInterval;
+         try {
+            this.md5 = MessageDigest.getInstance("MD5");
+         }
+         catch (NoSuchAlgorithmException e) {
+            throw Throwables.propagate(e);
+         }
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] single = new byte[1];
+         return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) throws IOException {
+         if (length == 0) {
+            return 0;
+         }
+         int read = channel.read(ByteBuffer.wrap(bytes, offset, length));
+         if (read < 0) {
+            if (position < size) {
+               throw new IOException(format("file shrank to %d bytes while it was sent", position));
+            }
+            return -1;
+         }
+         md5.update(bytes, offset, read);
+         position += read;
+         if (listener != null && (position >= nextProgress || position == size)) {
+            nextProgress = position + progressInterval;
+            long millis = System.currentTimeMillis() - start;
+            listener.onProgress(position, size, millis > 0 ? position * 1000.0 / millis : position);
+         }
+         return read;
+      }
+
+      @Override
+      public int available() throws IOException {
+         return (int) Math.min(Integer.MAX_VALUE, size - position);
+      }
+
+      @Override
+      public void close() throws IOException {
+         channel.close();
+      }
+   }
+
+   public static class Builder {
+      protected ImageApi api;
+      protected ProgressListener listener;
+      protected long progressInterval = 16 * 1024 * 1024;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(ImageApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder progressListener(ProgressListener listener) {
+         this.listener = listener;
+         return this;
+      }
+
+      /**
+       * How many bytes are sent between two calls to the progress listener. Defaults to 16 MB. The listener is also
+       * called once the whole file is sent.
+       */
+      public Builder progressInterval(long bytes) {
+         this.progressInterval = bytes;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = logger;
+         return this;
+      }
+
+      public ImageUploader build() {
+         return new ImageUploader(this);
+      }
+   }
+}
@@ -37,6 +37,7 @@ import org.jclouds.Fallbacks.EmptyPagedIterableOnNotFoundOr404;
 import org.jclouds.Fallbacks.FalseOnNotFoundOr404;
 import org.jclouds.Fallbacks.NullOnNotFoundOr404;
 import org.jclouds.collect.PagedIterable;
+import org.jclouds.http.HttpResponse;
 import org.jclouds.io.Payload;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.openstack.glance.v1_0.domain.Image;
@@ -65,7 +66,9 @@ import org.jclouds.rest.annotations.Transform;
 public interface ImageApi {
 
    /**
-    * Lists all images (IDs, names, links)
+    * Lists all images (IDs, names, links), following the links to the next pages.
+    * <p/>
+    * To page with a given page size, sort order or filters, see {@link org.jclouds.openstack.glance.v1_0.ImagePager}.
     *
     * @return all images (IDs, names, links)
     */
@@ -83,7 +86,9 @@ public interface ImageApi {
    PaginatedCollection<Image> list(ListImageOptions options);
 
    /**
-    * Lists all images (all details)
+    * Lists all images (all details), following the links to the next pages.
+    * <p/>
+    * To page with a given page size, sort order or filters, see {@link org.jclouds.openstack.glance.v1_0.ImagePager}.
     *
     * @return all images (all details)
     */
@@ -123,6 +128,23 @@ public interface ImageApi {
    @Nullable
    InputStream getAsStream(@PathParam("id") String id);
 
+   /**
+    * Returns a range of the image data for image with id
+    * <p/>
+    * The response is returned as is so that the caller can check that the server honoured the range (status 206 and
+    * the {@code Content-Range} header) before reading the payload, which it must close.
+    *
+    * @param range
+    *           the value of the {@code Range} header, for example {@code bytes=0-1048575}
+    * @see org.jclouds.openstack.glance.v1_0.ImageDownloader
+    */
+   @Named("image:getAsStream")
+   @GET
+   @Path("/{id}")
+   @Fallback(NullOnNotFoundOr404.class)
+   @Nullable
+   HttpResponse getRange(@PathParam("id") String id, @HeaderParam("Range") String range);
+
    /**
     * Creates a new image
     *
@@ -17,11 +17,9 @@
 package org.jclouds.openstack.glance.v1_0.functions.internal;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.getOnlyElement;
-import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.marker;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.queryParameters;
 
 import java.beans.ConstructorProperties;
-import java.util.Collection;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -42,6 +40,7 @@ import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.Multimap;
 import com.google.inject.TypeLiteral;
 
 /**
@@ -82,11 +81,11 @@ public class ParseImageDetails extends ParseJson<Images> {
             @SuppressWarnings("unchecked")
             @Override
             public IterableWithMarker<ImageDetails> apply(Object input) {
-               PaginationOptions paginationOptions = PaginationOptions.class.cast(input);
-               Collection<String> markers = paginationOptions.buildQueryParameters().get("marker");
+               // the next link carries limit, sort and filter parameters along with the marker
+               Multimap<String, String> params = PaginationOptions.class.cast(input).buildQueryParameters();
 
-               if (!markers.isEmpty()) {
-                  return IterableWithMarker.class.cast(imageApi.listInDetail(marker(getOnlyElement(markers))));
+               if (params.containsKey("marker")) {
+                  return IterableWithMarker.class.cast(imageApi.listInDetail(queryParameters(params)));
                }
                else {
                   return IterableWithMarkers.EMPTY;
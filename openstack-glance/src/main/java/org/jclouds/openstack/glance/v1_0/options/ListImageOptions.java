@@ -35,6 +35,8 @@ import org.jclouds.openstack.glance.v1_0.domain.DiskFormat;
 import org.jclouds.openstack.glance.v1_0.domain.Image.Status;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 
+import com.google.common.collect.Multimap;
+
 /**
  * <h2></h2>Usage</h2> The recommended way to instantiate a ListImageOptions object is to statically import
  * ListImageOptions.Builder.* and invoke a static creation method for each option as needed:
@@ -70,6 +72,14 @@ public class ListImageOptions extends PaginationOptions {
       return ListImageOptions.class.cast(super.limit(limit));
    }
 
+   /**
+    * Adds query parameters as is, for instance those of the link to the next page of a listing.
+    */
+   @Override
+   public ListImageOptions queryParameters(Multimap<String, String> queryParams) {
+      return ListImageOptions.class.cast(super.queryParameters(queryParams));
+   }
+
    /**
     * Return only those images having a matching name attribute
     */
@@ -267,6 +277,13 @@ public class ListImageOptions extends PaginationOptions {
       public static ListImageOptions marker(String marker) {
          return new ListImageOptions().marker(marker);
       }
+
+      /**
+       * @see ListImageOptions#queryParameters
+       */
+      public static ListImageOptions queryParameters(Multimap<String, String> queryParams) {
+         return new ListImageOptions().queryParameters(queryParams);
+      }
    }
 
 }
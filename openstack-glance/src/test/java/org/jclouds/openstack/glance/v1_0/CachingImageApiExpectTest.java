@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.glance.v1_0.internal.BaseGlanceExpectTest;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.io.Files;
+
+@Test(groups = "unit", testName = "CachingImageApiExpectTest")
+public class CachingImageApiExpectTest extends BaseGlanceExpectTest {
+
+   private static final String DIGITS_ID = "fcc451d0-f6e4-4824-ad8f-70ec12326d07";
+   private static final String LETTERS_ID = "02fa0378-f305-43cf-8058-8572fe1da795";
+
+   public void testImageIsDownloadedOnce() throws Exception {
+      File directory = Files.createTempDir();
+
+      GlanceApi first = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            head(DIGITS_ID), headResponse(DIGITS_ID, "781e5e245d69b566979b86e28d23f2c7"),
+            get(DIGITS_ID), getResponse("0123456789"));
+
+      CachingImageApi cache = CachingImageApi.builder()
+            .delegate(first.getImageApi("az-1.region-a.geo-1"))
+            .directory(directory)
+            .build();
+      assertEquals(Strings2.toStringAndClose(cache.getAsStream(DIGITS_ID)), "0123456789");
+      assertEquals(cache.getCachedBytes(), 10);
+
+      // the image has not changed, so a new cache over the same directory must not request the data
+      GlanceApi second = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            head(DIGITS_ID), headResponse(DIGITS_ID, "781e5e245d69b566979b86e28d23f2c7"));
+
+      CachingImageApi restarted = CachingImageApi.builder()
+            .delegate(second.getImageApi("az-1.region-a.geo-1"))
+            .directory(directory)
+            .build();
+      assertEquals(restarted.getCachedBytes(), 10);
+      assertEquals(Strings2.toStringAndClose(restarted.getAsStream(DIGITS_ID)), "0123456789");
+   }
+
+   public void testLeastRecentlyReadImageIsEvicted() throws Exception {
+      File directory = Files.createTempDir();
+
+      GlanceApi api = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            head(DIGITS_ID), headResponse(DIGITS_ID, "781e5e245d69b566979b86e28d23f2c7"),
+            get(DIGITS_ID), getResponse("0123456789"),
+            head(LETTERS_ID), headResponse(LETTERS_ID, "a925576942e94b2ef57a066101b48876"),
+            get(LETTERS_ID), getResponse("abcdefghij"));
+
+      CachingImageApi cache = CachingImageApi.builder()
+            .delegate(api.getImageApi("az-1.region-a.geo-1"))
+            .directory(directory)
+            .maxBytes(15)
+            .build();
+      assertEquals(Strings2.toStringAndClose(cache.getAsStream(DIGITS_ID)), "0123456789");
+      assertEquals(Strings2.toStringAndClose(cache.getAsStream(LETTERS_ID)), "abcdefghij");
+
+      assertEquals(cache.getCachedBytes(), 10);
+      assertEquals(directory.list(), new String[] { LETTERS_ID + "-a925576942e94b2ef57a066101b48876" });
+   }
+
+   private HttpRequest head(String id) {
+      return HttpRequest.builder().method("HEAD")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/" + id)
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+   }
+
+   private HttpResponse headResponse(String id, String checksum) {
+      return HttpResponse.builder().statusCode(200)
+            .headers(ImmutableMultimap.<String, String>builder()
+                  .put("X-Image-Meta-Id", id)
+                  .put("X-Image-Meta-Checksum", checksum)
+                  .put("X-Image-Meta-Min_disk", "0")
+                  .put("X-Image-Meta-Created_at", "2012-05-18T18:06:44")
+                  .put("X-Image-Meta-Size", "10")
+                  .put("X-Image-Meta-Status", "active")
+                  .put("X-Image-Meta-Is_public", "True")
+                  .put("X-Image-Meta-Min_ram", "0")
+                  .put("X-Image-Meta-Updated_at", "2012-05-18T18:42:58")
+                  .build())
+            .build();
+   }
+
+   private HttpRequest get(String id) {
+      return HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/" + id)
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+   }
+
+   private HttpResponse getResponse(String data) {
+      return HttpResponse.builder().statusCode(200).payload(Payloads.newStringPayload(data)).build();
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.openstack.glance.v1_0.domain.DiskFormat;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.BaseGlanceExpectTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+@Test(groups = "unit", testName = "ImageCatalogExpectTest")
+public class ImageCatalogExpectTest extends BaseGlanceExpectTest {
+
+   private static final String UPDATED_ID = "fcc451d0-f6e4-4824-ad8f-70ec12326d07";
+   private static final String DELETED_ID = "f9fcb127-071d-4670-883e-eedb7efac183";
+
+   public void testIncrementalSyncAppliesUpdatesAndDeletes() throws Exception {
+      HttpResponse empty = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromStringWithContentType("{\"images\": []}", MediaType.APPLICATION_JSON)).build();
+
+      GlanceApi api = requestsSendResponses(ImmutableMap.<HttpRequest, HttpResponse>builder()
+            .put(keystoneAuthWithUsernameAndPassword, responseWithKeystoneAccess)
+            .put(versionNegotiationRequest, versionNegotiationResponse)
+            .put(listInDetail("limit=2"), HttpResponse.builder().statusCode(200)
+                  .payload(payloadFromResource("/images_detail.json")).build())
+            .put(listInDetail("limit=2&marker=" + DELETED_ID), empty)
+            // changes since the most recent updated_at listed, 2012-05-18T18:06:45
+            .put(listInDetail("limit=2&changes-since=1337364405"), HttpResponse.builder().statusCode(200)
+                  .payload(payloadFromResource("/images_detail_changes.json")).build())
+            .put(listInDetail("limit=2&changes-since=1337364405&marker=" + DELETED_ID), empty)
+            .build());
+
+      ImageCatalog catalog = ImageCatalog.builder().api(api.getImageApi("az-1.region-a.geo-1")).pageSize(2).build();
+      try {
+         assertEquals(catalog.sync(), 2);
+         assertEquals(catalog.find(new ImageCatalog.Query().name("debian")).size(), 2);
+         assertEquals(catalog.find(new ImageCatalog.Query().diskFormat(DiskFormat.RAW).minSize(65645798)).size(), 2);
+
+         assertEquals(catalog.sync(), 2);
+         assertNull(catalog.getImage(DELETED_ID));
+         assertTrue(catalog.find(new ImageCatalog.Query().name("debian")).isEmpty());
+         ImageDetails updated = Iterables.getOnlyElement(catalog.find(new ImageCatalog.Query()
+               .property("os_distro", "debian").diskFormat(DiskFormat.QCOW2)));
+         assertEquals(updated.getId(), UPDATED_ID);
+         assertEquals(updated.getName(), "debian-7");
+         assertEquals(catalog.getImages().size(), 1);
+      }
+      finally {
+         catalog.close();
+      }
+   }
+
+   private HttpRequest listInDetail(String query) {
+      return HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/detail?" + query)
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.File;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.glance.v1_0.internal.BaseGlanceExpectTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.io.Files;
+
+@Test(groups = "unit", testName = "ImageDownloaderExpectTest")
+public class ImageDownloaderExpectTest extends BaseGlanceExpectTest {
+
+   private static final String IMAGE_ID = "fcc451d0-f6e4-4824-ad8f-70ec12326d07";
+   private static final String IMAGE_URI = "https://glance.jclouds.org:9292/v1.0/images/" + IMAGE_ID;
+   private static final String HEADER = IMAGE_ID + " 10 781e5e245d69b566979b86e28d23f2c7 4";
+
+   HttpRequest head = HttpRequest.builder().method("HEAD")
+         .endpoint(IMAGE_URI)
+         .addHeader("Accept", MediaType.APPLICATION_JSON)
+         .addHeader("X-Auth-Token", authToken).build();
+
+   HttpResponse headResponse = HttpResponse.builder().statusCode(200)
+         .headers(ImmutableMultimap.<String, String>builder()
+               .put("X-Image-Meta-Id", IMAGE_ID)
+               .put("X-Image-Meta-Checksum", "781e5e245d69b566979b86e28d23f2c7")
+               .put("X-Image-Meta-Min_disk", "0")
+               .put("X-Image-Meta-Created_at", "2012-05-18T18:06:44")
+               .put("X-Image-Meta-Size", "10")
+               .put("X-Image-Meta-Status", "active")
+               .put("X-Image-Meta-Is_public", "True")
+               .put("X-Image-Meta-Min_ram", "0")
+               .put("X-Image-Meta-Updated_at", "2012-05-18T18:42:58")
+               .put("X-Image-Meta-Name", "digits")
+               .build())
+         .build();
+
+   public void testDownloadInRanges() throws Exception {
+      GlanceApi api = requestsSendResponses(ImmutableMap.<HttpRequest, HttpResponse>builder()
+            .put(keystoneAuthWithUsernameAndPassword, responseWithKeystoneAccess)
+            .put(versionNegotiationRequest, versionNegotiationResponse)
+            .put(head, headResponse)
+            .put(range(0, 3), rangeResponse(0, 3))
+            .put(range(4, 7), rangeResponse(4, 7))
+            .put(range(8, 9), rangeResponse(8, 9))
+            .build());
+
+      File target = new File(Files.createTempDir(), "digits.raw");
+      ImageDownloader downloader = ImageDownloader.builder()
+            .api(api.getImageApi("az-1.region-a.geo-1"))
+            .chunkSize(4)
+            .maxParallelism(2)
+            .build();
+      try {
+         assertEquals(downloader.download(IMAGE_ID, target).getName(), "digits");
+      }
+      finally {
+         downloader.close();
+      }
+
+      assertEquals(Files.toString(target, Charsets.UTF_8), "0123456789");
+      assertFalse(new File(target.getPath() + ImageDownloader.PROGRESS_SUFFIX).exists());
+   }
+
+   public void testDownloadResumesMissingChunks() throws Exception {
+      // only the middle chunk may be requested
+      GlanceApi api = requestsSendResponses(ImmutableMap.<HttpRequest, HttpResponse>builder()
+            .put(keystoneAuthWithUsernameAndPassword, responseWithKeystoneAccess)
+            .put(versionNegotiationRequest, versionNegotiationResponse)
+            .put(head, headResponse)
+            .put(range(4, 7), rangeResponse(4, 7))
+            .build());
+
+      File target = new File(Files.createTempDir(), "digits.raw");
+      Files.write("0123\0\0\0\089", target, Charsets.UTF_8);
+      File progress = new File(target.getPath() + ImageDownloader.PROGRESS_SUFFIX);
+      // the last line was cut short and must be ignored
+      Files.write(HEADER + "\n0\n2\n1", progress, Charsets.UTF_8);
+
+      ImageDownloader downloader = ImageDownloader.builder()
+            .api(api.getImageApi("az-1.region-a.geo-1"))
+            .chunkSize(4)
+            .build();
+      try {
+         downloader.download(IMAGE_ID, target);
+      }
+      finally {
+         downloader.close();
+      }
+
+      assertEquals(Files.toString(target, Charsets.UTF_8), "0123456789");
+      assertFalse(progress.exists());
+   }
+
+   private HttpRequest range(int first, int last) {
+      return HttpRequest.builder().method("GET")
+            .endpoint(IMAGE_URI)
+            .addHeader("Range", "bytes=" + first + "-" + last)
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+   }
+
+   private HttpResponse rangeResponse(int first, int last) {
+      return HttpResponse.builder().statusCode(206)
+            .addHeader("Content-Range", "bytes " + first + "-" + last + "/10")
+            .payload(Payloads.newStringPayload("0123456789".substring(first, last + 1))).build();
+   }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.openstack.glance.v1_0.internal.BaseGlanceExpectTest;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+@Test(groups = "unit", testName = "ImageUploaderExpectTest")
+public class ImageUploaderExpectTest extends BaseGlanceExpectTest {
+
+   HttpRequest create = HttpRequest.builder().method("POST")
+         .endpoint("https://glance.jclouds.org:9292/v1.0/images")
+         .addHeader("x-image-meta-name", "test")
+         .addHeader("Accept", MediaType.APPLICATION_JSON)
+         .addHeader("X-Auth-Token", authToken)
+         .payload(payloadFromStringWithContentType("somedata", MediaType.APPLICATION_OCTET_STREAM)).build();
+
+   public void testCreateVerifiesChecksum() throws Exception {
+      HttpResponse createResponse = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromStringWithContentType(imageWithChecksum("aefaf7502d52994c3b01957636a3cdd2"),
+                  MediaType.APPLICATION_JSON)).build();
+
+      GlanceApi api = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            create, createResponse);
+
+      final List<Long> progress = Lists.newArrayList();
+      ImageUploader uploader = ImageUploader.builder()
+            .api(api.getImageApi("az-1.region-a.geo-1"))
+            .progressInterval(5)
+            .progressListener(new ImageUploader.ProgressListener() {
+               @Override
+               public void onProgress(long bytesSent, long totalBytes, double bytesPerSecond) {
+                  assertEquals(totalBytes, 8);
+                  progress.add(bytesSent);
+               }
+            })
+            .build();
+
+      ImageUploader.Result result = uploader.create("test", file("somedata"));
+
+      assertEquals(result.getImage().getId(), "02fa0378-f305-43cf-8058-8572fe1da795");
+      assertEquals(result.getChecksum(), "aefaf7502d52994c3b01957636a3cdd2");
+      assertEquals(result.getBytes(), 8);
+      assertEquals(progress.get(progress.size() - 1), Long.valueOf(8));
+   }
+
+   public void testCreateDeletesImageWhenChecksumDiffers() throws Exception {
+      HttpResponse createResponse = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromResource("/image.json")).build();
+
+      HttpRequest delete = HttpRequest.builder().method("DELETE")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/02fa0378-f305-43cf-8058-8572fe1da795")
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+
+      HttpResponse deleteResponse = HttpResponse.builder().statusCode(200).build();
+
+      GlanceApi api = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            create, createResponse, delete, deleteResponse);
+
+      ImageUploader uploader = ImageUploader.builder().api(api.getImageApi("az-1.region-a.geo-1")).build();
+      try {
+         uploader.create("test", file("somedata"));
+         fail("expected a checksum mismatch");
+      }
+      catch (IOException e) {
+         assertEquals(e.getMessage().contains("6ae4e0fdc3c108a1bfe10ef5e436f4f4"), true);
+      }
+   }
+
+   private static File file(String content) throws IOException {
+      File file = new File(Files.createTempDir(), "image.raw");
+      Files.write(content, file, Charsets.UTF_8);
+      return file;
+   }
+
+   private String imageWithChecksum(String checksum) throws IOException {
+      return Strings2.toStringAndClose(getClass().getResourceAsStream("/image.json"))
+            .replace("6ae4e0fdc3c108a1bfe10ef5e436f4f4", checksum);
+   }
+}
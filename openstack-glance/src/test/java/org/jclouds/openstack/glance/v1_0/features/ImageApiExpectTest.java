@@ -182,6 +182,28 @@ public class ImageApiExpectTest extends BaseGlanceExpectTest {
       assertNull(apiWhenNoExist.getImageApi("az-1.region-a.geo-1").getAsStream("fcc451d0-f6e4-4824-ad8f-70ec12326d07"));
    }
 
+   public void testGetRangeWhenResponseIs206() throws Exception {
+      HttpRequest get = HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/fcc451d0-f6e4-4824-ad8f-70ec12326d07")
+            .addHeader("Range", "bytes=1-2")
+            .addHeader("Accept", MediaType.APPLICATION_JSON)
+            .addHeader("X-Auth-Token", authToken).build();
+
+      HttpResponse getResponse = HttpResponse.builder().statusCode(206)
+            .addHeader("Content-Range", "bytes 1-2/3")
+            .payload(Payloads.newStringPayload("oo")).build();
+
+      GlanceApi apiWhenExist = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, versionNegotiationRequest, versionNegotiationResponse,
+            get, getResponse);
+
+      HttpResponse range = apiWhenExist.getImageApi("az-1.region-a.geo-1").getRange("fcc451d0-f6e4-4824-ad8f-70ec12326d07",
+            "bytes=1-2");
+      assertEquals(range.getStatusCode(), 206);
+      assertEquals(range.getFirstHeaderOrNull("Content-Range"), "bytes 1-2/3");
+      assertEquals(Strings2.toStringAndClose(range.getPayload().openStream()), "oo");
+   }
+
    public void testCreateWhenResponseIs2xx() throws Exception {
       HttpRequest get = HttpRequest.builder().method("POST")
             .endpoint("https://glance.jclouds.org:9292/v1.0/images")
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.features;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.jclouds.openstack.glance.v1_0.GlanceApi;
+import org.jclouds.openstack.glance.v1_0.ImagePager;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.BaseGlanceApiMockTest;
+import org.jclouds.openstack.glance.v1_0.options.ImageField;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the requests made to page through image listings
+ */
+@Test(groups = "unit", testName = "ImageApiMockTest")
+public class ImageApiMockTest extends BaseGlanceApiMockTest {
+
+   private static final String LAST_ID = "f9fcb127-071d-4670-883e-eedb7efac183";
+
+   public void testListFollowsNextLinkOnSummaryEndpoint() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setBody(stringFromResource("/glanceVersionMockResponse.json"))));
+      String firstPage = stringFromResource("/images_page1.json");
+      String secondPage = stringFromResource("/images_page2.json");
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(firstPage)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(secondPage)));
+
+      try {
+         GlanceApi api = api(server.getUrl("/").toString(), "openstack-glance", overrides);
+
+         List<Image> images = api.getImageApi("RegionOne").list().concat().toList();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertVersionNegotiation(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/images");
+         // the next link is followed on the summary endpoint, keeping its limit and sort key
+         assertRequest(server.takeRequest(), "GET",
+               uriApiVersion + "/images?limit=2&sort_key=name&marker=fcc451d0-f6e4-4824-ad8f-70ec12326d07");
+
+         /*
+          * Check response
+          */
+         assertEquals(ids(images), ImmutableList.of("f0209a30-25b8-4d9a-8e2f-dbc028e20b2b",
+               "fcc451d0-f6e4-4824-ad8f-70ec12326d07", LAST_ID));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testPagerListsSummaryAndDetailOnTheirOwnEndpoints() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setBody(stringFromResource("/glanceVersionMockResponse.json"))));
+      String details = stringFromResource("/images_detail.json");
+      String summaries = stringFromResource("/images.json");
+      String empty = stringFromResource("/images_empty.json");
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(details)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(empty)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(summaries)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(empty)));
+
+      GlanceApi api = api(server.getUrl("/").toString(), "openstack-glance", overrides);
+      ImagePager pager = ImagePager.builder().api(api.getImageApi("RegionOne")).prefetch(true).build();
+      try {
+         ListImageOptions options = new ListImageOptions().sortBy(ImageField.NAME).limit(2);
+
+         List<ImageDetails> detailed = pager.listInDetail(options).concat().toList();
+         List<Image> summarized = pager.list(options).concat().toList();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 6);
+         assertAuthentication(server);
+         assertVersionNegotiation(server);
+         // full pages are followed by the id of their last image, with the same limit and sort key
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/images/detail?limit=2&sort_key=name");
+         assertRequest(server.takeRequest(), "GET",
+               uriApiVersion + "/images/detail?limit=2&sort_key=name&marker=" + LAST_ID);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/images?limit=2&sort_key=name");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/images?limit=2&sort_key=name&marker=" + LAST_ID);
+
+         /*
+          * Check response
+          */
+         assertEquals(ids(detailed), ImmutableList.of("fcc451d0-f6e4-4824-ad8f-70ec12326d07", LAST_ID));
+         assertEquals(ids(summarized), ImmutableList.of("f0209a30-25b8-4d9a-8e2f-dbc028e20b2b",
+               "fcc451d0-f6e4-4824-ad8f-70ec12326d07", LAST_ID));
+      } finally {
+         pager.close();
+         server.shutdown();
+      }
+   }
+
+   private static List<String> ids(List<? extends Image> images) {
+      return FluentIterable.from(images).transform(new Function<Image, String>() {
+         @Override
+         public String apply(Image input) {
+            return input.getId();
+         }
+      }).toList();
+   }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.internal;
+
+import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.CREDENTIAL_TYPE;
+import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.SERVICE_TYPE;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.jclouds.openstack.glance.v1_0.GlanceApi;
+import org.jclouds.openstack.keystone.v2_0.config.CredentialTypes;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Base class for writing Glance Mock tests
+ */
+public class BaseGlanceApiMockTest extends BaseOpenStackMockTest<GlanceApi> {
+   protected Properties overrides;
+   protected String uriApiVersion = "/v1.0";
+
+   /**
+    * Base Mock Test
+    */
+   public BaseGlanceApiMockTest() {
+      overrides = new Properties();
+      overrides.setProperty(SERVICE_TYPE, "image");
+      overrides.setProperty(CREDENTIAL_TYPE, CredentialTypes.PASSWORD_CREDENTIALS);
+   }
+
+   /**
+    * Asserts the request made to the unversioned endpoint to find the one of the API version.
+    */
+   public void assertVersionNegotiation(MockWebServer server) throws InterruptedException {
+      RecordedRequest request = server.takeRequest();
+      assertEquals(request.getMethod(), "GET");
+      assertEquals(request.getPath(), "/");
+      assertEquals(request.getHeader("Is-Version-Negotiation-Request"), "true");
+   }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.functions;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.jclouds.http.utils.Queries.queryParser;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Multimap;
+
+/**
+ * Compares {@link MessageHrefs} with the URI and query multimap based parsing it replaced.
+ * <p/>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java}, and add {@code -Dexec.args="-prof gc"} to compare
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageHrefsBenchmark {
+
+   private final String href =
+         "/v1/queues/jclouds-test/messages/52a72a7c0cf7cc2a4f1e7a10?claim_id=52a72a7c3c6e0c84bd5c3a45";
+
+   @Benchmark
+   public void singlePass(Blackhole blackhole) {
+      int indexOfQuery = href.indexOf('?');
+      blackhole.consume(MessageHrefs.idFromHref(href, indexOfQuery));
+      blackhole.consume(MessageHrefs.claimIdFromHref(href, indexOfQuery));
+   }
+
+   @Benchmark
+   public void uriAndQueryParser(Blackhole blackhole) {
+      blackhole.consume(uriIdFromHref(href));
+      blackhole.consume(uriClaimIdFromHref(href));
+   }
+
+   private static String uriIdFromHref(String rawMessageHref) {
+      int indexOfQuestionMark = rawMessageHref.indexOf('?');
+      int lastIndexOfSlash = rawMessageHref.lastIndexOf('/') + 1;
+
+      if (indexOfQuestionMark > lastIndexOfSlash) {
+         return rawMessageHref.substring(lastIndexOfSlash, indexOfQuestionMark);
+      }
+      else {
+         return rawMessageHref.substring(lastIndexOfSlash);
+      }
+   }
+
+   private static String uriClaimIdFromHref(String rawMessageHref) {
+      try {
+         String query = new URI(rawMessageHref).getQuery();
+
+         if (query != null) {
+            Multimap<String, String> queryParams = queryParser().apply(query);
+            return getOnlyElement(queryParams.get("claim_id"), null);
+         }
+         else {
+            return null;
+         }
+      }
+      catch (URISyntaxException e) {
+         return null;
+      }
+   }
+}
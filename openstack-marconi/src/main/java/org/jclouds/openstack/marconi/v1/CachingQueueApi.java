@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.Queue;
+import org.jclouds.openstack.marconi.v1.domain.QueueStats;
+import org.jclouds.openstack.marconi.v1.domain.Queues;
+import org.jclouds.openstack.marconi.v1.features.QueueApi;
+import org.jclouds.openstack.marconi.v1.options.ListQueuesOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A {@link QueueApi} that answers {@link #exists(String)} and {@link #getMetadata(String)} from a snapshot of the
+ * queues of one region, taken with a detailed {@link QueueApi#list(boolean)} and kept for a fixed time.
+ * <p/>
+ * Queues created or deleted by other clients are only noticed once the snapshot expires. Names that are not in the
+ * snapshot are always looked up on the server, so a queue created elsewhere is never reported missing; a queue deleted
+ * elsewhere may still be reported as existing until the snapshot expires. If the snapshot cannot be loaded, lookups
+ * are sent to the server as well. {@link #create(String)}, {@link #delete(String)} and
+ * {@link #setMetadata(String, Map)} made through this api drop the snapshot. Every other operation is passed through.
+ */
+@Beta
+public class CachingQueueApi implements QueueApi {
+
+   private final QueueApi delegate;
+   private final long ttlNanos;
+   private final Ticker ticker;
+   private final Logger logger;
+
+   private final Object loadLock = new Object();
+   private volatile Snapshot snapshot;
+   // bumped by every invalidation, so that a load started before it is not kept
+   private final AtomicLong generation = new AtomicLong();
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+   private final AtomicLong loadSuccesses = new AtomicLong();
+   private final AtomicLong loadFailures = new AtomicLong();
+   private final AtomicLong loadNanos = new AtomicLong();
+   private final AtomicLong invalidations = new AtomicLong();
+
+   protected CachingQueueApi(Builder builder) {
+      checkNotNull(builder.api, "api required");
+      checkNotNull(builder.region, "region required");
+      checkNotNull(builder.clientId, "clientId required");
+      this.delegate = builder.api.getQueueApi(builder.region, builder.clientId);
+      this.ttlNanos = builder.ttlNanos;
+      this.ticker = builder.ticker;
+      this.logger = builder.logger;
+      checkArgument(ttlNanos > 0, "ttl must be positive");
+   }
+
+   @Override
+   public boolean create(String name) {
+      try {
+         return delegate.create(name);
+      }
+      finally {
+         invalidate();
+      }
+   }
+
+   @Override
+   public boolean delete(String name) {
+      try {
+         return delegate.delete(name);
+      }
+      finally {
+         invalidate();
+      }
+   }
+
+   @Override
+   public boolean exists(String name) {
+      checkNotNull(name, "name");
+      Snapshot current = snapshotOrNull();
+      if (current != null && current.metadata.containsKey(name)) {
+         hits.incrementAndGet();
+         return true;
+      }
+      misses.incrementAndGet();
+      return delegate.exists(name);
+   }
+
+   @Override
+   public PagedIterable<Queue> list(boolean detailed) {
+      return delegate.list(detailed);
+   }
+
+   @Override
+   public Queues list(ListQueuesOptions options) {
+      return delegate.list(options);
+   }
+
+   @Override
+   public boolean setMetadata(String name, Map<String, String> metadata) {
+      try {
+         return delegate.setMetadata(name, metadata);
+      }
+      finally {
+         invalidate();
+      }
+   }
+
+   @Override
+   public Map<String, String> getMetadata(String name) {
+      checkNotNull(name, "name");
+      Snapshot current = snapshotOrNull();
+      Map<String, String> metadata = current != null ? current.metadata.get(name) : null;
+      if (metadata != null) {
+         hits.incrementAndGet();
+         return metadata;
+      }
+      misses.incrementAndGet();
+      return delegate.getMetadata(name);
+   }
+
+   @Override
+   public QueueStats getStats(String name) {
+      return delegate.getStats(name);
+   }
+
+   /**
+    * Drops the snapshot. The next lookup lists the queues again.
+    */
+   public void invalidate() {
+      generation.incrementAndGet();
+      snapshot = null;
+      invalidations.incrementAndGet();
+   }
+
+   /**
+    * @return The lookups answered from the snapshot (hits) or sent to the server (misses), and the snapshots loaded.
+    *         Evictions count the invalidations.
+    */
+   public CacheStats stats() {
+      return new CacheStats(hits.get(), misses.get(), loadSuccesses.get(), loadFailures.get(), loadNanos.get(),
+            invalidations.get());
+   }
+
+   /**
+    * @return The current snapshot, or null if it could not be loaded, in which case the lookup goes to the server.
+    */
+   private Snapshot snapshotOrNull() {
+      try {
+         return currentSnapshot();
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not list queues, looking up on the server instead");
+         return null;
+      }
+   }
+
+   private Snapshot currentSnapshot() {
+      Snapshot current = snapshot;
+      if (current != null && ticker.read() - current.loadedAtNanos < ttlNanos) {
+         return current;
+      }
+      synchronized (loadLock) {
+         // another thread may have loaded it while this one waited
+         current = snapshot;
+         if (current != null && ticker.read() - current.loadedAtNanos < ttlNanos) {
+            return current;
+         }
+         long loadGeneration = generation.get();
+         current = load();
+         snapshot = current;
+         if (generation.get() != loadGeneration) {
+            // invalidated while listing, the snapshot may predate the change that invalidated it
+            snapshot = null;
+         }
+         return current;
+      }
+   }
+
+   private Snapshot load() {
+      long start = ticker.read();
+      try {
+         ImmutableMap.Builder<String, Map<String, String>> metadata = ImmutableMap.builder();
+         for (Queue queue : delegate.list(true).concat()) {
+            metadata.put(queue.getName(), queue.getMetadata().or(ImmutableMap.<String, String> of()));
+         }
+         Snapshot loaded = new Snapshot(metadata.build(), ticker.read());
+         loadSuccesses.incrementAndGet();
+         loadNanos.addAndGet(loaded.loadedAtNanos - start);
+         logger.debug("loaded %d queues in %dms", loaded.metadata.size(),
+               TimeUnit.NANOSECONDS.toMillis(loaded.loadedAtNanos - start));
+         return loaded;
+      }
+      catch (RuntimeException e) {
+         loadFailures.incrementAndGet();
+         loadNanos.addAndGet(ticker.read() - start);
+         throw e;
+      }
+   }
+
+   private static class Snapshot {
+      private final Map<String, Map<String, String>> metadata;
+      private final long loadedAtNanos;
+
+      Snapshot(Map<String, Map<String, String>> metadata, long loadedAtNanos) {
+         this.metadata = metadata;
+         this.loadedAtNanos = loadedAtNanos;
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected String region;
+      protected UUID clientId;
+      protected long ttlNanos = TimeUnit.SECONDS.toNanos(30);
+      protected Ticker ticker = Ticker.systemTicker();
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * @see MarconiApi#getQueueApi(String, UUID)
+       */
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * How long a snapshot of the queues is used. Defaults to 30 seconds.
+       */
+      public Builder ttl(long ttl, TimeUnit unit) {
+         this.ttlNanos = unit.toNanos(ttl);
+         return this;
+      }
+
+      /**
+       * The time source used to expire snapshots, for testing.
+       */
+      public Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public CachingQueueApi build() {
+         return new CachingQueueApi(this);
+      }
+   }
+}
@@ -0,0 +1,536 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.features.ClaimApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps the claims of long-running work alive. Every registered {@link Lease} is renewed through
+ * {@link ClaimApi#update(String, int)} before its claim expires, until the lease is released or cancelled.
+ * <p/>
+ * All leases of the process are kept in one {@link DelayQueue} ordered by renewal time and checked by a single
+ * scheduler thread once per tick, so the number of threads and timers does not grow with the number of leases. The
+ * leases due in a tick are grouped by queue and renewed on a small pool of threads, at most {@code maxBatchSize} per
+ * task. When a renewal is refused, or keeps failing until the claim has expired, the lease is lost and the
+ * {@link Listener}s are told so the work can be abandoned.
+ * <p/>
+ * On {@link #close()} the claims of all leases still active are released through {@link ClaimApi#release(String)},
+ * making their remaining messages available to other workers.
+ */
+@Beta
+public class ClaimLeaseManager implements Closeable {
+
+   /**
+    * Told about leases that could not be renewed.
+    */
+   public interface Listener {
+      /**
+       * @param lease The lease that was lost. It is no longer renewed.
+       * @param cause The last error renewing the lease, or null if the server refused the renewal because the claim
+       *              has expired or was released.
+       */
+      void onLeaseLost(Lease lease, @Nullable Throwable cause);
+   }
+
+   private final MarconiApi api;
+   private final String region;
+   private final UUID clientId;
+   private final double renewalRatio;
+   private final long retryDelayMillis;
+   private final int maxBatchSize;
+   private final long closeTimeoutMillis;
+   private final ExecutorService renewExecutor;
+   private final boolean ownsRenewExecutor;
+   private final Logger logger;
+
+   private final ScheduledExecutorService scheduler;
+   private final DelayQueue<Lease> due = new DelayQueue<Lease>();
+   private final Set<Lease> active = Sets.newSetFromMap(Maps.<Lease, Boolean> newConcurrentMap());
+   private final ConcurrentMap<String, ClaimApi> claimApis = Maps.newConcurrentMap();
+   private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+   private volatile boolean closed;
+
+   protected ClaimLeaseManager(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.region = checkNotNull(builder.region, "region required");
+      this.clientId = checkNotNull(builder.clientId, "clientId required");
+      this.renewalRatio = builder.renewalRatio;
+      this.retryDelayMillis = builder.retryDelayMillis;
+      this.maxBatchSize = builder.maxBatchSize;
+      this.closeTimeoutMillis = builder.closeTimeoutMillis;
+      this.logger = builder.logger;
+      checkArgument(renewalRatio > 0 && renewalRatio < 1, "renewalRatio must be between 0 and 1");
+      checkArgument(builder.tickMillis > 0, "tick must be positive");
+      checkArgument(retryDelayMillis > 0, "retryDelay must be positive");
+      checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+      if (builder.renewExecutor != null) {
+         this.renewExecutor = builder.renewExecutor;
+         this.ownsRenewExecutor = false;
+      }
+      else {
+         this.renewExecutor = Executors.newFixedThreadPool(builder.maxInFlightRequests,
+               new ThreadFactoryBuilder().setNameFormat("marconi-lease-renewer-%d").setDaemon(true).build());
+         this.ownsRenewExecutor = true;
+      }
+      this.listeners.addAll(builder.listeners);
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("marconi-lease-manager-%d").setDaemon(true).build());
+      this.scheduler.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            renewDueLeases();
+         }
+      }, builder.tickMillis, builder.tickMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Starts renewing a claim that was just created or renewed.
+    *
+    * @param queue   Name of the queue the claim belongs to.
+    * @param claimId Id of the claim.
+    * @param ttl     The ttl of the claim in seconds, used for every renewal as well.
+    */
+   public Lease register(String queue, String claimId, int ttl) {
+      checkState(!closed, "lease manager is closed");
+      checkArgument(ttl > 0, "ttl must be positive");
+      Lease lease = new Lease(checkNotNull(queue, "queue"), checkNotNull(claimId, "claimId"), ttl);
+      lease.renewed(System.nanoTime());
+      active.add(lease);
+      due.add(lease);
+      return lease;
+   }
+
+   public void addListener(Listener listener) {
+      listeners.add(checkNotNull(listener, "listener"));
+   }
+
+   public void removeListener(Listener listener) {
+      listeners.remove(listener);
+   }
+
+   /**
+    * @return The number of leases being renewed.
+    */
+   public int getActiveCount() {
+      return active.size();
+   }
+
+   /**
+    * Stops renewing and releases the claims of every active lease.
+    */
+   @Override
+   public void close() {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      scheduler.shutdownNow();
+      List<Lease> remaining = ImmutableList.copyOf(active);
+      for (Lease lease : remaining) {
+         lease.active = false;
+      }
+      active.clear();
+      due.clear();
+      for (final List<Lease> batch : batchByQueue(remaining)) {
+         try {
+            renewExecutor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  for (Lease lease : batch) {
+                     releaseNow(lease);
+                  }
+               }
+            });
+         }
+         catch (RejectedExecutionException e) {
+            logger.warn("could not release %d claims of queue %s", batch.size(), batch.get(0).queue);
+         }
+      }
+      if (ownsRenewExecutor) {
+         renewExecutor.shutdown();
+         try {
+            if (!renewExecutor.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+               logger.warn("gave up waiting for claims to be released");
+            }
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private void renewDueLeases() {
+      List<Lease> drained = Lists.newArrayList();
+      due.drainTo(drained);
+      List<Lease> ready = Lists.newArrayListWithCapacity(drained.size());
+      for (Lease lease : drained) {
+         if (lease.active) {
+            ready.add(lease);
+         }
+      }
+      if (ready.isEmpty()) {
+         return;
+      }
+      for (final List<Lease> batch : batchByQueue(ready)) {
+         try {
+            renewExecutor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  for (Lease lease : batch) {
+                     renew(lease);
+                  }
+               }
+            });
+         }
+         catch (RejectedExecutionException e) {
+            if (closed) {
+               return;
+            }
+            // try again on the next tick
+            due.addAll(batch);
+         }
+      }
+   }
+
+   /**
+    * Groups leases by queue, so that consecutive renewals reuse the same claim api, and splits the groups into
+    * batches of at most {@code maxBatchSize}.
+    */
+   private List<List<Lease>> batchByQueue(List<Lease> leases) {
+      Map<String, List<Lease>> byQueue = Maps.newLinkedHashMap();
+      for (Lease lease : leases) {
+         List<Lease> queueLeases = byQueue.get(lease.queue);
+         if (queueLeases == null) {
+            queueLeases = Lists.newArrayList();
+            byQueue.put(lease.queue, queueLeases);
+         }
+         queueLeases.add(lease);
+      }
+      ImmutableList.Builder<List<Lease>> batches = ImmutableList.builder();
+      for (List<Lease> queueLeases : byQueue.values()) {
+         batches.addAll(Lists.partition(queueLeases, maxBatchSize));
+      }
+      return batches.build();
+   }
+
+   private void renew(Lease lease) {
+      if (!lease.active) {
+         return;
+      }
+      long start = System.nanoTime();
+      Throwable cause = null;
+      try {
+         if (claimApi(lease.queue).update(lease.claimId, lease.ttl)) {
+            lease.renewed(start);
+            requeue(lease);
+            return;
+         }
+      }
+      catch (RuntimeException e) {
+         cause = e;
+         long retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+         if (retryAt - lease.expiresAtNanos < 0) {
+            logger.warn(e, "could not renew claim %s of queue %s, retrying", lease.claimId, lease.queue);
+            lease.renewAtNanos = retryAt;
+            requeue(lease);
+            return;
+         }
+      }
+      lost(lease, cause);
+   }
+
+   private void requeue(Lease lease) {
+      if (lease.active && !closed) {
+         due.add(lease);
+      }
+   }
+
+   private void lost(Lease lease, @Nullable Throwable cause) {
+      if (!lease.deactivate()) {
+         return;
+      }
+      logger.warn("lost claim %s of queue %s", lease.claimId, lease.queue);
+      for (Listener listener : listeners) {
+         try {
+            listener.onLeaseLost(lease, cause);
+         }
+         catch (RuntimeException e) {
+            logger.warn(e, "listener %s failed on lost claim %s", listener, lease.claimId);
+         }
+      }
+   }
+
+   private void releaseNow(Lease lease) {
+      try {
+         claimApi(lease.queue).release(lease.claimId);
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not release claim %s of queue %s", lease.claimId, lease.queue);
+      }
+   }
+
+   private ClaimApi claimApi(String queue) {
+      ClaimApi claimApi = claimApis.get(queue);
+      if (claimApi == null) {
+         claimApi = api.getClaimApi(region, clientId, queue);
+         claimApis.putIfAbsent(queue, claimApi);
+      }
+      return claimApi;
+   }
+
+   /**
+    * A claim kept alive by a {@link ClaimLeaseManager}.
+    */
+   public final class Lease implements Delayed {
+      private final String queue;
+      private final String claimId;
+      private final int ttl;
+      private volatile long renewAtNanos;
+      private volatile long expiresAtNanos;
+      private volatile boolean active = true;
+
+      private Lease(String queue, String claimId, int ttl) {
+         this.queue = queue;
+         this.claimId = claimId;
+         this.ttl = ttl;
+      }
+
+      public String getQueue() {
+         return queue;
+      }
+
+      public String getClaimId() {
+         return claimId;
+      }
+
+      public int getTTL() {
+         return ttl;
+      }
+
+      /**
+       * @return false once the lease was released, cancelled or lost.
+       */
+      public boolean isActive() {
+         return active;
+      }
+
+      /**
+       * Stops renewing the claim and releases it on a background thread, making its remaining messages available
+       * to other workers.
+       */
+      public void release() {
+         if (!deactivate()) {
+            return;
+         }
+         try {
+            renewExecutor.execute(new Runnable() {
+               @Override
+               public void run() {
+                  releaseNow(Lease.this);
+               }
+            });
+         }
+         catch (RejectedExecutionException e) {
+            logger.warn("could not release claim %s of queue %s", claimId, queue);
+         }
+      }
+
+      /**
+       * Stops renewing the claim and lets it expire on the server.
+       */
+      public void cancel() {
+         deactivate();
+      }
+
+      private boolean deactivate() {
+         synchronized (this) {
+            if (!active) {
+               return false;
+            }
+            active = false;
+         }
+         // the lease stays in the delay queue until it is due and is skipped then
+         ClaimLeaseManager.this.active.remove(this);
+         return true;
+      }
+
+      private void renewed(long atNanos) {
+         expiresAtNanos = atNanos + TimeUnit.SECONDS.toNanos(ttl);
+         renewAtNanos = atNanos + (long) (TimeUnit.SECONDS.toNanos(ttl) * renewalRatio);
+      }
+
+      @Override
+      public long getDelay(TimeUnit unit) {
+         return unit.convert(renewAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+      }
+
+      @Override
+      public int compareTo(Delayed other) {
+         if (other instanceof Lease) {
+            return Longs.compare(renewAtNanos, ((Lease) other).renewAtNanos);
+         }
+         return Longs.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this)
+               .add("queue", queue).add("claimId", claimId).add("ttl", ttl).add("active", active).toString();
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected String region;
+      protected UUID clientId;
+      protected double renewalRatio = 0.5;
+      protected long tickMillis = TimeUnit.SECONDS.toMillis(1);
+      protected long retryDelayMillis = TimeUnit.SECONDS.toMillis(5);
+      protected int maxBatchSize = 50;
+      protected int maxInFlightRequests = 4;
+      protected long closeTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+      protected ExecutorService renewExecutor;
+      protected Set<Listener> listeners = Sets.newLinkedHashSet();
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * @see MarconiApi#getClaimApi(String, UUID, String)
+       */
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * @param renewalRatio How far into its ttl a claim is renewed, between 0 and 1. Defaults to 0.5.
+       */
+      public Builder renewalRatio(double renewalRatio) {
+         this.renewalRatio = renewalRatio;
+         return this;
+      }
+
+      /**
+       * @param tick How often the scheduler looks for leases due for renewal. Defaults to 1 second.
+       */
+      public Builder tick(long tick, TimeUnit unit) {
+         this.tickMillis = unit.toMillis(tick);
+         return this;
+      }
+
+      /**
+       * @param retryDelay How long to wait before trying a failed renewal again. Defaults to 5 seconds.
+       */
+      public Builder retryDelay(long retryDelay, TimeUnit unit) {
+         this.retryDelayMillis = unit.toMillis(retryDelay);
+         return this;
+      }
+
+      /**
+       * @param maxBatchSize The maximum number of claims of one queue renewed by one task. Defaults to 50.
+       */
+      public Builder maxBatchSize(int maxBatchSize) {
+         this.maxBatchSize = maxBatchSize;
+         return this;
+      }
+
+      /**
+       * @param maxInFlightRequests The number of threads renewing claims. Ignored when a renew executor is given.
+       *                            Defaults to 4.
+       */
+      public Builder maxInFlightRequests(int maxInFlightRequests) {
+         checkArgument(maxInFlightRequests > 0, "maxInFlightRequests must be positive");
+         this.maxInFlightRequests = maxInFlightRequests;
+         return this;
+      }
+
+      /**
+       * @param closeTimeout How long {@link ClaimLeaseManager#close()} waits for claims to be released. Only used
+       *                     when the manager owns its renew executor. Defaults to 10 seconds.
+       */
+      public Builder closeTimeout(long closeTimeout, TimeUnit unit) {
+         this.closeTimeoutMillis = unit.toMillis(closeTimeout);
+         return this;
+      }
+
+      /**
+       * Runs renewals and releases. When not set, the manager creates a pool of {@code maxInFlightRequests} daemon
+       * threads and shuts it down on close.
+       */
+      public Builder renewExecutor(ExecutorService renewExecutor) {
+         this.renewExecutor = renewExecutor;
+         return this;
+      }
+
+      public Builder listener(Listener listener) {
+         this.listeners.add(checkNotNull(listener, "listener"));
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public ClaimLeaseManager build() {
+         return new ClaimLeaseManager(this);
+      }
+   }
+}
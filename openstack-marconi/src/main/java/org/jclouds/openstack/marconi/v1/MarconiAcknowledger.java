@@ -0,0 +1,455 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Acknowledges (deletes) processed messages in batches.
+ * <p/>
+ * Acknowledged message ids are grouped per queue and per claim and deleted with a single
+ * {@link MessageApi#delete(Iterable)} call once a group reaches the maximum batch size or the flush interval elapses.
+ * A multi-id delete does not check the claim, so a message is only batched while its claim is known to be valid for
+ * longer than the safety margin. Messages whose claim is unknown or close to expiry are deleted one by one through
+ * {@link MessageApi#deleteByClaim(String, String)}, which the server rejects if the claim has already expired.
+ * <p/>
+ * Claim expiry is tracked from {@link #claimed(String, int)}, which should be called whenever a claim is created or
+ * renewed. {@link #released(String)} must be called before a claim is released, so that its acknowledgements are
+ * deleted while the claim still holds the messages.
+ */
+@Beta
+public class MarconiAcknowledger implements Closeable {
+
+   private final MarconiApi api;
+   private final String region;
+   private final UUID clientId;
+   private final int maxBatchSize;
+   private final long flushIntervalMillis;
+   private final long safetyMarginMillis;
+   private final ExecutorService deleteExecutor;
+   private final boolean ownsDeleteExecutor;
+   private final Logger logger;
+
+   private final ScheduledExecutorService scheduler;
+   private final ConcurrentMap<String, MessageApi> messageApis = Maps.newConcurrentMap();
+   private final ConcurrentMap<String, Long> claimDeadlines = Maps.newConcurrentMap();
+   private final Map<BatchKey, Batch> pending = Maps.newHashMap();
+   private final SetMultimap<String, SettableFuture<Boolean>> unsettled = HashMultimap.create();
+   private boolean closed;
+
+   protected MarconiAcknowledger(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.region = checkNotNull(builder.region, "region required");
+      this.clientId = checkNotNull(builder.clientId, "clientId required");
+      this.maxBatchSize = builder.maxBatchSize;
+      this.flushIntervalMillis = builder.flushIntervalMillis;
+      this.safetyMarginMillis = builder.safetyMarginMillis;
+      this.logger = builder.logger;
+      checkArgument(maxBatchSize > 0 && maxBatchSize <= 20, "maxBatchSize must be between 1 and 20");
+      checkArgument(flushIntervalMillis > 0, "flushInterval must be positive");
+      checkArgument(safetyMarginMillis >= 0, "safetyMargin must not be negative");
+      if (builder.deleteExecutor != null) {
+         this.deleteExecutor = builder.deleteExecutor;
+         this.ownsDeleteExecutor = false;
+      }
+      else {
+         this.deleteExecutor = Executors.newFixedThreadPool(builder.maxInFlightRequests,
+               new ThreadFactoryBuilder().setNameFormat("marconi-acknowledger-%d").setDaemon(true).build());
+         this.ownsDeleteExecutor = true;
+      }
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("marconi-acknowledger-flush-%d").setDaemon(true).build());
+      this.scheduler.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            flush();
+         }
+      }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Records that a claim was created or renewed now with the given ttl.
+    *
+    * @param claimId Id of the claim.
+    * @param ttl     The ttl of the claim in seconds.
+    */
+   public void claimed(String claimId, int ttl) {
+      claimDeadlines.put(checkNotNull(claimId, "claimId"), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl));
+   }
+
+   /**
+    * Forgets a claim that is about to be released or has expired. The pending batches of the claim are deleted
+    * individually by claim on the calling thread, and deletes of the claim already in progress are awaited until the
+    * claim expires. Messages of that claim acknowledged afterwards are deleted individually.
+    */
+   public void released(String claimId) {
+      checkNotNull(claimId, "claimId");
+      List<Batch> ready = Lists.newArrayList();
+      List<SettableFuture<Boolean>> inProgress;
+      synchronized (pending) {
+         for (Iterator<Batch> batches = pending.values().iterator(); batches.hasNext();) {
+            Batch batch = batches.next();
+            if (batch.key.claimId.equals(claimId)) {
+               ready.add(batch);
+               batches.remove();
+            }
+         }
+         inProgress = ImmutableList.copyOf(unsettled.get(claimId));
+      }
+      for (Batch batch : ready) {
+         for (int i = 0; i < batch.ids.size(); i++) {
+            deleteByClaimNow(batch.key.queue, batch.ids.get(i), claimId, batch.futures.get(i));
+         }
+      }
+      Long deadline = claimDeadlines.get(claimId);
+      long waitUntil = deadline != null ? deadline : System.currentTimeMillis() + safetyMarginMillis;
+      for (SettableFuture<Boolean> future : inProgress) {
+         try {
+            future.get(Math.max(waitUntil - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+         }
+         catch (ExecutionException e) {
+            // already logged by the delete
+         }
+         catch (TimeoutException e) {
+            logger.warn("claim %s released while deletes of its messages are still in progress", claimId);
+            break;
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+         }
+      }
+      claimDeadlines.remove(claimId);
+   }
+
+   /**
+    * Acknowledges a processed message.
+    *
+    * @param queue   Name of the queue the message was claimed from.
+    * @param message A claimed message.
+    * @return A future holding true if the message was deleted.
+    */
+   public ListenableFuture<Boolean> ack(String queue, Message message) {
+      checkNotNull(queue, "queue");
+      checkNotNull(message, "message");
+      checkArgument(message.getClaimId().isPresent(), "message %s is not claimed", message.getId());
+
+      final String claimId = message.getClaimId().get();
+      final SettableFuture<Boolean> future = SettableFuture.create();
+      Batch ready = null;
+      synchronized (pending) {
+         checkState(!closed, "acknowledger is closed");
+         unsettled.put(claimId, future);
+         future.addListener(new Runnable() {
+            @Override
+            public void run() {
+               synchronized (pending) {
+                  unsettled.remove(claimId, future);
+               }
+            }
+         }, MoreExecutors.directExecutor());
+         if (!isSafeToBatch(claimId)) {
+            deleteByClaim(queue, message.getId(), claimId, future);
+            return future;
+         }
+         BatchKey key = new BatchKey(queue, claimId);
+         Batch batch = pending.get(key);
+         if (batch == null) {
+            batch = new Batch(key);
+            pending.put(key, batch);
+         }
+         batch.ids.add(message.getId());
+         batch.futures.add(future);
+         if (batch.ids.size() >= maxBatchSize) {
+            ready = pending.remove(key);
+         }
+      }
+      if (ready != null) {
+         submit(ready);
+      }
+      return future;
+   }
+
+   /**
+    * Deletes every pending batch now.
+    */
+   public void flush() {
+      List<Batch> ready;
+      synchronized (pending) {
+         ready = ImmutableList.copyOf(pending.values());
+         pending.clear();
+      }
+      for (Batch batch : ready) {
+         submit(batch);
+      }
+      long now = System.currentTimeMillis();
+      for (Map.Entry<String, Long> entry : claimDeadlines.entrySet()) {
+         if (entry.getValue() < now) {
+            claimDeadlines.remove(entry.getKey(), entry.getValue());
+         }
+      }
+   }
+
+   /**
+    * Deletes every pending batch and stops accepting acknowledgements.
+    */
+   @Override
+   public void close() {
+      synchronized (pending) {
+         if (closed) {
+            return;
+         }
+         closed = true;
+      }
+      scheduler.shutdownNow();
+      flush();
+      if (ownsDeleteExecutor) {
+         deleteExecutor.shutdown();
+      }
+   }
+
+   private boolean isSafeToBatch(String claimId) {
+      Long deadline = claimDeadlines.get(claimId);
+      return deadline != null && deadline - System.currentTimeMillis() > safetyMarginMillis + flushIntervalMillis;
+   }
+
+   private MessageApi messageApi(String queue) {
+      MessageApi messageApi = messageApis.get(queue);
+      if (messageApi == null) {
+         messageApi = api.getMessageApi(region, clientId, queue);
+         messageApis.putIfAbsent(queue, messageApi);
+      }
+      return messageApi;
+   }
+
+   private void submit(final Batch batch) {
+      try {
+         deleteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+               delete(batch);
+            }
+         });
+      }
+      catch (RejectedExecutionException e) {
+         for (SettableFuture<Boolean> future : batch.futures) {
+            future.setException(e);
+         }
+      }
+   }
+
+   private void delete(Batch batch) {
+      String queue = batch.key.queue;
+      String claimId = batch.key.claimId;
+      Long deadline = claimDeadlines.get(claimId);
+      if (deadline == null || deadline - System.currentTimeMillis() <= safetyMarginMillis) {
+         // the claim got too close to expiry while the batch was waiting
+         for (int i = 0; i < batch.ids.size(); i++) {
+            deleteByClaimNow(queue, batch.ids.get(i), claimId, batch.futures.get(i));
+         }
+         return;
+      }
+      try {
+         boolean deleted = messageApi(queue).delete(batch.ids);
+         for (SettableFuture<Boolean> future : batch.futures) {
+            future.set(deleted);
+         }
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not delete %d messages from queue %s", batch.ids.size(), queue);
+         for (SettableFuture<Boolean> future : batch.futures) {
+            future.setException(e);
+         }
+      }
+   }
+
+   private void deleteByClaim(final String queue, final String id, final String claimId,
+         final SettableFuture<Boolean> future) {
+      try {
+         deleteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+               deleteByClaimNow(queue, id, claimId, future);
+            }
+         });
+      }
+      catch (RejectedExecutionException e) {
+         future.setException(e);
+      }
+   }
+
+   private void deleteByClaimNow(String queue, String id, String claimId, SettableFuture<Boolean> future) {
+      try {
+         future.set(messageApi(queue).deleteByClaim(id, claimId));
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not delete message %s of claim %s from queue %s", id, claimId, queue);
+         future.setException(e);
+      }
+   }
+
+   private static class BatchKey {
+      private final String queue;
+      private final String claimId;
+
+      BatchKey(String queue, String claimId) {
+         this.queue = queue;
+         this.claimId = claimId;
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(queue, claimId);
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (this == obj) return true;
+         if (obj == null || getClass() != obj.getClass()) return false;
+         BatchKey that = BatchKey.class.cast(obj);
+         return Objects.equal(this.queue, that.queue) && Objects.equal(this.claimId, that.claimId);
+      }
+   }
+
+   private static class Batch {
+      private final BatchKey key;
+      private final List<String> ids = Lists.newArrayList();
+      private final List<SettableFuture<Boolean>> futures = Lists.newArrayList();
+
+      Batch(BatchKey key) {
+         this.key = key;
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected String region;
+      protected UUID clientId;
+      protected int maxBatchSize = 20;
+      protected long flushIntervalMillis = TimeUnit.SECONDS.toMillis(1);
+      protected long safetyMarginMillis = TimeUnit.SECONDS.toMillis(10);
+      protected int maxInFlightRequests = 4;
+      protected ExecutorService deleteExecutor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * @see MarconiApi#getMessageApi(String, UUID, String)
+       */
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      /**
+       * @see MarconiApi#getMessageApi(String, UUID, String)
+       */
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * @param maxBatchSize The maximum number of ids deleted in one request, up to 20.
+       */
+      public Builder maxBatchSize(int maxBatchSize) {
+         this.maxBatchSize = maxBatchSize;
+         return this;
+      }
+
+      /**
+       * @param flushInterval How often pending batches are deleted even if they are not full.
+       */
+      public Builder flushInterval(long flushInterval, TimeUnit unit) {
+         this.flushIntervalMillis = unit.toMillis(flushInterval);
+         return this;
+      }
+
+      /**
+       * @param safetyMargin Messages whose claim expires within this margin are deleted individually by claim.
+       */
+      public Builder safetyMargin(long safetyMargin, TimeUnit unit) {
+         this.safetyMarginMillis = unit.toMillis(safetyMargin);
+         return this;
+      }
+
+      /**
+       * @param maxInFlightRequests The number of threads deleting messages. Ignored if a delete executor is given.
+       */
+      public Builder maxInFlightRequests(int maxInFlightRequests) {
+         this.maxInFlightRequests = maxInFlightRequests;
+         return this;
+      }
+
+      /**
+       * @param deleteExecutor The executor deletes run on. It is not shut down when the acknowledger is closed.
+       */
+      public Builder deleteExecutor(ExecutorService deleteExecutor) {
+         this.deleteExecutor = deleteExecutor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public MarconiAcknowledger build() {
+         return new MarconiAcknowledger(this);
+      }
+   }
+}
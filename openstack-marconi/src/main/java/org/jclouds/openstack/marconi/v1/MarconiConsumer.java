@@ -0,0 +1,656 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.features.ClaimApi;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pulls messages off a queue through {@link ClaimApi} and hands them to a {@link MessageHandler}.
+ * <p/>
+ * The consumer keeps a bounded local buffer of claimed messages. Whenever the buffer drops to the low-water mark the
+ * next claim is requested in the background, so handlers do not sit idle for the claim round trip. Claims that still
+ * have buffered or running messages are renewed through {@link ClaimApi#update(String, int)}, and every message that
+ * is handled successfully is deleted through {@link MessageApi#deleteByClaim(String, String)}, or acknowledged through
+ * a {@link MarconiAcknowledger} if one is configured.
+ * <p/>
+ * A message whose handler throws is not deleted. It stays on its claim and becomes available to other workers once
+ * the claim expires. The same happens to a handled message that could not be deleted; those are counted by
+ * {@link #getUnacknowledgedCount()}.
+ */
+@Beta
+public class MarconiConsumer implements Closeable {
+
+   /**
+    * Processes the messages claimed by a {@link MarconiConsumer}.
+    */
+   public interface MessageHandler {
+      /**
+       * @param message A claimed message. {@link Message#getClaimId()} is always present.
+       * @throws Exception If the message could not be processed. The message is then left on its claim.
+       */
+      void handle(Message message) throws Exception;
+   }
+
+   private final ClaimApi claimApi;
+   private final MessageApi messageApi;
+   private final MessageHandler handler;
+   private final ExecutorService handlerExecutor;
+   private final boolean ownsHandlerExecutor;
+   private final int ttl;
+   private final int grace;
+   private final int limit;
+   private final int bufferCapacity;
+   private final int lowWaterMark;
+   private final int maxInFlight;
+   private final long renewIntervalMillis;
+   private final long idleBackoffMillis;
+   private final long closeTimeoutMillis;
+   private final MarconiAcknowledger acknowledger;
+   private final String queue;
+   private final Logger logger;
+
+   private final BlockingQueue<Message> buffer;
+   private final Semaphore inFlight;
+   private final ConcurrentMap<String, AtomicInteger> outstandingByClaim = Maps.newConcurrentMap();
+   private final Lock bufferLock = new ReentrantLock();
+   private final Condition belowLowWaterMark = bufferLock.newCondition();
+   private final AtomicBoolean started = new AtomicBoolean();
+   private final AtomicLong unacknowledged = new AtomicLong();
+   private volatile boolean running;
+   private ScheduledExecutorService scheduler;
+   private ScheduledExecutorService renewer;
+
+   protected MarconiConsumer(Builder builder) {
+      this.claimApi = checkNotNull(builder.claimApi, "claimApi required");
+      this.messageApi = checkNotNull(builder.messageApi, "messageApi required");
+      this.handler = checkNotNull(builder.handler, "handler required");
+      this.ttl = builder.ttl;
+      this.grace = builder.grace;
+      this.limit = builder.limit;
+      this.bufferCapacity = builder.bufferCapacity;
+      this.lowWaterMark = builder.lowWaterMark;
+      this.maxInFlight = builder.maxInFlight;
+      this.renewIntervalMillis = builder.renewIntervalMillis > 0 ? builder.renewIntervalMillis
+            : TimeUnit.SECONDS.toMillis(ttl) / 2;
+      this.idleBackoffMillis = builder.idleBackoffMillis;
+      this.closeTimeoutMillis = builder.closeTimeoutMillis;
+      this.acknowledger = builder.acknowledger;
+      this.queue = builder.queue;
+      this.logger = builder.logger;
+      checkArgument(ttl >= 60 && ttl <= 43200, "ttl must be between 60 and 43200 seconds");
+      checkArgument(grace >= 60 && grace <= 43200, "grace must be between 60 and 43200 seconds");
+      checkArgument(limit > 0 && limit <= 20, "limit must be between 1 and 20");
+      checkArgument(bufferCapacity >= limit, "bufferCapacity must be at least limit");
+      checkArgument(lowWaterMark >= 0 && lowWaterMark < bufferCapacity,
+            "lowWaterMark must be between 0 and bufferCapacity - 1");
+      checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+      this.buffer = new LinkedBlockingQueue<Message>(bufferCapacity);
+      this.inFlight = new Semaphore(maxInFlight);
+      if (builder.handlerExecutor != null) {
+         this.handlerExecutor = builder.handlerExecutor;
+         this.ownsHandlerExecutor = false;
+      }
+      else {
+         this.handlerExecutor = Executors.newFixedThreadPool(maxInFlight,
+               new ThreadFactoryBuilder().setNameFormat("marconi-consumer-handler-%d").setDaemon(true).build());
+         this.ownsHandlerExecutor = true;
+      }
+   }
+
+   /**
+    * Starts claiming and dispatching messages. A consumer can only be started once.
+    */
+   public MarconiConsumer start() {
+      checkState(started.compareAndSet(false, true), "consumer already started");
+      running = true;
+      scheduler = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("marconi-consumer-%d").setDaemon(true).build());
+      scheduler.execute(new Fetcher());
+      scheduler.execute(new Dispatcher());
+      // renews outside the scheduler, so that claims of running messages are still renewed while closing
+      renewer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("marconi-consumer-renewer-%d").setDaemon(true).build());
+      renewer.scheduleWithFixedDelay(new Renewer(), renewIntervalMillis, renewIntervalMillis,
+            TimeUnit.MILLISECONDS);
+      return this;
+   }
+
+   /**
+    * @return The number of claimed messages waiting for a handler.
+    */
+   public int getBufferedCount() {
+      return buffer.size();
+   }
+
+   /**
+    * @return The number of messages currently being handled.
+    */
+   public int getInFlightCount() {
+      return maxInFlight - inFlight.availablePermits();
+   }
+
+   /**
+    * @return The ids of the claims that still have buffered or running messages.
+    */
+   public Iterable<String> getActiveClaimIds() {
+      return outstandingByClaim.keySet();
+   }
+
+   /**
+    * @return The number of handled messages that could not be deleted. They are delivered again once their claim
+    *         expires.
+    */
+   public long getUnacknowledgedCount() {
+      return unacknowledged.get();
+   }
+
+   /**
+    * Stops claiming new messages and releases the claims of the messages that were buffered but not yet handed to a
+    * handler. Messages that are already being handled are allowed to finish, and their claims are renewed until they
+    * do or the close timeout elapses; a claim is released once its last running message is done.
+    */
+   @Override
+   public void close() {
+      if (!started.get() || !running) {
+         return;
+      }
+      running = false;
+      long deadline = System.currentTimeMillis() + closeTimeoutMillis;
+      scheduler.shutdownNow();
+      try {
+         // the fetcher and dispatcher release what they hold when they stop, wait for them before draining
+         if (!scheduler.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            logger.warn("consumer threads did not stop within %d ms", closeTimeoutMillis);
+         }
+         releaseBuffered();
+         // no permits are handed out any more, so holding all of them means every handler is done
+         if (inFlight.tryAcquire(maxInFlight, Math.max(deadline - System.currentTimeMillis(), 0),
+               TimeUnit.MILLISECONDS)) {
+            inFlight.release(maxInFlight);
+         }
+         else {
+            logger.warn("%d messages were still being handled after %d ms, their claims are no longer renewed",
+                  getInFlightCount(), closeTimeoutMillis);
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         releaseBuffered();
+      }
+      renewer.shutdownNow();
+
+      if (ownsHandlerExecutor) {
+         handlerExecutor.shutdown();
+      }
+   }
+
+   private void releaseBuffered() {
+      List<Message> unhandled = Lists.newArrayList();
+      buffer.drainTo(unhandled);
+      for (Message message : unhandled) {
+         releaseIfLast(message);
+      }
+   }
+
+   /**
+    * Marks a message that will not be handled as no longer outstanding, and releases its claim if it was the last
+    * outstanding message of the claim.
+    */
+   private void releaseIfLast(Message message) {
+      if (!done(message)) {
+         return;
+      }
+      String claimId = message.getClaimId().get();
+      if (acknowledger != null) {
+         // deletes the acknowledged messages of the claim while it still holds them
+         acknowledger.released(claimId);
+      }
+      try {
+         claimApi.release(claimId);
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not release claim %s", claimId);
+      }
+   }
+
+   /**
+    * Deletes a handled message, directly or through the acknowledger.
+    */
+   private void acknowledge(final Message message) {
+      final String claimId = message.getClaimId().get();
+      if (acknowledger == null) {
+         try {
+            if (!messageApi.deleteByClaim(message.getId(), claimId)) {
+               unacknowledged(message, null);
+            }
+         }
+         catch (RuntimeException e) {
+            unacknowledged(message, e);
+         }
+         return;
+      }
+      ListenableFuture<Boolean> acked;
+      try {
+         acked = acknowledger.ack(queue, message);
+      }
+      catch (RuntimeException e) {
+         unacknowledged(message, e);
+         return;
+      }
+      Futures.addCallback(acked, new FutureCallback<Boolean>() {
+         @Override
+         public void onSuccess(Boolean deleted) {
+            if (!deleted) {
+               unacknowledged(message, null);
+            }
+         }
+
+         @Override
+         public void onFailure(Throwable t) {
+            unacknowledged(message, t);
+         }
+      }, MoreExecutors.directExecutor());
+   }
+
+   private void unacknowledged(Message message, Throwable cause) {
+      unacknowledged.incrementAndGet();
+      String claimId = message.getClaimId().get();
+      if (cause == null) {
+         logger.warn("message %s was not deleted, claim %s may have expired; it will be delivered again",
+               message.getId(), claimId);
+      }
+      else {
+         logger.warn(cause, "could not delete message %s of claim %s; it will be delivered again", message.getId(),
+               claimId);
+      }
+   }
+
+   /**
+    * Marks a message as no longer outstanding.
+    *
+    * @return true if it was the last outstanding message of its claim.
+    */
+   private boolean done(Message message) {
+      String claimId = message.getClaimId().get();
+      AtomicInteger outstanding = outstandingByClaim.get(claimId);
+      if (outstanding != null && outstanding.decrementAndGet() <= 0) {
+         outstandingByClaim.remove(claimId, outstanding);
+         return true;
+      }
+      return false;
+   }
+
+   private void signalIfBelowLowWaterMark() {
+      if (buffer.size() <= lowWaterMark) {
+         bufferLock.lock();
+         try {
+            belowLowWaterMark.signalAll();
+         }
+         finally {
+            bufferLock.unlock();
+         }
+      }
+   }
+
+   private class Fetcher implements Runnable {
+      @Override
+      public void run() {
+         while (running) {
+            try {
+               awaitLowWaterMark();
+               int room = Math.min(limit, bufferCapacity - buffer.size());
+               if (room <= 0) {
+                  continue;
+               }
+               List<Message> claimed = claimApi.claim(ttl, grace, room);
+               if (claimed.isEmpty()) {
+                  TimeUnit.MILLISECONDS.sleep(idleBackoffMillis);
+                  continue;
+               }
+               track(claimed);
+               // only this thread adds to the buffer, so there is always room for what was claimed
+               buffer.addAll(claimed);
+               if (!running) {
+                  // closed during the claim, close() may already have drained the buffer
+                  releaseBuffered();
+               }
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               return;
+            }
+            catch (RuntimeException e) {
+               logger.warn(e, "could not claim messages");
+               try {
+                  TimeUnit.MILLISECONDS.sleep(idleBackoffMillis);
+               }
+               catch (InterruptedException ie) {
+                  Thread.currentThread().interrupt();
+                  return;
+               }
+            }
+         }
+      }
+
+      private void awaitLowWaterMark() throws InterruptedException {
+         bufferLock.lock();
+         try {
+            while (running && buffer.size() > lowWaterMark) {
+               belowLowWaterMark.await();
+            }
+         }
+         finally {
+            bufferLock.unlock();
+         }
+      }
+
+      private void track(List<Message> claimed) {
+         Map<String, Integer> countByClaim = Maps.newHashMap();
+         for (Message message : claimed) {
+            String claimId = message.getClaimId().get();
+            Integer count = countByClaim.get(claimId);
+            countByClaim.put(claimId, count == null ? 1 : count + 1);
+         }
+         for (Map.Entry<String, Integer> entry : countByClaim.entrySet()) {
+            AtomicInteger outstanding = outstandingByClaim.putIfAbsent(entry.getKey(),
+                  new AtomicInteger(entry.getValue()));
+            if (outstanding != null) {
+               outstanding.addAndGet(entry.getValue());
+            }
+            if (acknowledger != null) {
+               acknowledger.claimed(entry.getKey(), ttl);
+            }
+         }
+      }
+   }
+
+   private class Dispatcher implements Runnable {
+      @Override
+      public void run() {
+         while (running) {
+            Message message;
+            try {
+               message = buffer.take();
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               return;
+            }
+            signalIfBelowLowWaterMark();
+            try {
+               inFlight.acquire();
+            }
+            catch (InterruptedException e) {
+               // closing, the message will not be handled
+               releaseIfLast(message);
+               Thread.currentThread().interrupt();
+               return;
+            }
+            try {
+               handlerExecutor.execute(new HandleMessage(message));
+            }
+            catch (RejectedExecutionException e) {
+               inFlight.release();
+               releaseIfLast(message);
+               logger.warn(e, "handler executor rejected message %s", message.getId());
+            }
+         }
+      }
+   }
+
+   private class HandleMessage implements Runnable {
+      private final Message message;
+
+      HandleMessage(Message message) {
+         this.message = message;
+      }
+
+      @Override
+      public void run() {
+         try {
+            handler.handle(message);
+            acknowledge(message);
+         }
+         catch (Exception e) {
+            logger.warn(e, "could not handle message %s", message.getId());
+         }
+         finally {
+            if (running) {
+               done(message);
+            }
+            else {
+               // closed while handling, the claim is only renewed until close returns
+               releaseIfLast(message);
+            }
+            inFlight.release();
+         }
+      }
+   }
+
+   private class Renewer implements Runnable {
+      @Override
+      public void run() {
+         // keeps running while closing, claims are removed once their last message is done
+         for (Map.Entry<String, AtomicInteger> entry : outstandingByClaim.entrySet()) {
+            if (entry.getValue().get() <= 0) {
+               continue;
+            }
+            try {
+               if (claimApi.update(entry.getKey(), ttl)) {
+                  if (acknowledger != null) {
+                     acknowledger.claimed(entry.getKey(), ttl);
+                  }
+               }
+               else {
+                  logger.warn("claim %s could not be renewed, it has expired or was released", entry.getKey());
+                  outstandingByClaim.remove(entry.getKey(), entry.getValue());
+                  if (acknowledger != null) {
+                     acknowledger.released(entry.getKey());
+                  }
+               }
+            }
+            catch (RuntimeException e) {
+               logger.warn(e, "could not renew claim %s", entry.getKey());
+            }
+         }
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected ClaimApi claimApi;
+      protected MessageApi messageApi;
+      protected MessageHandler handler;
+      protected ExecutorService handlerExecutor;
+      protected int ttl = 300;
+      protected int grace = 60;
+      protected int limit = 10;
+      protected int bufferCapacity = 20;
+      protected int lowWaterMark = 10;
+      protected int maxInFlight = 10;
+      protected long renewIntervalMillis;
+      protected long idleBackoffMillis = TimeUnit.SECONDS.toMillis(1);
+      protected long closeTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+      protected MarconiAcknowledger acknowledger;
+      protected String queue;
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * @param claimApi The claim api of the queue to consume, see {@link MarconiApi#getClaimApi}.
+       */
+      public Builder claimApi(ClaimApi claimApi) {
+         this.claimApi = claimApi;
+         return this;
+      }
+
+      /**
+       * @param messageApi The message api of the same queue, see {@link MarconiApi#getMessageApi}.
+       */
+      public Builder messageApi(MessageApi messageApi) {
+         this.messageApi = messageApi;
+         return this;
+      }
+
+      /**
+       * @param handler Processes each claimed message.
+       */
+      public Builder handler(MessageHandler handler) {
+         this.handler = handler;
+         return this;
+      }
+
+      /**
+       * @param handlerExecutor The executor the handler runs on. It is not shut down when the consumer is closed.
+       *                        Defaults to a fixed pool of {@link #maxInFlight(int)} daemon threads.
+       */
+      public Builder handlerExecutor(ExecutorService handlerExecutor) {
+         this.handlerExecutor = handlerExecutor;
+         return this;
+      }
+
+      /**
+       * @see ClaimApi#claim(int, int, int)
+       */
+      public Builder ttl(int ttl) {
+         this.ttl = ttl;
+         return this;
+      }
+
+      /**
+       * @see ClaimApi#claim(int, int, int)
+       */
+      public Builder grace(int grace) {
+         this.grace = grace;
+         return this;
+      }
+
+      /**
+       * @param limit The maximum number of messages requested per claim, up to 20.
+       */
+      public Builder limit(int limit) {
+         this.limit = limit;
+         return this;
+      }
+
+      /**
+       * @param bufferCapacity The maximum number of claimed messages held locally while waiting for a handler.
+       */
+      public Builder bufferCapacity(int bufferCapacity) {
+         this.bufferCapacity = bufferCapacity;
+         return this;
+      }
+
+      /**
+       * @param lowWaterMark The next claim is requested as soon as the buffer holds this many messages or fewer.
+       */
+      public Builder lowWaterMark(int lowWaterMark) {
+         this.lowWaterMark = lowWaterMark;
+         return this;
+      }
+
+      /**
+       * @param maxInFlight The maximum number of messages handled concurrently.
+       */
+      public Builder maxInFlight(int maxInFlight) {
+         this.maxInFlight = maxInFlight;
+         return this;
+      }
+
+      /**
+       * @param renewInterval How often claims with outstanding messages are renewed. Defaults to half the ttl.
+       */
+      public Builder renewInterval(long renewInterval, TimeUnit unit) {
+         this.renewIntervalMillis = unit.toMillis(renewInterval);
+         return this;
+      }
+
+      /**
+       * @param idleBackoff How long to wait before claiming again after an empty or failed claim.
+       */
+      public Builder idleBackoff(long idleBackoff, TimeUnit unit) {
+         this.idleBackoffMillis = unit.toMillis(idleBackoff);
+         return this;
+      }
+
+      /**
+       * @param closeTimeout How long {@link MarconiConsumer#close()} waits for the claim in progress, if any, and for
+       *                     the messages being handled to finish. Defaults to 10 seconds.
+       */
+      public Builder closeTimeout(long closeTimeout, TimeUnit unit) {
+         this.closeTimeoutMillis = unit.toMillis(closeTimeout);
+         return this;
+      }
+
+      /**
+       * @param acknowledger Acknowledges handled messages in batches instead of deleting them one by one. It is not
+       *                     closed when the consumer is closed.
+       * @param queue        Name of the queue being consumed.
+       */
+      public Builder acknowledger(MarconiAcknowledger acknowledger, String queue) {
+         this.acknowledger = checkNotNull(acknowledger, "acknowledger");
+         this.queue = checkNotNull(queue, "queue");
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public MarconiConsumer build() {
+         return new MarconiConsumer(this);
+      }
+   }
+}
@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
+import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Utf8;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Coalesces messages sent to the same queue into batched {@link MessageApi#create(List)} calls.
+ * <p/>
+ * Messages accumulate per queue until the batch reaches the maximum number of messages allowed in one request, the
+ * maximum request size, or the linger time has elapsed since the first message of the batch, whichever comes first.
+ * The future returned by {@link #send(String, CreateMessage)} completes with the id of the message once its batch has
+ * been created, or fails if the batch could not be sent.
+ */
+@Beta
+public class MarconiProducer implements Closeable {
+
+   /**
+    * Rough size of the JSON wrapping each message body in the request, e.g. {"ttl":86400,"body":}.
+    */
+   private static final int MESSAGE_OVERHEAD_BYTES = 32;
+
+   private final MarconiApi api;
+   private final String region;
+   private final UUID clientId;
+   private final int maxBatchSize;
+   private final int maxBatchBytes;
+   private final long lingerMillis;
+   private final ExecutorService senderExecutor;
+   private final boolean ownsSenderExecutor;
+   private final Logger logger;
+
+   private final ScheduledExecutorService scheduler;
+   private final ConcurrentMap<String, MessageApi> messageApis = Maps.newConcurrentMap();
+   private final Map<String, Batch> pending = Maps.newHashMap();
+   private boolean closed;
+
+   protected MarconiProducer(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.region = checkNotNull(builder.region, "region required");
+      this.clientId = checkNotNull(builder.clientId, "clientId required");
+      this.maxBatchSize = builder.maxBatchSize;
+      this.maxBatchBytes = builder.maxBatchBytes;
+      this.lingerMillis = builder.lingerMillis;
+      this.logger = builder.logger;
+      checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+      checkArgument(maxBatchBytes > 0, "maxBatchBytes must be positive");
+      checkArgument(lingerMillis >= 0, "linger must not be negative");
+      if (builder.senderExecutor != null) {
+         this.senderExecutor = builder.senderExecutor;
+         this.ownsSenderExecutor = false;
+      }
+      else {
+         this.senderExecutor = Executors.newFixedThreadPool(builder.maxInFlightRequests,
+               new ThreadFactoryBuilder().setNameFormat("marconi-producer-sender-%d").setDaemon(true).build());
+         this.ownsSenderExecutor = true;
+      }
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("marconi-producer-linger-%d").setDaemon(true).build());
+   }
+
+   /**
+    * Adds a message to the current batch of its queue.
+    *
+    * @param queue   Name of the queue.
+    * @param message The message to create.
+    * @return A future holding the id of the created message.
+    */
+   public ListenableFuture<String> send(String queue, CreateMessage message) {
+      checkNotNull(queue, "queue");
+      checkNotNull(message, "message");
+
+      int bytes = Utf8.encodedLength(message.getBody()) + MESSAGE_OVERHEAD_BYTES;
+      SettableFuture<String> future = SettableFuture.create();
+      List<Batch> ready = Lists.newArrayListWithCapacity(2);
+
+      synchronized (pending) {
+         checkState(!closed, "producer is closed");
+         Batch batch = pending.get(queue);
+         if (batch != null && batch.bytes + bytes > maxBatchBytes) {
+            ready.add(pending.remove(queue));
+            batch = null;
+         }
+         if (batch == null) {
+            batch = new Batch(queue);
+            pending.put(queue, batch);
+            if (lingerMillis > 0) {
+               batch.linger = scheduler.schedule(new Linger(batch), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+         }
+         batch.add(message, future, bytes);
+         if (batch.messages.size() >= maxBatchSize || batch.bytes >= maxBatchBytes || lingerMillis == 0) {
+            ready.add(pending.remove(queue));
+         }
+      }
+
+      for (Batch batch : ready) {
+         submit(batch);
+      }
+      return future;
+   }
+
+   /**
+    * Sends every pending batch now, without waiting for the linger time.
+    */
+   public void flush() {
+      List<Batch> ready;
+      synchronized (pending) {
+         ready = ImmutableList.copyOf(pending.values());
+         pending.clear();
+      }
+      for (Batch batch : ready) {
+         submit(batch);
+      }
+   }
+
+   /**
+    * Sends every pending batch and stops accepting messages. Batches that are already being sent are allowed to
+    * complete.
+    */
+   @Override
+   public void close() {
+      synchronized (pending) {
+         if (closed) {
+            return;
+         }
+         closed = true;
+      }
+      flush();
+      scheduler.shutdownNow();
+      if (ownsSenderExecutor) {
+         senderExecutor.shutdown();
+      }
+   }
+
+   private MessageApi messageApi(String queue) {
+      MessageApi messageApi = messageApis.get(queue);
+      if (messageApi == null) {
+         messageApi = api.getMessageApi(region, clientId, queue);
+         messageApis.putIfAbsent(queue, messageApi);
+      }
+      return messageApi;
+   }
+
+   private void submit(Batch batch) {
+      if (batch.linger != null) {
+         batch.linger.cancel(false);
+      }
+      try {
+         senderExecutor.execute(new Send(batch));
+      }
+      catch (RejectedExecutionException e) {
+         batch.failAll(e);
+      }
+   }
+
+   private static class Batch {
+      private final String queue;
+      private final List<CreateMessage> messages = Lists.newArrayList();
+      private final List<SettableFuture<String>> futures = Lists.newArrayList();
+      private int bytes;
+      private ScheduledFuture<?> linger;
+
+      Batch(String queue) {
+         this.queue = queue;
+      }
+
+      void add(CreateMessage message, SettableFuture<String> future, int messageBytes) {
+         messages.add(message);
+         futures.add(future);
+         bytes += messageBytes;
+      }
+
+      void failAll(Throwable t) {
+         for (SettableFuture<String> future : futures) {
+            future.setException(t);
+         }
+      }
+   }
+
+   private class Linger implements Runnable {
+      private final Batch batch;
+
+      Linger(Batch batch) {
+         this.batch = batch;
+      }
+
+      @Override
+      public void run() {
+         synchronized (pending) {
+            // the batch may have been sent already because it filled up
+            if (pending.get(batch.queue) != batch) {
+               return;
+            }
+            pending.remove(batch.queue);
+         }
+         submit(batch);
+      }
+   }
+
+   private class Send implements Runnable {
+      private final Batch batch;
+
+      Send(Batch batch) {
+         this.batch = batch;
+      }
+
+      @Override
+      public void run() {
+         MessagesCreated created;
+         try {
+            created = messageApi(batch.queue).create(batch.messages);
+         }
+         catch (RuntimeException e) {
+            logger.warn(e, "could not create %d messages on queue %s", batch.messages.size(), batch.queue);
+            batch.failAll(e);
+            return;
+         }
+         if (created == null) {
+            batch.failAll(new IllegalStateException("queue " + batch.queue + " not found"));
+            return;
+         }
+
+         // ids come back in the order the messages were submitted; a partial create only returns a prefix
+         List<String> ids = created.getMessageIds();
+         for (int i = 0; i < batch.futures.size(); i++) {
+            if (i < ids.size()) {
+               batch.futures.get(i).set(ids.get(i));
+            }
+            else {
+               batch.futures.get(i).setException(new IllegalStateException("message was not created on queue "
+                     + batch.queue + ", the request was only partially successful"));
+            }
+         }
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected String region;
+      protected UUID clientId;
+      protected int maxBatchSize = 10;
+      protected int maxBatchBytes = 256 * 1024;
+      protected long lingerMillis = 5;
+      protected int maxInFlightRequests = 4;
+      protected ExecutorService senderExecutor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * @see MarconiApi#getMessageApi(String, UUID, String)
+       */
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      /**
+       * @see MarconiApi#getMessageApi(String, UUID, String)
+       */
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * @param maxBatchSize The maximum number of messages in one request. This is configurable by your cloud
+       *                     provider, consult your cloud provider documentation to learn the maximum.
+       */
+      public Builder maxBatchSize(int maxBatchSize) {
+         this.maxBatchSize = maxBatchSize;
+         return this;
+      }
+
+      /**
+       * @param maxBatchBytes The maximum approximate size of one request body.
+       */
+      public Builder maxBatchBytes(int maxBatchBytes) {
+         this.maxBatchBytes = maxBatchBytes;
+         return this;
+      }
+
+      /**
+       * @param linger How long a batch waits for more messages before it is sent. Zero sends every message right
+       *               away.
+       */
+      public Builder linger(long linger, TimeUnit unit) {
+         this.lingerMillis = unit.toMillis(linger);
+         return this;
+      }
+
+      /**
+       * @param maxInFlightRequests The number of threads sending batches. Ignored if a sender executor is given.
+       */
+      public Builder maxInFlightRequests(int maxInFlightRequests) {
+         this.maxInFlightRequests = maxInFlightRequests;
+         return this;
+      }
+
+      /**
+       * @param senderExecutor The executor batches are sent on. It is not shut down when the producer is closed.
+       */
+      public Builder senderExecutor(ExecutorService senderExecutor) {
+         this.senderExecutor = senderExecutor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public MarconiProducer build() {
+         return new MarconiProducer(this);
+      }
+   }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.domain.MessageStream;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+import org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Iterates over every message of a {@link MessageApi#stream(StreamMessagesOptions...)}, fetching and parsing up to
+ * {@code depth} pages ahead of the caller on a background executor.
+ * <p/>
+ * The location of a page is only known once the previous page has been received, so pages are still requested one
+ * after another, but back to back instead of waiting for the caller to finish each page. Call {@link #close()} when
+ * abandoning the iteration early to stop the background fetch.
+ */
+@Beta
+public class PrefetchingMessageIterator extends AbstractIterator<Message> implements Closeable {
+
+   private static final Object END_OF_STREAM = new Object();
+
+   private final BlockingQueue<Object> pages;
+   private final Future<?> fetcher;
+   private Iterator<Message> current = ImmutableList.<Message> of().iterator();
+   private volatile boolean closed;
+
+   /**
+    * @param api      The message api of the queue to stream.
+    * @param executor Runs the background fetch. One task is submitted per iterator.
+    * @param depth    The maximum number of pages fetched ahead of the caller.
+    * @param options  Options for streaming the first page of messages.
+    */
+   public static PrefetchingMessageIterator create(MessageApi api, ExecutorService executor, int depth,
+         StreamMessagesOptions... options) {
+      return new PrefetchingMessageIterator(api, executor, depth, options);
+   }
+
+   protected PrefetchingMessageIterator(final MessageApi api, ExecutorService executor, int depth,
+         final StreamMessagesOptions... options) {
+      checkNotNull(api, "api");
+      checkNotNull(executor, "executor");
+      checkArgument(depth > 0, "depth must be positive");
+      this.pages = new LinkedBlockingQueue<Object>(depth);
+      this.fetcher = executor.submit(new Runnable() {
+         @Override
+         public void run() {
+            fetch(api, options);
+         }
+      });
+   }
+
+   private void fetch(MessageApi api, StreamMessagesOptions... options) {
+      try {
+         StreamMessagesOptions[] next = options;
+         while (!Thread.currentThread().isInterrupted()) {
+            MessageStream page = api.stream(next);
+            // materialize here so parsing happens on the fetch thread as well
+            List<Message> messages = ImmutableList.copyOf(page);
+            if (messages.isEmpty() || !page.nextMarker().isPresent()) {
+               if (!messages.isEmpty()) {
+                  pages.put(messages);
+               }
+               pages.put(END_OF_STREAM);
+               return;
+            }
+            pages.put(messages);
+            next = new StreamMessagesOptions[] { page.nextStreamOptions() };
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      catch (Throwable t) {
+         // handed to the caller, including errors, which would otherwise vanish into the fetcher's future
+         try {
+            pages.put(t);
+         }
+         catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   @Override
+   protected Message computeNext() {
+      while (!current.hasNext()) {
+         Object page;
+         try {
+            page = closed ? pages.poll() : pages.take();
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw Throwables.propagate(e);
+         }
+         if (page == null || page == END_OF_STREAM) {
+            return endOfData();
+         }
+         if (page instanceof Throwable) {
+            throw Throwables.propagate((Throwable) page);
+         }
+         current = ((List<Message>) page).iterator();
+      }
+      return current.next();
+   }
+
+   /**
+    * Stops fetching pages ahead. Pages that were already fetched can still be iterated.
+    */
+   @Override
+   public void close() {
+      closed = true;
+      fetcher.cancel(true);
+   }
+}
@@ -0,0 +1,493 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.Aged;
+import org.jclouds.openstack.marconi.v1.domain.MessagesStats;
+import org.jclouds.openstack.marconi.v1.domain.QueueStats;
+import org.jclouds.openstack.marconi.v1.features.QueueApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Polls {@link QueueApi#getStats(String)} for a set of queues on a single scheduler thread and keeps the latest
+ * {@link Snapshot} of each queue, so that several consumers of the statistics share one poller instead of each
+ * calling the API.
+ * <p/>
+ * Each queue is polled once per interval, offset by a random jitter so that queues added together, and monitors
+ * started together in several processes, do not poll in lockstep. Every new snapshot is handed to the registered
+ * {@link Listener}s on the scheduler thread, so listeners should return quickly.
+ */
+@Beta
+public class QueueStatsMonitor implements Closeable {
+
+   /**
+    * Receives every snapshot taken by a {@link QueueStatsMonitor}.
+    */
+   public interface Listener {
+      void onSnapshot(Snapshot snapshot);
+
+      void onFailure(String queue, Throwable cause);
+   }
+
+   private final QueueApi queueApi;
+   private final long intervalMillis;
+   private final long jitterMillis;
+   private final ScheduledExecutorService scheduler;
+   private final boolean ownsScheduler;
+   private final Logger logger;
+
+   private final Random random = new Random();
+   private final ConcurrentMap<String, Poll> polls = Maps.newConcurrentMap();
+   private final ConcurrentMap<String, Snapshot> snapshots = Maps.newConcurrentMap();
+   private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+   private volatile boolean closed;
+
+   protected QueueStatsMonitor(Builder builder) {
+      checkNotNull(builder.api, "api required");
+      checkNotNull(builder.region, "region required");
+      checkNotNull(builder.clientId, "clientId required");
+      this.queueApi = builder.api.getQueueApi(builder.region, builder.clientId);
+      this.intervalMillis = builder.intervalMillis;
+      this.jitterMillis = builder.jitterMillis;
+      this.logger = builder.logger;
+      checkArgument(intervalMillis > 0, "interval must be positive");
+      checkArgument(jitterMillis >= 0, "jitter must not be negative");
+      if (builder.scheduler != null) {
+         this.scheduler = builder.scheduler;
+         this.ownsScheduler = false;
+      }
+      else {
+         this.scheduler = Executors.newSingleThreadScheduledExecutor(
+               new ThreadFactoryBuilder().setNameFormat("marconi-stats-monitor-%d").setDaemon(true).build());
+         this.ownsScheduler = true;
+      }
+      this.listeners.addAll(builder.listeners);
+      for (String queue : builder.queues) {
+         add(queue);
+      }
+   }
+
+   /**
+    * Starts polling a queue. The first poll happens at a random point within the first interval.
+    */
+   public void add(String queue) {
+      checkNotNull(queue, "queue");
+      checkState(!closed, "monitor is closed");
+      Poll poll = new Poll(queue);
+      if (polls.putIfAbsent(queue, poll) == null) {
+         poll.schedule(nextLong(intervalMillis));
+      }
+   }
+
+   /**
+    * Stops polling a queue and forgets its snapshot.
+    */
+   public void remove(String queue) {
+      Poll poll = polls.remove(checkNotNull(queue, "queue"));
+      if (poll != null) {
+         poll.cancel();
+      }
+      snapshots.remove(queue);
+   }
+
+   public void addListener(Listener listener) {
+      listeners.add(checkNotNull(listener, "listener"));
+   }
+
+   public void removeListener(Listener listener) {
+      listeners.remove(listener);
+   }
+
+   /**
+    * @return The queues being polled.
+    */
+   public Set<String> getQueues() {
+      return ImmutableSet.copyOf(polls.keySet());
+   }
+
+   /**
+    * @return The latest snapshot of a queue, absent until the queue has been polled successfully.
+    */
+   public Optional<Snapshot> getSnapshot(String queue) {
+      return Optional.fromNullable(snapshots.get(checkNotNull(queue, "queue")));
+   }
+
+   /**
+    * @return The latest snapshot of every queue polled successfully so far.
+    */
+   public Map<String, Snapshot> getSnapshots() {
+      return ImmutableMap.copyOf(snapshots);
+   }
+
+   /**
+    * Polls a queue now on the calling thread, without waiting for its next scheduled poll.
+    *
+    * @return The new snapshot, absent if the queue does not exist.
+    */
+   public Optional<Snapshot> refresh(String queue) {
+      checkNotNull(queue, "queue");
+      QueueStats stats = queueApi.getStats(queue);
+      if (stats == null) {
+         return Optional.absent();
+      }
+      Snapshot snapshot;
+      synchronized (snapshots) {
+         snapshot = Snapshot.create(queue, stats, System.currentTimeMillis(), snapshots.get(queue));
+         snapshots.put(queue, snapshot);
+      }
+      for (Listener listener : listeners) {
+         try {
+            listener.onSnapshot(snapshot);
+         }
+         catch (RuntimeException e) {
+            logger.warn(e, "listener %s failed on stats of queue %s", listener, queue);
+         }
+      }
+      return Optional.of(snapshot);
+   }
+
+   /**
+    * Stops polling. Snapshots taken so far remain available.
+    */
+   @Override
+   public void close() {
+      closed = true;
+      for (Poll poll : polls.values()) {
+         poll.cancel();
+      }
+      polls.clear();
+      if (ownsScheduler) {
+         scheduler.shutdownNow();
+      }
+   }
+
+   private void poll(Poll poll) {
+      String queue = poll.queue;
+      try {
+         refresh(queue);
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not get stats of queue %s", queue);
+         for (Listener listener : listeners) {
+            try {
+               listener.onFailure(queue, e);
+            }
+            catch (RuntimeException le) {
+               logger.warn(le, "listener %s failed on failure of queue %s", listener, queue);
+            }
+         }
+      }
+      poll.schedule(intervalMillis + nextLong(jitterMillis + 1));
+   }
+
+   private long nextLong(long bound) {
+      return bound <= 0 ? 0 : (long) (random.nextDouble() * bound);
+   }
+
+   /**
+    * The polls of one queue. A poll only schedules the next one while it is still the registered poll of its queue,
+    * so removing and adding a queue again never leaves two chains of polls running.
+    */
+   private class Poll implements Runnable {
+      private final String queue;
+      private ScheduledFuture<?> next;
+
+      Poll(String queue) {
+         this.queue = queue;
+      }
+
+      @Override
+      public void run() {
+         if (!closed && polls.get(queue) == this) {
+            poll(this);
+         }
+      }
+
+      synchronized void schedule(long delayMillis) {
+         if (closed || polls.get(queue) != this) {
+            return;
+         }
+         try {
+            next = scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+         }
+         catch (RejectedExecutionException e) {
+            logger.debug("monitor is shutting down, not polling queue %s", queue);
+         }
+      }
+
+      synchronized void cancel() {
+         if (next != null) {
+            next.cancel(false);
+         }
+      }
+   }
+
+   /**
+    * The statistics of a queue at one point in time, with rates derived from the previous snapshot of the same
+    * queue.
+    * <p/>
+    * Marconi only reports the number of messages and the oldest and newest message, so the enqueue and dequeue rates
+    * are estimates. Messages are assumed to be consumed oldest first: the number consumed between two snapshots is
+    * estimated from how far the oldest message moved through the messages present at the previous snapshot.
+    */
+   public static final class Snapshot {
+      private final String queue;
+      private final QueueStats stats;
+      private final long sampledAtMillis;
+      private final long elapsedMillis;
+      private final double enqueueRate;
+      private final double dequeueRate;
+      private final Double oldestAgeTrend;
+
+      private Snapshot(String queue, QueueStats stats, long sampledAtMillis, long elapsedMillis, double enqueueRate,
+            double dequeueRate, @Nullable Double oldestAgeTrend) {
+         this.queue = queue;
+         this.stats = stats;
+         this.sampledAtMillis = sampledAtMillis;
+         this.elapsedMillis = elapsedMillis;
+         this.enqueueRate = enqueueRate;
+         this.dequeueRate = dequeueRate;
+         this.oldestAgeTrend = oldestAgeTrend;
+      }
+
+      static Snapshot create(String queue, QueueStats stats, long sampledAtMillis, @Nullable Snapshot previous) {
+         if (previous == null || sampledAtMillis <= previous.sampledAtMillis) {
+            return new Snapshot(queue, stats, sampledAtMillis, 0, 0, 0, null);
+         }
+         long elapsedMillis = sampledAtMillis - previous.sampledAtMillis;
+         double elapsedSeconds = elapsedMillis / 1000.0;
+         MessagesStats before = previous.getMessagesStats();
+         MessagesStats now = stats.getMessagesStats();
+
+         long dequeued = estimateDequeued(before, now);
+         long enqueued = Math.max(0, now.getTotal() - before.getTotal() + dequeued);
+
+         Double oldestAgeTrend = null;
+         if (before.getOldest().isPresent() && now.getOldest().isPresent()) {
+            oldestAgeTrend = (now.getOldest().get().getAge() - before.getOldest().get().getAge()) / elapsedSeconds;
+         }
+         return new Snapshot(queue, stats, sampledAtMillis, elapsedMillis, enqueued / elapsedSeconds,
+               dequeued / elapsedSeconds, oldestAgeTrend);
+      }
+
+      private static long estimateDequeued(MessagesStats before, MessagesStats now) {
+         if (before.getTotal() == 0) {
+            return 0;
+         }
+         if (now.getTotal() == 0) {
+            return before.getTotal();
+         }
+         if (!before.getOldest().isPresent() || !now.getOldest().isPresent() || !before.getNewest().isPresent()) {
+            return Math.max(0, before.getTotal() - now.getTotal());
+         }
+         Aged oldestBefore = before.getOldest().get();
+         Aged oldestNow = now.getOldest().get();
+         if (oldestBefore.getId().equals(oldestNow.getId())) {
+            return 0;
+         }
+         long from = oldestBefore.getCreated().getTime();
+         long to = before.getNewest().get().getCreated().getTime();
+         long reached = oldestNow.getCreated().getTime();
+         if (to <= from || reached > to) {
+            // every message present at the previous snapshot has been consumed
+            return before.getTotal();
+         }
+         long estimate = Math.round(before.getTotal() * (double) (reached - from) / (to - from));
+         return Math.max(1, Math.min(before.getTotal(), estimate));
+      }
+
+      public String getQueue() {
+         return queue;
+      }
+
+      public QueueStats getStats() {
+         return stats;
+      }
+
+      public MessagesStats getMessagesStats() {
+         return stats.getMessagesStats();
+      }
+
+      /**
+       * @return When the statistics were received, in milliseconds since the epoch.
+       */
+      public long getSampledAtMillis() {
+         return sampledAtMillis;
+      }
+
+      /**
+       * @return The time since the previous snapshot in milliseconds, 0 for the first snapshot of a queue.
+       */
+      public long getElapsedMillis() {
+         return elapsedMillis;
+      }
+
+      /**
+       * @return Estimated messages posted per second since the previous snapshot.
+       */
+      public double getEnqueueRate() {
+         return enqueueRate;
+      }
+
+      /**
+       * @return Estimated messages deleted or expired per second since the previous snapshot.
+       */
+      public double getDequeueRate() {
+         return dequeueRate;
+      }
+
+      /**
+       * @return How many seconds the age of the oldest message grew per second since the previous snapshot. A value
+       *         of 1 means the oldest message is not being consumed, a negative value that the backlog is shrinking.
+       *         Absent when either snapshot has no messages.
+       */
+      public Optional<Double> getOldestAgeTrend() {
+         return Optional.fromNullable(oldestAgeTrend);
+      }
+
+      /**
+       * @return The number of claimed messages per free message. Infinite if messages are claimed but none are free,
+       *         0 if the queue is empty.
+       */
+      public double getClaimedToFreeRatio() {
+         MessagesStats messages = getMessagesStats();
+         if (messages.getClaimed() == 0) {
+            return 0;
+         }
+         if (messages.getFree() == 0) {
+            return Double.POSITIVE_INFINITY;
+         }
+         return messages.getClaimed() / (double) messages.getFree();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).omitNullValues()
+               .add("queue", queue).add("messagesStats", getMessagesStats()).add("enqueueRate", enqueueRate)
+               .add("dequeueRate", dequeueRate).add("oldestAgeTrend", oldestAgeTrend).toString();
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected String region;
+      protected UUID clientId;
+      protected Set<String> queues = Sets.newLinkedHashSet();
+      protected long intervalMillis = TimeUnit.SECONDS.toMillis(30);
+      protected long jitterMillis = TimeUnit.SECONDS.toMillis(3);
+      protected ScheduledExecutorService scheduler;
+      protected Set<Listener> listeners = Sets.newLinkedHashSet();
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * @see MarconiApi#getQueueApi(String, UUID)
+       */
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * Queues to poll from the start. More can be added later with {@link QueueStatsMonitor#add(String)}.
+       */
+      public Builder queues(Iterable<String> queues) {
+         for (String queue : queues) {
+            this.queues.add(checkNotNull(queue, "queue"));
+         }
+         return this;
+      }
+
+      /**
+       * How often each queue is polled. Defaults to 30 seconds.
+       */
+      public Builder interval(long interval, TimeUnit unit) {
+         this.intervalMillis = unit.toMillis(interval);
+         return this;
+      }
+
+      /**
+       * The maximum random delay added to each poll. Defaults to 3 seconds.
+       */
+      public Builder jitter(long jitter, TimeUnit unit) {
+         this.jitterMillis = unit.toMillis(jitter);
+         return this;
+      }
+
+      /**
+       * Runs the polls. When not set, the monitor creates a single daemon thread and shuts it down on close.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = scheduler;
+         return this;
+      }
+
+      public Builder listener(Listener listener) {
+         this.listeners.add(checkNotNull(listener, "listener"));
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public QueueStatsMonitor build() {
+         return new QueueStatsMonitor(this);
+      }
+   }
+}
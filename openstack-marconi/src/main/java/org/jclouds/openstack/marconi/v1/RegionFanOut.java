@@ -0,0 +1,489 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
+import org.jclouds.openstack.marconi.v1.domain.Queue;
+import org.jclouds.openstack.marconi.v1.domain.QueueStats;
+import org.jclouds.openstack.marconi.v1.features.ClaimApi;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+import org.jclouds.openstack.marconi.v1.features.QueueApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Runs the same operation against several regions of a {@link MarconiApi} at once and collects one {@link Result} per
+ * region, instead of calling each region in turn.
+ * <p/>
+ * Operations run on a bounded executor. The timeout applies to each region and counts from the start of the fan-out,
+ * so with at least as many threads as regions the whole fan-out takes no longer than the timeout. A region that
+ * fails or does not answer in time gets a failed result; it never fails the other regions.
+ */
+@Beta
+public class RegionFanOut implements Closeable {
+
+   private final MarconiApi api;
+   private final UUID clientId;
+   private final Set<String> regions;
+   private final long timeoutMillis;
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   protected RegionFanOut(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.clientId = checkNotNull(builder.clientId, "clientId required");
+      this.regions = builder.regions != null ? ImmutableSet.copyOf(builder.regions)
+            : ImmutableSet.copyOf(api.getConfiguredRegions());
+      this.timeoutMillis = builder.timeoutMillis;
+      this.logger = builder.logger;
+      checkArgument(!regions.isEmpty(), "no regions to fan out to");
+      checkArgument(timeoutMillis > 0, "timeout must be positive");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newFixedThreadPool(Math.min(regions.size(), builder.maxConcurrency),
+               new ThreadFactoryBuilder().setNameFormat("marconi-region-fan-out-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * @return The regions operations are run against.
+    */
+   public Set<String> getRegions() {
+      return regions;
+   }
+
+   /**
+    * The outcome of an operation in one region.
+    */
+   public static final class Result<T> {
+      private final String region;
+      private final T value;
+      private final Throwable failure;
+
+      private Result(String region, T value, Throwable failure) {
+         this.region = region;
+         this.value = value;
+         this.failure = failure;
+      }
+
+      public String getRegion() {
+         return region;
+      }
+
+      public boolean isSuccess() {
+         return failure == null;
+      }
+
+      /**
+       * @return The value returned in the region.
+       * @throws IllegalStateException if the operation failed in the region.
+       */
+      public T get() {
+         if (failure != null) {
+            throw new IllegalStateException("operation failed in region " + region, failure);
+         }
+         return value;
+      }
+
+      /**
+       * @return Why the operation failed, a {@link TimeoutException} if the region did not answer in time.
+       */
+      public Optional<Throwable> getFailure() {
+         return Optional.fromNullable(failure);
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).omitNullValues()
+               .add("region", region).add("value", value).add("failure", failure).toString();
+      }
+   }
+
+   /**
+    * Runs an operation against every region.
+    *
+    * @param operation Called once per region with the name of the region.
+    * @return One result per region, in the order of {@link #getRegions()}.
+    */
+   public <T> Map<String, Result<T>> run(final Function<String, T> operation) {
+      checkNotNull(operation, "operation");
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      Map<String, Future<T>> futures = Maps.newLinkedHashMap();
+      for (final String region : regions) {
+         futures.put(region, executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+               return operation.apply(region);
+            }
+         }));
+      }
+      ImmutableMap.Builder<String, Result<T>> results = ImmutableMap.builder();
+      for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+         results.put(entry.getKey(), await(entry.getKey(), entry.getValue(), deadline));
+      }
+      return results.build();
+   }
+
+   /**
+    * Runs a queue operation against every region.
+    */
+   public <T> Map<String, Result<T>> onQueueApis(final Function<QueueApi, T> operation) {
+      checkNotNull(operation, "operation");
+      return run(new Function<String, T>() {
+         @Override
+         public T apply(String region) {
+            return operation.apply(api.getQueueApi(region, clientId));
+         }
+      });
+   }
+
+   /**
+    * Runs a message operation against the queue of the same name in every region.
+    */
+   public <T> Map<String, Result<T>> onMessageApis(final String queue, final Function<MessageApi, T> operation) {
+      checkNotNull(queue, "queue");
+      checkNotNull(operation, "operation");
+      return run(new Function<String, T>() {
+         @Override
+         public T apply(String region) {
+            return operation.apply(api.getMessageApi(region, clientId, queue));
+         }
+      });
+   }
+
+   /**
+    * Runs a claim operation against the queue of the same name in every region.
+    */
+   public <T> Map<String, Result<T>> onClaimApis(final String queue, final Function<ClaimApi, T> operation) {
+      checkNotNull(queue, "queue");
+      checkNotNull(operation, "operation");
+      return run(new Function<String, T>() {
+         @Override
+         public T apply(String region) {
+            return operation.apply(api.getClaimApi(region, clientId, queue));
+         }
+      });
+   }
+
+   /**
+    * Lists the queues of every region.
+    */
+   public Map<String, Result<List<Queue>>> listQueues(final boolean detailed) {
+      return onQueueApis(new Function<QueueApi, List<Queue>>() {
+         @Override
+         public List<Queue> apply(QueueApi queueApi) {
+            return queueApi.list(detailed).concat().toList();
+         }
+      });
+   }
+
+   /**
+    * Posts the same messages to the queue of the same name in every region.
+    */
+   public Map<String, Result<MessagesCreated>> broadcast(String queue, final List<CreateMessage> messages) {
+      checkNotNull(messages, "messages");
+      return onMessageApis(queue, new Function<MessageApi, MessagesCreated>() {
+         @Override
+         public MessagesCreated apply(MessageApi messageApi) {
+            return messageApi.create(messages);
+         }
+      });
+   }
+
+   /**
+    * Finds the region where the queue of the given name has the most free messages, to claim from the region with
+    * the largest backlog.
+    *
+    * @return The region, absent if the queue has no free messages in any region that answered.
+    */
+   public Optional<String> regionWithMostFreeMessages(String queue) {
+      final String name = checkNotNull(queue, "queue");
+      Map<String, Result<QueueStats>> stats = onQueueApis(new Function<QueueApi, QueueStats>() {
+         @Override
+         public QueueStats apply(QueueApi queueApi) {
+            return queueApi.getStats(name);
+         }
+      });
+      String best = null;
+      int mostFree = 0;
+      for (Result<QueueStats> result : stats.values()) {
+         if (result.isSuccess() && result.get() != null) {
+            int free = result.get().getMessagesStats().getFree();
+            if (free > mostFree) {
+               mostFree = free;
+               best = result.getRegion();
+            }
+         }
+      }
+      return Optional.fromNullable(best);
+   }
+
+   /**
+    * Messages claimed in one region.
+    */
+   public static final class RegionClaim {
+      private final String region;
+      private final List<Message> messages;
+
+      private RegionClaim(String region, List<Message> messages) {
+         this.region = region;
+         this.messages = messages;
+      }
+
+      public String getRegion() {
+         return region;
+      }
+
+      public List<Message> getMessages() {
+         return messages;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("region", region).add("messages", messages).toString();
+      }
+   }
+
+   /**
+    * Claims from the queue of the same name in every region at once and keeps the first claim that has messages.
+    * Claims with messages that arrive later are released right away, so their messages go back to other consumers.
+    *
+    * @see ClaimApi#claim(int, int, int)
+    * @return The first claim with messages, absent if no region had messages before the timeout.
+    */
+   public Optional<RegionClaim> claimFirst(final String queue, final int ttl, final int grace, final int limit) {
+      checkNotNull(queue, "queue");
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      final AtomicReference<String> winner = new AtomicReference<String>();
+      CompletionService<RegionClaim> completion = new ExecutorCompletionService<RegionClaim>(executor);
+      Map<String, Future<RegionClaim>> futures = Maps.newHashMap();
+      for (final String region : regions) {
+         futures.put(region, completion.submit(new Callable<RegionClaim>() {
+            @Override
+            public RegionClaim call() {
+               ClaimApi claimApi = api.getClaimApi(region, clientId, queue);
+               List<Message> messages = claimApi.claim(ttl, grace, limit);
+               if (messages.isEmpty()) {
+                  return null;
+               }
+               if (winner.compareAndSet(null, region)) {
+                  return new RegionClaim(region, ImmutableList.copyOf(messages));
+               }
+               release(claimApi, region, messages);
+               return null;
+            }
+         }));
+      }
+      try {
+         for (int remaining = futures.size(); remaining > 0; remaining--) {
+            long waitNanos = deadline - System.nanoTime();
+            Future<RegionClaim> done = waitNanos > 0 ? completion.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+            if (done == null) {
+               break;
+            }
+            RegionClaim claim = resultOrNull(done);
+            if (claim != null) {
+               return Optional.of(claim);
+            }
+         }
+         // stop any claim still running from being kept
+         if (winner.compareAndSet(null, "")) {
+            return Optional.absent();
+         }
+         // a region won just as the timeout expired; its task is past the claim and only builds the result
+         return Optional.fromNullable(resultOrNull(futures.get(winner.get())));
+      }
+      catch (InterruptedException e) {
+         if (!winner.compareAndSet(null, "")) {
+            releaseAbandoned(queue, winner.get(), futures.get(winner.get()));
+         }
+         Thread.currentThread().interrupt();
+         return Optional.absent();
+      }
+   }
+
+   /**
+    * Releases a winning claim that the interrupted caller will not receive. The winning task is already past the
+    * claim, so waiting for it is short.
+    */
+   private void releaseAbandoned(String queue, String region, Future<RegionClaim> future) {
+      RegionClaim claim;
+      try {
+         claim = Uninterruptibles.getUninterruptibly(future);
+      }
+      catch (ExecutionException e) {
+         logger.warn(e.getCause(), "could not claim messages");
+         return;
+      }
+      if (claim != null) {
+         release(api.getClaimApi(region, clientId, queue), region, claim.getMessages());
+      }
+   }
+
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdownNow();
+      }
+   }
+
+   private <T> Result<T> await(String region, Future<T> future, long deadline) {
+      try {
+         return new Result<T>(region, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS),
+               null);
+      }
+      catch (ExecutionException e) {
+         logger.warn(e.getCause(), "operation failed in region %s", region);
+         return new Result<T>(region, null, e.getCause());
+      }
+      catch (TimeoutException e) {
+         future.cancel(true);
+         logger.warn("operation timed out in region %s", region);
+         return new Result<T>(region, null, e);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         future.cancel(true);
+         return new Result<T>(region, null, e);
+      }
+   }
+
+   private RegionClaim resultOrNull(Future<RegionClaim> future) throws InterruptedException {
+      try {
+         return future.get();
+      }
+      catch (ExecutionException e) {
+         logger.warn(e.getCause(), "could not claim messages");
+         return null;
+      }
+   }
+
+   private void release(ClaimApi claimApi, String region, List<Message> messages) {
+      Optional<String> claimId = messages.get(0).getClaimId();
+      if (!claimId.isPresent()) {
+         return;
+      }
+      try {
+         claimApi.release(claimId.get());
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "could not release claim %s in region %s", claimId.get(), region);
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected MarconiApi api;
+      protected UUID clientId;
+      protected Set<String> regions;
+      protected long timeoutMillis = TimeUnit.SECONDS.toMillis(30);
+      protected int maxConcurrency = 8;
+      protected ExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(MarconiApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder clientId(UUID clientId) {
+         this.clientId = clientId;
+         return this;
+      }
+
+      /**
+       * The regions to fan out to. Defaults to {@link MarconiApi#getConfiguredRegions()}.
+       */
+      public Builder regions(Iterable<String> regions) {
+         this.regions = ImmutableSet.copyOf(regions);
+         return this;
+      }
+
+      /**
+       * How long to wait for each region. Defaults to 30 seconds.
+       */
+      public Builder timeout(long timeout, TimeUnit unit) {
+         this.timeoutMillis = unit.toMillis(timeout);
+         return this;
+      }
+
+      /**
+       * The maximum number of regions called at once. Ignored when an executor is given. Defaults to 8.
+       */
+      public Builder maxConcurrency(int maxConcurrency) {
+         checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+         this.maxConcurrency = maxConcurrency;
+         return this;
+      }
+
+      /**
+       * Runs the operations. When not set, a pool of daemon threads is created and shut down on close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public RegionFanOut build() {
+         return new RegionFanOut(this);
+      }
+   }
+}
@@ -82,10 +82,14 @@ public class Message {
       return Objects.hashCode(id);
    }
 
+   /**
+    * Messages are equal when their ids are, whichever api they were read through. A {@link StreamedMessage} equals
+    * the {@link Message} with the same id returned by {@link org.jclouds.openstack.marconi.v1.features.MessageApi#list}.
+    */
    @Override
    public boolean equals(Object obj) {
       if (this == obj) return true;
-      if (obj == null || getClass() != obj.getClass()) return false;
+      if (!(obj instanceof Message)) return false;
       Message that = Message.class.cast(obj);
       return Objects.equal(this.id, that.id);
    }
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.domain;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jclouds.openstack.marconi.v1.functions.MessageHrefs;
+import org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions;
+import org.jclouds.openstack.v2_0.domain.Link;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.URI;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.http.utils.Queries.queryParser;
+
+/**
+ * Reads messages one at a time straight off a response, instead of buffering the whole page and building the object
+ * graph before the first message is visible.
+ * <p/>
+ * Both a page of streamed messages ({@code {"messages": [...], "links": [...]}}) and a plain array of messages are
+ * supported. The reader must be closed if it is not iterated to the end.
+ */
+public class MessageReader extends AbstractIterator<StreamedMessage> implements Closeable {
+
+   private final JsonReader json;
+   private final boolean isPage;
+   private final ImmutableList.Builder<Link> links = ImmutableList.builder();
+   private boolean inMessages;
+   private boolean closed;
+
+   /**
+    * @return A reader without any messages.
+    */
+   public static MessageReader empty() {
+      return new MessageReader();
+   }
+
+   private MessageReader() {
+      this.json = null;
+      this.isPage = false;
+      this.closed = true;
+   }
+
+   /**
+    * @param reader The JSON response. It is closed once the last message has been read.
+    */
+   public MessageReader(Reader reader) {
+      this.json = new JsonReader(checkNotNull(reader, "reader"));
+      try {
+         if (json.peek() == JsonToken.BEGIN_ARRAY) {
+            json.beginArray();
+            isPage = false;
+            inMessages = true;
+         }
+         else {
+            json.beginObject();
+            isPage = true;
+            inMessages = advanceToMessages();
+         }
+      }
+      catch (IOException e) {
+         close();
+         throw Throwables.propagate(e);
+      }
+   }
+
+   @Override
+   protected StreamedMessage computeNext() {
+      if (closed) {
+         return endOfData();
+      }
+      try {
+         if (inMessages && json.hasNext()) {
+            return readMessage();
+         }
+         if (inMessages) {
+            json.endArray();
+            inMessages = false;
+            if (isPage) {
+               // links may come after the messages
+               advanceToMessages();
+            }
+         }
+         close();
+         return endOfData();
+      }
+      catch (IOException e) {
+         close();
+         throw Throwables.propagate(e);
+      }
+   }
+
+   /**
+    * Only complete once every message has been read.
+    *
+    * @return The links of this page.
+    */
+   public List<Link> getLinks() {
+      return links.build();
+   }
+
+   /**
+    * Only call this method once every message has been read.
+    *
+    * @return The options necessary to get the next page of messages, if there is one.
+    */
+   public Optional<StreamMessagesOptions> nextStreamOptions() {
+      for (Link link : getLinks()) {
+         if (Link.Relation.NEXT == link.getRelation()) {
+            Multimap<String, String> queryParams = queryParser().apply(link.getHref().getRawQuery());
+            return Optional.of(StreamMessagesOptions.Builder.queryParameters(queryParams));
+         }
+      }
+      return Optional.absent();
+   }
+
+   @Override
+   public void close() {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      try {
+         json.close();
+      }
+      catch (IOException ignored) {
+      }
+   }
+
+   /**
+    * Reads the fields of the page object up to the start of the messages array, or to the end of the object.
+    *
+    * @return true if positioned inside the messages array.
+    */
+   private boolean advanceToMessages() throws IOException {
+      while (json.hasNext()) {
+         String name = json.nextName();
+         if ("messages".equals(name)) {
+            json.beginArray();
+            return true;
+         }
+         else if ("links".equals(name)) {
+            readLinks();
+         }
+         else {
+            json.skipValue();
+         }
+      }
+      json.endObject();
+      return false;
+   }
+
+   private void readLinks() throws IOException {
+      json.beginArray();
+      while (json.hasNext()) {
+         String href = null;
+         String rel = null;
+         json.beginObject();
+         while (json.hasNext()) {
+            String name = json.nextName();
+            if ("href".equals(name)) {
+               href = json.nextString();
+            }
+            else if ("rel".equals(name)) {
+               rel = json.nextString();
+            }
+            else {
+               json.skipValue();
+            }
+         }
+         json.endObject();
+         if (href != null && rel != null) {
+            links.add(Link.builder().href(URI.create(href)).relation(Link.Relation.fromValue(rel)).build());
+         }
+      }
+      json.endArray();
+   }
+
+   private StreamedMessage readMessage() throws IOException {
+      String href = null;
+      int ttl = 0;
+      int age = 0;
+      String body = null;
+      byte[] bodyBytes = null;
+
+      json.beginObject();
+      while (json.hasNext()) {
+         String name = json.nextName();
+         if ("href".equals(name)) {
+            href = json.nextString();
+         }
+         else if ("ttl".equals(name)) {
+            ttl = json.nextInt();
+         }
+         else if ("age".equals(name)) {
+            age = json.nextInt();
+         }
+         else if ("body".equals(name)) {
+            if (json.peek() == JsonToken.STRING) {
+               body = json.nextString();
+            }
+            else {
+               bodyBytes = reserializeJson();
+            }
+         }
+         else {
+            json.skipValue();
+         }
+      }
+      json.endObject();
+
+      checkNotNull(href, "href");
+      return new StreamedMessage(MessageHrefs.idFromHref(href), ttl, body, bodyBytes, age,
+            MessageHrefs.claimIdFromHref(href));
+   }
+
+   /**
+    * Copies the next value as compact JSON. The reader only hands out tokens, so the original text of the value is
+    * not available; numbers are copied as written.
+    */
+   private byte[] reserializeJson() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, Charsets.UTF_8));
+      writer.setLenient(true);
+      copy(json, writer);
+      writer.flush();
+      return bytes.toByteArray();
+   }
+
+   private static void copy(JsonReader in, JsonWriter out) throws IOException {
+      switch (in.peek()) {
+         case BEGIN_ARRAY:
+            in.beginArray();
+            out.beginArray();
+            while (in.hasNext()) {
+               copy(in, out);
+            }
+            in.endArray();
+            out.endArray();
+            break;
+         case BEGIN_OBJECT:
+            in.beginObject();
+            out.beginObject();
+            while (in.hasNext()) {
+               out.name(in.nextName());
+               copy(in, out);
+            }
+            in.endObject();
+            out.endObject();
+            break;
+         case STRING:
+            out.value(in.nextString());
+            break;
+         case NUMBER:
+            // keep the number exactly as it was written
+            out.value(new RawNumber(in.nextString()));
+            break;
+         case BOOLEAN:
+            out.value(in.nextBoolean());
+            break;
+         case NULL:
+            in.nextNull();
+            out.nullValue();
+            break;
+         default:
+            throw new IllegalStateException("unexpected token " + in.peek());
+      }
+   }
+
+   private static final class RawNumber extends Number {
+      private static final long serialVersionUID = 1L;
+
+      private final String text;
+
+      RawNumber(String text) {
+         this.text = text;
+      }
+
+      @Override
+      public int intValue() {
+         return (int) doubleValue();
+      }
+
+      @Override
+      public long longValue() {
+         return (long) doubleValue();
+      }
+
+      @Override
+      public float floatValue() {
+         return (float) doubleValue();
+      }
+
+      @Override
+      public double doubleValue() {
+         return Double.parseDouble(text);
+      }
+
+      @Override
+      public String toString() {
+         return text;
+      }
+   }
+}
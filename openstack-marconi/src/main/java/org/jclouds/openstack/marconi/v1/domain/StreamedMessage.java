@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.domain;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.io.ByteSource;
+import org.jclouds.javax.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A message read by a {@link MessageReader}. A body that is a JSON document rather than a string is kept as UTF-8
+ * encoded JSON and is only decoded into a String when {@link #getBody()} is called, so handlers that forward payloads
+ * can use {@link #getBodyBytes()} or {@link #openBodyReader()} instead.
+ * <p/>
+ * Such a body is re-serialized while it is read: it is compact JSON with the numbers as they were written, not a copy
+ * of the original whitespace and escaping.
+ */
+public class StreamedMessage extends Message {
+
+   private volatile String body;
+   private volatile byte[] bodyBytes;
+
+   /**
+    * @param body      The body as a decoded String, when the body was a JSON string.
+    * @param bodyBytes The body as re-serialized, UTF-8 encoded JSON, when the body was a JSON document.
+    */
+   protected StreamedMessage(String id, int ttl, @Nullable String body, @Nullable byte[] bodyBytes, int age,
+         @Nullable String claimId) {
+      super(id, ttl, "", age, claimId);
+      checkArgument(body != null || bodyBytes != null, "body required");
+      this.body = body;
+      this.bodyBytes = bodyBytes;
+   }
+
+   /**
+    * Decodes the body on first use.
+    *
+    * @see CreateMessage.Builder#body(String)
+    */
+   @Override
+   public String getBody() {
+      String result = body;
+      if (result == null) {
+         result = new String(bodyBytes, Charsets.UTF_8);
+         body = result;
+      }
+      return result;
+   }
+
+   /**
+    * @return The UTF-8 encoding of {@link #getBody()}, whichever kind of body the message has.
+    */
+   public ByteSource getBodyBytes() {
+      byte[] result = bodyBytes;
+      if (result == null) {
+         result = body.getBytes(Charsets.UTF_8);
+         bodyBytes = result;
+      }
+      return ByteSource.wrap(result);
+   }
+
+   /**
+    * @return A reader over the body, decoding it as it is read.
+    */
+   public Reader openBodyReader() {
+      byte[] bytes = bodyBytes;
+      if (bytes != null) {
+         return new InputStreamReader(new ByteArrayInputStream(bytes), Charsets.UTF_8);
+      }
+      return new StringReader(body);
+   }
+
+   @Override
+   protected Objects.ToStringHelper string() {
+      return Objects.toStringHelper(this).omitNullValues()
+         .add("id", getId()).add("ttl", getTTL()).add("body", getBody()).add("age", getAge())
+         .add("claimId", getClaimId().orNull());
+   }
+}
@@ -29,19 +29,26 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 import org.jclouds.Fallbacks.EmptyListOnNotFoundOr404;
+import org.jclouds.Fallbacks.EmptyPagedIterableOnNotFoundOr404;
 import org.jclouds.Fallbacks.FalseOnNotFoundOr404;
 import org.jclouds.Fallbacks.NullOnNotFoundOr404;
+import org.jclouds.collect.PagedIterable;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.openstack.keystone.v2_0.KeystoneFallbacks.EmptyPaginatedCollectionOnNotFoundOr404;
 import org.jclouds.openstack.keystone.v2_0.filters.AuthenticateRequest;
 import org.jclouds.openstack.marconi.v1.binders.BindIdsToQueryParam;
 import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
 import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.domain.MessageReader;
 import org.jclouds.openstack.marconi.v1.domain.MessageStream;
 import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
+import org.jclouds.openstack.marconi.v1.domain.StreamedMessage;
+import org.jclouds.openstack.marconi.v1.fallbacks.EmptyMessageReaderFallback;
 import org.jclouds.openstack.marconi.v1.functions.ParseMessage;
 import org.jclouds.openstack.marconi.v1.functions.ParseMessagesCreated;
 import org.jclouds.openstack.marconi.v1.functions.ParseMessagesToList;
+import org.jclouds.openstack.marconi.v1.functions.ParseMessagesToReader;
+import org.jclouds.openstack.marconi.v1.functions.MessagesToPagedIterable;
 import org.jclouds.openstack.marconi.v1.functions.ParseMessagesToStream;
 import org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions;
 import org.jclouds.rest.annotations.BinderParam;
@@ -49,6 +56,7 @@ import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
 import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.annotations.SkipEncoding;
+import org.jclouds.rest.annotations.Transform;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 /**
@@ -84,6 +92,36 @@ public interface MessageApi {
    @Fallback(EmptyPaginatedCollectionOnNotFoundOr404.class)
    MessageStream stream(StreamMessagesOptions... options);
 
+   /**
+    * Streams the messages off of a queue, following the next link of each page lazily as the result is iterated.
+    * In a very active queue it's possible that you could continuously stream messages indefinitely.
+    * </p>
+    * To fetch pages ahead of the iteration on a background thread, see
+    * {@link org.jclouds.openstack.marconi.v1.PrefetchingMessageIterator}.
+    *
+    * @param options  Options for streaming the first page of messages to your client.
+    */
+   @Named("message:stream")
+   @GET
+   @ResponseParser(ParseMessagesToStream.class)
+   @Transform(MessagesToPagedIterable.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Message> streamAll(StreamMessagesOptions... options);
+
+   /**
+    * Streams one page of messages off of a queue, parsing each message only as the result is iterated. Bodies that
+    * are JSON documents rather than strings are kept as UTF-8 encoded JSON, see {@link StreamedMessage#getBodyBytes()}.
+    * </p>
+    * The returned reader holds the connection open and must be closed if it is not iterated to the end.
+    *
+    * @param options  Options for streaming messages to your client.
+    */
+   @Named("message:stream")
+   @GET
+   @ResponseParser(ParseMessagesToReader.class)
+   @Fallback(EmptyMessageReaderFallback.class)
+   MessageReader openStream(StreamMessagesOptions... options);
+
    /**
     * Lists specific messages. Unlike the stream method, a client's own messages are always returned in this operation.
     *
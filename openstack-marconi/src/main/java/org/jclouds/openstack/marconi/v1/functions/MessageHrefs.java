@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.functions;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.util.Strings2;
+
+/**
+ * Extracts ids from the hrefs Marconi returns in place of ids, e.g.
+ * {@code /v1/queues/fizbit/messages/50b68a50d6f5b8c8a7c62b01?claim_id=a28ee94e-6cb4-11e2-b4d5-7703267a7926}.
+ * <p/>
+ * The href is scanned in place, without building a {@link java.net.URI} or parsing the query into a multimap.
+ */
+public final class MessageHrefs {
+
+   private static final String CLAIM_ID_PARAM = "claim_id=";
+
+   private MessageHrefs() {
+   }
+
+   /**
+    * @return The last path segment of the href.
+    */
+   public static String idFromHref(String href) {
+      return idFromHref(href, href.indexOf('?'));
+   }
+
+   /**
+    * @return The value of the claim_id query parameter, or null if there is none.
+    */
+   @Nullable
+   public static String claimIdFromHref(String href) {
+      return claimIdFromHref(href, href.indexOf('?'));
+   }
+
+   static String idFromHref(String href, int indexOfQuery) {
+      int end = indexOfQuery < 0 ? href.length() : indexOfQuery;
+      int start = href.lastIndexOf('/', end - 1) + 1;
+      return href.substring(start, end);
+   }
+
+   @Nullable
+   static String claimIdFromHref(String href, int indexOfQuery) {
+      if (indexOfQuery < 0) {
+         return null;
+      }
+      int length = href.length();
+      int start = indexOfQuery + 1;
+      while (start < length) {
+         int end = href.indexOf('&', start);
+         if (end < 0) {
+            end = length;
+         }
+         if (href.regionMatches(start, CLAIM_ID_PARAM, 0, CLAIM_ID_PARAM.length())) {
+            String claimId = href.substring(start + CLAIM_ID_PARAM.length(), end);
+            return claimId.indexOf('%') < 0 && claimId.indexOf('+') < 0 ? claimId : Strings2.urlDecode(claimId);
+         }
+         start = end + 1;
+      }
+      return null;
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.functions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.internal.ArgsToPagedIterable;
+import org.jclouds.openstack.marconi.v1.MarconiApi;
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.features.MessageApi;
+import org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions.Builder.queryParameters;
+
+/**
+ * Follows the next link of a {@link org.jclouds.openstack.marconi.v1.domain.MessageStream} lazily.
+ */
+@Beta
+public class MessagesToPagedIterable extends ArgsToPagedIterable.FromCaller<Message, MessagesToPagedIterable> {
+
+   private final MarconiApi api;
+
+   @Inject
+   protected MessagesToPagedIterable(MarconiApi api) {
+      this.api = checkNotNull(api, "api");
+   }
+
+   @Override
+   protected Function<Object, IterableWithMarker<Message>> markerToNextForArgs(List<Object> args) {
+      String region = String.class.cast(args.get(0));
+      UUID clientId = UUID.class.cast(args.get(1));
+      String name = String.class.cast(args.get(2));
+
+      return new StreamMessagesAtMarker(api.getMessageApi(region, clientId, name));
+   }
+
+   private static class StreamMessagesAtMarker implements Function<Object, IterableWithMarker<Message>> {
+      private final MessageApi api;
+
+      protected StreamMessagesAtMarker(MessageApi api) {
+         this.api = checkNotNull(api, "api");
+      }
+
+      public IterableWithMarker<Message> apply(Object input) {
+         PaginationOptions paginationOptions = PaginationOptions.class.cast(input);
+         StreamMessagesOptions streamMessagesOptions = queryParameters(paginationOptions.buildQueryParameters());
+
+         return api.stream(streamMessagesOptions);
+      }
+
+      public String toString() {
+         return "StreamMessagesAtMarker";
+      }
+   }
+}
@@ -17,7 +17,7 @@
 package org.jclouds.openstack.marconi.v1.functions;
 
 import com.google.common.base.Function;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import org.jclouds.http.HttpResponse;
 import org.jclouds.http.functions.ParseJson;
@@ -26,7 +26,6 @@ import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.jclouds.openstack.marconi.v1.functions.ParseMessagesToStream.TO_ID_FROM_HREF;
 
 /**
  * This parses the messages created on a queue.
@@ -42,10 +41,14 @@ public class ParseMessagesCreated implements Function<HttpResponse, MessagesCrea
 
    public MessagesCreated apply(HttpResponse from) {
       MessagesCreated rawMessagesCreated = json.apply(from);
-      List<String> messageIds = Lists.transform(rawMessagesCreated.getMessageIds(), TO_ID_FROM_HREF);
+      List<String> hrefs = rawMessagesCreated.getMessageIds();
+      ImmutableList.Builder<String> messageIds = ImmutableList.builder();
+      for (String href : hrefs) {
+         messageIds.add(MessageHrefs.idFromHref(href));
+      }
 
       MessagesCreated messagesCreated = MessagesCreated.builder()
-            .messageIds(messageIds)
+            .messageIds(messageIds.build())
             .build();
 
       return messagesCreated;
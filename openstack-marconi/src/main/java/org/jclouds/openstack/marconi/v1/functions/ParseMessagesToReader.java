@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.functions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.openstack.marconi.v1.domain.MessageReader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Hands the response payload to a {@link MessageReader} without buffering it. The payload is closed by the reader.
+ */
+public class ParseMessagesToReader implements Function<HttpResponse, MessageReader> {
+
+   @Override
+   public MessageReader apply(HttpResponse response) {
+      // An empty message stream has a 204 response code
+      if (response.getStatusCode() == 204 || response.getPayload() == null) {
+         return MessageReader.empty();
+      }
+
+      try {
+         return new MessageReader(new InputStreamReader(response.getPayload().openStream(), Charsets.UTF_8));
+      }
+      catch (IOException e) {
+         throw Throwables.propagate(e);
+      }
+   }
+}
@@ -17,8 +17,8 @@
 package org.jclouds.openstack.marconi.v1.functions;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Multimap;
 import org.jclouds.http.HttpResponse;
 import org.jclouds.http.functions.ParseJson;
 import org.jclouds.openstack.marconi.v1.domain.Message;
@@ -28,13 +28,9 @@ import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
 
 import javax.inject.Inject;
 import java.beans.ConstructorProperties;
-import java.net.URI;
-import java.net.URISyntaxException;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Iterables.transform;
-import static org.jclouds.http.utils.Queries.queryParser;
 
 public class ParseMessagesToStream implements Function<HttpResponse, MessageStream> {
 
@@ -53,49 +49,24 @@ public class ParseMessagesToStream implements Function<HttpResponse, MessageStre
       }
 
       MessagesWithHref messagesWithHref = json.apply(response);
-      Iterable<Message> messages = transform(messagesWithHref, TO_MESSAGE);
+      // copy so the hrefs are parsed once rather than on every iteration of the stream
+      Iterable<Message> messages = ImmutableList.copyOf(transform(messagesWithHref, TO_MESSAGE));
 
       return new Messages(messages, messagesWithHref.getLinks());
    }
 
-   /**
-    * Strip off everything but the message id.
-    */
-   private static String getIdFromHref(String rawMessageHref) {
-      int indexOfQuestionMark = rawMessageHref.indexOf('?');
-      int lastIndexOfSlash = rawMessageHref.lastIndexOf('/') + 1;
-
-      if (indexOfQuestionMark > lastIndexOfSlash) {
-         return rawMessageHref.substring(lastIndexOfSlash, indexOfQuestionMark);
-      }
-      else {
-         return rawMessageHref.substring(lastIndexOfSlash);
-      }
-   }
-
-   private static String getClaimIdFromHref(String rawMessageHref) {
-      try {
-         String query = new URI(rawMessageHref).getQuery();
-
-         if (query != null) {
-            Multimap<String, String> queryParams = queryParser().apply(query);
-            return getOnlyElement(queryParams.get("claim_id"), null);
-         }
-         else {
-            return null;
-         }
-      }
-      catch (URISyntaxException e) {
-         return null;
-      }
-   }
-
    protected static final Function<MessageWithHref, Message> TO_MESSAGE = new Function<MessageWithHref, Message>() {
       @Override
       public Message apply(MessageWithHref messageWithHref) {
-         return messageWithHref.toBuilder()
-               .id(getIdFromHref(messageWithHref.getId()))
-               .claimId(getClaimIdFromHref(messageWithHref.getId()))
+         String href = messageWithHref.getId();
+         int indexOfQuery = href.indexOf('?');
+
+         return Message.builder()
+               .id(MessageHrefs.idFromHref(href, indexOfQuery))
+               .ttl(messageWithHref.getTTL())
+               .body(messageWithHref.getBody())
+               .age(messageWithHref.getAge())
+               .claimId(MessageHrefs.claimIdFromHref(href, indexOfQuery))
                .build();
       }
    };
@@ -103,7 +74,7 @@ public class ParseMessagesToStream implements Function<HttpResponse, MessageStre
    protected static final Function<String, String> TO_ID_FROM_HREF = new Function<String, String>() {
       @Override
       public String apply(String messageIdWithHref) {
-         return getIdFromHref(messageIdWithHref);
+         return MessageHrefs.idFromHref(messageIdWithHref);
       }
    };
 
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class CachingQueueApiMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+   private static final String DETAILED_QUEUES = "{\"queues\": [{\"href\": \"/v1/queues/jclouds-test\", \"name\": \"jclouds-test\", \"metadata\": {\"key1\": \"value1\"}}, {\"href\": \"/v1/queues/jclouds-other\", \"name\": \"jclouds-other\"}], \"links\": [{\"href\": \"/v1/queues?detailed=true&marker=jclouds-test\", \"rel\": \"next\"}]}";
+
+   public void existsAndGetMetadataFromSnapshot() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody(DETAILED_QUEUES));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(404));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         CachingQueueApi queueApi = CachingQueueApi.builder().api(api).region("DFW").clientId(CLIENT_ID).build();
+
+         assertTrue(queueApi.exists("jclouds-test"));
+         assertTrue(queueApi.exists("jclouds-other"));
+         assertEquals(queueApi.getMetadata("jclouds-test"), ImmutableMap.of("key1", "value1"));
+         assertEquals(queueApi.getMetadata("jclouds-other"), ImmutableMap.of());
+         assertFalse(queueApi.exists("jclouds-missing"));
+
+         assertEquals(queueApi.stats().hitCount(), 4);
+         assertEquals(queueApi.stats().missCount(), 1);
+         assertEquals(queueApi.stats().loadSuccessCount(), 1);
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true&marker=jclouds-test HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-missing HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void failedListFallsBackToTheServer() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(400));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(400));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"key1\": \"value1\"}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         CachingQueueApi queueApi = CachingQueueApi.builder().api(api).region("DFW").clientId(CLIENT_ID).build();
+
+         assertTrue(queueApi.exists("jclouds-test"));
+         assertEquals(queueApi.getMetadata("jclouds-test"), ImmutableMap.of("key1", "value1"));
+
+         assertEquals(queueApi.stats().hitCount(), 0);
+         assertEquals(queueApi.stats().missCount(), 2);
+         assertEquals(queueApi.stats().loadExceptionCount(), 2);
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/metadata HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void setMetadataInvalidatesSnapshot() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody(DETAILED_QUEUES));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody(DETAILED_QUEUES.replace("value1", "value2")));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         CachingQueueApi queueApi = CachingQueueApi.builder().api(api).region("DFW").clientId(CLIENT_ID).build();
+
+         assertEquals(queueApi.getMetadata("jclouds-test"), ImmutableMap.of("key1", "value1"));
+         assertTrue(queueApi.setMetadata("jclouds-test", ImmutableMap.of("key1", "value2")));
+         assertEquals(queueApi.getMetadata("jclouds-test"), ImmutableMap.of("key1", "value2"));
+
+         assertEquals(queueApi.stats().loadSuccessCount(), 2);
+         assertEquals(queueApi.stats().evictionCount(), 1);
+
+         assertEquals(server.getRequestCount(), 7);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true&marker=jclouds-test HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "PUT /v1/123123/queues/jclouds-test/metadata HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues?detailed=true HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void invalidationDuringListDropsTheSnapshotBeingLoaded() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      final CountDownLatch listing = new CountDownLatch(1);
+      final CountDownLatch deleted = new CountDownLatch(1);
+      final AtomicInteger lists = new AtomicInteger();
+      server.setDispatcher(new Dispatcher() {
+         @Override
+         public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (request.getPath().equals("/tokens")) {
+               return new MockResponse().setBody(accessRackspace);
+            }
+            if (request.getPath().equals("/v1/123123/queues?detailed=true")) {
+               if (lists.incrementAndGet() > 1) {
+                  return new MockResponse().setResponseCode(204);
+               }
+               // answer the first list with the queue as it was before the delete
+               listing.countDown();
+               deleted.await(10, TimeUnit.SECONDS);
+               return new MockResponse().setResponseCode(200).setBody("{\"queues\": [{\"href\": "
+                     + "\"/v1/queues/jclouds-test\", \"name\": \"jclouds-test\", \"metadata\": {}}], \"links\": []}");
+            }
+            if (request.getMethod().equals("DELETE")) {
+               return new MockResponse().setResponseCode(204);
+            }
+            return new MockResponse().setResponseCode(404);
+         }
+      });
+
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         final CachingQueueApi queueApi = CachingQueueApi.builder().api(api).region("DFW").clientId(CLIENT_ID)
+               .build();
+
+         Future<Boolean> existedWhileListing = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return queueApi.exists("jclouds-test");
+            }
+         });
+         assertTrue(listing.await(10, TimeUnit.SECONDS));
+         assertTrue(queueApi.delete("jclouds-test"));
+         deleted.countDown();
+         assertTrue(existedWhileListing.get(10, TimeUnit.SECONDS));
+
+         // the list that was in flight is not kept, the queue is looked up again
+         assertFalse(queueApi.exists("jclouds-test"));
+         assertEquals(lists.get(), 2);
+         assertEquals(queueApi.stats().loadSuccessCount(), 2);
+         assertEquals(queueApi.stats().missCount(), 1);
+      }
+      finally {
+         deleted.countDown();
+         executor.shutdownNow();
+         server.shutdown();
+      }
+   }
+}
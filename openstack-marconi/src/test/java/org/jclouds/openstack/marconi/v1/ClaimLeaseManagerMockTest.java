@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class ClaimLeaseManagerMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+
+   public void closeReleasesActiveLeases() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         ClaimLeaseManager leases = ClaimLeaseManager.builder()
+               .api(api).region("DFW").clientId(CLIENT_ID)
+               .maxInFlightRequests(1).tick(1, TimeUnit.HOURS)
+               .build();
+
+         ClaimLeaseManager.Lease first = leases.register("jclouds-test", "52a8d23eb04a584f1bbd4f47", 300);
+         ClaimLeaseManager.Lease second = leases.register("jclouds-other", "52a8d23eb04a584f1bbd4f48", 300);
+         ClaimLeaseManager.Lease cancelled = leases.register("jclouds-test", "52a8d23eb04a584f1bbd4f49", 300);
+         cancelled.cancel();
+
+         assertTrue(first.isActive());
+         assertFalse(cancelled.isActive());
+         assertEquals(leases.getActiveCount(), 2);
+
+         leases.close();
+
+         assertFalse(first.isActive());
+         assertFalse(second.isActive());
+         assertEquals(leases.getActiveCount(), 0);
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         String release1 = server.takeRequest().getRequestLine();
+         String release2 = server.takeRequest().getRequestLine();
+         assertTrue(release1.startsWith("DELETE /v1/123123/queues/jclouds-"), release1);
+         assertTrue(release2.startsWith("DELETE /v1/123123/queues/jclouds-"), release2);
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class MarconiAcknowledgerMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+   private static final String CLAIM_ID = "5292b30cef913e6d026f4dec";
+   private static final String FIRST = "52936b8a3ac24e6ef4c067dd";
+   private static final String SECOND = "52936b8a3ac24e6ef4c067de";
+
+   public void fullBatchIsDeletedInOneRequest() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiAcknowledger acknowledger = acknowledger(server)
+               .maxBatchSize(2).flushInterval(1, TimeUnit.HOURS)
+               .build();
+         acknowledger.claimed(CLAIM_ID, 300);
+
+         ListenableFuture<Boolean> first = acknowledger.ack("jclouds-test", claimed(FIRST));
+         ListenableFuture<Boolean> second = acknowledger.ack("jclouds-test", claimed(SECOND));
+
+         assertTrue(first.get(10, TimeUnit.SECONDS));
+         assertTrue(second.get(10, TimeUnit.SECONDS));
+         acknowledger.close();
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages?ids=" + FIRST + "," + SECOND + " HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void partialBatchIsDeletedWhenTheFlushIntervalElapses() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiAcknowledger acknowledger = acknowledger(server)
+               .maxBatchSize(20).flushInterval(1, TimeUnit.SECONDS)
+               .build();
+         acknowledger.claimed(CLAIM_ID, 300);
+
+         ListenableFuture<Boolean> first = acknowledger.ack("jclouds-test", claimed(FIRST));
+         ListenableFuture<Boolean> second = acknowledger.ack("jclouds-test", claimed(SECOND));
+
+         assertTrue(first.get(10, TimeUnit.SECONDS));
+         assertTrue(second.get(10, TimeUnit.SECONDS));
+         acknowledger.close();
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages?ids=" + FIRST + "," + SECOND + " HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void messagesOfClaimCloseToExpiryAreDeletedByClaim() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiAcknowledger acknowledger = acknowledger(server)
+               .maxBatchSize(20).flushInterval(1, TimeUnit.HOURS).safetyMargin(10, TimeUnit.MINUTES)
+               .build();
+         // expires within the safety margin
+         acknowledger.claimed(CLAIM_ID, 300);
+
+         assertTrue(acknowledger.ack("jclouds-test", claimed(FIRST)).get(10, TimeUnit.SECONDS));
+         assertTrue(acknowledger.ack("jclouds-test", claimed(SECOND)).get(10, TimeUnit.SECONDS));
+         acknowledger.close();
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages/" + FIRST + "?claim_id=" + CLAIM_ID + " HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages/" + SECOND + "?claim_id=" + CLAIM_ID + " HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void batchOfReleasedClaimIsDeletedByClaimBeforeReleaseReturns() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiAcknowledger acknowledger = acknowledger(server)
+               .maxBatchSize(20).flushInterval(1, TimeUnit.HOURS)
+               .build();
+         acknowledger.claimed(CLAIM_ID, 300);
+
+         ListenableFuture<Boolean> first = acknowledger.ack("jclouds-test", claimed(FIRST));
+         ListenableFuture<Boolean> second = acknowledger.ack("jclouds-test", claimed(SECOND));
+         // the batch is deleted while the claim still holds the messages
+         acknowledger.released(CLAIM_ID);
+
+         assertTrue(first.isDone());
+         assertTrue(second.isDone());
+         assertTrue(first.get());
+         assertTrue(second.get());
+         acknowledger.close();
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages/" + FIRST + "?claim_id=" + CLAIM_ID + " HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/messages/" + SECOND + "?claim_id=" + CLAIM_ID + " HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void ackAfterCloseFailsWhetherBatchedOrNot() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+
+      try {
+         MarconiAcknowledger acknowledger = acknowledger(server).build();
+         acknowledger.claimed(CLAIM_ID, 300);
+         acknowledger.close();
+
+         try {
+            acknowledger.ack("jclouds-test", claimed(FIRST));
+            fail("batched ack accepted after close");
+         }
+         catch (IllegalStateException expected) {
+         }
+         acknowledger.released(CLAIM_ID);
+         try {
+            acknowledger.ack("jclouds-test", claimed(SECOND));
+            fail("ack by claim accepted after close");
+         }
+         catch (IllegalStateException expected) {
+         }
+
+         assertEquals(server.getRequestCount(), 0);
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   private MarconiAcknowledger.Builder acknowledger(MockWebServer server) {
+      MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+      return MarconiAcknowledger.builder().api(api).region("DFW").clientId(CLIENT_ID).maxInFlightRequests(1);
+   }
+
+   private static Message claimed(String id) {
+      return Message.builder().id(id).claimId(CLAIM_ID).body("{}").ttl(300).age(1).build();
+   }
+}
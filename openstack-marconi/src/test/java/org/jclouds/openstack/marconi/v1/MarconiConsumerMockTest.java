@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class MarconiConsumerMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+   private static final String CLAIM_ID = "52a64d30ef913e6d05e7f786";
+   private static final String QUEUE_PATH = "/v1/123123/queues/jclouds-test";
+
+   public void handlesDeletesAndRenewsClaimedMessages() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      final QueueServer queue = new QueueServer(claimed("52a645633ac24e6f0be88d44", "52a6495bef913e6d195dcffe"));
+      server.setDispatcher(queue);
+
+      final List<Message> handled = new CopyOnWriteArrayList<Message>();
+      final CountDownLatch allHandled = new CountDownLatch(2);
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MarconiConsumer consumer = MarconiConsumer.builder()
+               .claimApi(api.getClaimApi("DFW", CLIENT_ID, "jclouds-test"))
+               .messageApi(api.getMessageApi("DFW", CLIENT_ID, "jclouds-test"))
+               .ttl(60).limit(2).bufferCapacity(2).lowWaterMark(0).maxInFlight(2)
+               .renewInterval(50, TimeUnit.MILLISECONDS).idleBackoff(1, TimeUnit.HOURS)
+               .handler(new MarconiConsumer.MessageHandler() {
+                  @Override
+                  public void handle(Message message) throws Exception {
+                     // keep the claim outstanding until it has been renewed
+                     assertTrue(queue.renewed.await(10, TimeUnit.SECONDS), "claim was not renewed");
+                     handled.add(message);
+                     allHandled.countDown();
+                  }
+               })
+               .build()
+               .start();
+
+         assertTrue(allHandled.await(10, TimeUnit.SECONDS));
+         assertEquals(handled.size(), 2);
+         for (Message message : handled) {
+            assertEquals(message.getClaimId().get(), CLAIM_ID);
+         }
+         queue.awaitRequests(2, "DELETE " + QUEUE_PATH + "/messages/");
+         consumer.close();
+
+         List<String> requests = queue.requests;
+         assertEquals(requests.get(0), "POST /tokens HTTP/1.1");
+         assertEquals(requests.get(1), "POST " + QUEUE_PATH + "/claims?limit=2 HTTP/1.1");
+         assertTrue(requests.contains("PATCH " + QUEUE_PATH + "/claims/" + CLAIM_ID + " HTTP/1.1"),
+               requests.toString());
+         assertTrue(requests.contains("DELETE " + QUEUE_PATH + "/messages/52a645633ac24e6f0be88d44?claim_id=" + CLAIM_ID
+               + " HTTP/1.1"), requests.toString());
+         assertTrue(requests.contains("DELETE " + QUEUE_PATH + "/messages/52a6495bef913e6d195dcffe?claim_id=" + CLAIM_ID
+               + " HTTP/1.1"), requests.toString());
+         // every message of the claim was deleted, there is nothing left to release
+         assertFalse(requests.contains("DELETE " + QUEUE_PATH + "/claims/" + CLAIM_ID + " HTTP/1.1"),
+               requests.toString());
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void closeReleasesClaimOfMessagesNotHandled() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      final QueueServer queue = new QueueServer(claimed("52a645633ac24e6f0be88d44", "52a6495bef913e6d195dcffe",
+            "52a6495bef913e6d195dcfff"));
+      server.setDispatcher(queue);
+
+      final CountDownLatch handling = new CountDownLatch(1);
+      final CountDownLatch finish = new CountDownLatch(1);
+      ExecutorService handlerExecutor = Executors.newSingleThreadExecutor();
+      ExecutorService closer = Executors.newSingleThreadExecutor();
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         final MarconiConsumer consumer = MarconiConsumer.builder()
+               .claimApi(api.getClaimApi("DFW", CLIENT_ID, "jclouds-test"))
+               .messageApi(api.getMessageApi("DFW", CLIENT_ID, "jclouds-test"))
+               .limit(3).bufferCapacity(3).lowWaterMark(0).maxInFlight(1)
+               .renewInterval(50, TimeUnit.MILLISECONDS).closeTimeout(10, TimeUnit.SECONDS)
+               .handlerExecutor(handlerExecutor)
+               .handler(new MarconiConsumer.MessageHandler() {
+                  @Override
+                  public void handle(Message message) throws Exception {
+                     handling.countDown();
+                     finish.await();
+                  }
+               })
+               .build()
+               .start();
+
+         // the first message is being handled, the second waits for a handler and the third is buffered
+         assertTrue(handling.await(10, TimeUnit.SECONDS));
+         Future<?> closed = closer.submit(new Runnable() {
+            @Override
+            public void run() {
+               consumer.close();
+            }
+         });
+         for (int i = 0; i < 1000 && consumer.getBufferedCount() > 0; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+         }
+         assertEquals(consumer.getBufferedCount(), 0);
+         // close waits for the message being handled and keeps renewing its claim meanwhile
+         int renewals = queue.count("PATCH ");
+         queue.awaitRequests(renewals + 1, "PATCH ");
+         assertFalse(closed.isDone());
+         assertFalse(queue.requests.contains("DELETE " + QUEUE_PATH + "/claims/" + CLAIM_ID + " HTTP/1.1"));
+
+         // the claim is released once the message being handled is done
+         finish.countDown();
+         closed.get(10, TimeUnit.SECONDS);
+
+         List<String> requests = Lists.newArrayList();
+         for (String request : queue.requests) {
+            if (!request.startsWith("PATCH ")) {
+               requests.add(request);
+            }
+         }
+         assertEquals(requests, ImmutableList.of(
+               "POST /tokens HTTP/1.1",
+               "POST " + QUEUE_PATH + "/claims?limit=3 HTTP/1.1",
+               "DELETE " + QUEUE_PATH + "/messages/52a645633ac24e6f0be88d44?claim_id=" + CLAIM_ID + " HTTP/1.1",
+               "DELETE " + QUEUE_PATH + "/claims/" + CLAIM_ID + " HTTP/1.1"));
+         assertEquals(consumer.getUnacknowledgedCount(), 0);
+      }
+      finally {
+         finish.countDown();
+         closer.shutdownNow();
+         handlerExecutor.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   public void messageThatCouldNotBeDeletedIsCounted() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      QueueServer queue = new QueueServer(claimed("52a645633ac24e6f0be88d44"));
+      queue.deleteResponseCode = 404;
+      server.setDispatcher(queue);
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MarconiConsumer consumer = MarconiConsumer.builder()
+               .claimApi(api.getClaimApi("DFW", CLIENT_ID, "jclouds-test"))
+               .messageApi(api.getMessageApi("DFW", CLIENT_ID, "jclouds-test"))
+               .limit(1).bufferCapacity(1).lowWaterMark(0).maxInFlight(1).idleBackoff(1, TimeUnit.HOURS)
+               .handler(new MarconiConsumer.MessageHandler() {
+                  @Override
+                  public void handle(Message message) throws Exception {
+                  }
+               })
+               .build()
+               .start();
+
+         queue.awaitRequests(1, "DELETE " + QUEUE_PATH + "/messages/");
+         consumer.close();
+
+         assertEquals(consumer.getUnacknowledgedCount(), 1);
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   private static String claimed(String... ids) {
+      List<String> messages = Lists.newArrayList();
+      for (String id : ids) {
+         messages.add("{\"body\": \"{}\", \"age\": 1, \"href\": \"/v1/queues/jclouds-test/messages/" + id
+               + "?claim_id=" + CLAIM_ID + "\", \"ttl\": 86400}");
+      }
+      return "[" + Joiner.on(", ").join(messages) + "]";
+   }
+
+   /**
+    * Answers the first claim with the given messages and the following ones with no messages.
+    */
+   private class QueueServer extends Dispatcher {
+      final List<String> requests = new CopyOnWriteArrayList<String>();
+      final CountDownLatch renewed = new CountDownLatch(1);
+      volatile int deleteResponseCode = 204;
+      private final BlockingQueue<String> claims = new LinkedBlockingQueue<String>();
+
+      QueueServer(String firstClaim) {
+         claims.add(firstClaim);
+      }
+
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+         requests.add(request.getRequestLine());
+         if (request.getPath().equals("/tokens")) {
+            return new MockResponse().setBody(accessRackspace);
+         }
+         if (request.getMethod().equals("POST") && request.getPath().startsWith(QUEUE_PATH + "/claims")) {
+            String claim = claims.poll();
+            return claim == null ? new MockResponse().setResponseCode(404)
+                  : new MockResponse().setResponseCode(201).setBody(claim);
+         }
+         if (request.getMethod().equals("PATCH")) {
+            renewed.countDown();
+         }
+         if (request.getMethod().equals("DELETE") && request.getPath().startsWith(QUEUE_PATH + "/messages/")) {
+            return new MockResponse().setResponseCode(deleteResponseCode);
+         }
+         return new MockResponse().setResponseCode(204);
+      }
+
+      int count(String prefix) {
+         int seen = 0;
+         for (String request : requests) {
+            if (request.startsWith(prefix)) {
+               seen++;
+            }
+         }
+         return seen;
+      }
+
+      void awaitRequests(int count, String prefix) throws InterruptedException {
+         for (int i = 0; i < 1000; i++) {
+            if (count(prefix) >= count) {
+               return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+         }
+      }
+   }
+}
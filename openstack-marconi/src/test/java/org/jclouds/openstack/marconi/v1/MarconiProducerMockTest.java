@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class MarconiProducerMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+
+   public void sendCoalescesMessagesIntoOneRequest() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"partial\": false, \"resources\": [\"/v1/queues/jclouds-test/messages/5265540ef4919b655da1760a\", \"/v1/queues/jclouds-test/messages/5265540ef4919b655da1760b\", \"/v1/queues/jclouds-test/messages/5265540ef4919b655da1760c\"]}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MarconiProducer producer = MarconiProducer.builder()
+               .api(api).region("DFW").clientId(CLIENT_ID)
+               .maxBatchSize(3).linger(1, TimeUnit.MINUTES)
+               .build();
+
+         try {
+            ListenableFuture<String> id1 = producer.send("jclouds-test", message("SF"));
+            ListenableFuture<String> id2 = producer.send("jclouds-test", message("Austin"));
+            ListenableFuture<String> id3 = producer.send("jclouds-test", message("HK"));
+
+            assertEquals(id1.get(10, TimeUnit.SECONDS), "5265540ef4919b655da1760a");
+            assertEquals(id2.get(10, TimeUnit.SECONDS), "5265540ef4919b655da1760b");
+            assertEquals(id3.get(10, TimeUnit.SECONDS), "5265540ef4919b655da1760c");
+         }
+         finally {
+            producer.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest create = server.takeRequest();
+         assertEquals(create.getRequestLine(), "POST /v1/123123/queues/jclouds-test/messages HTTP/1.1");
+         String body = create.getUtf8Body();
+         assertTrue(body.contains("SF Java User Group"), body);
+         assertTrue(body.contains("Austin Java User Group"), body);
+         assertTrue(body.contains("HK Java User Group"), body);
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void flushSendsPartialBatch() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"partial\": false, \"resources\": [\"/v1/queues/jclouds-test/messages/526550ecef913e655ff84db8\"]}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MarconiProducer producer = MarconiProducer.builder()
+               .api(api).region("DFW").clientId(CLIENT_ID)
+               .maxBatchSize(10).linger(1, TimeUnit.MINUTES)
+               .build();
+
+         try {
+            ListenableFuture<String> id = producer.send("jclouds-test", message("Edmonton"));
+            producer.flush();
+
+            assertEquals(id.get(10, TimeUnit.SECONDS), "526550ecef913e655ff84db8");
+         }
+         finally {
+            producer.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "POST /v1/123123/queues/jclouds-test/messages HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   private static CreateMessage message(String city) {
+      String json = "{\"event\":{\"name\":\"" + city + " Java User Group\",\"attendees\":[\"bob\",\"jim\",\"sally\"]}}";
+      return CreateMessage.builder().ttl(120).body(json).build();
+   }
+}
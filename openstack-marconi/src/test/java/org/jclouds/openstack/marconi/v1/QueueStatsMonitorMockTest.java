@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.marconi.v1.domain.Aged;
+import org.jclouds.openstack.marconi.v1.domain.MessagesStats;
+import org.jclouds.openstack.marconi.v1.domain.QueueStats;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class QueueStatsMonitorMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+
+   public void refreshNotifiesListeners() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": {\"claimed\": 1, \"oldest\": {\"age\": 0, \"href\": \"/v1/queues/jclouds-test/messages/526558b3f4919b655feba3a7\", \"created\": \"2013-10-21T16:39:15Z\"}, \"total\": 4, \"newest\": {\"age\": 0, \"href\": \"/v1/queues/jclouds-test/messages/526558b33ac24e663fc545e7\", \"created\": \"2013-10-21T16:39:15Z\"}, \"free\": 3}}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         final List<QueueStatsMonitor.Snapshot> received = new CopyOnWriteArrayList<QueueStatsMonitor.Snapshot>();
+         QueueStatsMonitor monitor = QueueStatsMonitor.builder()
+               .api(api).region("DFW").clientId(CLIENT_ID)
+               .queues(ImmutableSet.of("jclouds-test")).interval(1, TimeUnit.HOURS)
+               .listener(new QueueStatsMonitor.Listener() {
+                  @Override
+                  public void onSnapshot(QueueStatsMonitor.Snapshot snapshot) {
+                     received.add(snapshot);
+                  }
+
+                  @Override
+                  public void onFailure(String queue, Throwable cause) {
+                  }
+               })
+               .build();
+
+         try {
+            assertEquals(monitor.getQueues(), ImmutableSet.of("jclouds-test"));
+            assertFalse(monitor.getSnapshot("jclouds-test").isPresent());
+
+            QueueStatsMonitor.Snapshot snapshot = monitor.refresh("jclouds-test").get();
+
+            assertEquals(snapshot.getMessagesStats().getTotal(), 4);
+            assertEquals(snapshot.getClaimedToFreeRatio(), 1 / 3.0);
+            assertEquals(snapshot.getElapsedMillis(), 0);
+            assertFalse(snapshot.getOldestAgeTrend().isPresent());
+            assertEquals(monitor.getSnapshot("jclouds-test").get(), snapshot);
+            assertEquals(received.size(), 1);
+         }
+         finally {
+            monitor.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/stats HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void snapshotEstimatesRates() {
+      QueueStatsMonitor.Snapshot first = QueueStatsMonitor.Snapshot.create("jclouds-test",
+            stats(10, aged("a", 100, 0), aged("j", 10, 90)), 0, null);
+      // half of the previous messages were consumed and 15 new ones arrived in 10 seconds
+      QueueStatsMonitor.Snapshot second = QueueStatsMonitor.Snapshot.create("jclouds-test",
+            stats(20, aged("f", 60, 45), aged("y", 0, 110)), 10000, first);
+
+      assertEquals(second.getElapsedMillis(), 10000);
+      assertEquals(second.getDequeueRate(), 0.5);
+      assertEquals(second.getEnqueueRate(), 1.5);
+      assertEquals(second.getOldestAgeTrend().get(), -4.0);
+
+      QueueStatsMonitor.Snapshot drained = QueueStatsMonitor.Snapshot.create("jclouds-test",
+            emptyStats(), 20000, second);
+
+      assertEquals(drained.getDequeueRate(), 2.0);
+      assertEquals(drained.getEnqueueRate(), 0.0);
+      assertFalse(drained.getOldestAgeTrend().isPresent());
+      assertEquals(drained.getClaimedToFreeRatio(), 0.0);
+   }
+
+   private static QueueStats stats(int total, Aged oldest, Aged newest) {
+      return QueueStats.builder()
+            .messageStats(MessagesStats.builder().claimed(0).free(total).total(total).oldest(oldest).newest(newest)
+                  .build())
+            .build();
+   }
+
+   private static QueueStats emptyStats() {
+      return QueueStats.builder().messageStats(MessagesStats.builder().build()).build();
+   }
+
+   private static Aged aged(String id, int age, long createdSeconds) {
+      return Aged.builder().id(id).age(age).created(new Date(TimeUnit.SECONDS.toMillis(createdSeconds))).build();
+   }
+}
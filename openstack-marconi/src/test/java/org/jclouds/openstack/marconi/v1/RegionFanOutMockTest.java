@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
+import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ForwardingExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class RegionFanOutMockTest extends BaseOpenStackMockTest<MarconiApi> {
+   private static final UUID CLIENT_ID = UUID.fromString("3381af92-2b9e-11e3-b191-71861300734c");
+
+   public void broadcastReturnsResultPerRegion() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"partial\": false, \"resources\": [\"/v1/queues/jclouds-test/messages/526550ecef913e655ff84db8\"]}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         RegionFanOut fanOut = RegionFanOut.builder().api(api).clientId(CLIENT_ID).regions(ImmutableSet.of("DFW"))
+               .build();
+
+         try {
+            CreateMessage message = CreateMessage.builder().ttl(120).body("{\"event\":\"deploy\"}").build();
+            Map<String, RegionFanOut.Result<MessagesCreated>> results = fanOut.broadcast("jclouds-test",
+                  ImmutableList.of(message));
+
+            assertEquals(results.keySet(), ImmutableSet.of("DFW"));
+            assertTrue(results.get("DFW").isSuccess());
+            assertEquals(results.get("DFW").get().getMessageIds(), ImmutableList.of("526550ecef913e655ff84db8"));
+         }
+         finally {
+            fanOut.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "POST /v1/123123/queues/jclouds-test/messages HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void claimFirstReturnsNonEmptyClaim() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).setBody("[{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"HK Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 1997, \"href\": \"/v1/queues/jclouds-test/messages/52a645633ac24e6f0be88d44?claim_id=52a64d30ef913e6d05e7f786\", \"ttl\": 86400}]"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         RegionFanOut fanOut = RegionFanOut.builder().api(api).clientId(CLIENT_ID).regions(ImmutableSet.of("DFW"))
+               .build();
+
+         try {
+            Optional<RegionFanOut.RegionClaim> claim = fanOut.claimFirst("jclouds-test", 300, 200, 1);
+
+            assertTrue(claim.isPresent());
+            assertEquals(claim.get().getRegion(), "DFW");
+            assertEquals(claim.get().getMessages().get(0).getClaimId().get(), "52a64d30ef913e6d05e7f786");
+         }
+         finally {
+            fanOut.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "POST /v1/123123/queues/jclouds-test/claims?limit=1 HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void claimFirstIsAbsentWhenEveryRegionIsEmpty() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         RegionFanOut fanOut = RegionFanOut.builder().api(api).clientId(CLIENT_ID).regions(ImmutableSet.of("DFW"))
+               .build();
+
+         try {
+            assertFalse(fanOut.claimFirst("jclouds-test", 300, 200, 1).isPresent());
+         }
+         finally {
+            fanOut.close();
+         }
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void claimFirstReleasesWinningClaimWhenInterrupted() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).setBody("[{\"body\": \"{}\", \"age\": 1997, \"href\": \"/v1/queues/jclouds-test/messages/52a645633ac24e6f0be88d44?claim_id=52a64d30ef913e6d05e7f786\", \"ttl\": 86400}]"));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      // claims on the calling thread, which is interrupted before it collects the result
+      ExecutorService interrupting = new ForwardingExecutorService() {
+         private final ExecutorService delegate = MoreExecutors.sameThreadExecutor();
+
+         @Override
+         protected ExecutorService delegate() {
+            return delegate;
+         }
+
+         @Override
+         public void execute(Runnable command) {
+            delegate.execute(command);
+            Thread.currentThread().interrupt();
+         }
+      };
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         RegionFanOut fanOut = RegionFanOut.builder().api(api).clientId(CLIENT_ID).regions(ImmutableSet.of("DFW"))
+               .executor(interrupting).build();
+
+         try {
+            assertFalse(fanOut.claimFirst("jclouds-test", 300, 200, 1).isPresent());
+            assertTrue(Thread.interrupted());
+         }
+         finally {
+            fanOut.close();
+         }
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "POST /v1/123123/queues/jclouds-test/claims?limit=1 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "DELETE /v1/123123/queues/jclouds-test/claims/52a64d30ef913e6d05e7f786 HTTP/1.1");
+      }
+      finally {
+         Thread.interrupted();
+         server.shutdown();
+      }
+   }
+}
@@ -16,26 +16,39 @@
  */
 package org.jclouds.openstack.marconi.v1.features;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.io.CharStreams;
+import com.google.common.reflect.Reflection;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
 import org.jclouds.openstack.marconi.v1.MarconiApi;
+import org.jclouds.openstack.marconi.v1.PrefetchingMessageIterator;
 import org.jclouds.openstack.marconi.v1.domain.CreateMessage;
 import org.jclouds.openstack.marconi.v1.domain.Message;
+import org.jclouds.openstack.marconi.v1.domain.MessageReader;
 import org.jclouds.openstack.marconi.v1.domain.MessageStream;
 import org.jclouds.openstack.marconi.v1.domain.MessagesCreated;
+import org.jclouds.openstack.marconi.v1.domain.StreamedMessage;
 import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
 import org.testng.annotations.Test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.jclouds.openstack.marconi.v1.options.StreamMessagesOptions.Builder.limit;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 @Test
 public class MessageApiMockTest extends BaseOpenStackMockTest<MarconiApi> {
@@ -190,6 +203,162 @@ public class MessageApiMockTest extends BaseOpenStackMockTest<MarconiApi> {
       }
    }
 
+   public void streamAllPagesOfMessages() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"SF Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba1\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"Austin Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba2\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4508&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"HK Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba3\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"SF Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc558e\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4510&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"Austin Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc558f\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"HK Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc5590\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4512&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MessageApi messageApi = api.getMessageApi("DFW", CLIENT_ID, "jclouds-test");
+
+         List<Message> messages = messageApi.streamAll(limit(2)).concat().toList();
+
+         assertEquals(messages.size(), 6);
+         assertEquals(messages.get(0).getId(), "526ec635b04a5866dbe31ba1");
+         assertEquals(messages.get(5).getId(), "526ec640f4919b69a7bc5590");
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4508&limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4510&limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4512&limit=2 HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void streamAllPagesOfMessagesWithPrefetch() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"SF Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba1\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"Austin Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba2\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4508&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"HK Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba3\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"SF Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc558e\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4510&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"Austin Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc558f\", \"ttl\": 86400}, {\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"HK Java User Group\\\",\\\"attendees\\\":[\\\"bob\\\",\\\"jim\\\",\\\"sally\\\"]}}\", \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec640f4919b69a7bc5590\", \"ttl\": 86400}], \"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4512&limit=2\", \"rel\": \"next\"}]}"));
+      server.enqueue(new MockResponse().setResponseCode(204));
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MessageApi messageApi = api.getMessageApi("DFW", CLIENT_ID, "jclouds-test");
+
+         PrefetchingMessageIterator messages = PrefetchingMessageIterator.create(messageApi, executor, 2, limit(2));
+
+         assertEquals(Iterators.size(messages), 6);
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4508&limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4510&limit=2 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?marker=4512&limit=2 HTTP/1.1");
+      }
+      finally {
+         executor.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   public void errorWhilePrefetchingIsRethrownToTheCaller() throws Exception {
+      final Error failure = new AssertionError("stream failed");
+      MessageApi messageApi = Reflection.newProxy(MessageApi.class, new InvocationHandler() {
+         @Override
+         public Object invoke(Object proxy, Method method, Object[] args) {
+            throw failure;
+         }
+      });
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+
+      try {
+         PrefetchingMessageIterator messages = PrefetchingMessageIterator.create(messageApi, executor, 2, limit(2));
+         try {
+            messages.hasNext();
+            fail("error was not rethrown");
+         }
+         catch (AssertionError e) {
+            assertSame(e, failure);
+         }
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void openStreamOfMessages() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"links\": [{\"href\": \"/v1/queues/jclouds-test/messages?marker=4508&limit=2\", \"rel\": \"next\"}], \"messages\": [{\"body\": \"{\\\"event\\\":{\\\"name\\\":\\\"SF Java User Group\\\"}}\", \"age\": 8082, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba1?claim_id=5292aec1ef913e61c4c58b0b\", \"ttl\": 86400}, {\"body\": {\"event\": {\"name\": \"Austin Java User Group\", \"attendees\": 3, \"rating\": 4.50}}, \"age\": 8071, \"href\": \"/v1/queues/jclouds-test/messages/526ec635b04a5866dbe31ba2\", \"ttl\": 86400}]}"));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MessageApi messageApi = api.getMessageApi("DFW", CLIENT_ID, "jclouds-test");
+
+         MessageReader reader = messageApi.openStream(limit(2));
+
+         try {
+            StreamedMessage first = reader.next();
+            assertEquals(first.getId(), "526ec635b04a5866dbe31ba1");
+            assertEquals(first.getClaimId().get(), "5292aec1ef913e61c4c58b0b");
+            assertEquals(first.getTTL(), 86400);
+            assertEquals(first.getAge(), 8082);
+            assertEquals(first.getBody(), "{\"event\":{\"name\":\"SF Java User Group\"}}");
+            Message listed = Message.builder().id("526ec635b04a5866dbe31ba1").ttl(86400).age(8082)
+                  .body(first.getBody()).claimId("5292aec1ef913e61c4c58b0b").build();
+            assertEquals(first, listed);
+            assertEquals(listed, first);
+            assertEquals(first.hashCode(), listed.hashCode());
+            assertEquals(Message.builder().fromMessage(first).build().getBody(), first.getBody());
+
+            StreamedMessage second = reader.next();
+            assertEquals(second.getId(), "526ec635b04a5866dbe31ba2");
+            assertFalse(second.getClaimId().isPresent());
+            assertEquals(second.getBodyBytes().asCharSource(Charsets.UTF_8).read(),
+                  "{\"event\":{\"name\":\"Austin Java User Group\",\"attendees\":3,\"rating\":4.50}}");
+            assertEquals(second.getBodyBytes().asCharSource(Charsets.UTF_8).read(), second.getBody());
+            assertEquals(first.getBodyBytes().asCharSource(Charsets.UTF_8).read(), first.getBody());
+            assertEquals(CharStreams.toString(second.openBodyReader()), second.getBody());
+
+            assertFalse(reader.hasNext());
+            assertTrue(reader.nextStreamOptions().get().buildQueryParameters().containsEntry("marker", "4508"));
+         }
+         finally {
+            reader.close();
+         }
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "GET /v1/123123/queues/jclouds-test/messages?limit=2 HTTP/1.1");
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
+   public void openStreamOfZeroMessages() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         MarconiApi api = api(server.getUrl("/").toString(), "openstack-marconi");
+         MessageApi messageApi = api.getMessageApi("DFW", CLIENT_ID, "jclouds-test");
+
+         MessageReader reader = messageApi.openStream();
+
+         assertFalse(reader.hasNext());
+         assertFalse(reader.nextStreamOptions().isPresent());
+
+         assertEquals(server.getRequestCount(), 2);
+      }
+      finally {
+         server.shutdown();
+      }
+   }
+
    public void listMessagesByIds() throws Exception {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(new MockResponse().setBody(accessRackspace));
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.marconi.v1.functions;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "MessageHrefsTest")
+public class MessageHrefsTest {
+
+   public void idFromHrefWithoutQuery() {
+      assertEquals(MessageHrefs.idFromHref("/v1/queues/jclouds-test/messages/526550ecef913e655ff84db8"),
+            "526550ecef913e655ff84db8");
+   }
+
+   public void idFromHrefWithQuery() {
+      assertEquals(MessageHrefs.idFromHref(
+            "/v1/queues/jclouds-test/messages/52a72a7c0cf7cc2a4f1e7a10?claim_id=52a72a7c3c6e0c84bd5c3a45"),
+            "52a72a7c0cf7cc2a4f1e7a10");
+   }
+
+   public void idFromBareId() {
+      assertEquals(MessageHrefs.idFromHref("526550ecef913e655ff84db8"), "526550ecef913e655ff84db8");
+   }
+
+   public void claimIdFromHref() {
+      assertEquals(MessageHrefs.claimIdFromHref(
+            "/v1/queues/jclouds-test/messages/52a72a7c0cf7cc2a4f1e7a10?claim_id=52a72a7c3c6e0c84bd5c3a45"),
+            "52a72a7c3c6e0c84bd5c3a45");
+   }
+
+   public void claimIdFromHrefAmongOtherParams() {
+      assertEquals(MessageHrefs.claimIdFromHref(
+            "/v1/queues/jclouds-test/messages/52a72a7c0cf7cc2a4f1e7a10?foo=bar&claim_id=a28ee94e-6cb4&baz=1"),
+            "a28ee94e-6cb4");
+   }
+
+   public void claimIdIsDecoded() {
+      assertEquals(MessageHrefs.claimIdFromHref("/v1/queues/q/messages/1?claim_id=a%2Db"), "a-b");
+   }
+
+   public void noClaimId() {
+      assertNull(MessageHrefs.claimIdFromHref("/v1/queues/jclouds-test/messages/526550ecef913e655ff84db8"));
+      assertNull(MessageHrefs.claimIdFromHref("/v1/queues/jclouds-test/messages/1?my_claim_id=2"));
+   }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.functions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.json.Json;
+import org.jclouds.json.config.GsonModule;
+import org.jclouds.openstack.neutron.v2.domain.DomainCompactor;
+import org.jclouds.openstack.neutron.v2.domain.Ports;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+
+/**
+ * Compares the parsing time and the retained heap of ports parsed with and without
+ * {@link org.jclouds.openstack.neutron.v2.config.NeutronProperties#COMPACT_PARSING}.
+ * <p/>
+ * Run the parsing time benchmark with {@code mvn -Pbenchmark test-compile exec:java
+ * -Dexec.args=PortsParsingBenchmark}. The retained heap is not something JMH measures, so {@link #main(String[])}
+ * reports it instead: run {@code mvn -Pbenchmark test-compile exec:java
+ * -Dexec.mainClass=org.jclouds.openstack.neutron.v2.functions.PortsParsingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PortsParsingBenchmark {
+
+   private static final int PORTS = 10000;
+   private static final int PAGES = 10;
+
+   @Param({ "false", "true" })
+   public boolean compact;
+
+   private ParsePorts parser;
+   private String page;
+
+   @Setup
+   public void setup() {
+      parser = parser(compact);
+      page = portsPage(PORTS, 0);
+   }
+
+   @Benchmark
+   public Ports parse() {
+      return parser.apply(response(page));
+   }
+
+   /**
+    * Parses {@link #PAGES} pages of {@link #PORTS} ports in each mode, keeping them all, and prints the heap they
+    * retain.
+    */
+   public static void main(String[] args) {
+      for (boolean compact : new boolean[] { false, true }) {
+         ParsePorts parser = parser(compact);
+         List<Ports> retained = Lists.newArrayList();
+         long before = usedHeapAfterGc();
+         for (int i = 0; i < PAGES; i++) {
+            retained.add(parser.apply(response(portsPage(PORTS, i))));
+         }
+         long after = usedHeapAfterGc();
+         // uses the result after measuring so that it is still reachable while measured
+         int ports = retained.size() * PORTS;
+         System.out.printf("compact=%s: %d ports retain %,d bytes (%d bytes per port)%n", compact, ports,
+               after - before, (after - before) / ports);
+      }
+   }
+
+   private static ParsePorts parser(boolean compact) {
+      Json json = Guice.createInjector(new GsonModule()).getInstance(Json.class);
+      return new ParsePorts(json, compact, new DomainCompactor());
+   }
+
+   private static HttpResponse response(String body) {
+      return HttpResponse.builder().statusCode(200).payload(body).build();
+   }
+
+   private static long usedHeapAfterGc() {
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      for (int i = 0; i < 5; i++) {
+         System.gc();
+      }
+      return memory.getHeapMemoryUsage().getUsed();
+   }
+
+   /**
+    * A page of ports as seen in a controller's region: 20 tenants with 5 networks each, all ports in the default
+    * security group of their tenant and bound by the same agent type.
+    */
+   private static String portsPage(int count, int page) {
+      StringBuilder json = new StringBuilder("{\"ports\": [");
+      for (int i = 0; i < count; i++) {
+         int index = page * count + i;
+         int tenant = index % 20;
+         int network = index % 100;
+         if (i > 0)
+            json.append(',');
+         json.append("{\"id\": \"").append(String.format("%08x-0000-4000-8000-%012x", index, index)).append('"')
+               .append(", \"status\": \"ACTIVE\", \"name\": \"\", \"admin_state_up\": true")
+               .append(", \"network_id\": \"").append(String.format("%08x-1111-4000-8000-000000000000", network))
+               .append("\", \"tenant_id\": \"").append(String.format("%032x", tenant))
+               .append("\", \"mac_address\": \"").append(String.format("fa:16:3e:%02x:%02x:%02x",
+                     (index >> 16) & 0xff, (index >> 8) & 0xff, index & 0xff))
+               .append("\", \"device_id\": \"").append(String.format("%08x-2222-4000-8000-000000000000", index / 2))
+               .append("\", \"device_owner\": \"compute:nova\"")
+               .append(", \"fixed_ips\": [{\"ip_address\": \"10.").append(network).append('.')
+               .append((index >> 8) & 0xff).append('.').append(index & 0xff)
+               .append("\", \"subnet_id\": \"").append(String.format("%08x-3333-4000-8000-000000000000", network))
+               .append("\"}], \"security_groups\": [\"").append(String.format("%08x-4444-4000-8000-000000000000", tenant))
+               .append("\"], \"allowed_address_pairs\": [], \"extra_dhcp_opts\": []")
+               .append(", \"binding:vnic_type\": \"normal\", \"binding:vif_type\": \"ovs\"")
+               .append(", \"binding:vif_details\": {\"port_filter\": true, \"ovs_hybrid_plug\": true}")
+               .append(", \"binding:host_id\": \"compute-").append(index % 50)
+               .append("\", \"binding:profile\": {}, \"port_security_enabled\": true}");
+      }
+      return json.append("], \"ports_links\": []}").toString();
+   }
+}
@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.compare;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.formatIPv4;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.formatIPv6;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.hi;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.lo;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.parseIPv4;
+import static org.jclouds.openstack.neutron.v2.IpAddresses.parseIPv6;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.IpAddresses.Range;
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+/**
+ * Answers "which port owns this address" and "which floating IP maps to this fixed IP" for large numbers of
+ * addresses without scanning every port.
+ * <p/>
+ * Addresses are parsed once when added: IPv4 addresses are kept as {@code int}s and IPv6 addresses as pairs of
+ * {@code long}s, in open addressing hash tables over primitive arrays. Besides exact lookups, the index supports
+ * CIDR range queries and computes the free addresses of the allocation pools of a subnet.
+ * <p/>
+ * The index is built from listings and does not support removal; build a new one to reflect changes. It is not
+ * thread safe while being built, but can be shared for reading once complete, including range queries.
+ */
+@Beta
+public class AddressIndex {
+
+   private final AddressTable<Port> portsByFixedIp = new AddressTable<Port>();
+   private final AddressTable<FloatingIP> floatingIPsByFixedIp = new AddressTable<FloatingIP>();
+   private final AddressTable<FloatingIP> floatingIPsByAddress = new AddressTable<FloatingIP>();
+
+   public static AddressIndex create() {
+      return new AddressIndex();
+   }
+
+   protected AddressIndex() {
+   }
+
+   /**
+    * Indexes the fixed IPs of a port.
+    */
+   public AddressIndex addPort(Port port) {
+      checkNotNull(port, "port");
+      if (port.getFixedIps() != null) {
+         for (IP ip : port.getFixedIps()) {
+            if (ip.getIpAddress() != null) {
+               portsByFixedIp.add(ip.getIpAddress(), ip.getSubnetId(), port);
+            }
+         }
+      }
+      return this;
+   }
+
+   public AddressIndex addPorts(Iterable<Port> ports) {
+      for (Port port : checkNotNull(ports, "ports")) {
+         addPort(port);
+      }
+      return this;
+   }
+
+   /**
+    * Indexes a floating IP by its own address and by the fixed IP it maps to.
+    */
+   public AddressIndex addFloatingIP(FloatingIP floatingIP) {
+      checkNotNull(floatingIP, "floatingIP");
+      if (floatingIP.getFloatingIpAddress() != null) {
+         floatingIPsByAddress.add(floatingIP.getFloatingIpAddress(), null, floatingIP);
+      }
+      if (floatingIP.getFixedIpAddress() != null) {
+         floatingIPsByFixedIp.add(floatingIP.getFixedIpAddress(), null, floatingIP);
+      }
+      return this;
+   }
+
+   public AddressIndex addFloatingIPs(Iterable<FloatingIP> floatingIPs) {
+      for (FloatingIP floatingIP : checkNotNull(floatingIPs, "floatingIPs")) {
+         addFloatingIP(floatingIP);
+      }
+      return this;
+   }
+
+   /**
+    * @return The ports with a fixed IP address. Networks of different tenants may overlap, so there can be several.
+    */
+   public List<Port> getPortsByFixedIp(String ipAddress) {
+      return portsByFixedIp.get(checkNotNull(ipAddress, "ipAddress"));
+   }
+
+   /**
+    * @return The floating IPs that map to a fixed IP address.
+    */
+   public List<FloatingIP> getFloatingIPsByFixedIp(String ipAddress) {
+      return floatingIPsByFixedIp.get(checkNotNull(ipAddress, "ipAddress"));
+   }
+
+   /**
+    * @return The floating IPs with a floating IP address.
+    */
+   public List<FloatingIP> getFloatingIPsByAddress(String ipAddress) {
+      return floatingIPsByAddress.get(checkNotNull(ipAddress, "ipAddress"));
+   }
+
+   /**
+    * @return The ports with a fixed IP within a CIDR, such as {@code 10.0.0.0/24} or {@code 2001:db8::/64}. A port
+    *         with several fixed IPs in the range is returned once per address.
+    */
+   public List<Port> getPortsInCidr(String cidr) {
+      return portsByFixedIp.inRange(Range.fromCidr(checkNotNull(cidr, "cidr")), null);
+   }
+
+   /**
+    * @return The ports with a fixed IP on a subnet, matched by the CIDR and id of the subnet.
+    */
+   public List<Port> getPortsInSubnet(Subnet subnet) {
+      checkNotNull(subnet, "subnet");
+      return portsByFixedIp.inRange(Range.fromCidr(checkNotNull(subnet.getCidr(), "cidr")), subnet.getId());
+   }
+
+   /**
+    * Counts the addresses of the allocation pools of a subnet that are neither a fixed IP of an indexed port on the
+    * subnet nor the gateway. Saturates at {@link Long#MAX_VALUE} for large IPv6 pools.
+    */
+   public long countFreeAddresses(Subnet subnet) {
+      checkNotNull(subnet, "subnet");
+      long free = 0;
+      for (AllocationPool pool : pools(subnet)) {
+         Range range = Range.fromPool(pool);
+         long used = portsByFixedIp.countUsed(range, subnet.getId());
+         if (subnet.getGatewayIp() != null && range.contains(subnet.getGatewayIp())
+               && !portsByFixedIp.isUsed(subnet.getGatewayIp(), subnet.getId())) {
+            used++;
+         }
+         long size = range.size();
+         free = size == Long.MAX_VALUE ? Long.MAX_VALUE : saturatedAdd(free, size - used);
+      }
+      return free;
+   }
+
+   /**
+    * @return Up to {@code max} free addresses of the allocation pools of a subnet, lowest first within each pool.
+    */
+   public List<String> getFreeAddresses(Subnet subnet, int max) {
+      checkNotNull(subnet, "subnet");
+      checkArgument(max >= 0, "max must not be negative");
+      ImmutableList.Builder<String> free = ImmutableList.builder();
+      int found = 0;
+      for (AllocationPool pool : pools(subnet)) {
+         found += collectFree(Range.fromPool(pool), portsByFixedIp, subnet.getId(), subnet.getGatewayIp(),
+               max - found, free);
+         if (found >= max) {
+            break;
+         }
+      }
+      return free.build();
+   }
+
+   private static Iterable<AllocationPool> pools(Subnet subnet) {
+      return subnet.getAllocationPools() == null ? ImmutableList.<AllocationPool> of() : subnet.getAllocationPools();
+   }
+
+   private static long saturatedAdd(long a, long b) {
+      long sum = a + b;
+      return sum < 0 ? Long.MAX_VALUE : sum;
+   }
+
+   /**
+    * Adds up to {@code max} addresses of a range that are not used on a subnet nor the gateway.
+    *
+    * @return The number of addresses added.
+    */
+   private static int collectFree(Range range, AddressTable<?> table, String subnetId, String gateway, int max,
+         ImmutableList.Builder<String> free) {
+      int found = 0;
+      if (!range.v6) {
+         long gatewayV4 = gateway == null ? -1 : parseIPv4(gateway);
+         for (long address = range.firstLo; address <= range.lastLo && found < max; address++) {
+            if (address != gatewayV4 && !table.isUsed((int) address, subnetId)) {
+               free.add(formatIPv4((int) address));
+               found++;
+            }
+         }
+         return found;
+      }
+      byte[] gatewayV6 = gateway == null ? null : parseIPv6(gateway);
+      long gatewayHi = gatewayV6 == null ? 0 : hi(gatewayV6);
+      long gatewayLo = gatewayV6 == null ? 0 : lo(gatewayV6);
+      long hi = range.firstHi;
+      long lo = range.firstLo;
+      while (found < max && compare(hi, lo, range.lastHi, range.lastLo) <= 0) {
+         boolean isGateway = gatewayV6 != null && hi == gatewayHi && lo == gatewayLo;
+         if (!isGateway && !table.isUsed(hi, lo, subnetId)) {
+            free.add(formatIPv6(hi, lo));
+            found++;
+         }
+         if (hi == range.lastHi && lo == range.lastLo) {
+            break;
+         }
+         lo++;
+         if (lo == 0) {
+            hi++;
+         }
+      }
+      return found;
+   }
+
+   /**
+    * Open addressing hash tables from IPv4 and IPv6 addresses to the values added for them. Several values can be
+    * added for the same address; they are chained through {@code next}, most recent first.
+    */
+   private static final class AddressTable<T> {
+      private static final int EMPTY = -1;
+
+      private int[] v4Keys = new int[16];
+      private int[] v4Heads = emptyHeads(16);
+      private int v4Size;
+      // built lazily by readers, who may race to build it; each publishes a complete array
+      private volatile long[] v4Sorted;
+
+      private long[] v6His = new long[16];
+      private long[] v6Los = new long[16];
+      private int[] v6Heads = emptyHeads(16);
+      private int v6Size;
+      private volatile int[] v6Sorted;
+
+      private final List<T> values = Lists.newArrayList();
+      private final List<String> subnetIds = Lists.newArrayList();
+      private int[] next = new int[16];
+
+      void add(String address, String subnetId, T value) {
+         long v4 = parseIPv4(address);
+         if (v4 >= 0) {
+            addV4((int) v4, subnetId, value);
+            return;
+         }
+         byte[] v6 = parseIPv6(address);
+         if (v6 != null) {
+            addV6(hi(v6), lo(v6), subnetId, value);
+         }
+      }
+
+      List<T> get(String address) {
+         return collect(head(address), null);
+      }
+
+      boolean isUsed(String address, String subnetId) {
+         return isUsedBy(head(address), subnetId);
+      }
+
+      boolean isUsed(int address, String subnetId) {
+         return isUsedBy(v4Heads[v4Slot(address)], subnetId);
+      }
+
+      boolean isUsed(long hi, long lo, String subnetId) {
+         return isUsedBy(v6Heads[v6Slot(hi, lo)], subnetId);
+      }
+
+      /**
+       * @return The values of every address in a range, restricted to one subnet when {@code subnetId} is set.
+       */
+      List<T> inRange(Range range, String subnetId) {
+         List<T> found = Lists.newArrayList();
+         for (int head : headsInRange(range)) {
+            collect(head, subnetId, found);
+         }
+         return ImmutableList.copyOf(found);
+      }
+
+      /**
+       * @return The number of addresses in a range used on a subnet.
+       */
+      long countUsed(Range range, String subnetId) {
+         long used = 0;
+         for (int head : headsInRange(range)) {
+            if (isUsedBy(head, subnetId)) {
+               used++;
+            }
+         }
+         return used;
+      }
+
+      /**
+       * @return The heads of the addresses of a range that have values, in address order. A range with fewer
+       *         addresses than the table is probed address by address, a larger one is binary searched in the sorted
+       *         keys.
+       */
+      private int[] headsInRange(Range range) {
+         return range.v6 ? v6HeadsInRange(range) : v4HeadsInRange(range);
+      }
+
+      private int[] v4HeadsInRange(Range range) {
+         long size = range.size();
+         int[] heads = new int[(int) Math.min(size, v4Size)];
+         int found = 0;
+         if (size < v4Size) {
+            for (long address = range.firstLo; address <= range.lastLo; address++) {
+               int head = v4Heads[v4Slot((int) address)];
+               if (head != EMPTY) {
+                  heads[found++] = head;
+               }
+            }
+            return Arrays.copyOf(heads, found);
+         }
+         long[] sorted = v4Sorted();
+         int from = Arrays.binarySearch(sorted, v4SortKey((int) range.firstLo, 0));
+         for (int i = from < 0 ? -from - 1 : from; i < sorted.length; i++) {
+            if ((v4SortedAddress(sorted[i]) & 0xffffffffL) > range.lastLo) {
+               break;
+            }
+            heads[found++] = v4Heads[(int) sorted[i]];
+         }
+         return Arrays.copyOf(heads, found);
+      }
+
+      private int[] v6HeadsInRange(Range range) {
+         long size = range.size();
+         int[] heads = new int[(int) Math.min(size, v6Size)];
+         int found = 0;
+         if (size < v6Size) {
+            long hi = range.firstHi;
+            long lo = range.firstLo;
+            while (compare(hi, lo, range.lastHi, range.lastLo) <= 0) {
+               int head = v6Heads[v6Slot(hi, lo)];
+               if (head != EMPTY) {
+                  heads[found++] = head;
+               }
+               if (hi == range.lastHi && lo == range.lastLo) {
+                  break;
+               }
+               lo++;
+               if (lo == 0) {
+                  hi++;
+               }
+            }
+            return Arrays.copyOf(heads, found);
+         }
+         int[] sorted = v6Sorted();
+         int low = 0;
+         int high = sorted.length;
+         while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(v6His[sorted[mid]], v6Los[sorted[mid]], range.firstHi, range.firstLo) < 0) {
+               low = mid + 1;
+            }
+            else {
+               high = mid;
+            }
+         }
+         for (int i = low; i < sorted.length; i++) {
+            if (compare(v6His[sorted[i]], v6Los[sorted[i]], range.lastHi, range.lastLo) > 0) {
+               break;
+            }
+            heads[found++] = v6Heads[sorted[i]];
+         }
+         return Arrays.copyOf(heads, found);
+      }
+
+      /**
+       * @return The used IPv4 slots ordered by address, each packed with its address as {@link #v4SortKey}. Built on
+       *         the first range query after a new address is added.
+       */
+      private long[] v4Sorted() {
+         long[] sorted = v4Sorted;
+         if (sorted == null) {
+            sorted = new long[v4Size];
+            int count = 0;
+            for (int slot = 0; slot < v4Heads.length; slot++) {
+               if (v4Heads[slot] != EMPTY) {
+                  sorted[count++] = v4SortKey(v4Keys[slot], slot);
+               }
+            }
+            Arrays.sort(sorted);
+            v4Sorted = sorted;
+         }
+         return sorted;
+      }
+
+      /**
+       * Packs an address and a slot so that signed order of the keys is the unsigned order of the addresses.
+       */
+      private static long v4SortKey(int address, int slot) {
+         return (long) (address ^ Integer.MIN_VALUE) << 32 | slot;
+      }
+
+      private static int v4SortedAddress(long sortKey) {
+         return (int) (sortKey >> 32) ^ Integer.MIN_VALUE;
+      }
+
+      /**
+       * @return The used IPv6 slots ordered by address. Built on the first range query after a new address is added.
+       */
+      private int[] v6Sorted() {
+         int[] sorted = v6Sorted;
+         if (sorted == null) {
+            Integer[] slots = new Integer[v6Size];
+            int count = 0;
+            for (int slot = 0; slot < v6Heads.length; slot++) {
+               if (v6Heads[slot] != EMPTY) {
+                  slots[count++] = slot;
+               }
+            }
+            Arrays.sort(slots, new Comparator<Integer>() {
+               @Override
+               public int compare(Integer a, Integer b) {
+                  return IpAddresses.compare(v6His[a], v6Los[a], v6His[b], v6Los[b]);
+               }
+            });
+            sorted = Ints.toArray(Arrays.asList(slots));
+            v6Sorted = sorted;
+         }
+         return sorted;
+      }
+
+      private int head(String address) {
+         long v4 = parseIPv4(address);
+         if (v4 >= 0) {
+            return v4Heads[v4Slot((int) v4)];
+         }
+         byte[] v6 = parseIPv6(address);
+         return v6 == null ? EMPTY : v6Heads[v6Slot(hi(v6), lo(v6))];
+      }
+
+      /**
+       * An address is used on a subnet if any value was added for it on that subnet or without a subnet.
+       */
+      private boolean isUsedBy(int head, String subnetId) {
+         for (int entry = head; entry != EMPTY; entry = next[entry]) {
+            String entrySubnetId = subnetIds.get(entry);
+            if (subnetId == null || entrySubnetId == null || subnetId.equals(entrySubnetId)) {
+               return true;
+            }
+         }
+         return false;
+      }
+
+      private List<T> collect(int head, String subnetId) {
+         if (head == EMPTY) {
+            return ImmutableList.of();
+         }
+         List<T> found = Lists.newArrayList();
+         collect(head, subnetId, found);
+         return ImmutableList.copyOf(found);
+      }
+
+      private void collect(int head, String subnetId, List<T> found) {
+         for (int entry = head; entry != EMPTY; entry = next[entry]) {
+            if (subnetId == null || subnetId.equals(subnetIds.get(entry))) {
+               found.add(values.get(entry));
+            }
+         }
+      }
+
+      private int newEntry(int head, String subnetId, T value) {
+         int entry = values.size();
+         values.add(value);
+         subnetIds.add(subnetId);
+         if (entry == next.length) {
+            next = Arrays.copyOf(next, entry * 2);
+         }
+         next[entry] = head;
+         return entry;
+      }
+
+      private void addV4(int address, String subnetId, T value) {
+         if ((v4Size + 1) * 2 > v4Heads.length) {
+            resizeV4();
+         }
+         int slot = v4Slot(address);
+         if (v4Heads[slot] == EMPTY) {
+            v4Keys[slot] = address;
+            v4Size++;
+            v4Sorted = null;
+         }
+         v4Heads[slot] = newEntry(v4Heads[slot], subnetId, value);
+      }
+
+      private void addV6(long hi, long lo, String subnetId, T value) {
+         if ((v6Size + 1) * 2 > v6Heads.length) {
+            resizeV6();
+         }
+         int slot = v6Slot(hi, lo);
+         if (v6Heads[slot] == EMPTY) {
+            v6His[slot] = hi;
+            v6Los[slot] = lo;
+            v6Size++;
+            v6Sorted = null;
+         }
+         v6Heads[slot] = newEntry(v6Heads[slot], subnetId, value);
+      }
+
+      /**
+       * @return The slot holding an address, or the empty slot where it belongs.
+       */
+      private int v4Slot(int address) {
+         int mask = v4Heads.length - 1;
+         int slot = mix(address) & mask;
+         while (v4Heads[slot] != EMPTY && v4Keys[slot] != address) {
+            slot = (slot + 1) & mask;
+         }
+         return slot;
+      }
+
+      private int v6Slot(long hi, long lo) {
+         int mask = v6Heads.length - 1;
+         long folded = hi * 0x9E3779B97F4A7C15L ^ lo;
+         int slot = mix((int) (folded ^ (folded >>> 32))) & mask;
+         while (v6Heads[slot] != EMPTY && (v6His[slot] != hi || v6Los[slot] != lo)) {
+            slot = (slot + 1) & mask;
+         }
+         return slot;
+      }
+
+      private void resizeV4() {
+         int[] keys = v4Keys;
+         int[] heads = v4Heads;
+         v4Keys = new int[keys.length * 2];
+         v4Heads = emptyHeads(heads.length * 2);
+         v4Sorted = null;
+         for (int i = 0; i < heads.length; i++) {
+            if (heads[i] != EMPTY) {
+               int slot = v4Slot(keys[i]);
+               v4Keys[slot] = keys[i];
+               v4Heads[slot] = heads[i];
+            }
+         }
+      }
+
+      private void resizeV6() {
+         long[] his = v6His;
+         long[] los = v6Los;
+         int[] heads = v6Heads;
+         v6His = new long[his.length * 2];
+         v6Los = new long[los.length * 2];
+         v6Heads = emptyHeads(heads.length * 2);
+         v6Sorted = null;
+         for (int i = 0; i < heads.length; i++) {
+            if (heads[i] != EMPTY) {
+               int slot = v6Slot(his[i], los[i]);
+               v6His[slot] = his[i];
+               v6Los[slot] = los[i];
+               v6Heads[slot] = heads[i];
+            }
+         }
+      }
+
+      private static int[] emptyHeads(int size) {
+         int[] heads = new int[size];
+         Arrays.fill(heads, EMPTY);
+         return heads;
+      }
+
+      private static int mix(int hash) {
+         int h = hash * 0x9E3779B9;
+         return h ^ (h >>> 16);
+      }
+   }
+}
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.features.NetworkApi;
+import org.jclouds.openstack.neutron.v2.features.PortApi;
+import org.jclouds.openstack.neutron.v2.features.SubnetApi;
+import org.jclouds.rest.ResourceNotFoundException;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Creates large numbers of ports, networks or subnets by splitting them into chunks, each sent as one bulk create
+ * request, with a bounded number of requests in flight.
+ * <p/>
+ * Neutron creates the items of one bulk request atomically, so a chunk either succeeds as a whole or creates nothing.
+ * The items created are returned in the order of the input, and every failed chunk is reported with the range of
+ * input items it covered. With rollback enabled, any failed chunk causes the items of the successful chunks to be
+ * deleted again, so the whole operation either succeeds or leaves nothing behind.
+ */
+@Beta
+public class BulkCreator implements Closeable {
+
+   private final int chunkSize;
+   private final int maxParallelism;
+   private final boolean rollbackOnFailure;
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   protected BulkCreator(Builder builder) {
+      this.chunkSize = builder.chunkSize;
+      this.maxParallelism = builder.maxParallelism;
+      this.rollbackOnFailure = builder.rollbackOnFailure;
+      this.logger = builder.logger;
+      checkArgument(chunkSize > 0, "chunkSize must be positive");
+      checkArgument(maxParallelism > 0, "maxParallelism must be positive");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newFixedThreadPool(maxParallelism,
+               new ThreadFactoryBuilder().setNameFormat("neutron-bulk-create-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * A chunk of input items that could not be created.
+    */
+   public static final class ChunkFailure {
+      private final int fromIndex;
+      private final int toIndex;
+      private final Throwable cause;
+
+      private ChunkFailure(int fromIndex, int toIndex, Throwable cause) {
+         this.fromIndex = fromIndex;
+         this.toIndex = toIndex;
+         this.cause = cause;
+      }
+
+      /**
+       * @return The index of the first input item of the chunk.
+       */
+      public int getFromIndex() {
+         return fromIndex;
+      }
+
+      /**
+       * @return The index after the last input item of the chunk.
+       */
+      public int getToIndex() {
+         return toIndex;
+      }
+
+      public Throwable getCause() {
+         return cause;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this)
+               .add("fromIndex", fromIndex).add("toIndex", toIndex).add("cause", cause).toString();
+      }
+   }
+
+   /**
+    * The outcome of a bulk create.
+    */
+   public static final class Result<T> {
+      private final List<T> created;
+      private final List<ChunkFailure> failures;
+      private final boolean rolledBack;
+      private final List<String> rollbackFailures;
+
+      private Result(List<T> created, List<ChunkFailure> failures, boolean rolledBack, List<String> rollbackFailures) {
+         this.created = created;
+         this.failures = failures;
+         this.rolledBack = rolledBack;
+         this.rollbackFailures = rollbackFailures;
+      }
+
+      /**
+       * @return true if every chunk was created.
+       */
+      public boolean isComplete() {
+         return failures.isEmpty();
+      }
+
+      /**
+       * @return The items created, in input order. Empty if the successful chunks were rolled back.
+       */
+      public List<T> getCreated() {
+         return created;
+      }
+
+      /**
+       * @return The chunks that could not be created, in input order.
+       */
+      public List<ChunkFailure> getFailures() {
+         return failures;
+      }
+
+      /**
+       * @return true if the items of the successful chunks were deleted because of a failure.
+       */
+      public boolean isRolledBack() {
+         return rolledBack;
+      }
+
+      /**
+       * @return The ids of items that could not be deleted during the rollback.
+       */
+      public List<String> getRollbackFailures() {
+         return rollbackFailures;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("created", created.size()).add("failures", failures)
+               .add("rolledBack", rolledBack).add("rollbackFailures", rollbackFailures).toString();
+      }
+   }
+
+   public Result<Port> createPorts(final PortApi api, List<Port.CreatePort> ports) {
+      checkNotNull(api, "api");
+      return create(ports, new Function<List<Port.CreatePort>, FluentIterable<Port>>() {
+         @Override
+         public FluentIterable<Port> apply(List<Port.CreatePort> chunk) {
+            return api.createBulk(chunk);
+         }
+      }, new Function<Port, Boolean>() {
+         @Override
+         public Boolean apply(Port port) {
+            return api.delete(port.getId());
+         }
+      }, new Function<Port, String>() {
+         @Override
+         public String apply(Port port) {
+            return port.getId();
+         }
+      });
+   }
+
+   public Result<Network> createNetworks(final NetworkApi api, List<Network.CreateNetwork> networks) {
+      checkNotNull(api, "api");
+      return create(networks, new Function<List<Network.CreateNetwork>, FluentIterable<Network>>() {
+         @Override
+         public FluentIterable<Network> apply(List<Network.CreateNetwork> chunk) {
+            return api.createBulk(ImmutableList.copyOf(chunk));
+         }
+      }, new Function<Network, Boolean>() {
+         @Override
+         public Boolean apply(Network network) {
+            return api.delete(network.getId());
+         }
+      }, new Function<Network, String>() {
+         @Override
+         public String apply(Network network) {
+            return network.getId();
+         }
+      });
+   }
+
+   public Result<Subnet> createSubnets(final SubnetApi api, List<Subnet.CreateSubnet> subnets) {
+      checkNotNull(api, "api");
+      return create(subnets, new Function<List<Subnet.CreateSubnet>, FluentIterable<Subnet>>() {
+         @Override
+         public FluentIterable<Subnet> apply(List<Subnet.CreateSubnet> chunk) {
+            return api.createBulk(chunk);
+         }
+      }, new Function<Subnet, Boolean>() {
+         @Override
+         public Boolean apply(Subnet subnet) {
+            return api.delete(subnet.getId());
+         }
+      }, new Function<Subnet, String>() {
+         @Override
+         public String apply(Subnet subnet) {
+            return subnet.getId();
+         }
+      });
+   }
+
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   private <I, O> Result<O> create(List<I> items, final Function<List<I>, FluentIterable<O>> createBulk,
+         Function<O, Boolean> delete, Function<O, String> toId) {
+      checkNotNull(items, "items");
+      List<List<I>> chunks = Lists.partition(ImmutableList.copyOf(items), chunkSize);
+      List<List<O>> created = Lists.newArrayList(Collections.<List<O>> nCopies(chunks.size(), null));
+      List<ChunkFailure> failures = Lists.newArrayList();
+
+      CompletionService<List<O>> completion = new ExecutorCompletionService<List<O>>(executor);
+      Map<Future<List<O>>, Integer> futures = Maps.newIdentityHashMap();
+      int submitted = 0;
+      for (; submitted < chunks.size() && submitted < maxParallelism; submitted++) {
+         futures.put(submit(completion, createBulk, chunks.get(submitted)), submitted);
+      }
+      try {
+         for (int done = 0; done < chunks.size(); done++) {
+            Future<List<O>> future = completion.take();
+            if (submitted < chunks.size()) {
+               futures.put(submit(completion, createBulk, chunks.get(submitted)), submitted);
+               submitted++;
+            }
+            int index = futures.get(future);
+            try {
+               created.set(index, future.get());
+            }
+            catch (ExecutionException e) {
+               int from = index * chunkSize;
+               logger.warn(e.getCause(), "could not create items %d to %d", from, from + chunks.get(index).size());
+               failures.add(new ChunkFailure(from, from + chunks.get(index).size(), e.getCause()));
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         for (Future<List<O>> future : futures.keySet()) {
+            future.cancel(true);
+         }
+         throw new IllegalStateException("interrupted while creating items", e);
+      }
+
+      ImmutableList.Builder<O> merged = ImmutableList.builder();
+      for (List<O> chunk : created) {
+         if (chunk != null) {
+            merged.addAll(chunk);
+         }
+      }
+      List<O> all = merged.build();
+      List<ChunkFailure> sortedFailures = sortByIndex(failures);
+      if (sortedFailures.isEmpty() || !rollbackOnFailure) {
+         return new Result<O>(all, sortedFailures, false, ImmutableList.<String> of());
+      }
+      return new Result<O>(ImmutableList.<O> of(), sortedFailures, true, rollback(all, delete, toId));
+   }
+
+   private <I, O> Future<List<O>> submit(CompletionService<List<O>> completion,
+         final Function<List<I>, FluentIterable<O>> createBulk, final List<I> chunk) {
+      return completion.submit(new Callable<List<O>>() {
+         @Override
+         public List<O> call() {
+            FluentIterable<O> result = createBulk.apply(chunk);
+            if (result == null) {
+               // the not found fallback, nothing was created
+               throw new ResourceNotFoundException("bulk create of " + chunk.size() + " items returned not found");
+            }
+            return result.toList();
+         }
+      });
+   }
+
+   private <O> List<String> rollback(List<O> created, final Function<O, Boolean> delete, Function<O, String> toId) {
+      List<Future<Boolean>> deletes = Lists.newArrayListWithCapacity(created.size());
+      for (final O item : created) {
+         deletes.add(executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return delete.apply(item);
+            }
+         }));
+      }
+      ImmutableList.Builder<String> failed = ImmutableList.builder();
+      for (int i = 0; i < created.size(); i++) {
+         String id = toId.apply(created.get(i));
+         try {
+            if (!deletes.get(i).get()) {
+               failed.add(id);
+            }
+         }
+         catch (ExecutionException e) {
+            logger.warn(e.getCause(), "could not delete %s during rollback", id);
+            failed.add(id);
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.add(id);
+         }
+      }
+      return failed.build();
+   }
+
+   private static List<ChunkFailure> sortByIndex(List<ChunkFailure> failures) {
+      List<ChunkFailure> sorted = Lists.newArrayList(failures);
+      Collections.sort(sorted, new Comparator<ChunkFailure>() {
+         @Override
+         public int compare(ChunkFailure left, ChunkFailure right) {
+            return left.fromIndex - right.fromIndex;
+         }
+      });
+      return ImmutableList.copyOf(sorted);
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected int chunkSize = 50;
+      protected int maxParallelism = 4;
+      protected boolean rollbackOnFailure;
+      protected ExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      /**
+       * The maximum number of items per bulk create request. Defaults to 50.
+       */
+      public Builder chunkSize(int chunkSize) {
+         this.chunkSize = chunkSize;
+         return this;
+      }
+
+      /**
+       * The maximum number of bulk create requests in flight. Defaults to 4.
+       */
+      public Builder maxParallelism(int maxParallelism) {
+         this.maxParallelism = maxParallelism;
+         return this;
+      }
+
+      /**
+       * Delete the items of the successful chunks when any chunk fails. Defaults to false.
+       */
+      public Builder rollbackOnFailure(boolean rollbackOnFailure) {
+         this.rollbackOnFailure = rollbackOnFailure;
+         return this;
+      }
+
+      /**
+       * Runs the requests. When not set, a pool of {@code maxParallelism} daemon threads is created and shut down
+       * on close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public BulkCreator build() {
+         return new BulkCreator(this);
+      }
+   }
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.domain.FirewallPolicy;
+import org.jclouds.openstack.neutron.v2.domain.UpdateFirewallPolicy;
+import org.jclouds.openstack.neutron.v2.extensions.FWaaSApi;
+import org.jclouds.rest.AuthorizationException;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Brings the rules of a firewall policy to a desired order.
+ * <p/>
+ * By default the whole rule list is replaced with a single {@link FWaaSApi#updateFirewallPolicy} call, so traffic
+ * never sees an intermediate order. When the server rejects that update, or when atomic updates are disabled, the
+ * reorder is made with the fewest possible {@link FWaaSApi#insertFirewallRuleToPolicy insert} and
+ * {@link FWaaSApi#removeFirewallRuleFromPolicy remove} calls instead: rules that are already in the desired relative
+ * order stay where they are, and only the others are removed and inserted again next to their new neighbour.
+ *
+ * @see FirewallRuleAnalysis to find rules that can be left out of the desired order
+ */
+@Beta
+public class FirewallPolicyPlanner {
+
+   private final FWaaSApi api;
+   private final boolean atomicUpdate;
+   private final Logger logger;
+
+   protected FirewallPolicyPlanner(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.atomicUpdate = builder.atomicUpdate;
+      this.logger = builder.logger;
+   }
+
+   /**
+    * One call to make to a policy.
+    */
+   public static final class Operation {
+      public enum Type {
+         INSERT, REMOVE
+      }
+
+      private final Type type;
+      private final String firewallRuleId;
+      private final String insertBefore;
+      private final String insertAfter;
+
+      private Operation(Type type, String firewallRuleId, String insertBefore, String insertAfter) {
+         this.type = type;
+         this.firewallRuleId = firewallRuleId;
+         this.insertBefore = insertBefore;
+         this.insertAfter = insertAfter;
+      }
+
+      static Operation insertBefore(String firewallRuleId, @Nullable String beforeFirewallRuleId) {
+         return new Operation(Type.INSERT, firewallRuleId, beforeFirewallRuleId, null);
+      }
+
+      static Operation insertAfter(String firewallRuleId, String afterFirewallRuleId) {
+         return new Operation(Type.INSERT, firewallRuleId, null, afterFirewallRuleId);
+      }
+
+      static Operation remove(String firewallRuleId) {
+         return new Operation(Type.REMOVE, firewallRuleId, null, null);
+      }
+
+      public Type getType() {
+         return type;
+      }
+
+      public String getFirewallRuleId() {
+         return firewallRuleId;
+      }
+
+      /**
+       * @return The rule to insert before, if any. An insert into an empty policy has neither neighbour.
+       */
+      @Nullable
+      public String getInsertBefore() {
+         return insertBefore;
+      }
+
+      /**
+       * @return The rule to insert after, if any.
+       */
+      @Nullable
+      public String getInsertAfter() {
+         return insertAfter;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o)
+            return true;
+         if (!(o instanceof Operation))
+            return false;
+         Operation that = (Operation) o;
+         return type == that.type && firewallRuleId.equals(that.firewallRuleId)
+               && Objects.equal(insertBefore, that.insertBefore) && Objects.equal(insertAfter, that.insertAfter);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(type, firewallRuleId, insertBefore, insertAfter);
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).omitNullValues().add("type", type).add("firewallRuleId", firewallRuleId)
+               .add("insertBefore", insertBefore).add("insertAfter", insertAfter).toString();
+      }
+   }
+
+   /**
+    * The change from the current rules of a policy to the desired ones.
+    */
+   public static final class Plan {
+      private final FirewallPolicy policy;
+      private final List<String> target;
+      private final List<Operation> operations;
+
+      private Plan(FirewallPolicy policy, List<String> target, List<Operation> operations) {
+         this.policy = policy;
+         this.target = target;
+         this.operations = operations;
+      }
+
+      /**
+       * @return The policy as it was when planned.
+       */
+      public FirewallPolicy getPolicy() {
+         return policy;
+      }
+
+      public List<String> getTarget() {
+         return target;
+      }
+
+      /**
+       * @return The fewest insert and remove calls that turn the current order into the target one.
+       */
+      public List<Operation> getOperations() {
+         return operations;
+      }
+
+      public boolean isEmpty() {
+         return operations.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("policyId", policy.getId()).add("target", target.size())
+               .add("operations", operations.size()).toString();
+      }
+   }
+
+   /**
+    * Computes the fewest insert and remove operations that turn one rule order into another.
+    * <p/>
+    * The rules of {@code current} that appear in {@code target} in a longest common relative order stay in place. Each
+    * other rule of {@code target} is inserted, after being removed first if it is already in the policy, right after
+    * the rule that precedes it in {@code target}. Rules that are not in {@code target} are removed last.
+    */
+   public static List<Operation> operations(List<String> current, List<String> target) {
+      checkNotNull(current, "current");
+      checkNotNull(target, "target");
+      checkArgument(ImmutableSet.copyOf(target).size() == target.size(), "target has duplicate rules: %s", target);
+
+      Map<String, Integer> currentIndex = Maps.newHashMap();
+      for (int i = 0; i < current.size(); i++) {
+         currentIndex.put(current.get(i), i);
+      }
+      // the target rules already in the policy, in target order, with their current positions
+      List<String> kept = Lists.newArrayList();
+      List<Integer> positions = Lists.newArrayList();
+      for (String rule : target) {
+         Integer position = currentIndex.get(rule);
+         if (position != null) {
+            kept.add(rule);
+            positions.add(position);
+         }
+      }
+      Set<String> stay = Sets.newHashSet();
+      for (int index : longestIncreasingSubsequence(positions)) {
+         stay.add(kept.get(index));
+      }
+
+      ImmutableList.Builder<Operation> operations = ImmutableList.builder();
+      List<String> simulated = Lists.newArrayList(current);
+      for (int i = 0; i < target.size(); i++) {
+         String rule = target.get(i);
+         if (stay.contains(rule)) {
+            continue;
+         }
+         if (currentIndex.containsKey(rule)) {
+            operations.add(Operation.remove(rule));
+            simulated.remove(rule);
+         }
+         if (i > 0) {
+            operations.add(Operation.insertAfter(rule, target.get(i - 1)));
+            simulated.add(simulated.indexOf(target.get(i - 1)) + 1, rule);
+         }
+         else {
+            String first = simulated.isEmpty() ? null : simulated.get(0);
+            operations.add(Operation.insertBefore(rule, first));
+            simulated.add(0, rule);
+         }
+      }
+      Set<String> wanted = ImmutableSet.copyOf(target);
+      for (String rule : current) {
+         if (!wanted.contains(rule)) {
+            operations.add(Operation.remove(rule));
+            simulated.remove(rule);
+         }
+      }
+      checkState(simulated.equals(target), "planned order %s is not the target %s", simulated, target);
+      return operations.build();
+   }
+
+   /**
+    * Compares the current rules of a policy with the desired order.
+    *
+    * @param policyId The policy to reorder.
+    * @param target   The ids of the rules the policy should have, in order. Rules that are not in the policy yet must
+    *                 not be in another policy.
+    */
+   public Plan plan(String policyId, List<String> target) {
+      FirewallPolicy policy = api.getFirewallPolicy(checkNotNull(policyId, "policyId"));
+      checkArgument(policy != null, "firewall policy %s not found", policyId);
+      List<String> current = policy.getFirewallRules() == null ? ImmutableList.<String> of()
+            : policy.getFirewallRules();
+      return new Plan(policy, ImmutableList.copyOf(target), operations(current, target));
+   }
+
+   /**
+    * Reorders the rules of a policy as planned, with a single update when possible.
+    *
+    * @return The policy with its rules in the target order.
+    */
+   public FirewallPolicy apply(Plan plan) {
+      checkNotNull(plan, "plan");
+      String policyId = plan.getPolicy().getId();
+      if (plan.isEmpty()) {
+         return plan.getPolicy();
+      }
+      if (atomicUpdate) {
+         try {
+            FirewallPolicy updated = api.updateFirewallPolicy(policyId,
+                  UpdateFirewallPolicy.builder().firewallRules(plan.getTarget()).build());
+            checkState(updated != null, "firewall policy %s not found", policyId);
+            if (plan.getTarget().equals(updated.getFirewallRules())) {
+               return updated;
+            }
+            logger.debug("update of firewall policy %s left rules %s", policyId, updated.getFirewallRules());
+         }
+         catch (HttpResponseException | AuthorizationException e) {
+            logger.debug("could not update firewall policy %s at once: %s", policyId, e.getMessage());
+         }
+         // the update may have been partially applied, so plan again from the actual order
+         plan = plan(policyId, plan.getTarget());
+         logger.debug("reordering firewall policy %s with %d operations", policyId, plan.getOperations().size());
+      }
+      FirewallPolicy policy = plan.getPolicy();
+      for (Operation operation : plan.getOperations()) {
+         policy = call(policyId, operation);
+         checkState(policy != null, "firewall policy %s not found", policyId);
+      }
+      List<String> rules = policy.getFirewallRules() == null ? ImmutableList.<String> of() : policy.getFirewallRules();
+      checkState(plan.getTarget().equals(rules), "firewall policy %s has rules %s instead of %s", policyId, rules,
+            plan.getTarget());
+      return policy;
+   }
+
+   /**
+    * Plans and applies in one step.
+    *
+    * @see #plan(String, List)
+    * @see #apply(Plan)
+    */
+   public FirewallPolicy reorder(String policyId, List<String> target) {
+      return apply(plan(policyId, target));
+   }
+
+   private FirewallPolicy call(String policyId, Operation operation) {
+      switch (operation.getType()) {
+         case REMOVE:
+            return api.removeFirewallRuleFromPolicy(policyId, operation.getFirewallRuleId());
+         case INSERT:
+            if (operation.getInsertAfter() != null) {
+               return api.insertFirewallRuleToPolicyAfter(policyId, operation.getFirewallRuleId(),
+                     operation.getInsertAfter());
+            }
+            if (operation.getInsertBefore() != null) {
+               return api.insertFirewallRuleToPolicyBefore(policyId, operation.getFirewallRuleId(),
+                     operation.getInsertBefore());
+            }
+            return api.insertFirewallRuleToPolicy(policyId, operation.getFirewallRuleId());
+         default:
+            throw new IllegalArgumentException("unknown operation " + operation);
+      }
+   }
+
+   /**
+    * @return The indexes of one longest strictly increasing subsequence of {@code values}, in O(n log n).
+    */
+   static List<Integer> longestIncreasingSubsequence(List<Integer> values) {
+      int n = values.size();
+      // tails[k] is the index of the smallest value ending an increasing subsequence of length k + 1
+      int[] tails = new int[n];
+      int[] previous = new int[n];
+      int length = 0;
+      for (int i = 0; i < n; i++) {
+         int value = values.get(i);
+         int low = 0;
+         int high = length;
+         while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values.get(tails[middle]) < value) {
+               low = middle + 1;
+            }
+            else {
+               high = middle;
+            }
+         }
+         previous[i] = low > 0 ? tails[low - 1] : -1;
+         tails[low] = i;
+         if (low == length) {
+            length++;
+         }
+      }
+      Integer[] indexes = new Integer[length];
+      for (int k = length - 1, i = length > 0 ? tails[length - 1] : -1; k >= 0; k--, i = previous[i]) {
+         indexes[k] = i;
+      }
+      return Arrays.asList(indexes);
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected FWaaSApi api;
+      protected boolean atomicUpdate = true;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(FWaaSApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * Whether to try replacing the whole rule list with one update before falling back to inserts and removes.
+       * Defaults to true.
+       */
+      public Builder atomicUpdate(boolean atomicUpdate) {
+         this.atomicUpdate = atomicUpdate;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public FirewallPolicyPlanner build() {
+         return new FirewallPolicyPlanner(this);
+      }
+   }
+}
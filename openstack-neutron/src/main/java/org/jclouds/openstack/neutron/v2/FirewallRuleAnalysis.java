@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.IpAddresses.Range;
+import org.jclouds.openstack.neutron.v2.domain.FirewallRule;
+import org.jclouds.openstack.neutron.v2.domain.IpVersion;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Finds the rules of a firewall policy that never decide the fate of a packet, without calling the API, so that they
+ * can be left out before the policy is uploaded with a {@link FirewallPolicyPlanner}.
+ * <p/>
+ * Firewall rules are evaluated in order and the first enabled rule matching a packet decides its action; packets
+ * matching no rule are denied. A rule is <em>shadowed</em> when an earlier rule with another action matches every
+ * packet it matches, and <em>redundant</em> when removing it would not change the action taken on any packet: either
+ * an earlier rule with the same action already matches all its packets, or a later rule with the same action (or, for
+ * a deny rule, the implicit deny at the end of the policy) would decide them the same way. Disabled rules match
+ * nothing and are neither reported nor taken into account.
+ */
+@Beta
+public class FirewallRuleAnalysis {
+
+   /**
+    * A rule that can be removed, and why.
+    */
+   public static final class Finding {
+      public enum Kind {
+         /**
+          * An earlier rule with a different action matches every packet of the rule, which is most likely a mistake.
+          */
+         SHADOWED,
+         /**
+          * The rule can be removed without changing the action taken on any packet.
+          */
+         REDUNDANT
+      }
+
+      private final FirewallRule rule;
+      private final Kind kind;
+      private final FirewallRule cause;
+
+      private Finding(FirewallRule rule, Kind kind, FirewallRule cause) {
+         this.rule = rule;
+         this.kind = kind;
+         this.cause = cause;
+      }
+
+      public FirewallRule getRule() {
+         return rule;
+      }
+
+      public Kind getKind() {
+         return kind;
+      }
+
+      /**
+       * @return The rule that decides the packets of this rule instead, or null for the implicit deny at the end of
+       *         the policy.
+       */
+      @Nullable
+      public FirewallRule getCause() {
+         return cause;
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("rule", rule.getId()).add("kind", kind)
+               .add("cause", cause == null ? "default deny" : cause.getId()).toString();
+      }
+   }
+
+   private final List<FirewallRule> rules;
+   private final List<Finding> findings;
+
+   /**
+    * @param rules The rules of a policy, in order.
+    */
+   public static FirewallRuleAnalysis analyze(Iterable<FirewallRule> rules) {
+      return new FirewallRuleAnalysis(ImmutableList.copyOf(checkNotNull(rules, "rules")));
+   }
+
+   private FirewallRuleAnalysis(List<FirewallRule> rules) {
+      this.rules = rules;
+      List<Match> matches = Lists.newArrayListWithCapacity(rules.size());
+      for (FirewallRule rule : rules) {
+         matches.add(rule.isEnabled() ? Match.of(rule) : null);
+      }
+      // rules already found removable no longer take part, so that of two identical rules only the second is
+      // reported, and rules that can never match are found first
+      Finding[] found = new Finding[rules.size()];
+      boolean[] removed = new boolean[rules.size()];
+      for (int j = 0; j < rules.size(); j++) {
+         if (matches.get(j) != null) {
+            found[j] = coveredBefore(j, matches, removed);
+            removed[j] = found[j] != null;
+         }
+      }
+      for (int j = 0; j < rules.size(); j++) {
+         if (matches.get(j) != null && !removed[j]) {
+            found[j] = decidedAfter(j, matches, removed);
+            removed[j] = found[j] != null;
+         }
+      }
+      ImmutableList.Builder<Finding> findings = ImmutableList.builder();
+      for (Finding finding : found) {
+         if (finding != null) {
+            findings.add(finding);
+         }
+      }
+      this.findings = findings.build();
+   }
+
+   private Finding coveredBefore(int j, List<Match> matches, boolean[] removed) {
+      Match match = matches.get(j);
+      for (int i = 0; i < j; i++) {
+         Match earlier = matches.get(i);
+         if (earlier != null && !removed[i] && earlier.covers(match)) {
+            return new Finding(rules.get(j), earlier.action.equals(match.action) ? Finding.Kind.REDUNDANT
+                  : Finding.Kind.SHADOWED, rules.get(i));
+         }
+      }
+      return null;
+   }
+
+   private Finding decidedAfter(int j, List<Match> matches, boolean[] removed) {
+      Match match = matches.get(j);
+      for (int k = j + 1; k < matches.size(); k++) {
+         Match later = matches.get(k);
+         if (later == null || removed[k] || !later.overlaps(match)) {
+            continue;
+         }
+         if (!later.action.equals(match.action)) {
+            // some packets of the rule would get another action without it
+            return null;
+         }
+         if (later.covers(match)) {
+            return new Finding(rules.get(j), Finding.Kind.REDUNDANT, rules.get(k));
+         }
+      }
+      return "deny".equals(match.action) ? new Finding(rules.get(j), Finding.Kind.REDUNDANT, null) : null;
+   }
+
+   public List<Finding> getFindings() {
+      return findings;
+   }
+
+   /**
+    * @return The rules without the shadowed and redundant ones, in order. Uploading them instead of all the rules
+    *         leaves the action taken on every packet unchanged.
+    */
+   public List<FirewallRule> getEffectiveRules() {
+      ImmutableList.Builder<FirewallRule> effective = ImmutableList.builder();
+      int next = 0;
+      for (FirewallRule rule : rules) {
+         if (next < findings.size() && findings.get(next).getRule() == rule) {
+            next++;
+         }
+         else {
+            effective.add(rule);
+         }
+      }
+      return effective.build();
+   }
+
+   /**
+    * @return The ids of the {@link #getEffectiveRules() effective rules}, as a target order for a
+    *         {@link FirewallPolicyPlanner}.
+    */
+   public List<String> getEffectiveRuleIds() {
+      ImmutableList.Builder<String> ids = ImmutableList.builder();
+      for (FirewallRule rule : getEffectiveRules()) {
+         ids.add(rule.getId());
+      }
+      return ids.build();
+   }
+
+   /**
+    * The packets a rule matches, as one range per field. A null range matches anything.
+    */
+   private static final class Match {
+      private final String action;
+      private final boolean v6;
+      private final String protocol;
+      private final Range source;
+      private final Range destination;
+      private final int[] sourcePorts;
+      private final int[] destinationPorts;
+
+      private Match(String action, boolean v6, String protocol, Range source, Range destination, int[] sourcePorts,
+            int[] destinationPorts) {
+         this.action = action;
+         this.v6 = v6;
+         this.protocol = protocol;
+         this.source = source;
+         this.destination = destination;
+         this.sourcePorts = sourcePorts;
+         this.destinationPorts = destinationPorts;
+      }
+
+      static Match of(FirewallRule rule) {
+         boolean v6 = rule.getIpVersion() == IpVersion.IPV6;
+         String protocol = rule.getProtocol() == null || "any".equalsIgnoreCase(rule.getProtocol()) ? null
+               : rule.getProtocol().toLowerCase(Locale.ENGLISH);
+         String action = rule.getAction() == null ? "deny" : rule.getAction().toLowerCase(Locale.ENGLISH);
+         return new Match(action, v6, protocol, range(rule.getSourceIpAddress()),
+               range(rule.getDestinationIpAddress()), ports(rule.getSourcePort()), ports(rule.getDestinationPort()));
+      }
+
+      boolean covers(Match other) {
+         return v6 == other.v6 && (protocol == null || protocol.equals(other.protocol))
+               && covers(source, other.source) && covers(destination, other.destination)
+               && covers(sourcePorts, other.sourcePorts) && covers(destinationPorts, other.destinationPorts);
+      }
+
+      boolean overlaps(Match other) {
+         return v6 == other.v6 && (protocol == null || other.protocol == null || protocol.equals(other.protocol))
+               && overlaps(source, other.source) && overlaps(destination, other.destination)
+               && overlaps(sourcePorts, other.sourcePorts) && overlaps(destinationPorts, other.destinationPorts);
+      }
+
+      private static boolean covers(Range range, Range other) {
+         return range == null || (other != null && range.contains(other));
+      }
+
+      private static boolean overlaps(Range range, Range other) {
+         return range == null || other == null || range.overlaps(other);
+      }
+
+      private static Range range(String address) {
+         return address == null ? null : Range.fromCidrOrAddress(address);
+      }
+
+      private static boolean covers(int[] ports, int[] other) {
+         return ports == null || (other != null && ports[0] <= other[0] && other[1] <= ports[1]);
+      }
+
+      private static boolean overlaps(int[] ports, int[] other) {
+         return ports == null || other == null || (ports[0] <= other[1] && other[0] <= ports[1]);
+      }
+
+      /**
+       * Parses a port or a range of ports such as {@code 80} or {@code 8000:8080}.
+       */
+      private static int[] ports(String ports) {
+         if (ports == null) {
+            return null;
+         }
+         int colon = ports.indexOf(':');
+         try {
+            int low = Integer.parseInt(colon < 0 ? ports.trim() : ports.substring(0, colon).trim());
+            int high = colon < 0 ? low : Integer.parseInt(ports.substring(colon + 1).trim());
+            checkArgument(low <= high, "invalid port range %s", ports);
+            return new int[] { low, high };
+         }
+         catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid port range " + ports, e);
+         }
+      }
+   }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.UnsignedLongs;
+
+/**
+ * Parsing, formatting and ranges of IPv4 and IPv6 addresses. IPv4 addresses are held as unsigned ints and IPv6
+ * addresses as pairs of longs, so that ranges can be compared without allocating.
+ */
+final class IpAddresses {
+
+   private IpAddresses() {
+   }
+
+   /**
+    * @return The address as an unsigned int in a long, or -1 if it is not a dotted quad IPv4 address.
+    */
+   static long parseIPv4(String address) {
+      long result = 0;
+      int octet = -1;
+      int octets = 0;
+      for (int i = 0; i < address.length(); i++) {
+         char c = address.charAt(i);
+         if (c >= '0' && c <= '9') {
+            octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+            if (octet > 255) {
+               return -1;
+            }
+         }
+         else if (c == '.' && octet >= 0 && octets < 3) {
+            result = (result << 8) | octet;
+            octet = -1;
+            octets++;
+         }
+         else {
+            return -1;
+         }
+      }
+      if (octet < 0 || octets != 3) {
+         return -1;
+      }
+      return (result << 8) | octet;
+   }
+
+   /**
+    * @return The 16 bytes of an IPv6 address, or null if the address is not one.
+    */
+   static byte[] parseIPv6(String address) {
+      if (address.indexOf(':') < 0 || !InetAddresses.isInetAddress(address)) {
+         return null;
+      }
+      InetAddress inet = InetAddresses.forString(address);
+      return inet instanceof Inet6Address ? inet.getAddress() : null;
+   }
+
+   static String formatIPv4(int address) {
+      return new StringBuilder(15).append(address >>> 24).append('.').append((address >>> 16) & 0xff).append('.')
+            .append((address >>> 8) & 0xff).append('.').append(address & 0xff).toString();
+   }
+
+   static String formatIPv6(long hi, long lo) {
+      byte[] bytes = new byte[16];
+      System.arraycopy(Longs.toByteArray(hi), 0, bytes, 0, 8);
+      System.arraycopy(Longs.toByteArray(lo), 0, bytes, 8, 8);
+      try {
+         return InetAddresses.toAddrString(InetAddress.getByAddress(bytes));
+      }
+      catch (UnknownHostException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   static long hi(byte[] bytes) {
+      return Longs.fromBytes(bytes[0], bytes[1], bytes[2], bytes[3], bytes[4], bytes[5], bytes[6], bytes[7]);
+   }
+
+   static long lo(byte[] bytes) {
+      return Longs.fromBytes(bytes[8], bytes[9], bytes[10], bytes[11], bytes[12], bytes[13], bytes[14], bytes[15]);
+   }
+
+   static int compare(long hi1, long lo1, long hi2, long lo2) {
+      int c = UnsignedLongs.compare(hi1, hi2);
+      return c != 0 ? c : UnsignedLongs.compare(lo1, lo2);
+   }
+
+   /**
+    * @return A CIDR with the host bits of its address cleared, such as {@code 10.0.0.0/24} for {@code 10.0.0.7/24}.
+    *         An address without a prefix length is taken as a single address.
+    */
+   static String canonicalCidr(String cidr) {
+      cidr = withPrefix(cidr);
+      Range range = Range.fromCidr(cidr);
+      int prefix = Integer.parseInt(cidr.substring(cidr.indexOf('/') + 1));
+      return (range.v6 ? formatIPv6(range.firstHi, range.firstLo) : formatIPv4((int) range.firstLo)) + "/" + prefix;
+   }
+
+   /**
+    * @return The CIDR, or a single address CIDR if {@code address} has no prefix length.
+    */
+   private static String withPrefix(String address) {
+      if (address.indexOf('/') >= 0) {
+         return address;
+      }
+      return address + (parseIPv4(address) >= 0 ? "/32" : "/128");
+   }
+
+   /**
+    * An inclusive range of IPv4 or IPv6 addresses.
+    */
+   static final class Range {
+      final boolean v6;
+      // IPv4 bounds are unsigned ints held in longs; IPv6 bounds use all four
+      final long firstHi;
+      final long firstLo;
+      final long lastHi;
+      final long lastLo;
+
+      private Range(boolean v6, long firstHi, long firstLo, long lastHi, long lastLo) {
+         this.v6 = v6;
+         this.firstHi = firstHi;
+         this.firstLo = firstLo;
+         this.lastHi = lastHi;
+         this.lastLo = lastLo;
+      }
+
+      static Range fromCidr(String cidr) {
+         int slash = cidr.indexOf('/');
+         checkArgument(slash > 0, "not a CIDR: %s", cidr);
+         String address = cidr.substring(0, slash);
+         int prefix;
+         try {
+            prefix = Integer.parseInt(cidr.substring(slash + 1));
+         }
+         catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a CIDR: " + cidr, e);
+         }
+         long v4 = parseIPv4(address);
+         if (v4 >= 0) {
+            checkArgument(prefix >= 0 && prefix <= 32, "invalid prefix length in %s", cidr);
+            long mask = prefix == 0 ? 0 : (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+            long first = v4 & mask;
+            return new Range(false, 0, first, 0, first | (~mask & 0xffffffffL));
+         }
+         byte[] v6 = parseIPv6(address);
+         checkArgument(v6 != null, "not a CIDR: %s", cidr);
+         checkArgument(prefix >= 0 && prefix <= 128, "invalid prefix length in %s", cidr);
+         long hiMask = prefix >= 64 ? -1L : prefix == 0 ? 0 : -1L << (64 - prefix);
+         long loMask = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+         long hi = hi(v6) & hiMask;
+         long lo = lo(v6) & loMask;
+         return new Range(true, hi, lo, hi | ~hiMask, lo | ~loMask);
+      }
+
+      /**
+       * @return The range of a CIDR, or of a single address if it has no prefix length.
+       */
+      static Range fromCidrOrAddress(String cidrOrAddress) {
+         return fromCidr(withPrefix(cidrOrAddress));
+      }
+
+      static Range fromPool(AllocationPool pool) {
+         String start = checkNotNull(pool.getStart(), "start");
+         String end = checkNotNull(pool.getEnd(), "end");
+         long v4Start = parseIPv4(start);
+         if (v4Start >= 0) {
+            long v4End = parseIPv4(end);
+            checkArgument(v4End >= 0, "not an IPv4 address: %s", end);
+            return new Range(false, 0, v4Start, 0, v4End);
+         }
+         byte[] v6Start = parseIPv6(start);
+         byte[] v6End = parseIPv6(end);
+         checkArgument(v6Start != null && v6End != null, "invalid allocation pool %s to %s", start, end);
+         return new Range(true, hi(v6Start), lo(v6Start), hi(v6End), lo(v6End));
+      }
+
+      boolean contains(int address) {
+         long unsigned = address & 0xffffffffL;
+         return !v6 && unsigned >= firstLo && unsigned <= lastLo;
+      }
+
+      boolean contains(long hi, long lo) {
+         return v6 && compare(hi, lo, firstHi, firstLo) >= 0 && compare(hi, lo, lastHi, lastLo) <= 0;
+      }
+
+      boolean contains(String address) {
+         long v4 = parseIPv4(address);
+         if (v4 >= 0) {
+            return contains((int) v4);
+         }
+         byte[] v6 = parseIPv6(address);
+         return v6 != null && contains(hi(v6), lo(v6));
+      }
+
+      /**
+       * @return Whether every address of another range is in this one. Ranges of different families never are.
+       */
+      boolean contains(Range other) {
+         return v6 == other.v6 && compare(other.firstHi, other.firstLo, firstHi, firstLo) >= 0
+               && compare(other.lastHi, other.lastLo, lastHi, lastLo) <= 0;
+      }
+
+      /**
+       * @return Whether another range has an address in this one. Ranges of different families never do.
+       */
+      boolean overlaps(Range other) {
+         return v6 == other.v6 && compare(firstHi, firstLo, other.lastHi, other.lastLo) <= 0
+               && compare(other.firstHi, other.firstLo, lastHi, lastLo) <= 0;
+      }
+
+      /**
+       * @return The number of addresses, saturated at {@link Long#MAX_VALUE}.
+       */
+      long size() {
+         if (!v6) {
+            return Math.max(0, lastLo - firstLo + 1);
+         }
+         if (compare(firstHi, firstLo, lastHi, lastLo) > 0) {
+            return 0;
+         }
+         if (firstHi != lastHi) {
+            return Long.MAX_VALUE;
+         }
+         long size = lastLo - firstLo + 1;
+         return size <= 0 ? Long.MAX_VALUE : size;
+      }
+   }
+}
@@ -18,9 +18,15 @@ package org.jclouds.openstack.neutron.v2;
 
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.CREDENTIAL_TYPE;
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.SERVICE_TYPE;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.COMPACT_PARSING;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_CACHE_FILE;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_CACHE_TTL;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_WARMUP;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.PAGE_PREFETCH_DEPTH;
 
 import java.net.URI;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.jclouds.apis.ApiMetadata;
 import org.jclouds.openstack.keystone.v2_0.config.AuthenticationApiModule;
@@ -59,6 +65,11 @@ public class NeutronApiMetadata extends BaseHttpApiMetadata<NeutronApi> {
       Properties properties = BaseHttpApiMetadata.defaultProperties();
       properties.setProperty(SERVICE_TYPE, ServiceType.NETWORK);
       properties.setProperty(CREDENTIAL_TYPE, CredentialTypes.PASSWORD_CREDENTIALS);
+      properties.setProperty(PAGE_PREFETCH_DEPTH, "0");
+      properties.setProperty(EXTENSIONS_WARMUP, "false");
+      properties.setProperty(EXTENSIONS_CACHE_FILE, "");
+      properties.setProperty(EXTENSIONS_CACHE_TTL, String.valueOf(TimeUnit.HOURS.toSeconds(23)));
+      properties.setProperty(COMPACT_PARSING, "false");
       return properties;
    }
 
@@ -0,0 +1,665 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Network;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Router;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
+import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
+import org.jclouds.openstack.neutron.v2.features.NetworkApi;
+import org.jclouds.openstack.neutron.v2.features.PortApi;
+import org.jclouds.openstack.neutron.v2.features.SubnetApi;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An in-memory copy of the networks, subnets, ports, routers and floating IPs of one region, indexed so that
+ * topology queries such as "the ports of this device" or "the port with this fixed IP" are map lookups instead of
+ * one GET per resource.
+ * <p/>
+ * The inventory is loaded through the paginated lists of the region and kept current in two ways: by reloading it
+ * on a schedule, and by making create, update and delete calls through the write-through methods of the inventory,
+ * which apply the result of each call to the indexes. Neutron lists cannot be filtered by modification time, so a
+ * scheduled refresh lists every resource again; it is built aside and swapped in, and writes made while it runs are
+ * applied on top of it. Routers and floating IPs are only loaded when their extensions are present.
+ */
+@Beta
+public class NeutronInventory implements Closeable {
+
+   private final NetworkApi networkApi;
+   private final SubnetApi subnetApi;
+   private final PortApi portApi;
+   private final Optional<RouterApi> routerApi;
+   private final Optional<FloatingIPApi> floatingIPApi;
+   private final ScheduledExecutorService scheduler;
+   private final boolean ownsScheduler;
+   private final ScheduledFuture<?> scheduledRefresh;
+   private final Logger logger;
+
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+   private final Object refreshLock = new Object();
+   private Store store = new Store();
+   private List<Change> pendingChanges;
+   private volatile long refreshedAtMillis;
+
+   protected NeutronInventory(Builder builder) {
+      checkNotNull(builder.api, "api required");
+      checkNotNull(builder.region, "region required");
+      checkArgument(builder.refreshIntervalMillis >= 0, "refreshInterval must not be negative");
+      this.networkApi = builder.api.getNetworkApi(builder.region);
+      this.subnetApi = builder.api.getSubnetApi(builder.region);
+      this.portApi = builder.api.getPortApi(builder.region);
+      this.routerApi = builder.api.getRouterApi(builder.region);
+      this.floatingIPApi = builder.api.getFloatingIPApi(builder.region);
+      this.logger = builder.logger;
+      if (builder.refreshIntervalMillis == 0) {
+         this.scheduler = null;
+         this.ownsScheduler = false;
+         this.scheduledRefresh = null;
+         return;
+      }
+      if (builder.scheduler != null) {
+         this.scheduler = builder.scheduler;
+         this.ownsScheduler = false;
+      }
+      else {
+         this.scheduler = Executors.newSingleThreadScheduledExecutor(
+               new ThreadFactoryBuilder().setNameFormat("neutron-inventory-%d").setDaemon(true).build());
+         this.ownsScheduler = true;
+      }
+      this.scheduledRefresh = scheduler.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               refresh();
+            }
+            catch (RuntimeException e) {
+               logger.warn(e, "could not refresh the neutron inventory");
+            }
+         }
+      }, 0, builder.refreshIntervalMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Lists every resource of the region again and replaces the indexes with the result. Runs on the calling thread;
+    * concurrent calls are serialized.
+    */
+   public void refresh() {
+      synchronized (refreshLock) {
+         lock.writeLock().lock();
+         try {
+            pendingChanges = Lists.newArrayList();
+         }
+         finally {
+            lock.writeLock().unlock();
+         }
+         Store loaded;
+         try {
+            loaded = load();
+         }
+         catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+               pendingChanges = null;
+            }
+            finally {
+               lock.writeLock().unlock();
+            }
+            throw e;
+         }
+         lock.writeLock().lock();
+         try {
+            for (Change change : pendingChanges) {
+               change.applyTo(loaded);
+            }
+            pendingChanges = null;
+            store = loaded;
+            refreshedAtMillis = System.currentTimeMillis();
+         }
+         finally {
+            lock.writeLock().unlock();
+         }
+         logger.debug("loaded %d networks, %d subnets, %d ports, %d routers and %d floating IPs",
+               loaded.networks.size(), loaded.subnets.size(), loaded.ports.size(), loaded.routers.size(),
+               loaded.floatingIPs.size());
+      }
+   }
+
+   /**
+    * @return When the last refresh completed, 0 if the inventory has not been loaded yet.
+    */
+   public long getRefreshedAtMillis() {
+      return refreshedAtMillis;
+   }
+
+   private Store load() {
+      Store loaded = new Store();
+      for (Network network : networkApi.list().concat()) {
+         loaded.put(network);
+      }
+      for (Subnet subnet : subnetApi.list().concat()) {
+         loaded.put(subnet);
+      }
+      for (Port port : portApi.list().concat()) {
+         loaded.put(port);
+      }
+      if (routerApi.isPresent()) {
+         for (Router router : routerApi.get().list().concat()) {
+            loaded.put(router);
+         }
+      }
+      if (floatingIPApi.isPresent()) {
+         for (FloatingIP floatingIP : floatingIPApi.get().list().concat()) {
+            loaded.put(floatingIP);
+         }
+      }
+      return loaded;
+   }
+
+   public Optional<Network> getNetwork(String id) {
+      return get(Network.class, checkNotNull(id, "id"));
+   }
+
+   public Optional<Subnet> getSubnet(String id) {
+      return get(Subnet.class, checkNotNull(id, "id"));
+   }
+
+   public Optional<Port> getPort(String id) {
+      return get(Port.class, checkNotNull(id, "id"));
+   }
+
+   public Optional<Router> getRouter(String id) {
+      return get(Router.class, checkNotNull(id, "id"));
+   }
+
+   public Optional<FloatingIP> getFloatingIP(String id) {
+      return get(FloatingIP.class, checkNotNull(id, "id"));
+   }
+
+   public List<Network> getNetworks() {
+      return values(Network.class);
+   }
+
+   public List<Subnet> getSubnets() {
+      return values(Subnet.class);
+   }
+
+   public List<Port> getPorts() {
+      return values(Port.class);
+   }
+
+   public List<Router> getRouters() {
+      return values(Router.class);
+   }
+
+   public List<FloatingIP> getFloatingIPs() {
+      return values(FloatingIP.class);
+   }
+
+   /**
+    * @return The subnets of a network.
+    */
+   public List<Subnet> getSubnetsByNetworkId(String networkId) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.subnets, store.subnetsByNetworkId.get(checkNotNull(networkId, "networkId")));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The ports attached to a network.
+    */
+   public List<Port> getPortsByNetworkId(String networkId) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.ports, store.portsByNetworkId.get(checkNotNull(networkId, "networkId")));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The ports of a device, such as a server or a router.
+    */
+   public List<Port> getPortsByDeviceId(String deviceId) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.ports, store.portsByDeviceId.get(checkNotNull(deviceId, "deviceId")));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The ports with a fixed IP address. Networks of different tenants may overlap, so there can be several.
+    */
+   public List<Port> getPortsByFixedIp(String ipAddress) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.ports, store.portsByFixedIp.get(checkNotNull(ipAddress, "ipAddress")));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The ports with a MAC address.
+    */
+   public List<Port> getPortsByMacAddress(String macAddress) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.ports, store.portsByMacAddress.get(normalizeMac(checkNotNull(macAddress, "macAddress"))));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The floating IPs associated with a port.
+    */
+   public List<FloatingIP> getFloatingIPsByPortId(String portId) {
+      lock.readLock().lock();
+      try {
+         return lookup(store.floatingIPs, store.floatingIPsByPortId.get(checkNotNull(portId, "portId")));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return The subnets a port has fixed IPs on.
+    */
+   public List<Subnet> getSubnetsOfPort(Port port) {
+      checkNotNull(port, "port");
+      ImmutableList.Builder<Subnet> subnets = ImmutableList.builder();
+      lock.readLock().lock();
+      try {
+         for (IP ip : port.getFixedIps()) {
+            Subnet subnet = ip.getSubnetId() == null ? null : store.subnets.get(ip.getSubnetId());
+            if (subnet != null) {
+               subnets.add(subnet);
+            }
+         }
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+      return subnets.build();
+   }
+
+   public Network createNetwork(Network.CreateNetwork network) {
+      return put(networkApi.create(network));
+   }
+
+   public Network updateNetwork(String id, Network.UpdateNetwork network) {
+      return put(networkApi.update(id, network));
+   }
+
+   public boolean deleteNetwork(String id) {
+      return remove(Network.class, id, networkApi.delete(id));
+   }
+
+   public Subnet createSubnet(Subnet.CreateSubnet subnet) {
+      return put(subnetApi.create(subnet));
+   }
+
+   public Subnet updateSubnet(String id, Subnet.UpdateSubnet subnet) {
+      return put(subnetApi.update(id, subnet));
+   }
+
+   public boolean deleteSubnet(String id) {
+      return remove(Subnet.class, id, subnetApi.delete(id));
+   }
+
+   public Port createPort(Port.CreatePort port) {
+      return put(portApi.create(port));
+   }
+
+   public Port updatePort(String id, Port.UpdatePort port) {
+      return put(portApi.update(id, port));
+   }
+
+   public boolean deletePort(String id) {
+      return remove(Port.class, id, portApi.delete(id));
+   }
+
+   public Router createRouter(Router.CreateRouter router) {
+      return put(extension(routerApi, "router").create(router));
+   }
+
+   public Router updateRouter(String id, Router.UpdateRouter router) {
+      return put(extension(routerApi, "router").update(id, router));
+   }
+
+   public boolean deleteRouter(String id) {
+      return remove(Router.class, id, extension(routerApi, "router").delete(id));
+   }
+
+   public FloatingIP createFloatingIP(FloatingIP.CreateFloatingIP floatingIP) {
+      return put(extension(floatingIPApi, "floating IP").create(floatingIP));
+   }
+
+   public FloatingIP updateFloatingIP(String id, FloatingIP.UpdateFloatingIP floatingIP) {
+      return put(extension(floatingIPApi, "floating IP").update(id, floatingIP));
+   }
+
+   public boolean deleteFloatingIP(String id) {
+      return remove(FloatingIP.class, id, extension(floatingIPApi, "floating IP").delete(id));
+   }
+
+   /**
+    * Stops the scheduled refresh. The indexes remain available.
+    */
+   @Override
+   public void close() {
+      if (scheduledRefresh != null) {
+         scheduledRefresh.cancel(false);
+      }
+      if (ownsScheduler) {
+         scheduler.shutdownNow();
+      }
+   }
+
+   private static <A> A extension(Optional<A> api, String name) {
+      checkState(api.isPresent(), "the %s extension is not available in this region", name);
+      return api.get();
+   }
+
+   private <T> Optional<T> get(Class<T> type, String id) {
+      lock.readLock().lock();
+      try {
+         return Optional.fromNullable(type.cast(store.byType(type).get(id)));
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private <T> List<T> values(Class<T> type) {
+      lock.readLock().lock();
+      try {
+         ImmutableList.Builder<T> values = ImmutableList.builder();
+         for (Object value : store.byType(type).values()) {
+            values.add(type.cast(value));
+         }
+         return values.build();
+      }
+      finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private static <T> List<T> lookup(Map<String, T> byId, Collection<String> ids) {
+      ImmutableList.Builder<T> values = ImmutableList.builder();
+      for (String id : ids) {
+         T value = byId.get(id);
+         if (value != null) {
+            values.add(value);
+         }
+      }
+      return values.build();
+   }
+
+   private <T> T put(final T resource) {
+      if (resource != null) {
+         apply(new Change() {
+            @Override
+            public void applyTo(Store target) {
+               target.put(resource);
+            }
+         });
+      }
+      return resource;
+   }
+
+   private boolean remove(final Class<?> type, final String id, boolean deleted) {
+      if (deleted) {
+         apply(new Change() {
+            @Override
+            public void applyTo(Store target) {
+               target.remove(type, id);
+            }
+         });
+      }
+      return deleted;
+   }
+
+   private void apply(Change change) {
+      lock.writeLock().lock();
+      try {
+         change.applyTo(store);
+         if (pendingChanges != null) {
+            pendingChanges.add(change);
+         }
+      }
+      finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private static String normalizeMac(String macAddress) {
+      return macAddress.toLowerCase();
+   }
+
+   private interface Change {
+      void applyTo(Store target);
+   }
+
+   /**
+    * The resources of the region and their indexes. Not thread safe, guarded by the lock of the inventory.
+    */
+   private static final class Store {
+      private final Map<String, Network> networks = Maps.newLinkedHashMap();
+      private final Map<String, Subnet> subnets = Maps.newLinkedHashMap();
+      private final Map<String, Port> ports = Maps.newLinkedHashMap();
+      private final Map<String, Router> routers = Maps.newLinkedHashMap();
+      private final Map<String, FloatingIP> floatingIPs = Maps.newLinkedHashMap();
+      private final SetMultimap<String, String> subnetsByNetworkId = LinkedHashMultimap.create();
+      private final SetMultimap<String, String> portsByNetworkId = LinkedHashMultimap.create();
+      private final SetMultimap<String, String> portsByDeviceId = LinkedHashMultimap.create();
+      private final SetMultimap<String, String> portsByFixedIp = LinkedHashMultimap.create();
+      private final SetMultimap<String, String> portsByMacAddress = LinkedHashMultimap.create();
+      private final SetMultimap<String, String> floatingIPsByPortId = LinkedHashMultimap.create();
+
+      Map<String, ?> byType(Class<?> type) {
+         if (type == Network.class) {
+            return networks;
+         }
+         if (type == Subnet.class) {
+            return subnets;
+         }
+         if (type == Port.class) {
+            return ports;
+         }
+         if (type == Router.class) {
+            return routers;
+         }
+         if (type == FloatingIP.class) {
+            return floatingIPs;
+         }
+         throw new IllegalArgumentException("not an inventory type: " + type);
+      }
+
+      void put(Object resource) {
+         if (resource instanceof Network) {
+            Network network = (Network) resource;
+            networks.put(network.getId(), network);
+         }
+         else if (resource instanceof Subnet) {
+            Subnet subnet = (Subnet) resource;
+            unindex(subnets.put(subnet.getId(), subnet));
+            index(subnetsByNetworkId, subnet.getNetworkId(), subnet.getId());
+         }
+         else if (resource instanceof Port) {
+            Port port = (Port) resource;
+            unindex(ports.put(port.getId(), port));
+            index(portsByNetworkId, port.getNetworkId(), port.getId());
+            index(portsByDeviceId, port.getDeviceId(), port.getId());
+            if (port.getMacAddress() != null) {
+               index(portsByMacAddress, normalizeMac(port.getMacAddress()), port.getId());
+            }
+            if (port.getFixedIps() != null) {
+               for (IP ip : port.getFixedIps()) {
+                  index(portsByFixedIp, ip.getIpAddress(), port.getId());
+               }
+            }
+         }
+         else if (resource instanceof Router) {
+            Router router = (Router) resource;
+            routers.put(router.getId(), router);
+         }
+         else if (resource instanceof FloatingIP) {
+            FloatingIP floatingIP = (FloatingIP) resource;
+            unindex(floatingIPs.put(floatingIP.getId(), floatingIP));
+            index(floatingIPsByPortId, floatingIP.getPortId(), floatingIP.getId());
+         }
+         else {
+            throw new IllegalArgumentException("not an inventory type: " + resource);
+         }
+      }
+
+      void remove(Class<?> type, String id) {
+         Object removed = byType(type).remove(id);
+         unindex(removed);
+         if (removed instanceof Network) {
+            // the subnets of a network are deleted along with it
+            for (String subnetId : ImmutableList.copyOf(subnetsByNetworkId.get(id))) {
+               unindex(subnets.remove(subnetId));
+            }
+         }
+      }
+
+      private void unindex(Object resource) {
+         if (resource instanceof Subnet) {
+            Subnet subnet = (Subnet) resource;
+            unindex(subnetsByNetworkId, subnet.getNetworkId(), subnet.getId());
+         }
+         else if (resource instanceof Port) {
+            Port port = (Port) resource;
+            unindex(portsByNetworkId, port.getNetworkId(), port.getId());
+            unindex(portsByDeviceId, port.getDeviceId(), port.getId());
+            if (port.getMacAddress() != null) {
+               unindex(portsByMacAddress, normalizeMac(port.getMacAddress()), port.getId());
+            }
+            if (port.getFixedIps() != null) {
+               for (IP ip : port.getFixedIps()) {
+                  unindex(portsByFixedIp, ip.getIpAddress(), port.getId());
+               }
+            }
+         }
+         else if (resource instanceof FloatingIP) {
+            FloatingIP floatingIP = (FloatingIP) resource;
+            unindex(floatingIPsByPortId, floatingIP.getPortId(), floatingIP.getId());
+         }
+      }
+
+      private static void index(SetMultimap<String, String> index, String key, String id) {
+         if (key != null && !key.isEmpty()) {
+            index.put(key, id);
+         }
+      }
+
+      private static void unindex(SetMultimap<String, String> index, String key, String id) {
+         if (key != null) {
+            index.remove(key, id);
+         }
+      }
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected NeutronApi api;
+      protected String region;
+      protected long refreshIntervalMillis;
+      protected ScheduledExecutorService scheduler;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(NeutronApi api) {
+         this.api = api;
+         return this;
+      }
+
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      /**
+       * Reloads the inventory in the background, the first time right away. By default the inventory is only loaded
+       * by calling {@link NeutronInventory#refresh()}.
+       */
+      public Builder refreshInterval(long interval, TimeUnit unit) {
+         this.refreshIntervalMillis = unit.toMillis(interval);
+         return this;
+      }
+
+      /**
+       * Runs the scheduled refresh. When not set, a daemon thread is created and shut down on close.
+       */
+      public Builder scheduler(ScheduledExecutorService scheduler) {
+         this.scheduler = scheduler;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public NeutronInventory build() {
+         return new NeutronInventory(this);
+      }
+   }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+
+/**
+ * The part of a security group rule that determines the traffic it allows, in a canonical form so that two rules
+ * allowing the same traffic are equal.
+ * <ul>
+ * <li>A missing ethertype is derived from the remote IP prefix, IPv4 by default.</li>
+ * <li>The remote IP prefix has its host bits cleared; a prefix matching every address is the same as none.</li>
+ * <li>Port ranges are dropped when no protocol is set. For TCP and UDP, a missing range is every port and a missing
+ * bound is the other bound.</li>
+ * </ul>
+ * Ids, tenants and other attributes that do not affect traffic are ignored. Rules with a protocol other than TCP, UDP
+ * and ICMP cannot be normalized, since the protocol is parsed as {@link RuleProtocol#UNRECOGNIZED} and such rules
+ * would all be equal.
+ */
+@Beta
+public final class NormalizedRule {
+
+   private static final int MIN_PORT = 1;
+   private static final int MAX_PORT = 65535;
+
+   private final String securityGroupId;
+   private final RuleDirection direction;
+   private final RuleEthertype ethertype;
+   private final RuleProtocol protocol;
+   private final Integer portRangeMin;
+   private final Integer portRangeMax;
+   private final String remoteIpPrefix;
+   private final String remoteGroupId;
+
+   /**
+    * @throws IllegalArgumentException if the protocol of the rule is not recognized.
+    */
+   public static NormalizedRule of(Rule rule) {
+      checkNotNull(rule, "rule");
+      checkArgument(isRecognized(rule), "protocol of %s is not recognized", rule);
+      return new NormalizedRule(rule);
+   }
+
+   /**
+    * @return Whether the protocol of a rule is known, so that the rule can be normalized.
+    */
+   public static boolean isRecognized(Rule rule) {
+      return checkNotNull(rule, "rule").getProtocol() != RuleProtocol.UNRECOGNIZED;
+   }
+
+   private NormalizedRule(Rule rule) {
+      this.securityGroupId = rule.getSecurityGroupId();
+      this.direction = checkNotNull(rule.getDirection(), "direction of %s", rule);
+      this.remoteGroupId = rule.getRemoteGroupId();
+
+      String prefix = rule.getRemoteIpPrefix() == null ? null : IpAddresses.canonicalCidr(rule.getRemoteIpPrefix());
+      this.remoteIpPrefix = "0.0.0.0/0".equals(prefix) || "::/0".equals(prefix) ? null : prefix;
+      if (rule.getEthertype() != null) {
+         this.ethertype = rule.getEthertype();
+      }
+      else {
+         this.ethertype = prefix != null && prefix.indexOf(':') >= 0 ? RuleEthertype.IPV6 : RuleEthertype.IPV4;
+      }
+
+      this.protocol = rule.getProtocol();
+      Integer min = rule.getPortRangeMin();
+      Integer max = rule.getPortRangeMax();
+      if (protocol == null) {
+         min = null;
+         max = null;
+      }
+      else if (protocol == RuleProtocol.TCP || protocol == RuleProtocol.UDP) {
+         if (min == null && max == null) {
+            min = MIN_PORT;
+            max = MAX_PORT;
+         }
+         else if (min == null) {
+            min = max;
+         }
+         else if (max == null) {
+            max = min;
+         }
+      }
+      this.portRangeMin = min;
+      this.portRangeMax = max;
+   }
+
+   public String getSecurityGroupId() {
+      return securityGroupId;
+   }
+
+   public RuleDirection getDirection() {
+      return direction;
+   }
+
+   public RuleEthertype getEthertype() {
+      return ethertype;
+   }
+
+   /**
+    * @return The protocol, null for every protocol.
+    */
+   @Nullable
+   public RuleProtocol getProtocol() {
+      return protocol;
+   }
+
+   /**
+    * @return The first port for TCP and UDP, the ICMP type for ICMP, null for any.
+    */
+   @Nullable
+   public Integer getPortRangeMin() {
+      return portRangeMin;
+   }
+
+   /**
+    * @return The last port for TCP and UDP, the ICMP code for ICMP, null for any.
+    */
+   @Nullable
+   public Integer getPortRangeMax() {
+      return portRangeMax;
+   }
+
+   /**
+    * @return The canonical remote IP prefix, null if the rule is not restricted by remote address.
+    */
+   @Nullable
+   public String getRemoteIpPrefix() {
+      return remoteIpPrefix;
+   }
+
+   @Nullable
+   public String getRemoteGroupId() {
+      return remoteGroupId;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      NormalizedRule that = (NormalizedRule) o;
+      return Objects.equal(this.securityGroupId, that.securityGroupId)
+            && this.direction == that.direction
+            && this.ethertype == that.ethertype
+            && this.protocol == that.protocol
+            && Objects.equal(this.portRangeMin, that.portRangeMin)
+            && Objects.equal(this.portRangeMax, that.portRangeMax)
+            && Objects.equal(this.remoteIpPrefix, that.remoteIpPrefix)
+            && Objects.equal(this.remoteGroupId, that.remoteGroupId);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(securityGroupId, direction, ethertype, protocol, portRangeMin, portRangeMax,
+            remoteIpPrefix, remoteGroupId);
+   }
+
+   @Override
+   public String toString() {
+      return Objects.toStringHelper(this).omitNullValues()
+            .add("securityGroupId", securityGroupId)
+            .add("direction", direction)
+            .add("ethertype", ethertype)
+            .add("protocol", protocol)
+            .add("portRangeMin", portRangeMin)
+            .add("portRangeMax", portRangeMax)
+            .add("remoteIpPrefix", remoteIpPrefix)
+            .add("remoteGroupId", remoteGroupId).toString();
+   }
+}
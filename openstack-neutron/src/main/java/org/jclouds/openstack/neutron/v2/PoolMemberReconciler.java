@@ -0,0 +1,665 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.LBaaSStatus;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+import org.jclouds.openstack.neutron.v2.extensions.lbaas.v1.LBaaSApi;
+import org.jclouds.openstack.neutron.v2.options.lbaas.v1.ListMembersOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Brings the members of an LBaaS v1 pool to a desired set of addresses and weights with as few calls as possible.
+ * <p/>
+ * The current members of the pool are listed and matched with the desired ones by address and protocol port. Missing
+ * members are created and members whose weight or administrative state differ are updated. Once those are active,
+ * members that are no longer desired are drained before they are deleted: their weight is set to 0 so that the load
+ * balancer sends them no new connections, and they are only deleted once that change is active and the drain period
+ * has passed. If any member could not be created or updated, or did not become active, the members to remove are
+ * kept unless {@link Builder#removeDespiteFailures(boolean)} is set. Calls are made with a bounded number in flight.
+ * <p/>
+ * Rather than polling each changed member, the reconciler waits for all of them to settle with a single poller that
+ * lists the members of the pool on each round.
+ */
+@Beta
+public class PoolMemberReconciler implements Closeable {
+
+   private final LBaaSApi api;
+   private final int maxParallelism;
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final long pollIntervalMillis;
+   private final long timeoutMillis;
+   private final long drainPeriodMillis;
+   private final boolean removeDespiteFailures;
+   private final Logger logger;
+
+   protected PoolMemberReconciler(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.maxParallelism = builder.maxParallelism;
+      this.pollIntervalMillis = builder.pollIntervalMillis;
+      this.timeoutMillis = builder.timeoutMillis;
+      this.drainPeriodMillis = builder.drainPeriodMillis;
+      this.removeDespiteFailures = builder.removeDespiteFailures;
+      this.logger = builder.logger;
+      checkArgument(maxParallelism > 0, "maxParallelism must be positive");
+      checkArgument(pollIntervalMillis > 0, "pollInterval must be positive");
+      checkArgument(timeoutMillis >= 0, "timeout must not be negative");
+      checkArgument(drainPeriodMillis >= 0, "drainPeriod must not be negative");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newFixedThreadPool(maxParallelism,
+               new ThreadFactoryBuilder().setNameFormat("neutron-pool-member-sync-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * A member a pool should have.
+    */
+   public static final class DesiredMember {
+      private final String address;
+      private final int protocolPort;
+      private final int weight;
+      private final boolean adminStateUp;
+
+      /**
+       * A member with the default weight of 1, administratively up.
+       */
+      public static DesiredMember create(String address, int protocolPort) {
+         return create(address, protocolPort, 1, true);
+      }
+
+      public static DesiredMember create(String address, int protocolPort, int weight, boolean adminStateUp) {
+         return new DesiredMember(address, protocolPort, weight, adminStateUp);
+      }
+
+      private DesiredMember(String address, int protocolPort, int weight, boolean adminStateUp) {
+         this.address = checkNotNull(address, "address");
+         checkArgument(protocolPort > 0 && protocolPort <= 65535, "invalid protocol port %s", protocolPort);
+         checkArgument(weight >= 0 && weight <= 256, "weight must be between 0 and 256");
+         this.protocolPort = protocolPort;
+         this.weight = weight;
+         this.adminStateUp = adminStateUp;
+      }
+
+      public String getAddress() {
+         return address;
+      }
+
+      public int getProtocolPort() {
+         return protocolPort;
+      }
+
+      public int getWeight() {
+         return weight;
+      }
+
+      public boolean getAdminStateUp() {
+         return adminStateUp;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o)
+            return true;
+         if (!(o instanceof DesiredMember))
+            return false;
+         DesiredMember that = (DesiredMember) o;
+         return address.equals(that.address) && protocolPort == that.protocolPort && weight == that.weight
+               && adminStateUp == that.adminStateUp;
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(address, protocolPort, weight, adminStateUp);
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("address", address).add("protocolPort", protocolPort)
+               .add("weight", weight).add("adminStateUp", adminStateUp).toString();
+      }
+   }
+
+   /**
+    * The calls needed to bring a pool to its desired members.
+    */
+   public static final class Plan {
+      private final String poolId;
+      private final List<Member.CreateMember> toCreate;
+      private final Map<Member, Member.UpdateMember> toUpdate;
+      private final List<Member> toRemove;
+      private final int unchanged;
+
+      private Plan(String poolId, List<Member.CreateMember> toCreate, Map<Member, Member.UpdateMember> toUpdate,
+            List<Member> toRemove, int unchanged) {
+         this.poolId = poolId;
+         this.toCreate = toCreate;
+         this.toUpdate = toUpdate;
+         this.toRemove = toRemove;
+         this.unchanged = unchanged;
+      }
+
+      public String getPoolId() {
+         return poolId;
+      }
+
+      public List<Member.CreateMember> getToCreate() {
+         return toCreate;
+      }
+
+      /**
+       * @return The changes to make to current members, keyed by the member.
+       */
+      public Map<Member, Member.UpdateMember> getToUpdate() {
+         return toUpdate;
+      }
+
+      /**
+       * @return The current members that are not desired, including duplicates of desired members. They are drained,
+       *         then deleted.
+       */
+      public List<Member> getToRemove() {
+         return toRemove;
+      }
+
+      /**
+       * @return The number of desired members already in place.
+       */
+      public int getUnchanged() {
+         return unchanged;
+      }
+
+      public boolean isEmpty() {
+         return toCreate.isEmpty() && toUpdate.isEmpty() && toRemove.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("poolId", poolId).add("toCreate", toCreate.size())
+               .add("toUpdate", toUpdate.size()).add("toRemove", toRemove.size()).add("unchanged", unchanged)
+               .toString();
+      }
+   }
+
+   /**
+    * The outcome of applying a plan.
+    */
+   public static final class Result {
+      private final List<Member> created;
+      private final List<Member> updated;
+      private final List<String> deleted;
+      private final Map<Object, Throwable> failures;
+
+      private Result(List<Member> created, List<Member> updated, List<String> deleted,
+            Map<Object, Throwable> failures) {
+         this.created = created;
+         this.updated = updated;
+         this.deleted = deleted;
+         this.failures = failures;
+      }
+
+      public List<Member> getCreated() {
+         return created;
+      }
+
+      public List<Member> getUpdated() {
+         return updated;
+      }
+
+      /**
+       * @return The ids of the members deleted.
+       */
+      public List<String> getDeleted() {
+         return deleted;
+      }
+
+      /**
+       * @return The failed changes, keyed by the {@link Member.CreateMember} that could not be created or the current
+       *         {@link Member} that could not be updated, drained or deleted. A change that was made but did not become
+       *         active in time fails with a {@link TimeoutException}.
+       */
+      public Map<Object, Throwable> getFailures() {
+         return failures;
+      }
+
+      public boolean isComplete() {
+         return failures.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("created", created.size()).add("updated", updated.size())
+               .add("deleted", deleted.size()).add("failures", failures).toString();
+      }
+   }
+
+   /**
+    * Compares the current members of a pool with the desired ones.
+    *
+    * @param poolId  The pool to reconcile.
+    * @param desired The desired members. At most one member is kept per address and protocol port.
+    */
+   public Plan plan(String poolId, Iterable<DesiredMember> desired) {
+      checkNotNull(poolId, "poolId");
+      Map<String, DesiredMember> wanted = Maps.newLinkedHashMap();
+      for (DesiredMember member : checkNotNull(desired, "desired")) {
+         String key = key(member.getAddress(), member.getProtocolPort());
+         checkArgument(!wanted.containsKey(key), "%s is desired more than once", key);
+         wanted.put(key, member);
+      }
+
+      Map<Member, Member.UpdateMember> toUpdate = Maps.newLinkedHashMap();
+      ImmutableList.Builder<Member> toRemove = ImmutableList.builder();
+      int unchanged = 0;
+      for (Member member : listMembers(poolId)) {
+         DesiredMember match = member.getProtocolPort() == null ? null
+               : wanted.remove(key(member.getAddress(), member.getProtocolPort()));
+         if (match == null) {
+            toRemove.add(member);
+         }
+         else if (Objects.equal(member.getWeight(), match.getWeight())
+               && Objects.equal(member.getAdminStateUp(), match.getAdminStateUp())) {
+            unchanged++;
+         }
+         else {
+            toUpdate.put(member, Member.updateBuilder().weight(match.getWeight())
+                  .adminStateUp(match.getAdminStateUp()).build());
+         }
+      }
+      ImmutableList.Builder<Member.CreateMember> toCreate = ImmutableList.builder();
+      for (DesiredMember member : wanted.values()) {
+         toCreate.add(Member.createBuilder(poolId, member.getAddress(), member.getProtocolPort())
+               .weight(member.getWeight()).adminStateUp(member.getAdminStateUp()).build());
+      }
+      return new Plan(poolId, toCreate.build(), ImmutableMap.copyOf(toUpdate), toRemove.build(), unchanged);
+   }
+
+   /**
+    * Makes the calls of a plan. New and updated members are made active before the members to remove are drained,
+    * and those are deleted once the drain is active and the drain period has passed. When a new or updated member
+    * fails, the members to remove are left in place and reported as failures, unless the reconciler was built to
+    * remove them regardless.
+    */
+   public Result apply(Plan plan) {
+      checkNotNull(plan, "plan");
+      Map<Object, Throwable> failures = Maps.newLinkedHashMap();
+      // the created and updated members to wait for, by id, with the key of their failures
+      Map<String, Object> pending = Maps.newLinkedHashMap();
+
+      List<Callable<Member>> creates = Lists.newArrayList();
+      for (final Member.CreateMember member : plan.getToCreate()) {
+         creates.add(new Callable<Member>() {
+            @Override
+            public Member call() {
+               return api.createMember(member);
+            }
+         });
+      }
+      List<Member> created = run(creates, plan.getToCreate(), failures);
+      Iterator<Member> createdMember = created.iterator();
+      for (Member.CreateMember member : plan.getToCreate()) {
+         if (!failures.containsKey(member)) {
+            pending.put(createdMember.next().getId(), member);
+         }
+      }
+
+      List<Member> current = ImmutableList.copyOf(plan.getToUpdate().keySet());
+      List<Member> updated = run(updates(plan.getToUpdate()), current, failures);
+      for (Member member : current) {
+         if (!failures.containsKey(member)) {
+            pending.put(member.getId(), member);
+         }
+      }
+
+      // the replacements take traffic before the members to remove stop getting new connections
+      awaitSettled(plan.getPoolId(), pending, failures);
+      if (!failures.isEmpty() && !removeDespiteFailures && !plan.getToRemove().isEmpty()) {
+         logger.warn("keeping %d members of pool %s, %d new or updated members failed", plan.getToRemove().size(),
+               plan.getPoolId(), failures.size());
+         for (Member member : plan.getToRemove()) {
+            failures.put(member, new IllegalStateException("member " + member.getId()
+                  + " was not removed because its replacements failed"));
+         }
+         return new Result(ImmutableList.copyOf(created), ImmutableList.copyOf(updated), ImmutableList.<String> of(),
+               ImmutableMap.copyOf(failures));
+      }
+
+      Map<Member, Member.UpdateMember> drains = Maps.newLinkedHashMap();
+      for (Member member : plan.getToRemove()) {
+         if (!Objects.equal(member.getWeight(), 0)) {
+            drains.put(member, Member.updateBuilder().weight(0).build());
+         }
+      }
+      run(updates(drains), ImmutableList.copyOf(drains.keySet()), failures);
+      Map<String, Object> draining = Maps.newLinkedHashMap();
+      for (Member member : drains.keySet()) {
+         if (!failures.containsKey(member)) {
+            draining.put(member.getId(), member);
+         }
+      }
+      awaitSettled(plan.getPoolId(), draining, failures);
+
+      final List<Member> toDelete = Lists.newArrayList();
+      for (Member member : plan.getToRemove()) {
+         if (!failures.containsKey(member)) {
+            toDelete.add(member);
+         }
+      }
+      if (!toDelete.isEmpty() && drainPeriodMillis > 0) {
+         logger.debug("draining %d members of pool %s", toDelete.size(), plan.getPoolId());
+         sleep(drainPeriodMillis);
+      }
+      List<Callable<Boolean>> deletes = Lists.newArrayList();
+      for (final Member member : toDelete) {
+         deletes.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return api.deleteMember(member.getId());
+            }
+         });
+      }
+      List<Boolean> results = run(deletes, toDelete, failures);
+      ImmutableList.Builder<String> deleted = ImmutableList.builder();
+      Iterator<Boolean> result = results.iterator();
+      for (Member member : toDelete) {
+         if (failures.containsKey(member)) {
+            continue;
+         }
+         // a member that is already gone counts as deleted
+         deleted.add(member.getId());
+         if (!result.next()) {
+            logger.debug("member %s was already deleted", member.getId());
+         }
+      }
+      return new Result(ImmutableList.copyOf(created), ImmutableList.copyOf(updated), deleted.build(),
+            ImmutableMap.copyOf(failures));
+   }
+
+   /**
+    * Plans and applies in one step.
+    *
+    * @see #plan(String, Iterable)
+    * @see #apply(Plan)
+    */
+   public Result sync(String poolId, Iterable<DesiredMember> desired) {
+      Plan plan = plan(poolId, desired);
+      logger.debug("pool %s: %s", poolId, plan);
+      return apply(plan);
+   }
+
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   private List<Member> listMembers(String poolId) {
+      ImmutableList.Builder<Member> members = ImmutableList.builder();
+      for (Member member : api.listMembers(ListMembersOptions.Builder.poolId(poolId)).concat()) {
+         // the pool filter may be ignored by older plugins
+         if (poolId.equals(member.getPoolId())) {
+            members.add(member);
+         }
+      }
+      return members.build();
+   }
+
+   private List<Callable<Member>> updates(Map<Member, Member.UpdateMember> updates) {
+      List<Callable<Member>> calls = Lists.newArrayList();
+      for (final Map.Entry<Member, Member.UpdateMember> update : updates.entrySet()) {
+         calls.add(new Callable<Member>() {
+            @Override
+            public Member call() {
+               Member member = api.updateMember(update.getKey().getId(), update.getValue());
+               if (member == null) {
+                  throw new IllegalStateException("member " + update.getKey().getId() + " no longer exists");
+               }
+               return member;
+            }
+         });
+      }
+      return calls;
+   }
+
+   /**
+    * Polls the members of a pool until every pending member is active, or inactive when its health monitor finds it
+    * down. Members in error, gone or still pending at the timeout are added to the failures.
+    */
+   private void awaitSettled(String poolId, Map<String, Object> pending, Map<Object, Throwable> failures) {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      Map<String, Object> waiting = Maps.newLinkedHashMap(pending);
+      while (!waiting.isEmpty()) {
+         Map<String, Member> members = null;
+         try {
+            members = Maps.newHashMap();
+            for (Member member : listMembers(poolId)) {
+               members.put(member.getId(), member);
+            }
+         }
+         catch (RuntimeException e) {
+            // a failed poll is retried on the next round
+            logger.warn(e, "could not list the members of pool %s", poolId);
+            members = null;
+         }
+         if (members != null) {
+            for (Iterator<Map.Entry<String, Object>> it = waiting.entrySet().iterator(); it.hasNext();) {
+               Map.Entry<String, Object> entry = it.next();
+               Member member = members.get(entry.getKey());
+               if (member == null) {
+                  failures.put(entry.getValue(),
+                        new IllegalStateException("member " + entry.getKey() + " is no longer in pool " + poolId));
+                  it.remove();
+               }
+               else if (member.getStatus() == LBaaSStatus.ACTIVE || member.getStatus() == LBaaSStatus.INACTIVE) {
+                  it.remove();
+               }
+               else if (member.getStatus() == LBaaSStatus.ERROR) {
+                  failures.put(entry.getValue(), new IllegalStateException("member " + entry.getKey() + " is in error: "
+                        + member.getStatusDescription()));
+                  it.remove();
+               }
+            }
+         }
+         if (waiting.isEmpty()) {
+            return;
+         }
+         if (System.nanoTime() - deadline >= 0) {
+            for (Map.Entry<String, Object> entry : waiting.entrySet()) {
+               failures.put(entry.getValue(), new TimeoutException("member " + entry.getKey() + " is not active after "
+                     + timeoutMillis + "ms"));
+            }
+            return;
+         }
+         sleep(pollIntervalMillis);
+      }
+   }
+
+   private static void sleep(long millis) {
+      try {
+         TimeUnit.MILLISECONDS.sleep(millis);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("interrupted while reconciling pool members", e);
+      }
+   }
+
+   private static String key(String address, int protocolPort) {
+      return address + ":" + protocolPort;
+   }
+
+   /**
+    * Runs tasks with at most {@code maxParallelism} in flight.
+    *
+    * @return The results of the tasks that succeeded, in task order. The others are added to the failures, keyed by
+    *         the matching element of {@code keys}.
+    */
+   private <T> List<T> run(List<Callable<T>> tasks, List<?> keys, Map<Object, Throwable> failures) {
+      CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+      Map<Future<T>, Integer> futures = Maps.newIdentityHashMap();
+      List<T> results = Lists.newArrayList(Collections.<T> nCopies(tasks.size(), null));
+      boolean[] succeeded = new boolean[tasks.size()];
+      int submitted = 0;
+      for (; submitted < tasks.size() && submitted < maxParallelism; submitted++) {
+         futures.put(completion.submit(tasks.get(submitted)), submitted);
+      }
+      try {
+         for (int done = 0; done < tasks.size(); done++) {
+            Future<T> future = completion.take();
+            if (submitted < tasks.size()) {
+               futures.put(completion.submit(tasks.get(submitted)), submitted);
+               submitted++;
+            }
+            int index = futures.get(future);
+            try {
+               results.set(index, future.get());
+               succeeded[index] = true;
+            }
+            catch (ExecutionException e) {
+               logger.warn(e.getCause(), "call for %s failed", keys.get(index));
+               failures.put(keys.get(index), e.getCause());
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         for (Future<T> future : futures.keySet()) {
+            future.cancel(true);
+         }
+         throw new IllegalStateException("interrupted while reconciling pool members", e);
+      }
+      List<T> successful = Lists.newArrayListWithCapacity(tasks.size());
+      for (int i = 0; i < tasks.size(); i++) {
+         if (succeeded[i]) {
+            successful.add(results.get(i));
+         }
+      }
+      return successful;
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected LBaaSApi api;
+      protected int maxParallelism = 4;
+      protected ExecutorService executor;
+      protected long pollIntervalMillis = TimeUnit.SECONDS.toMillis(2);
+      protected long timeoutMillis = TimeUnit.MINUTES.toMillis(5);
+      protected long drainPeriodMillis = TimeUnit.SECONDS.toMillis(30);
+      protected boolean removeDespiteFailures;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(LBaaSApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * The maximum number of calls in flight. Defaults to 4.
+       */
+      public Builder maxParallelism(int maxParallelism) {
+         this.maxParallelism = maxParallelism;
+         return this;
+      }
+
+      /**
+       * Runs the calls. When not set, a pool of {@code maxParallelism} daemon threads is created and shut down on
+       * close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      /**
+       * How often to list the members of the pool while changes are pending. Defaults to 2 seconds.
+       */
+      public Builder pollInterval(long duration, TimeUnit unit) {
+         this.pollIntervalMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /**
+       * How long to wait for changed members to become active. Defaults to 5 minutes.
+       */
+      public Builder timeout(long duration, TimeUnit unit) {
+         this.timeoutMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /**
+       * How long drained members keep serving their open connections before they are deleted. Defaults to 30
+       * seconds.
+       */
+      public Builder drainPeriod(long duration, TimeUnit unit) {
+         this.drainPeriodMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /**
+       * Whether members that are no longer desired are drained and deleted even when some new or updated members
+       * failed, which may leave the pool with fewer working members. Defaults to false.
+       */
+      public Builder removeDespiteFailures(boolean removeDespiteFailures) {
+         this.removeDespiteFailures = removeDespiteFailures;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public PoolMemberReconciler build() {
+         return new PoolMemberReconciler(this);
+      }
+   }
+}
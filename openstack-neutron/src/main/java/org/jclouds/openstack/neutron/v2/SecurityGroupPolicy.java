@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Answers whether a flow is allowed by the rules of the security groups of a port, without calling the API. Useful
+ * to test a policy before applying it with a {@link SecurityGroupReconciler}.
+ * <p/>
+ * Security groups only allow traffic: a flow is allowed if any rule of any of the groups matches it, and denied
+ * otherwise. Neutron tracks connections, so replies to an allowed flow are allowed as well; only the direction in
+ * which a connection is opened is evaluated here.
+ */
+@Beta
+public class SecurityGroupPolicy {
+
+   private final ImmutableListMultimap<RuleDirection, CompiledRule> rules;
+
+   /**
+    * @param rules The rules of every security group of the port.
+    */
+   public static SecurityGroupPolicy compile(Iterable<? extends Rule> rules) {
+      return new SecurityGroupPolicy(checkNotNull(rules, "rules"));
+   }
+
+   /**
+    * @param securityGroups The security groups of the port, with their rules.
+    */
+   public static SecurityGroupPolicy compileGroups(Iterable<SecurityGroup> securityGroups) {
+      ImmutableList.Builder<Rule> rules = ImmutableList.builder();
+      for (SecurityGroup securityGroup : checkNotNull(securityGroups, "securityGroups")) {
+         if (securityGroup.getRules() != null) {
+            rules.addAll(securityGroup.getRules());
+         }
+      }
+      return compile(rules.build());
+   }
+
+   protected SecurityGroupPolicy(Iterable<? extends Rule> rules) {
+      ImmutableListMultimap.Builder<RuleDirection, CompiledRule> compiled = ImmutableListMultimap.builder();
+      for (Rule rule : rules) {
+         // a protocol that is not recognized never matches a TCP, UDP or ICMP flow
+         if (!NormalizedRule.isRecognized(rule)) {
+            continue;
+         }
+         NormalizedRule normalized = NormalizedRule.of(rule);
+         compiled.put(normalized.getDirection(), new CompiledRule(normalized));
+      }
+      this.rules = compiled.build();
+   }
+
+   public boolean isAllowed(Flow flow) {
+      return getMatchingRule(flow).isPresent();
+   }
+
+   /**
+    * @return The first rule that allows a flow, absent if the flow is denied.
+    */
+   public Optional<NormalizedRule> getMatchingRule(Flow flow) {
+      checkNotNull(flow, "flow");
+      for (CompiledRule rule : rules.get(flow.direction)) {
+         if (rule.matches(flow)) {
+            return Optional.of(rule.rule);
+         }
+      }
+      return Optional.absent();
+   }
+
+   /**
+    * A connection to evaluate. Ingress flows are opened by the remote end towards the port, egress flows by the port
+    * towards the remote end.
+    */
+   public static final class Flow {
+      private final RuleDirection direction;
+      private final RuleProtocol protocol;
+      private final int port;
+      private final int icmpCode;
+      private final String remoteAddress;
+      private final RuleEthertype ethertype;
+      private final Set<String> remoteGroupIds;
+
+      private Flow(Builder builder) {
+         this.direction = checkNotNull(builder.direction, "direction required");
+         this.protocol = checkNotNull(builder.protocol, "protocol required");
+         this.remoteAddress = checkNotNull(builder.remoteAddress, "remoteAddress required");
+         checkArgument(protocol != RuleProtocol.UNRECOGNIZED, "protocol must be tcp, udp or icmp");
+         this.port = builder.port;
+         this.icmpCode = builder.icmpCode;
+         if (IpAddresses.parseIPv4(remoteAddress) >= 0) {
+            this.ethertype = RuleEthertype.IPV4;
+         }
+         else {
+            checkArgument(IpAddresses.parseIPv6(remoteAddress) != null, "not an IP address: %s", remoteAddress);
+            this.ethertype = RuleEthertype.IPV6;
+         }
+         this.remoteGroupIds = ImmutableSet.copyOf(builder.remoteGroupIds);
+      }
+
+      public static Builder builder() {
+         return new Builder();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("direction", direction).add("protocol", protocol).add("port", port)
+               .add("remoteAddress", remoteAddress).add("remoteGroupIds", remoteGroupIds).toString();
+      }
+
+      public static class Builder {
+         protected RuleDirection direction;
+         protected RuleProtocol protocol;
+         protected int port = -1;
+         protected int icmpCode = -1;
+         protected String remoteAddress;
+         protected Set<String> remoteGroupIds = ImmutableSet.of();
+
+         public Builder direction(RuleDirection direction) {
+            this.direction = direction;
+            return this;
+         }
+
+         public Builder protocol(RuleProtocol protocol) {
+            this.protocol = protocol;
+            return this;
+         }
+
+         /**
+          * The destination port for TCP and UDP.
+          */
+         public Builder port(int port) {
+            this.port = port;
+            return this;
+         }
+
+         /**
+          * The type and code of an ICMP message.
+          */
+         public Builder icmp(int type, int code) {
+            this.port = type;
+            this.icmpCode = code;
+            return this;
+         }
+
+         /**
+          * The address of the other end of the connection.
+          */
+         public Builder remoteAddress(String remoteAddress) {
+            this.remoteAddress = remoteAddress;
+            return this;
+         }
+
+         /**
+          * The security groups of the other end of the connection, if it is a port of this cloud.
+          */
+         public Builder remoteGroupIds(Iterable<String> remoteGroupIds) {
+            this.remoteGroupIds = ImmutableSet.copyOf(remoteGroupIds);
+            return this;
+         }
+
+         public Flow build() {
+            return new Flow(this);
+         }
+      }
+   }
+
+   /**
+    * A normalized rule with its remote prefix parsed once.
+    */
+   private static final class CompiledRule {
+      private final NormalizedRule rule;
+      private final IpAddresses.Range remote;
+
+      CompiledRule(NormalizedRule rule) {
+         this.rule = rule;
+         this.remote = rule.getRemoteIpPrefix() == null ? null : IpAddresses.Range.fromCidr(rule.getRemoteIpPrefix());
+      }
+
+      boolean matches(Flow flow) {
+         if (rule.getEthertype() != flow.ethertype) {
+            return false;
+         }
+         if (rule.getProtocol() != null) {
+            if (rule.getProtocol() != flow.protocol || !matchesPorts(flow)) {
+               return false;
+            }
+         }
+         if (remote != null && !remote.contains(flow.remoteAddress)) {
+            return false;
+         }
+         return rule.getRemoteGroupId() == null || flow.remoteGroupIds.contains(rule.getRemoteGroupId());
+      }
+
+      private boolean matchesPorts(Flow flow) {
+         Integer min = rule.getPortRangeMin();
+         Integer max = rule.getPortRangeMax();
+         if (flow.protocol == RuleProtocol.ICMP) {
+            return (min == null || min == flow.port) && (max == null || max == flow.icmpCode);
+         }
+         return (min == null || flow.port >= min) && (max == null || flow.port <= max);
+      }
+   }
+}
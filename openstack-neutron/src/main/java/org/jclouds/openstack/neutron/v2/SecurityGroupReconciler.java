@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.extensions.SecurityGroupApi;
+import org.jclouds.openstack.neutron.v2.options.ListRulesOptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Brings the rules of a set of security groups to a desired state with as few calls as possible.
+ * <p/>
+ * The current rules of the groups are listed and compared with the desired rules as {@link NormalizedRule}s, so
+ * rules that allow the same traffic are left alone even if they are written differently. Only the missing rules are
+ * created and only the extra rules are deleted, with a bounded number of calls in flight. Missing rules are created
+ * before extra rules are deleted, so traffic allowed both before and after the sync is never interrupted.
+ */
+@Beta
+public class SecurityGroupReconciler implements Closeable {
+
+   private final SecurityGroupApi api;
+   private final int maxParallelism;
+   private final ExecutorService executor;
+   private final boolean ownsExecutor;
+   private final Logger logger;
+
+   protected SecurityGroupReconciler(Builder builder) {
+      this.api = checkNotNull(builder.api, "api required");
+      this.maxParallelism = builder.maxParallelism;
+      this.logger = builder.logger;
+      checkArgument(maxParallelism > 0, "maxParallelism must be positive");
+      if (builder.executor != null) {
+         this.executor = builder.executor;
+         this.ownsExecutor = false;
+      }
+      else {
+         this.executor = Executors.newFixedThreadPool(maxParallelism,
+               new ThreadFactoryBuilder().setNameFormat("neutron-security-group-sync-%d").setDaemon(true).build());
+         this.ownsExecutor = true;
+      }
+   }
+
+   /**
+    * The calls needed to bring a set of security groups to their desired rules.
+    */
+   public static final class Plan {
+      private final List<Rule.CreateRule> toCreate;
+      private final List<Rule> toDelete;
+      private final int unchanged;
+
+      private Plan(List<Rule.CreateRule> toCreate, List<Rule> toDelete, int unchanged) {
+         this.toCreate = toCreate;
+         this.toDelete = toDelete;
+         this.unchanged = unchanged;
+      }
+
+      public List<Rule.CreateRule> getToCreate() {
+         return toCreate;
+      }
+
+      /**
+       * @return The current rules that are not desired, including duplicates of desired rules.
+       */
+      public List<Rule> getToDelete() {
+         return toDelete;
+      }
+
+      /**
+       * @return The number of desired rules already in place.
+       */
+      public int getUnchanged() {
+         return unchanged;
+      }
+
+      public boolean isEmpty() {
+         return toCreate.isEmpty() && toDelete.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("toCreate", toCreate.size()).add("toDelete", toDelete.size())
+               .add("unchanged", unchanged).toString();
+      }
+   }
+
+   /**
+    * The outcome of applying a plan.
+    */
+   public static final class Result {
+      private final List<Rule> created;
+      private final List<String> deleted;
+      private final Map<Object, Throwable> failures;
+
+      private Result(List<Rule> created, List<String> deleted, Map<Object, Throwable> failures) {
+         this.created = created;
+         this.deleted = deleted;
+         this.failures = failures;
+      }
+
+      public List<Rule> getCreated() {
+         return created;
+      }
+
+      /**
+       * @return The ids of the rules deleted.
+       */
+      public List<String> getDeleted() {
+         return deleted;
+      }
+
+      /**
+       * @return The failed calls, keyed by the {@link Rule.CreateRule} that could not be created or the {@link Rule}
+       *         that could not be deleted.
+       */
+      public Map<Object, Throwable> getFailures() {
+         return failures;
+      }
+
+      public boolean isComplete() {
+         return failures.isEmpty();
+      }
+
+      @Override
+      public String toString() {
+         return Objects.toStringHelper(this).add("created", created.size()).add("deleted", deleted.size())
+               .add("failures", failures).toString();
+      }
+   }
+
+   /**
+    * Compares the current rules of a set of security groups with the desired ones.
+    *
+    * @param securityGroupIds The groups to reconcile. A group without desired rules has all its rules deleted, except
+    *                         rules with a protocol that is not recognized, which are always left alone.
+    * @param desired          The desired rules; each must belong to one of the groups and have a recognized protocol.
+    */
+   public Plan plan(Iterable<String> securityGroupIds, Iterable<Rule.CreateRule> desired) {
+      Set<String> groups = ImmutableSet.copyOf(checkNotNull(securityGroupIds, "securityGroupIds"));
+      Map<NormalizedRule, Rule.CreateRule> wanted = Maps.newLinkedHashMap();
+      for (Rule.CreateRule rule : checkNotNull(desired, "desired")) {
+         checkArgument(groups.contains(rule.getSecurityGroupId()), "rule %s is not in one of the security groups %s",
+               rule, groups);
+         NormalizedRule normalized = NormalizedRule.of(rule);
+         if (!wanted.containsKey(normalized)) {
+            wanted.put(normalized, rule);
+         }
+      }
+
+      List<Callable<List<Rule>>> listings = Lists.newArrayList();
+      for (final String group : groups) {
+         listings.add(new Callable<List<Rule>>() {
+            @Override
+            public List<Rule> call() {
+               return api.listRules(ListRulesOptions.Builder.securityGroupId(group)).concat().toList();
+            }
+         });
+      }
+      ImmutableList.Builder<Rule> toDelete = ImmutableList.builder();
+      int unchanged = 0;
+      Map<Object, Throwable> failures = Maps.newLinkedHashMap();
+      List<List<Rule>> current = run(listings, ImmutableList.copyOf(groups), failures);
+      if (!failures.isEmpty()) {
+         Map.Entry<Object, Throwable> failure = failures.entrySet().iterator().next();
+         throw new IllegalStateException("could not list the rules of security group " + failure.getKey(),
+               failure.getValue());
+      }
+      for (List<Rule> rules : current) {
+         for (Rule rule : rules) {
+            // a group may return rules of other groups if the filter is not supported
+            if (!groups.contains(rule.getSecurityGroupId())) {
+               continue;
+            }
+            // the actual protocol of such a rule is not known, so it can neither match nor be replaced
+            if (!NormalizedRule.isRecognized(rule)) {
+               logger.debug("leaving rule %s with an unrecognized protocol alone", rule.getId());
+               continue;
+            }
+            if (wanted.remove(NormalizedRule.of(rule)) != null) {
+               unchanged++;
+            }
+            else {
+               toDelete.add(rule);
+            }
+         }
+      }
+      return new Plan(ImmutableList.copyOf(wanted.values()), toDelete.build(), unchanged);
+   }
+
+   /**
+    * Makes the calls of a plan, creating rules before deleting them.
+    */
+   public Result apply(Plan plan) {
+      checkNotNull(plan, "plan");
+      Map<Object, Throwable> failures = Maps.newLinkedHashMap();
+
+      List<Callable<Rule>> creates = Lists.newArrayList();
+      for (final Rule.CreateRule rule : plan.getToCreate()) {
+         creates.add(new Callable<Rule>() {
+            @Override
+            public Rule call() {
+               return api.create(rule);
+            }
+         });
+      }
+      ImmutableList.Builder<Rule> created = ImmutableList.builder();
+      for (Rule rule : run(creates, plan.getToCreate(), failures)) {
+         if (rule != null) {
+            created.add(rule);
+         }
+      }
+
+      List<Callable<Boolean>> deletes = Lists.newArrayList();
+      for (final Rule rule : plan.getToDelete()) {
+         deletes.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+               return api.deleteRule(rule.getId());
+            }
+         });
+      }
+      List<Boolean> results = run(deletes, plan.getToDelete(), failures);
+      ImmutableList.Builder<String> deleted = ImmutableList.builder();
+      Iterator<Boolean> result = results.iterator();
+      for (Rule rule : plan.getToDelete()) {
+         if (failures.containsKey(rule)) {
+            continue;
+         }
+         Boolean success = result.next();
+         // a rule that is already gone counts as deleted
+         deleted.add(rule.getId());
+         if (!success) {
+            logger.debug("rule %s was already deleted", rule.getId());
+         }
+      }
+      return new Result(created.build(), deleted.build(), ImmutableMap.copyOf(failures));
+   }
+
+   /**
+    * Plans and applies in one step.
+    *
+    * @see #plan(Iterable, Iterable)
+    * @see #apply(Plan)
+    */
+   public Result sync(Iterable<String> securityGroupIds, Iterable<Rule.CreateRule> desired) {
+      Plan plan = plan(securityGroupIds, desired);
+      logger.debug("security groups %s: %s", securityGroupIds, plan);
+      return apply(plan);
+   }
+
+   @Override
+   public void close() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * Runs tasks with at most {@code maxParallelism} in flight.
+    *
+    * @return The results of the tasks that succeeded, in task order. The others are added to the failures, keyed by
+    *         the matching element of {@code keys}.
+    */
+   private <T> List<T> run(List<Callable<T>> tasks, List<?> keys, Map<Object, Throwable> failures) {
+      CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+      Map<Future<T>, Integer> futures = Maps.newIdentityHashMap();
+      List<T> results = Lists.newArrayList(Collections.<T> nCopies(tasks.size(), null));
+      boolean[] succeeded = new boolean[tasks.size()];
+      int submitted = 0;
+      for (; submitted < tasks.size() && submitted < maxParallelism; submitted++) {
+         futures.put(completion.submit(tasks.get(submitted)), submitted);
+      }
+      try {
+         for (int done = 0; done < tasks.size(); done++) {
+            Future<T> future = completion.take();
+            if (submitted < tasks.size()) {
+               futures.put(completion.submit(tasks.get(submitted)), submitted);
+               submitted++;
+            }
+            int index = futures.get(future);
+            try {
+               results.set(index, future.get());
+               succeeded[index] = true;
+            }
+            catch (ExecutionException e) {
+               logger.warn(e.getCause(), "call for %s failed", keys.get(index));
+               failures.put(keys.get(index), e.getCause());
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         for (Future<T> future : futures.keySet()) {
+            future.cancel(true);
+         }
+         throw new IllegalStateException("interrupted while reconciling security groups", e);
+      }
+      List<T> successful = Lists.newArrayListWithCapacity(tasks.size());
+      for (int i = 0; i < tasks.size(); i++) {
+         if (succeeded[i]) {
+            successful.add(results.get(i));
+         }
+      }
+      return successful;
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static class Builder {
+      protected SecurityGroupApi api;
+      protected int maxParallelism = 4;
+      protected ExecutorService executor;
+      protected Logger logger = Logger.NULL;
+
+      public Builder api(SecurityGroupApi api) {
+         this.api = api;
+         return this;
+      }
+
+      /**
+       * The maximum number of calls in flight. Defaults to 4.
+       */
+      public Builder maxParallelism(int maxParallelism) {
+         this.maxParallelism = maxParallelism;
+         return this;
+      }
+
+      /**
+       * Runs the calls. When not set, a pool of {@code maxParallelism} daemon threads is created and shut down on
+       * close.
+       */
+      public Builder executor(ExecutorService executor) {
+         this.executor = executor;
+         return this;
+      }
+
+      public Builder logger(Logger logger) {
+         this.logger = checkNotNull(logger, "logger");
+         return this;
+      }
+
+      public SecurityGroupReconciler build() {
+         return new SecurityGroupReconciler(this);
+      }
+   }
+}
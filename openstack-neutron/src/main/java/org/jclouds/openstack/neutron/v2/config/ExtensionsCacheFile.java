@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_CACHE_FILE;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_CACHE_TTL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.json.Json;
+import org.jclouds.location.Provider;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.v2_0.domain.Extension;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * Keeps the extensions discovered in each region in a local file, see
+ * {@link NeutronProperties#EXTENSIONS_CACHE_FILE}. Entries are keyed by endpoint and region, so one file can be
+ * shared by contexts of different clouds. Does nothing when no file is configured.
+ */
+@Singleton
+public class ExtensionsCacheFile {
+
+   private static final Type ENTRIES = new TypeToken<Map<String, Entry>>() {
+      private static final long serialVersionUID = 1L;
+   }.getType();
+
+   // file locks are held per process, so writers of the same file in this process take turns here instead
+   private static final ConcurrentMap<String, Object> WRITE_LOCKS = Maps.newConcurrentMap();
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final Optional<File> file;
+   private final long ttlMillis;
+   private final Supplier<URI> endpoint;
+   private final Json json;
+
+   @Inject
+   ExtensionsCacheFile(@Named(EXTENSIONS_CACHE_FILE) String file, @Named(EXTENSIONS_CACHE_TTL) long ttlSeconds,
+         @Provider Supplier<URI> endpoint, Json json) {
+      this.file = file.isEmpty() ? Optional.<File> absent() : Optional.of(new File(file));
+      this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+      this.endpoint = endpoint;
+      this.json = json;
+   }
+
+   /**
+    * @return The extensions of a region, absent if they are not in the file or older than the ttl.
+    */
+   public synchronized Optional<Saved> read(String region) {
+      if (!file.isPresent()) {
+         return Optional.absent();
+      }
+      Entry entry = readEntries().get(key(region));
+      if (entry == null || entry.extensions == null || System.currentTimeMillis() - entry.savedAt > ttlMillis) {
+         return Optional.absent();
+      }
+      ImmutableSet.Builder<Extension> extensions = ImmutableSet.builder();
+      for (SavedExtension saved : entry.extensions) {
+         extensions.add(saved.toExtension());
+      }
+      return Optional.of(new Saved(extensions.build(), entry.savedAt + ttlMillis));
+   }
+
+   /**
+    * Saves the extensions of a region, replacing the file atomically. Writers of other processes are excluded with a
+    * lock on a file next to it, and writers of other contexts in this process with a lock per path, so that
+    * concurrent saves of different regions are merged. Failures are logged, not thrown.
+    */
+   public synchronized void write(String region, Set<? extends Extension> extensions) {
+      if (!file.isPresent()) {
+         return;
+      }
+      Entry entry = new Entry();
+      entry.savedAt = System.currentTimeMillis();
+      entry.extensions = Lists.newArrayList();
+      for (Extension extension : extensions) {
+         entry.extensions.add(SavedExtension.from(extension));
+      }
+      File target = file.get().getAbsoluteFile();
+      synchronized (writeLock(target)) {
+         write(target, region, entry);
+      }
+   }
+
+   private void write(File target, String region, Entry entry) {
+      RandomAccessFile lockFile = null;
+      try {
+         target.getParentFile().mkdirs();
+         lockFile = new RandomAccessFile(new File(target.getPath() + ".lock"), "rw");
+         // released when the lock file is closed
+         lockFile.getChannel().lock();
+         Map<String, Entry> entries = readEntries();
+         entries.put(key(region), entry);
+         File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+         try {
+            Files.write(json.toJson(entries, ENTRIES), temp, Charsets.UTF_8);
+            java.nio.file.Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                  StandardCopyOption.ATOMIC_MOVE);
+         }
+         finally {
+            // only left behind when the move failed
+            temp.delete();
+         }
+      }
+      catch (IOException e) {
+         logger.warn(e, "could not save the extensions of region %s to %s", region, file.get());
+      }
+      finally {
+         Closeables2.closeQuietly(lockFile);
+      }
+   }
+
+   private static Object writeLock(File target) {
+      String path;
+      try {
+         path = target.getCanonicalPath();
+      }
+      catch (IOException e) {
+         path = target.getPath();
+      }
+      Object lock = WRITE_LOCKS.get(path);
+      if (lock == null) {
+         Object created = new Object();
+         lock = WRITE_LOCKS.putIfAbsent(path, created);
+         if (lock == null) {
+            lock = created;
+         }
+      }
+      return lock;
+   }
+
+   private Map<String, Entry> readEntries() {
+      File source = file.get();
+      if (!source.isFile()) {
+         return Maps.newHashMap();
+      }
+      try {
+         Map<String, Entry> entries = json.fromJson(Files.toString(source, Charsets.UTF_8), ENTRIES);
+         return entries == null ? Maps.<String, Entry> newHashMap() : Maps.newHashMap(entries);
+      }
+      catch (IOException e) {
+         logger.warn(e, "could not read the extensions from %s", source);
+      }
+      catch (RuntimeException e) {
+         logger.warn(e, "ignoring the unreadable extensions file %s", source);
+      }
+      return Maps.newHashMap();
+   }
+
+   private String key(String region) {
+      return endpoint.get() + "#" + region;
+   }
+
+   /**
+    * The extensions of a region read from the file.
+    */
+   public static final class Saved {
+      private final Set<? extends Extension> extensions;
+      private final long expiresAt;
+
+      private Saved(Set<? extends Extension> extensions, long expiresAt) {
+         this.extensions = extensions;
+         this.expiresAt = expiresAt;
+      }
+
+      public Set<? extends Extension> getExtensions() {
+         return extensions;
+      }
+
+      /**
+       * @return When the extensions become older than the ttl, in milliseconds since the epoch.
+       */
+      public long getExpiresAt() {
+         return expiresAt;
+      }
+   }
+
+   private static final class Entry {
+      private long savedAt;
+      private List<SavedExtension> extensions;
+   }
+
+   private static final class SavedExtension {
+      private String name;
+      private URI namespace;
+      private String alias;
+      private Long updated;
+      private String description;
+
+      static SavedExtension from(Extension extension) {
+         SavedExtension saved = new SavedExtension();
+         saved.name = extension.getName();
+         saved.namespace = extension.getNamespace();
+         saved.alias = extension.getAlias();
+         saved.updated = extension.getUpdated() == null ? null : extension.getUpdated().getTime();
+         saved.description = extension.getDescription();
+         return saved;
+      }
+
+      Extension toExtension() {
+         return Extension.builder()
+               .name(name)
+               .namespace(namespace)
+               .alias(alias)
+               .updated(updated == null ? null : new Date(updated))
+               .description(description)
+               .build();
+      }
+   }
+}
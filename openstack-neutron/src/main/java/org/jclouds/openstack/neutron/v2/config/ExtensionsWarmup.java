@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_WARMUP;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.jclouds.Constants;
+import org.jclouds.logging.Logger;
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.v2_0.domain.Extension;
+
+import com.google.common.base.Function;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Discovers the extensions of every configured region in parallel on the user executor, filling the cache used to
+ * resolve the extension apis. Started when the context is built if {@link NeutronProperties#EXTENSIONS_WARMUP} is
+ * set; the context does not wait for it, and a first use of an extension api during the warmup waits for the
+ * discovery of its region already in flight instead of starting another.
+ */
+@Singleton
+public class ExtensionsWarmup {
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final Provider<NeutronApi> neutronApi;
+   private final LoadingCache<String, Set<? extends Extension>> extensionsByRegion;
+   private final ListeningExecutorService userExecutor;
+
+   @Inject
+   ExtensionsWarmup(@Named(EXTENSIONS_WARMUP) boolean warmup, Provider<NeutronApi> neutronApi,
+         LoadingCache<String, Set<? extends Extension>> extensionsByRegion,
+         @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor) {
+      this.neutronApi = neutronApi;
+      this.extensionsByRegion = extensionsByRegion;
+      this.userExecutor = userExecutor;
+      if (warmup) {
+         warmUp();
+      }
+   }
+
+   /**
+    * Discovers the extensions of every configured region that are not cached yet.
+    *
+    * @return The extensions by region, once every region is done. Regions that failed are left out.
+    */
+   public ListenableFuture<Map<String, Set<? extends Extension>>> warmUp() {
+      // listing the regions authenticates, so it happens in the background as well
+      ListenableFuture<Set<String>> regions = userExecutor.submit(new Callable<Set<String>>() {
+         @Override
+         public Set<String> call() {
+            return neutronApi.get().getConfiguredRegions();
+         }
+      });
+      return Futures.transform(regions, new AsyncFunction<Set<String>, Map<String, Set<? extends Extension>>>() {
+         @Override
+         public ListenableFuture<Map<String, Set<? extends Extension>>> apply(Set<String> regions) {
+            return warmUp(regions);
+         }
+      });
+   }
+
+   private ListenableFuture<Map<String, Set<? extends Extension>>> warmUp(Set<String> regions) {
+      final List<String> names = Lists.newArrayList(regions);
+      List<ListenableFuture<Set<? extends Extension>>> discoveries = Lists.newArrayList();
+      for (final String region : names) {
+         discoveries.add(userExecutor.submit(new Callable<Set<? extends Extension>>() {
+            @Override
+            public Set<? extends Extension> call() {
+               try {
+                  return extensionsByRegion.getUnchecked(region);
+               }
+               catch (RuntimeException e) {
+                  logger.warn(e, "could not discover the extensions of region %s", region);
+                  return null;
+               }
+            }
+         }));
+      }
+      return Futures.transform(Futures.allAsList(discoveries),
+            new Function<List<Set<? extends Extension>>, Map<String, Set<? extends Extension>>>() {
+               @Override
+               public Map<String, Set<? extends Extension>> apply(List<Set<? extends Extension>> extensions) {
+                  ImmutableMap.Builder<String, Set<? extends Extension>> builder = ImmutableMap.builder();
+                  for (int i = 0; i < names.size(); i++) {
+                     if (extensions.get(i) != null) {
+                        builder.put(names.get(i), extensions.get(i));
+                     }
+                  }
+                  Map<String, Set<? extends Extension>> byRegion = builder.build();
+                  logger.debug("discovered the extensions of regions %s", byRegion.keySet());
+                  return byRegion;
+               }
+            });
+   }
+}
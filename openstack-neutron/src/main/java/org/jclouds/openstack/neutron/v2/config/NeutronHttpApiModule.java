@@ -17,11 +17,15 @@
 package org.jclouds.openstack.neutron.v2.config;
 
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneHttpApiModule.aliasBinder;
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.EXTENSIONS_CACHE_TTL;
 
 import java.net.URI;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
@@ -40,9 +44,15 @@ import org.jclouds.rest.ConfiguresHttpApi;
 import org.jclouds.rest.config.HttpApiModule;
 import org.jclouds.rest.functions.ImplicitOptionalConverter;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.ForwardingLoadingCache;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.inject.Provides;
 import com.google.inject.multibindings.MapBinder;
 
@@ -59,6 +69,7 @@ public class NeutronHttpApiModule extends HttpApiModule<NeutronApi> {
       bind(ImplicitOptionalConverter.class).to(PresentWhenExtensionAnnotationNamespaceEqualsAnyNamespaceInExtensionsSet.class);
       super.configure();
       bindAliases();
+      bind(ExtensionsWarmup.class).asEagerSingleton();
    }
 
    private void bindAliases() {
@@ -73,14 +84,89 @@ public class NeutronHttpApiModule extends HttpApiModule<NeutronApi> {
 
    @Provides
    @Singleton
-   public LoadingCache<String, Set<? extends Extension>> provideExtensionsByRegion(final Provider<NeutronApi> neutronApi) {
-      return CacheBuilder.newBuilder().expireAfterWrite(23, TimeUnit.HOURS)
+   public LoadingCache<String, Set<? extends Extension>> provideExtensionsByRegion(final Provider<NeutronApi> neutronApi,
+         @Named(EXTENSIONS_CACHE_TTL) long ttlSeconds, final ExtensionsCacheFile cacheFile) {
+      final Ticker ticker = Ticker.systemTicker();
+      final Map<String, Long> savedExpiries = Maps.newConcurrentMap();
+      LoadingCache<String, Set<? extends Extension>> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .ticker(ticker)
             .build(new CacheLoader<String, Set<? extends Extension>>() {
                @Override
                public Set<? extends Extension> load(String key) throws Exception {
-                  return neutronApi.get().getExtensionApi(key).list();
+                  Optional<ExtensionsCacheFile.Saved> saved = cacheFile.read(key);
+                  if (saved.isPresent()) {
+                     long remainingMillis = saved.get().getExpiresAt() - System.currentTimeMillis();
+                     savedExpiries.put(key, ticker.read() + TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+                     return saved.get().getExtensions();
+                  }
+                  savedExpiries.remove(key);
+                  Set<? extends Extension> extensions = neutronApi.get().getExtensionApi(key).list();
+                  cacheFile.write(key, extensions);
+                  return extensions;
                }
             });
+      return new SavedExtensionsExpiry(cache, savedExpiries, ticker);
+   }
+
+   /**
+    * Extensions read from the cache file were saved some time before they were loaded, so expiring them a ttl after
+    * the load would keep them longer than the ttl. They are invalidated once the ttl has passed since they were saved.
+    */
+   @VisibleForTesting
+   static final class SavedExtensionsExpiry
+         extends ForwardingLoadingCache.SimpleForwardingLoadingCache<String, Set<? extends Extension>> {
+      private final Map<String, Long> savedExpiries;
+      private final Ticker ticker;
+
+      /**
+       * @param savedExpiries When the extensions of each region read from the file expire, in {@code ticker} time.
+       */
+      SavedExtensionsExpiry(LoadingCache<String, Set<? extends Extension>> delegate,
+            Map<String, Long> savedExpiries, Ticker ticker) {
+         super(delegate);
+         this.savedExpiries = savedExpiries;
+         this.ticker = ticker;
+      }
+
+      @Override
+      public Set<? extends Extension> get(String key) throws ExecutionException {
+         expire(key);
+         return super.get(key);
+      }
+
+      @Override
+      public Set<? extends Extension> getUnchecked(String key) {
+         expire(key);
+         return super.getUnchecked(key);
+      }
+
+      @Override
+      public Set<? extends Extension> apply(String key) {
+         return getUnchecked(key);
+      }
+
+      @Override
+      public Set<? extends Extension> getIfPresent(Object key) {
+         expire(key);
+         return super.getIfPresent(key);
+      }
+
+      @Override
+      public ImmutableMap<String, Set<? extends Extension>> getAll(Iterable<? extends String> keys)
+            throws ExecutionException {
+         for (String key : keys) {
+            expire(key);
+         }
+         return super.getAll(keys);
+      }
+
+      private void expire(Object key) {
+         Long expiresAt = savedExpiries.get(key);
+         if (expiresAt != null && ticker.read() - expiresAt >= 0 && savedExpiries.remove(key, expiresAt)) {
+            invalidate(key);
+         }
+      }
    }
 
    @Override
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+/**
+ * Configuration properties and constants used in openstack Neutron connections.
+ */
+public final class NeutronProperties {
+
+   /**
+    * The number of pages a paginated list fetches ahead of the caller on the user executor, {@code 0} to fetch each
+    * page only when the caller reaches it. Defaults to {@code 0}.
+    * <p/>
+    * Applies to every list returning a {@link org.jclouds.collect.PagedIterable}.
+    */
+   public static final String PAGE_PREFETCH_DEPTH = "jclouds.openstack-neutron.page-prefetch-depth";
+
+   /**
+    * Whether to discover the extensions of every configured region in the background as soon as the context is
+    * built, instead of on the first use of an extension api in each region. Defaults to {@code false}.
+    */
+   public static final String EXTENSIONS_WARMUP = "jclouds.openstack-neutron.extensions.warmup";
+
+   /**
+    * A file in which to keep the extensions discovered in each region, so that new contexts, even in other processes,
+    * skip discovery while the file is fresh. Empty, the default, to keep them in memory only.
+    */
+   public static final String EXTENSIONS_CACHE_FILE = "jclouds.openstack-neutron.extensions.cache-file";
+
+   /**
+    * How long, in seconds, the extensions discovered in a region are used before being discovered again, both in
+    * memory and in the {@link #EXTENSIONS_CACHE_FILE}. Defaults to 23 hours.
+    */
+   public static final String EXTENSIONS_CACHE_TTL = "jclouds.openstack-neutron.extensions.cache-ttl";
+
+   /**
+    * Whether lists and bulk creates of ports, networks and subnets return compacted objects, in which repeated
+    * identifiers, collections and boxed values share one instance. This trades some parsing time for a much smaller
+    * footprint when many results are kept in memory. Defaults to {@code false}.
+    *
+    * @see org.jclouds.openstack.neutron.v2.domain.DomainCompactor
+    */
+   public static final String COMPACT_PARSING = "jclouds.openstack-neutron.compact-parsing";
+
+   private NeutronProperties() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+}
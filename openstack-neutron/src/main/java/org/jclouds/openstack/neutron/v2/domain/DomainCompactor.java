@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.domain;
+
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Rewrites parsed ports, networks and subnets so that values repeated across many of them share one instance.
+ * <p/>
+ * Identifiers that are referenced from many objects (tenant, network, subnet, device and security group ids, device
+ * owners, host ids and names) are interned, as are whole collections and maps that tend to be identical from one
+ * object to the next, such as the security groups, vif details or binding profile of a port. Empty collections are
+ * replaced with the shared empty instances and boxed values with their canonical ones. Unique values, such as the ids
+ * and MAC addresses of ports or their fixed ip addresses, are left alone, as interning them would only add to the
+ * footprint.
+ * <p/>
+ * Instances are interned weakly, so values that are no longer referenced by any result can still be collected. The
+ * compacted objects are equal to the ones they replace.
+ *
+ * @see org.jclouds.openstack.neutron.v2.config.NeutronProperties#COMPACT_PARSING
+ */
+@Beta
+@Singleton
+public class DomainCompactor {
+
+   private final Interner<String> strings = Interners.newWeakInterner();
+   private final Interner<Object> values = Interners.newWeakInterner();
+
+   public Ports compact(Ports ports) {
+      if (ports.isEmpty())
+         return ports;
+      ImmutableList.Builder<Port> compacted = ImmutableList.builder();
+      for (Port port : ports) {
+         compacted.add(compact(port));
+      }
+      return new Ports(compacted.build(), ports.getLinks());
+   }
+
+   public Networks compact(Networks networks) {
+      if (networks.isEmpty())
+         return networks;
+      ImmutableList.Builder<Network> compacted = ImmutableList.builder();
+      for (Network network : networks) {
+         compacted.add(compact(network));
+      }
+      return new Networks(compacted.build(), networks.getLinks());
+   }
+
+   public Subnets compact(Subnets subnets) {
+      if (subnets.isEmpty())
+         return subnets;
+      ImmutableList.Builder<Subnet> compacted = ImmutableList.builder();
+      for (Subnet subnet : subnets) {
+         compacted.add(compact(subnet));
+      }
+      return new Subnets(compacted.build(), subnets.getLinks());
+   }
+
+   public Port compact(Port port) {
+      return new Port(port.getId(), port.getStatus(), port.getVifType(), internMap(port.getVifDetails()),
+            intern(port.getQosQueueId()), intern(port.getName()), intern(port.getNetworkId()),
+            intern(port.getAdminStateUp()), port.getMacAddress(), compactFixedIps(port.getFixedIps()),
+            intern(port.getDeviceId()), intern(port.getDeviceOwner()), intern(port.getTenantId()),
+            internStrings(port.getSecurityGroups()), internSet(port.getAllowedAddressPairs()),
+            internSet(port.getExtraDhcpOptions()), port.getVnicType(), intern(port.getHostId()),
+            internMap(port.getProfile()), intern(port.getPortSecurity()), intern(port.getProfileId()),
+            intern(port.getMacLearning()), internValue(port.getQosRxtxFactor()));
+   }
+
+   public Network compact(Network network) {
+      return new Network(intern(network.getId()), network.getStatus(), internStrings(network.getSubnets()),
+            intern(network.getName()), intern(network.getAdminStateUp()), intern(network.getShared()),
+            intern(network.getTenantId()), network.getNetworkType(), intern(network.getPhysicalNetworkName()),
+            internValue(network.getSegmentationId()), intern(network.getExternal()),
+            intern(network.getPortSecurity()), intern(network.getProfileId()), intern(network.getMulticastIp()),
+            intern(network.getSegmentAdd()), intern(network.getSegmentDel()), intern(network.getMemberSegments()),
+            internSet(network.getSegments()), intern(network.getNetworkFlavor()));
+   }
+
+   public Subnet compact(Subnet subnet) {
+      return new Subnet(intern(subnet.getId()), intern(subnet.getName()), intern(subnet.getNetworkId()),
+            intern(subnet.getTenantId()), internSet(subnet.getAllocationPools()), intern(subnet.getGatewayIp()),
+            internValue(subnet.getIpVersion()), intern(subnet.getCidr()), intern(subnet.getEnableDhcp()),
+            internStrings(subnet.getDnsNameservers()), internSet(subnet.getHostRoutes()),
+            subnet.getIPv6AddressMode(), subnet.getIPv6RAMode());
+   }
+
+   private ImmutableSet<IP> compactFixedIps(ImmutableSet<IP> fixedIps) {
+      if (fixedIps == null || fixedIps.isEmpty())
+         return fixedIps == null ? null : ImmutableSet.<IP> of();
+      ImmutableSet.Builder<IP> compacted = ImmutableSet.builder();
+      for (IP ip : fixedIps) {
+         compacted.add(new IP(ip.getIpAddress(), intern(ip.getSubnetId())));
+      }
+      return compacted.build();
+   }
+
+   private String intern(String value) {
+      return value == null ? null : strings.intern(value);
+   }
+
+   private static Boolean intern(Boolean value) {
+      return value == null ? null : Boolean.valueOf(value.booleanValue());
+   }
+
+   @SuppressWarnings("unchecked")
+   private <T> T internValue(T value) {
+      return value == null ? null : (T) values.intern(value);
+   }
+
+   private ImmutableSet<String> internStrings(ImmutableSet<String> set) {
+      if (set == null || set.isEmpty())
+         return set == null ? null : ImmutableSet.<String> of();
+      ImmutableSet.Builder<String> interned = ImmutableSet.builder();
+      for (String value : set) {
+         interned.add(intern(value));
+      }
+      return internValue(interned.build());
+   }
+
+   private <T> ImmutableSet<T> internSet(ImmutableSet<T> set) {
+      if (set == null || set.isEmpty())
+         return set == null ? null : ImmutableSet.<T> of();
+      return internValue(set);
+   }
+
+   private ImmutableMap<String, Object> internMap(ImmutableMap<String, Object> map) {
+      if (map == null || map.isEmpty())
+         return map == null ? null : ImmutableMap.<String, Object> of();
+      ImmutableMap.Builder<String, Object> interned = ImmutableMap.builder();
+      for (Map.Entry<String, Object> entry : map.entrySet()) {
+         Object value = entry.getValue();
+         interned.put(intern(entry.getKey()), value instanceof String ? intern((String) value) : value);
+      }
+      return internValue(interned.build());
+   }
+}
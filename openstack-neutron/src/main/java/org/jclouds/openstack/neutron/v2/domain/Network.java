@@ -88,7 +88,7 @@ public class Network {
          "provider:network_type", "provider:physical_network", "provider:segmentation_id", "router:external",
          "port_security_enabled", "n1kv:profile_id", "n1kv:multicast_ip", "n1kv:segment_add", "n1kv:segment_del",
          "n1kv:member_segments", "segments", "flavor:network"})
-   private Network(String id, NetworkStatus status, ImmutableSet<String> subnets, String name, Boolean adminStateUp,
+   Network(String id, NetworkStatus status, ImmutableSet<String> subnets, String name, Boolean adminStateUp,
          Boolean shared, String tenantId, NetworkType networkType, String physicalNetworkName, Integer segmentationId,
          Boolean external, Boolean portSecurity, String profileId, String multicastIp, String segmentAdd,
          String segmentDel, String memberSegments, ImmutableSet<NetworkSegment> segments, String networkFlavor) {
@@ -63,7 +63,7 @@ public class Subnet {
 
    @ConstructorProperties({"id", "name", "network_id", "tenant_id", "allocation_pools", "gateway_ip", "ip_version",
          "cidr", "enable_dhcp", "dns_nameservers", "host_routes", "ipv6_address_mode", "ipv6_ra_mode"})
-   private Subnet(String id, String name, String networkId, String tenantId, ImmutableSet<AllocationPool> allocationPools,
+   Subnet(String id, String name, String networkId, String tenantId, ImmutableSet<AllocationPool> allocationPools,
          String gatewayIp, Integer ipVersion, String cidr, Boolean enableDhcp, ImmutableSet<String> dnsNameServers, ImmutableSet<HostRoute> hostRoutes,
          IPv6DHCPMode ipv6AddressMode, IPv6DHCPMode ipv6RaMode) {
       this.id = id;
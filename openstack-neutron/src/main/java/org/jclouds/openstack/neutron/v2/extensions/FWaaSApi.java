@@ -49,11 +49,15 @@ import org.jclouds.openstack.neutron.v2.functions.FirewallToPagedIterable;
 import org.jclouds.openstack.neutron.v2.functions.ParseFirewallPolicies;
 import org.jclouds.openstack.neutron.v2.functions.ParseFirewallRules;
 import org.jclouds.openstack.neutron.v2.functions.ParseFirewalls;
+import org.jclouds.openstack.neutron.v2.options.EmptyOptions;
+import org.jclouds.openstack.neutron.v2.options.ListOptions;
 import org.jclouds.openstack.v2_0.ServiceType;
 import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.openstack.v2_0.services.Extension;
 import org.jclouds.rest.annotations.Fallback;
+import org.jclouds.rest.annotations.MapBinder;
+import org.jclouds.rest.annotations.PayloadParam;
 import org.jclouds.rest.annotations.RequestFilters;
 import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.annotations.SelectJson;
@@ -100,6 +104,19 @@ public interface FWaaSApi {
    @Path("/firewalls")
    PaginatedCollection<Firewall> list(PaginationOptions options);
 
+   /**
+    * Returns the firewalls matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("fw:list")
+   @GET
+   @Transform(FirewallToPagedIterable.class)
+   @ResponseParser(ParseFirewalls.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   @Path("/firewalls")
+   PagedIterable<Firewall> list(ListOptions options);
+
    /**
     * Returns the details for a specific firewall.
     *
@@ -174,6 +191,19 @@ public interface FWaaSApi {
    @Path("/firewall_policies")
    PaginatedCollection<FirewallPolicy> listFirewallPolicies(PaginationOptions options);
 
+   /**
+    * Returns the firewall policies matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("firewall:listPolicies")
+   @GET
+   @Transform(FirewallPolicyToPagedIterable.class)
+   @ResponseParser(ParseFirewallPolicies.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   @Path("/firewall_policies")
+   PagedIterable<FirewallPolicy> listFirewallPolicies(ListOptions options);
+
    @Named("firewall:getPolicy")
    @GET
    @SelectJson("firewall_policy")
@@ -214,6 +244,19 @@ public interface FWaaSApi {
    @Path("/firewall_rules")
    PaginatedCollection<FirewallRule> listFirewallRules(PaginationOptions options);
 
+   /**
+    * Returns the firewall rules matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("firewall:listFirewallRules")
+   @GET
+   @Transform(FirewallRuleToPagedIterable.class)
+   @ResponseParser(ParseFirewallRules.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   @Path("/firewall_rules")
+   PagedIterable<FirewallRule> listFirewallRules(ListOptions options);
+
    @Named("firewall:getFirewallRule")
    @GET
    @Path("/firewall_rules/{id}")
@@ -243,8 +286,44 @@ public interface FWaaSApi {
    @Nullable
    FirewallPolicy insertFirewallRuleToPolicy(@PathParam("id") String policyId, @WrapWith("firewall_rule_id") String firewallRuleId);
 
+   /**
+    * Inserts a rule into a policy just before one of its rules.
+    *
+    * @param policyId the id of the policy
+    * @param firewallRuleId the id of the rule to insert, which must not be in a policy yet
+    * @param beforeFirewallRuleId the id of the rule of the policy to insert it before
+    * @return the policy with the rule inserted, or null if the policy was not found
+    */
+   @Named("firewall:insertFirewallRuleToPolicy")
+   @PUT
+   @Path("/firewall_policies/{id}/insert_rule")
+   @MapBinder(EmptyOptions.class)
+   @Fallback(NullOnNotFoundOr404.class)
+   @Nullable
+   FirewallPolicy insertFirewallRuleToPolicyBefore(@PathParam("id") String policyId,
+         @PayloadParam("firewall_rule_id") String firewallRuleId,
+         @PayloadParam("insert_before") String beforeFirewallRuleId);
+
+   /**
+    * Inserts a rule into a policy just after one of its rules.
+    *
+    * @param policyId the id of the policy
+    * @param firewallRuleId the id of the rule to insert, which must not be in a policy yet
+    * @param afterFirewallRuleId the id of the rule of the policy to insert it after
+    * @return the policy with the rule inserted, or null if the policy was not found
+    */
+   @Named("firewall:insertFirewallRuleToPolicy")
+   @PUT
+   @Path("/firewall_policies/{id}/insert_rule")
+   @MapBinder(EmptyOptions.class)
+   @Fallback(NullOnNotFoundOr404.class)
+   @Nullable
+   FirewallPolicy insertFirewallRuleToPolicyAfter(@PathParam("id") String policyId,
+         @PayloadParam("firewall_rule_id") String firewallRuleId,
+         @PayloadParam("insert_after") String afterFirewallRuleId);
+
    @Named("firewall:removeFirewallRuleFromPolicy")
-   @DELETE
+   @PUT
    @Path("/firewall_policies/{id}/remove_rule")
    @Fallback(NullOnNotFoundOr404.class)
    @Nullable
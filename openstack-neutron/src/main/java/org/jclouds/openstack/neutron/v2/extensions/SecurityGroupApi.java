@@ -41,6 +41,8 @@ import org.jclouds.openstack.neutron.v2.functions.ParseRules;
 import org.jclouds.openstack.neutron.v2.functions.ParseSecurityGroups;
 import org.jclouds.openstack.neutron.v2.functions.RulesToPagedIterable;
 import org.jclouds.openstack.neutron.v2.functions.SecurityGroupsToPagedIterable;
+import org.jclouds.openstack.neutron.v2.options.ListOptions;
+import org.jclouds.openstack.neutron.v2.options.ListRulesOptions;
 import org.jclouds.openstack.v2_0.ServiceType;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.openstack.v2_0.services.Extension;
@@ -91,6 +93,19 @@ public interface SecurityGroupApi {
    @Fallback(EmptySecurityGroupsFallback.class)
    SecurityGroups listSecurityGroups(PaginationOptions options);
 
+   /**
+    * Returns the security groups matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Path("/security-groups")
+   @Named("security-group:list")
+   @GET
+   @ResponseParser(ParseSecurityGroups.class)
+   @Transform(SecurityGroupsToPagedIterable.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<SecurityGroup> listSecurityGroups(ListOptions options);
+
    /**
     * @param id the id of the security group to return
     * @return SecurityGroup or null if not found.
@@ -152,6 +167,19 @@ public interface SecurityGroupApi {
    @Fallback(EmptyRulesFallback.class)
    Rules listRules(PaginationOptions options);
 
+   /**
+    * Returns the security group rules matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Path("/security-group-rules")
+   @Named("security-group-rule:list")
+   @GET
+   @ResponseParser(ParseRules.class)
+   @Transform(RulesToPagedIterable.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Rule> listRules(ListRulesOptions options);
+
    /**
     * @param id the id of the security group rule to return.
     * @return SecurityGroupRule or null if not found.
@@ -54,6 +54,8 @@ import org.jclouds.openstack.neutron.v2.functions.lbaas.v1.ParsePools;
 import org.jclouds.openstack.neutron.v2.functions.lbaas.v1.ParseVIPs;
 import org.jclouds.openstack.neutron.v2.functions.lbaas.v1.PoolsToPagedIterable;
 import org.jclouds.openstack.neutron.v2.functions.lbaas.v1.VIPsToPagedIterable;
+import org.jclouds.openstack.neutron.v2.options.ListOptions;
+import org.jclouds.openstack.neutron.v2.options.lbaas.v1.ListMembersOptions;
 import org.jclouds.openstack.v2_0.ServiceType;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.openstack.v2_0.services.Extension;
@@ -105,6 +107,19 @@ public interface LBaaSApi {
    @Fallback(EmptyVIPsFallback.class)
    VIPs listVIPs(PaginationOptions options);
 
+   /**
+    * Returns the VIPs matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("vip:list")
+   @GET
+   @Path("/vips")
+   @Transform(VIPsToPagedIterable.class)
+   @ResponseParser(ParseVIPs.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<VIP> listVIPs(ListOptions options);
+
    /**
     * Returns the details for a specific VIP.
     *
@@ -183,6 +198,19 @@ public interface LBaaSApi {
    @Fallback(EmptyPoolsFallback.class)
    Pools listPools(PaginationOptions options);
 
+   /**
+    * Returns the pools matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("pool:list")
+   @GET
+   @Path("/pools")
+   @Transform(PoolsToPagedIterable.class)
+   @ResponseParser(ParsePools.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Pool> listPools(ListOptions options);
+
    /**
     * Returns the details for a specific Pool.
     *
@@ -261,6 +289,19 @@ public interface LBaaSApi {
    @Fallback(EmptyMembersFallback.class)
    Members listMembers(PaginationOptions options);
 
+   /**
+    * Returns the pool members matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("member:list")
+   @GET
+   @Path("/members")
+   @Transform(MembersToPagedIterable.class)
+   @ResponseParser(ParseMembers.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Member> listMembers(ListMembersOptions options);
+
    /**
     * Returns the details for a specific Member.
     *
@@ -339,6 +380,19 @@ public interface LBaaSApi {
    @Fallback(EmptyHealthMonitorsFallback.class)
    HealthMonitors listHealthMonitors(PaginationOptions options);
 
+   /**
+    * Returns the health monitors matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("health_monitor:list")
+   @GET
+   @Path("/health_monitors")
+   @Transform(HealthMonitorsToPagedIterable.class)
+   @ResponseParser(ParseHealthMonitors.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<HealthMonitor> listHealthMonitors(ListOptions options);
+
    /**
     * Returns the details for a specific HealthMonitor.
     *
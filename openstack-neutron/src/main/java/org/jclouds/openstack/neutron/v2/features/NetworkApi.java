@@ -37,6 +37,7 @@ import org.jclouds.openstack.neutron.v2.domain.Networks;
 import org.jclouds.openstack.neutron.v2.fallbacks.EmptyNetworksFallback;
 import org.jclouds.openstack.neutron.v2.functions.NetworksToPagedIterable;
 import org.jclouds.openstack.neutron.v2.functions.ParseNetworks;
+import org.jclouds.openstack.neutron.v2.options.ListNetworksOptions;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
@@ -86,6 +87,18 @@ public interface NetworkApi {
    @Fallback(EmptyNetworksFallback.class)
    Networks list(PaginationOptions options);
 
+   /**
+    * Returns the networks matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("network:list")
+   @GET
+   @ResponseParser(ParseNetworks.class)
+   @Transform(NetworksToPagedIterable.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Network> list(ListNetworksOptions options);
+
    /**
     * Return a specific network
     *
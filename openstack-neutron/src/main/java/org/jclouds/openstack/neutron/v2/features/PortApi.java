@@ -28,6 +28,7 @@ import org.jclouds.openstack.neutron.v2.domain.Ports;
 import org.jclouds.openstack.neutron.v2.fallbacks.EmptyPortsFallback;
 import org.jclouds.openstack.neutron.v2.functions.ParsePorts;
 import org.jclouds.openstack.neutron.v2.functions.PortsToPagedIterable;
+import org.jclouds.openstack.neutron.v2.options.ListPortsOptions;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
@@ -84,6 +85,18 @@ public interface PortApi {
    @Fallback(EmptyPortsFallback.class)
    Ports list(PaginationOptions options);
 
+   /**
+    * Returns the ports matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("port:list")
+   @GET
+   @Transform(PortsToPagedIterable.class)
+   @ResponseParser(ParsePorts.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Port> list(ListPortsOptions options);
+
    /**
     * Returns the specific port
     *
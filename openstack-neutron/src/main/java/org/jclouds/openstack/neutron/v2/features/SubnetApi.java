@@ -27,6 +27,7 @@ import org.jclouds.openstack.neutron.v2.domain.Subnets;
 import org.jclouds.openstack.neutron.v2.fallbacks.EmptySubnetsFallback;
 import org.jclouds.openstack.neutron.v2.functions.ParseSubnets;
 import org.jclouds.openstack.neutron.v2.functions.SubnetsToPagedIterable;
+import org.jclouds.openstack.neutron.v2.options.ListSubnetsOptions;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
@@ -81,6 +82,18 @@ public interface SubnetApi {
    @Fallback(EmptySubnetsFallback.class)
    Subnets list(PaginationOptions options);
 
+   /**
+    * Returns the subnets matching the given filters, following the next link of each page lazily.
+    *
+    * @param options filters, field projection and page size, repeated by Neutron on every page
+    */
+   @Named("subnet:list")
+   @GET
+   @ResponseParser(ParseSubnets.class)
+   @Transform(SubnetsToPagedIterable.class)
+   @Fallback(EmptyPagedIterableOnNotFoundOr404.class)
+   PagedIterable<Subnet> list(ListSubnetsOptions options);
+
    /**
     * Returns the specific Subnet.
     *
@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.FirewallPolicy;
 import org.jclouds.openstack.neutron.v2.extensions.FWaaSApi;
@@ -32,7 +31,7 @@ import com.google.common.base.Optional;
 /**
  * Ensures FirewallRule works as PagedIterable.
  */
-public class FirewallPolicyToPagedIterable extends Arg0ToPagedIterable.FromCaller<FirewallPolicy, FirewallPolicyToPagedIterable> {
+public class FirewallPolicyToPagedIterable extends PrefetchingToPagedIterable<FirewallPolicy, FirewallPolicyToPagedIterable> {
 
    private final NeutronApi api;
 
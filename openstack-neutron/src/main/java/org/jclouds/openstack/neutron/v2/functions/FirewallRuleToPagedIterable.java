@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.FirewallRule;
 import org.jclouds.openstack.neutron.v2.extensions.FWaaSApi;
@@ -32,7 +31,7 @@ import com.google.common.base.Optional;
 /**
  * Ensures FirewallRule works as PagedIterable.
  */
-public class FirewallRuleToPagedIterable extends Arg0ToPagedIterable.FromCaller<FirewallRule, FirewallRuleToPagedIterable> {
+public class FirewallRuleToPagedIterable extends PrefetchingToPagedIterable<FirewallRule, FirewallRuleToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Firewall;
 import org.jclouds.openstack.neutron.v2.extensions.FWaaSApi;
@@ -32,7 +31,7 @@ import com.google.common.base.Optional;
 /**
  * Ensures Firewall works as PagedIterable.
  */
-public class FirewallToPagedIterable extends Arg0ToPagedIterable.FromCaller<Firewall, FirewallToPagedIterable> {
+public class FirewallToPagedIterable extends PrefetchingToPagedIterable<Firewall, FirewallToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -19,7 +19,6 @@ package org.jclouds.openstack.neutron.v2.functions;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
 import org.jclouds.openstack.neutron.v2.extensions.FloatingIPApi;
@@ -32,7 +31,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Ensures Floating IPs works as PagedIterable.
  */
-public class FloatingIPsToPagedIterable extends Arg0ToPagedIterable.FromCaller<FloatingIP, FloatingIPsToPagedIterable> {
+public class FloatingIPsToPagedIterable extends PrefetchingToPagedIterable<FloatingIP, FloatingIPsToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -19,7 +19,6 @@ package org.jclouds.openstack.neutron.v2.functions;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Network;
 import org.jclouds.openstack.neutron.v2.features.NetworkApi;
@@ -32,7 +31,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Makes Networks work as a PagedIterable.
  */
-public class NetworksToPagedIterable extends Arg0ToPagedIterable.FromCaller<Network, NetworksToPagedIterable> {
+public class NetworksToPagedIterable extends PrefetchingToPagedIterable<Network, NetworksToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -16,23 +16,43 @@
  */
 package org.jclouds.openstack.neutron.v2.functions;
 
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.COMPACT_PARSING;
 
 import com.google.inject.TypeLiteral;
+import org.jclouds.http.HttpResponse;
 import org.jclouds.http.functions.ParseJson;
 import org.jclouds.json.Json;
+import org.jclouds.openstack.neutron.v2.domain.DomainCompactor;
 import org.jclouds.openstack.neutron.v2.domain.Networks;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 /**
  * Used by jclouds to provide more specific collections and fallbacks.
+ * <p/>
+ * With {@link org.jclouds.openstack.neutron.v2.config.NeutronProperties#COMPACT_PARSING} set, the parsed networks are
+ * compacted with a {@link DomainCompactor}.
  */
 @Singleton
 public class ParseNetworks extends ParseJson<Networks> {
 
+   private final DomainCompactor compactor;
+
    @Inject
-   public ParseNetworks(Json json) {
+   public ParseNetworks(Json json, @Named(COMPACT_PARSING) boolean compact, DomainCompactor compactor) {
       super(json, TypeLiteral.get(Networks.class));
+      this.compactor = compact ? compactor : null;
+   }
+
+   public ParseNetworks(Json json) {
+      this(json, false, null);
+   }
+
+   @Override
+   public Networks apply(HttpResponse from) {
+      Networks networks = super.apply(from);
+      return compactor == null || networks == null ? networks : compactor.compact(networks);
    }
 }
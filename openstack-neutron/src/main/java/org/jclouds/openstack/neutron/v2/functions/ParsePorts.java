@@ -16,22 +16,43 @@
  */
 package org.jclouds.openstack.neutron.v2.functions;
 
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.COMPACT_PARSING;
+
 import com.google.inject.TypeLiteral;
+import org.jclouds.http.HttpResponse;
 import org.jclouds.http.functions.ParseJson;
 import org.jclouds.json.Json;
+import org.jclouds.openstack.neutron.v2.domain.DomainCompactor;
 import org.jclouds.openstack.neutron.v2.domain.Ports;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 /**
  * Used by jclouds to provide more specific collections and fallbacks.
+ * <p/>
+ * With {@link org.jclouds.openstack.neutron.v2.config.NeutronProperties#COMPACT_PARSING} set, the parsed ports are
+ * compacted with a {@link DomainCompactor}.
  */
 @Singleton
 public class ParsePorts extends ParseJson<Ports> {
 
+   private final DomainCompactor compactor;
+
    @Inject
-   public ParsePorts(Json json) {
+   public ParsePorts(Json json, @Named(COMPACT_PARSING) boolean compact, DomainCompactor compactor) {
       super(json, TypeLiteral.get(Ports.class));
+      this.compactor = compact ? compactor : null;
+   }
+
+   public ParsePorts(Json json) {
+      this(json, false, null);
+   }
+
+   @Override
+   public Ports apply(HttpResponse from) {
+      Ports ports = super.apply(from);
+      return compactor == null || ports == null ? ports : compactor.compact(ports);
    }
 }
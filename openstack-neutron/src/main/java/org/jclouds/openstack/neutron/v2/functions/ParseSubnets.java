@@ -16,22 +16,43 @@
  */
 package org.jclouds.openstack.neutron.v2.functions;
 
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.COMPACT_PARSING;
+
 import com.google.inject.TypeLiteral;
+import org.jclouds.http.HttpResponse;
 import org.jclouds.http.functions.ParseJson;
 import org.jclouds.json.Json;
+import org.jclouds.openstack.neutron.v2.domain.DomainCompactor;
 import org.jclouds.openstack.neutron.v2.domain.Subnets;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 /**
  * Used by jclouds to provide more specific collections and fallbacks.
+ * <p/>
+ * With {@link org.jclouds.openstack.neutron.v2.config.NeutronProperties#COMPACT_PARSING} set, the parsed subnets are
+ * compacted with a {@link DomainCompactor}.
  */
 @Singleton
 public class ParseSubnets extends ParseJson<Subnets> {
 
+   private final DomainCompactor compactor;
+
    @Inject
-   public ParseSubnets(Json json) {
+   public ParseSubnets(Json json, @Named(COMPACT_PARSING) boolean compact, DomainCompactor compactor) {
       super(json, TypeLiteral.get(Subnets.class));
+      this.compactor = compact ? compactor : null;
+   }
+
+   public ParseSubnets(Json json) {
+      this(json, false, null);
+   }
+
+   @Override
+   public Subnets apply(HttpResponse from) {
+      Subnets subnets = super.apply(from);
+      return compactor == null || subnets == null ? subnets : compactor.compact(subnets);
    }
 }
@@ -19,7 +19,6 @@ package org.jclouds.openstack.neutron.v2.functions;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Port;
 import org.jclouds.openstack.neutron.v2.features.PortApi;
@@ -32,7 +31,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Ensures Ports works as a paged iterable.
  */
-public class PortsToPagedIterable extends Arg0ToPagedIterable.FromCaller<Port, PortsToPagedIterable> {
+public class PortsToPagedIterable extends PrefetchingToPagedIterable<Port, PortsToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.functions;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.PagedIterable;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link PagedIterable} that fetches up to {@code depth} pages ahead of the caller on a background executor.
+ * <p/>
+ * The marker of a page is only known once the previous page has been received, so pages are still requested one
+ * after another, but back to back instead of waiting for the caller to reach the end of each page. Each iterator
+ * stops fetching once it is {@code depth} pages ahead, so a caller that stops early wastes at most {@code depth}
+ * requests. Closing the iterable, or an iterator obtained from it, cancels the fetches in flight. The iterable only
+ * holds its iterators weakly, so an iterator abandoned without being closed is collected once its fetch completes.
+ */
+@Beta
+public class PrefetchingPagedIterable<T> extends PagedIterable<T> implements Closeable {
+
+   private final IterableWithMarker<T> first;
+   private final Function<Object, IterableWithMarker<T>> markerToNext;
+   private final ExecutorService executor;
+   private final int depth;
+   private final Set<PrefetchingIterator> iterators = Collections.synchronizedSet(Collections
+         .newSetFromMap(new WeakHashMap<PrefetchingIterator, Boolean>()));
+
+   /**
+    * @param first        The first page, already fetched.
+    * @param markerToNext Fetches the page at a marker.
+    * @param executor     Runs the fetches.
+    * @param depth        The maximum number of pages fetched ahead of the caller.
+    */
+   public static <T> PrefetchingPagedIterable<T> create(IterableWithMarker<T> first,
+         Function<Object, IterableWithMarker<T>> markerToNext, ExecutorService executor, int depth) {
+      return new PrefetchingPagedIterable<T>(first, markerToNext, executor, depth);
+   }
+
+   protected PrefetchingPagedIterable(IterableWithMarker<T> first, Function<Object, IterableWithMarker<T>> markerToNext,
+         ExecutorService executor, int depth) {
+      this.first = checkNotNull(first, "first");
+      this.markerToNext = checkNotNull(markerToNext, "markerToNext");
+      this.executor = checkNotNull(executor, "executor");
+      checkArgument(depth > 0, "depth must be positive");
+      this.depth = depth;
+   }
+
+   @Override
+   public Iterator<IterableWithMarker<T>> iterator() {
+      PrefetchingIterator iterator = new PrefetchingIterator();
+      iterators.add(iterator);
+      return iterator;
+   }
+
+   /**
+    * Cancels the fetches in flight of every iterator of this iterable. Pages already fetched can still be iterated.
+    */
+   @Override
+   public void close() {
+      Set<PrefetchingIterator> open;
+      synchronized (iterators) {
+         open = ImmutableSet.copyOf(iterators);
+      }
+      for (PrefetchingIterator iterator : open) {
+         iterator.close();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "PrefetchingPagedIterable(" + markerToNext + ", depth=" + depth + ")";
+   }
+
+   /**
+    * Iterates the pages, keeping a fetch in flight while fewer than {@code depth} fetched pages wait to be taken.
+    */
+   private class PrefetchingIterator extends AbstractIterator<IterableWithMarker<T>> implements Closeable {
+      // fetched pages, or the Throwable that ended the fetching
+      private final Queue<Object> fetched = new ArrayDeque<Object>();
+      private Optional<Object> marker;
+      private boolean returnedFirst;
+      private boolean fetching;
+      private boolean closed;
+      private Future<?> inFlight;
+
+      PrefetchingIterator() {
+         this.marker = first.nextMarker();
+      }
+
+      @Override
+      protected IterableWithMarker<T> computeNext() {
+         if (!returnedFirst) {
+            returnedFirst = true;
+            synchronized (this) {
+               fetchIfNeeded();
+            }
+            return first;
+         }
+         Object page;
+         synchronized (this) {
+            while (fetched.isEmpty()) {
+               if (closed || (!fetching && !marker.isPresent())) {
+                  iterators.remove(this);
+                  return endOfData();
+               }
+               fetchIfNeeded();
+               try {
+                  wait();
+               }
+               catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  close();
+                  throw Throwables.propagate(e);
+               }
+            }
+            page = fetched.remove();
+            fetchIfNeeded();
+         }
+         if (page instanceof Throwable) {
+            throw Throwables.propagate((Throwable) page);
+         }
+         @SuppressWarnings("unchecked")
+         IterableWithMarker<T> next = (IterableWithMarker<T>) page;
+         return next;
+      }
+
+      /**
+       * Starts fetching the next page if none is in flight, there is one and the caller is not too far behind.
+       */
+      private void fetchIfNeeded() {
+         if (fetching || closed || !marker.isPresent() || fetched.size() >= depth) {
+            return;
+         }
+         final Object at = marker.get();
+         fetching = true;
+         try {
+            inFlight = executor.submit(new Runnable() {
+               @Override
+               public void run() {
+                  fetch(at);
+               }
+            });
+         }
+         catch (RejectedExecutionException e) {
+            fetching = false;
+            fetched.add(e);
+            marker = Optional.absent();
+         }
+      }
+
+      private void fetch(Object at) {
+         Object result;
+         Optional<Object> next;
+         try {
+            IterableWithMarker<T> page = markerToNext.apply(at);
+            next = page.nextMarker();
+            result = page;
+         }
+         catch (Throwable t) {
+            // including errors, so that the caller is not left waiting for a fetch that ended
+            result = t;
+            next = Optional.absent();
+         }
+         synchronized (this) {
+            fetching = false;
+            if (closed) {
+               return;
+            }
+            fetched.add(result);
+            marker = next;
+            fetchIfNeeded();
+            notifyAll();
+         }
+      }
+
+      @Override
+      public synchronized void close() {
+         closed = true;
+         iterators.remove(this);
+         if (inFlight != null) {
+            inFlight.cancel(true);
+         }
+         notifyAll();
+      }
+   }
+}
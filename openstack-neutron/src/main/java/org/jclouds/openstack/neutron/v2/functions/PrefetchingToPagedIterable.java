@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.functions;
+
+import static org.jclouds.openstack.neutron.v2.config.NeutronProperties.PAGE_PREFETCH_DEPTH;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.jclouds.Constants;
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.internal.Arg0ToPagedIterable;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.rest.internal.GeneratedHttpRequest;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Base class of the Neutron paged iterables. When
+ * {@link org.jclouds.openstack.neutron.v2.config.NeutronProperties#PAGE_PREFETCH_DEPTH} is positive, the pages after
+ * the first are fetched ahead of the caller on the user executor, see {@link PrefetchingPagedIterable}.
+ */
+public abstract class PrefetchingToPagedIterable<T, I extends PrefetchingToPagedIterable<T, I>>
+      extends Arg0ToPagedIterable.FromCaller<T, I> {
+
+   @Inject
+   @Named(PAGE_PREFETCH_DEPTH)
+   protected int prefetchDepth;
+
+   @Inject
+   @Named(Constants.PROPERTY_USER_THREADS)
+   protected ListeningExecutorService userExecutor;
+
+   private GeneratedHttpRequest request;
+
+   @Override
+   public PagedIterable<T> apply(IterableWithMarker<T> input) {
+      if (prefetchDepth <= 0 || !input.nextMarker().isPresent()) {
+         return super.apply(input);
+      }
+      return PrefetchingPagedIterable.create(input, markerToNextForArgs(getArgs(request)), userExecutor,
+            prefetchDepth);
+   }
+
+   @Override
+   public I setContext(HttpRequest request) {
+      this.request = GeneratedHttpRequest.class.cast(request);
+      return super.setContext(request);
+   }
+}
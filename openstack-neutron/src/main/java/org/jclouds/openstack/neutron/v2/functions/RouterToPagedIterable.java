@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Router;
 import org.jclouds.openstack.neutron.v2.extensions.RouterApi;
@@ -33,7 +32,7 @@ import com.google.common.base.Optional;
 /**
  * Ensures Routers works as PagedIterable.
  */
-public class RouterToPagedIterable extends Arg0ToPagedIterable.FromCaller<Router, RouterToPagedIterable> {
+public class RouterToPagedIterable extends PrefetchingToPagedIterable<Router, RouterToPagedIterable> {
 
    private final NeutronApi api;
 
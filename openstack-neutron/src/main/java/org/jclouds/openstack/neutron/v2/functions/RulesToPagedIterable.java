@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Rule;
 import org.jclouds.openstack.neutron.v2.extensions.SecurityGroupApi;
@@ -34,7 +33,7 @@ import com.google.common.base.Optional;
  * Ensures Routers works as PagedIterable.
  */
 public class RulesToPagedIterable extends
-      Arg0ToPagedIterable.FromCaller<Rule, RulesToPagedIterable> {
+      PrefetchingToPagedIterable<Rule, RulesToPagedIterable> {
 
    private final NeutronApi api;
 
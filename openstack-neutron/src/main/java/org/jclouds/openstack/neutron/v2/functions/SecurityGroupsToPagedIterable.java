@@ -21,7 +21,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.SecurityGroup;
 import org.jclouds.openstack.neutron.v2.extensions.SecurityGroupApi;
@@ -34,7 +33,7 @@ import com.google.common.base.Optional;
  * Ensures Routers works as PagedIterable.
  */
 public class SecurityGroupsToPagedIterable extends
-      Arg0ToPagedIterable.FromCaller<SecurityGroup, SecurityGroupsToPagedIterable> {
+      PrefetchingToPagedIterable<SecurityGroup, SecurityGroupsToPagedIterable> {
 
    private final NeutronApi api;
 
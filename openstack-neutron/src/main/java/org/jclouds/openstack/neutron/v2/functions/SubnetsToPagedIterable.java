@@ -19,7 +19,6 @@ package org.jclouds.openstack.neutron.v2.functions;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.Subnet;
 import org.jclouds.openstack.neutron.v2.features.SubnetApi;
@@ -32,7 +31,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Ensures Subnets works as a PagedIterable.
  */
-public class SubnetsToPagedIterable extends Arg0ToPagedIterable.FromCaller<Subnet, SubnetsToPagedIterable> {
+public class SubnetsToPagedIterable extends PrefetchingToPagedIterable<Subnet, SubnetsToPagedIterable> {
 
    private final NeutronApi api;
 
@@ -21,10 +21,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.inject.Inject;
 
 import org.jclouds.collect.IterableWithMarker;
-import org.jclouds.collect.internal.Arg0ToPagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
 import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Pool;
 import org.jclouds.openstack.neutron.v2.extensions.lbaas.v1.LBaaSApi;
+import org.jclouds.openstack.neutron.v2.functions.PrefetchingToPagedIterable;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 
 import com.google.common.base.Function;
@@ -33,7 +33,7 @@ import com.google.common.base.Optional;
 /**
  * Makes Pools work as a PagedIterable.
  */
-public class PoolsToPagedIterable extends Arg0ToPagedIterable.FromCaller<Pool, PoolsToPagedIterable> {
+public class PoolsToPagedIterable extends PrefetchingToPagedIterable<Pool, PoolsToPagedIterable> {
 
    private final NeutronApi api;
 
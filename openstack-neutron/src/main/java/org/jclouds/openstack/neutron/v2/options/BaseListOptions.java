@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+/**
+ * Filters and field projection common to every Neutron list call.
+ * <p/>
+ * Every attribute of a resource can be used as a query filter, see {@link #filter(String, String)}. Passing the same
+ * filter more than once matches any of the values. {@link #fields(String...)} limits the attributes returned for each
+ * resource, which makes large resources such as ports much cheaper to fetch and parse. Neutron repeats the query in
+ * the links to the next page, so the filters apply to every page of a paged list.
+ *
+ * @see <a href="http://developer.openstack.org/api-ref-networking-v2.html">api doc</a>
+ */
+public abstract class BaseListOptions<ParameterizedOptionsType extends BaseListOptions<ParameterizedOptionsType>>
+      extends PaginationOptions {
+
+   public enum SortDirection {
+      ASC, DESC;
+
+      @Override
+      public String toString() {
+         return name().toLowerCase();
+      }
+   }
+
+   protected abstract ParameterizedOptionsType self();
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ParameterizedOptionsType limit(int limit) {
+      super.limit(limit);
+      return self();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ParameterizedOptionsType marker(String marker) {
+      super.marker(marker);
+      return self();
+   }
+
+   /**
+    * Only returns resources whose attribute has the given value.
+    *
+    * @param attribute The attribute as named in the JSON representation, for example {@code device_owner}.
+    */
+   public ParameterizedOptionsType filter(String attribute, String value) {
+      this.queryParameters.put(checkNotNull(attribute, "attribute"), checkNotNull(value, "value"));
+      return self();
+   }
+
+   /**
+    * Only returns the given attributes of each resource. The {@code id} is always returned, as paging depends on it.
+    *
+    * @param fields Attributes as named in the JSON representation, for example {@code fixed_ips}.
+    */
+   public ParameterizedOptionsType fields(String... fields) {
+      checkArgument(fields.length > 0, "fields");
+      this.queryParameters.put("fields", "id");
+      for (String field : fields) {
+         this.queryParameters.put("fields", checkNotNull(field, "field"));
+      }
+      return self();
+   }
+
+   public ParameterizedOptionsType id(String id) {
+      return filter("id", id);
+   }
+
+   public ParameterizedOptionsType name(String name) {
+      return filter("name", name);
+   }
+
+   public ParameterizedOptionsType tenantId(String tenantId) {
+      return filter("tenant_id", tenantId);
+   }
+
+   /**
+    * Sorts by the given attribute. Can be repeated to sort by several attributes, each with its own direction.
+    */
+   public ParameterizedOptionsType sort(String attribute, SortDirection direction) {
+      this.queryParameters.put("sort_key", checkNotNull(attribute, "attribute"));
+      this.queryParameters.put("sort_dir", checkNotNull(direction, "direction").toString());
+      return self();
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+
+/**
+ * Filters for listing networks.
+ *
+ * @see BaseListOptions
+ */
+public class ListNetworksOptions extends BaseListOptions<ListNetworksOptions> {
+
+   @Override
+   protected ListNetworksOptions self() {
+      return this;
+   }
+
+   public ListNetworksOptions status(NetworkStatus status) {
+      return filter("status", checkNotNull(status, "status").name());
+   }
+
+   public ListNetworksOptions shared(boolean shared) {
+      return filter("shared", Boolean.toString(shared));
+   }
+
+   public ListNetworksOptions external(boolean external) {
+      return filter("router:external", Boolean.toString(external));
+   }
+
+   public ListNetworksOptions adminStateUp(boolean adminStateUp) {
+      return filter("admin_state_up", Boolean.toString(adminStateUp));
+   }
+
+   public static class Builder {
+
+      /**
+       * @see BaseListOptions#name(String)
+       */
+      public static ListNetworksOptions name(String name) {
+         return new ListNetworksOptions().name(name);
+      }
+
+      /**
+       * @see ListNetworksOptions#shared(boolean)
+       */
+      public static ListNetworksOptions shared(boolean shared) {
+         return new ListNetworksOptions().shared(shared);
+      }
+
+      /**
+       * @see ListNetworksOptions#external(boolean)
+       */
+      public static ListNetworksOptions external(boolean external) {
+         return new ListNetworksOptions().external(external);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListNetworksOptions fields(String... fields) {
+         return new ListNetworksOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#tenantId(String)
+       */
+      public static ListNetworksOptions tenantId(String tenantId) {
+         return new ListNetworksOptions().tenantId(tenantId);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListNetworksOptions limit(int limit) {
+         return new ListNetworksOptions().limit(limit);
+      }
+   }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+/**
+ * Options for list calls without typed filters of their own, such as the LBaaS and FWaaS lists. Filter on any
+ * attribute with {@link #filter(String, String)}.
+ *
+ * @see BaseListOptions
+ */
+public class ListOptions extends BaseListOptions<ListOptions> {
+
+   @Override
+   protected ListOptions self() {
+      return this;
+   }
+
+   public static class Builder {
+
+      /**
+       * @see BaseListOptions#filter(String, String)
+       */
+      public static ListOptions filter(String attribute, String value) {
+         return new ListOptions().filter(attribute, value);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListOptions fields(String... fields) {
+         return new ListOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#name(String)
+       */
+      public static ListOptions name(String name) {
+         return new ListOptions().name(name);
+      }
+
+      /**
+       * @see BaseListOptions#tenantId(String)
+       */
+      public static ListOptions tenantId(String tenantId) {
+         return new ListOptions().tenantId(tenantId);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListOptions limit(int limit) {
+         return new ListOptions().limit(limit);
+      }
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
+
+/**
+ * Filters for listing ports.
+ *
+ * @see BaseListOptions
+ */
+public class ListPortsOptions extends BaseListOptions<ListPortsOptions> {
+
+   @Override
+   protected ListPortsOptions self() {
+      return this;
+   }
+
+   public ListPortsOptions networkId(String networkId) {
+      return filter("network_id", networkId);
+   }
+
+   public ListPortsOptions deviceId(String deviceId) {
+      return filter("device_id", deviceId);
+   }
+
+   public ListPortsOptions deviceOwner(String deviceOwner) {
+      return filter("device_owner", deviceOwner);
+   }
+
+   public ListPortsOptions macAddress(String macAddress) {
+      return filter("mac_address", macAddress);
+   }
+
+   public ListPortsOptions status(NetworkStatus status) {
+      return filter("status", checkNotNull(status, "status").name());
+   }
+
+   public ListPortsOptions adminStateUp(boolean adminStateUp) {
+      return filter("admin_state_up", Boolean.toString(adminStateUp));
+   }
+
+   /**
+    * Only returns ports with a fixed IP of the given address.
+    */
+   public ListPortsOptions fixedIpAddress(String ipAddress) {
+      return filter("fixed_ips", "ip_address=" + checkNotNull(ipAddress, "ipAddress"));
+   }
+
+   /**
+    * Only returns ports with a fixed IP on the given subnet.
+    */
+   public ListPortsOptions fixedIpSubnetId(String subnetId) {
+      return filter("fixed_ips", "subnet_id=" + checkNotNull(subnetId, "subnetId"));
+   }
+
+   public static class Builder {
+
+      /**
+       * @see ListPortsOptions#networkId(String)
+       */
+      public static ListPortsOptions networkId(String networkId) {
+         return new ListPortsOptions().networkId(networkId);
+      }
+
+      /**
+       * @see ListPortsOptions#deviceId(String)
+       */
+      public static ListPortsOptions deviceId(String deviceId) {
+         return new ListPortsOptions().deviceId(deviceId);
+      }
+
+      /**
+       * @see ListPortsOptions#deviceOwner(String)
+       */
+      public static ListPortsOptions deviceOwner(String deviceOwner) {
+         return new ListPortsOptions().deviceOwner(deviceOwner);
+      }
+
+      /**
+       * @see ListPortsOptions#macAddress(String)
+       */
+      public static ListPortsOptions macAddress(String macAddress) {
+         return new ListPortsOptions().macAddress(macAddress);
+      }
+
+      /**
+       * @see ListPortsOptions#fixedIpAddress(String)
+       */
+      public static ListPortsOptions fixedIpAddress(String ipAddress) {
+         return new ListPortsOptions().fixedIpAddress(ipAddress);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListPortsOptions fields(String... fields) {
+         return new ListPortsOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#tenantId(String)
+       */
+      public static ListPortsOptions tenantId(String tenantId) {
+         return new ListPortsOptions().tenantId(tenantId);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListPortsOptions limit(int limit) {
+         return new ListPortsOptions().limit(limit);
+      }
+   }
+}
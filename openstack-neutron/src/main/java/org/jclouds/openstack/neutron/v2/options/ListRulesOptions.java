@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+
+/**
+ * Filters for listing security group rules.
+ *
+ * @see BaseListOptions
+ */
+public class ListRulesOptions extends BaseListOptions<ListRulesOptions> {
+
+   @Override
+   protected ListRulesOptions self() {
+      return this;
+   }
+
+   public ListRulesOptions securityGroupId(String securityGroupId) {
+      return filter("security_group_id", securityGroupId);
+   }
+
+   public ListRulesOptions direction(RuleDirection direction) {
+      return filter("direction", checkNotNull(direction, "direction").toString());
+   }
+
+   public ListRulesOptions ethertype(RuleEthertype ethertype) {
+      return filter("ethertype", checkNotNull(ethertype, "ethertype").toString());
+   }
+
+   public ListRulesOptions protocol(RuleProtocol protocol) {
+      return filter("protocol", checkNotNull(protocol, "protocol").toString());
+   }
+
+   public ListRulesOptions remoteGroupId(String remoteGroupId) {
+      return filter("remote_group_id", remoteGroupId);
+   }
+
+   public static class Builder {
+
+      /**
+       * @see ListRulesOptions#securityGroupId(String)
+       */
+      public static ListRulesOptions securityGroupId(String securityGroupId) {
+         return new ListRulesOptions().securityGroupId(securityGroupId);
+      }
+
+      /**
+       * @see ListRulesOptions#direction(RuleDirection)
+       */
+      public static ListRulesOptions direction(RuleDirection direction) {
+         return new ListRulesOptions().direction(direction);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListRulesOptions fields(String... fields) {
+         return new ListRulesOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#tenantId(String)
+       */
+      public static ListRulesOptions tenantId(String tenantId) {
+         return new ListRulesOptions().tenantId(tenantId);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListRulesOptions limit(int limit) {
+         return new ListRulesOptions().limit(limit);
+      }
+   }
+}
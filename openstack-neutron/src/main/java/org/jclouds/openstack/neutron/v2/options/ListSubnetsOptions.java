@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.openstack.neutron.v2.domain.IpVersion;
+
+/**
+ * Filters for listing subnets.
+ *
+ * @see BaseListOptions
+ */
+public class ListSubnetsOptions extends BaseListOptions<ListSubnetsOptions> {
+
+   @Override
+   protected ListSubnetsOptions self() {
+      return this;
+   }
+
+   public ListSubnetsOptions networkId(String networkId) {
+      return filter("network_id", networkId);
+   }
+
+   public ListSubnetsOptions cidr(String cidr) {
+      return filter("cidr", cidr);
+   }
+
+   public ListSubnetsOptions ipVersion(IpVersion ipVersion) {
+      return filter("ip_version", Integer.toString(checkNotNull(ipVersion, "ipVersion").version()));
+   }
+
+   public ListSubnetsOptions gatewayIp(String gatewayIp) {
+      return filter("gateway_ip", gatewayIp);
+   }
+
+   public ListSubnetsOptions enableDhcp(boolean enableDhcp) {
+      return filter("enable_dhcp", Boolean.toString(enableDhcp));
+   }
+
+   public static class Builder {
+
+      /**
+       * @see ListSubnetsOptions#networkId(String)
+       */
+      public static ListSubnetsOptions networkId(String networkId) {
+         return new ListSubnetsOptions().networkId(networkId);
+      }
+
+      /**
+       * @see ListSubnetsOptions#cidr(String)
+       */
+      public static ListSubnetsOptions cidr(String cidr) {
+         return new ListSubnetsOptions().cidr(cidr);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListSubnetsOptions fields(String... fields) {
+         return new ListSubnetsOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#tenantId(String)
+       */
+      public static ListSubnetsOptions tenantId(String tenantId) {
+         return new ListSubnetsOptions().tenantId(tenantId);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListSubnetsOptions limit(int limit) {
+         return new ListSubnetsOptions().limit(limit);
+      }
+   }
+}
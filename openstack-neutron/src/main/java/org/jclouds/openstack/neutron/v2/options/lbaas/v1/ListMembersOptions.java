@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.options.lbaas.v1;
+
+import org.jclouds.openstack.neutron.v2.options.BaseListOptions;
+
+/**
+ * Filters for listing load balancer pool members.
+ *
+ * @see BaseListOptions
+ */
+public class ListMembersOptions extends BaseListOptions<ListMembersOptions> {
+
+   @Override
+   protected ListMembersOptions self() {
+      return this;
+   }
+
+   public ListMembersOptions poolId(String poolId) {
+      return filter("pool_id", poolId);
+   }
+
+   public ListMembersOptions address(String address) {
+      return filter("address", address);
+   }
+
+   public ListMembersOptions protocolPort(int protocolPort) {
+      return filter("protocol_port", Integer.toString(protocolPort));
+   }
+
+   public static class Builder {
+
+      /**
+       * @see ListMembersOptions#poolId(String)
+       */
+      public static ListMembersOptions poolId(String poolId) {
+         return new ListMembersOptions().poolId(poolId);
+      }
+
+      /**
+       * @see ListMembersOptions#address(String)
+       */
+      public static ListMembersOptions address(String address) {
+         return new ListMembersOptions().address(address);
+      }
+
+      /**
+       * @see BaseListOptions#fields(String...)
+       */
+      public static ListMembersOptions fields(String... fields) {
+         return new ListMembersOptions().fields(fields);
+      }
+
+      /**
+       * @see BaseListOptions#limit(int)
+       */
+      public static ListMembersOptions limit(int limit) {
+         return new ListMembersOptions().limit(limit);
+      }
+   }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.openstack.neutron.v2.domain.AllocationPool;
+import org.jclouds.openstack.neutron.v2.domain.FloatingIP;
+import org.jclouds.openstack.neutron.v2.domain.IP;
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.domain.Subnet;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+@Test(groups = "unit", testName = "AddressIndexTest")
+public class AddressIndexTest {
+
+   private static Port port(String name, String... addresses) {
+      ImmutableSet.Builder<IP> ips = ImmutableSet.builder();
+      for (String address : addresses) {
+         ips.add(IP.builder().ipAddress(address).build());
+      }
+      return Port.createBuilder("6aeaf34a-c482-4bd3-9dc3-7faf36412f12").name(name).fixedIps(ips.build()).build();
+   }
+
+   private static Subnet subnet(String cidr, String gatewayIp, String start, String end) {
+      return Subnet.createBuilder("6aeaf34a-c482-4bd3-9dc3-7faf36412f12", cidr).gatewayIp(gatewayIp)
+            .allocationPools(ImmutableList.of(AllocationPool.builder().start(start).end(end).build())).build();
+   }
+
+   public void testExactLookup() {
+      Port web = port("web", "10.0.0.3", "2001:db8::3");
+      Port db = port("db", "10.0.0.4");
+      FloatingIP floatingIP = FloatingIP.updateBuilder().floatingIpAddress("172.24.4.228").fixedIpAddress("10.0.0.3")
+            .build();
+      AddressIndex index = AddressIndex.create().addPorts(ImmutableList.of(web, db)).addFloatingIP(floatingIP);
+
+      assertEquals(index.getPortsByFixedIp("10.0.0.3"), ImmutableList.of(web));
+      assertEquals(index.getPortsByFixedIp("2001:db8:0:0::3"), ImmutableList.of(web));
+      assertEquals(index.getPortsByFixedIp("10.0.0.4"), ImmutableList.of(db));
+      assertTrue(index.getPortsByFixedIp("10.0.0.5").isEmpty());
+      assertEquals(index.getFloatingIPsByFixedIp("10.0.0.3"), ImmutableList.of(floatingIP));
+      assertEquals(index.getFloatingIPsByAddress("172.24.4.228"), ImmutableList.of(floatingIP));
+   }
+
+   public void testLookupAfterGrowing() {
+      AddressIndex index = AddressIndex.create();
+      for (int i = 0; i < 5000; i++) {
+         index.addPort(port("port" + i, "10.1." + (i >> 8) + "." + (i & 0xff)));
+      }
+      assertEquals(index.getPortsByFixedIp("10.1.19.135").get(0).getName(), "port" + (19 * 256 + 135));
+      assertEquals(index.getPortsInCidr("10.1.0.0/24").size(), 256);
+      assertEquals(index.getPortsInCidr("10.1.16.0/20").size(), 5000 - 16 * 256);
+      assertEquals(index.getPortsInCidr("0.0.0.0/0").size(), 5000);
+   }
+
+   public void testCidrQuery() {
+      Port v4 = port("v4", "192.168.1.10");
+      Port v6 = port("v6", "2001:db8:0:1::10");
+      AddressIndex index = AddressIndex.create().addPorts(ImmutableList.of(v4, v6));
+
+      assertEquals(index.getPortsInCidr("192.168.1.0/24"), ImmutableList.of(v4));
+      assertTrue(index.getPortsInCidr("192.168.2.0/24").isEmpty());
+      assertEquals(index.getPortsInCidr("2001:db8:0:1::/64"), ImmutableList.of(v6));
+      assertTrue(index.getPortsInCidr("2001:db8::/64").isEmpty());
+   }
+
+   public void testCidrQueryProbesSmallRangesAndSearchesLargeOnes() {
+      Port low = port("low", "10.0.0.1");
+      Port high = port("high", "200.0.0.1");
+      Port top = port("top", "255.255.255.255");
+      Port v6Low = port("v6Low", "2001:db8::1");
+      Port v6High = port("v6High", "ffff::1");
+      AddressIndex index = AddressIndex.create().addPorts(ImmutableList.of(top, v6High, high, low, v6Low));
+
+      // smaller than the table, probed address by address
+      assertEquals(index.getPortsInCidr("200.0.0.0/31"), ImmutableList.of(high));
+      assertEquals(index.getPortsInCidr("ffff::1/128"), ImmutableList.of(v6High));
+      // larger than the table, searched in address order
+      assertEquals(index.getPortsInCidr("0.0.0.0/0"), ImmutableList.of(low, high, top));
+      assertEquals(index.getPortsInCidr("128.0.0.0/1"), ImmutableList.of(high, top));
+      assertEquals(index.getPortsInCidr("::/0"), ImmutableList.of(v6Low, v6High));
+
+      Port added = port("added", "150.0.0.1");
+      index.addPort(added);
+      assertEquals(index.getPortsInCidr("128.0.0.0/1"), ImmutableList.of(added, high, top));
+   }
+
+   public void testFreeAddresses() {
+      AddressIndex index = AddressIndex.create().addPorts(ImmutableList.of(port("a", "10.0.0.2"),
+            port("b", "10.0.0.4"), port("outside", "10.0.1.2")));
+      Subnet subnet = subnet("10.0.0.0/24", "10.0.0.1", "10.0.0.1", "10.0.0.254");
+
+      assertEquals(index.countFreeAddresses(subnet), 254 - 3);
+      assertEquals(index.getFreeAddresses(subnet, 3), ImmutableList.of("10.0.0.3", "10.0.0.5", "10.0.0.6"));
+   }
+
+   public void testFreeIPv6Addresses() {
+      AddressIndex index = AddressIndex.create().addPort(port("a", "2001:db8::3"));
+      Subnet small = subnet("2001:db8::/120", "2001:db8::1", "2001:db8::2", "2001:db8::ff");
+      Subnet large = subnet("2001:db8::/64", "2001:db8::1", "2001:db8::2", "2001:db8::ffff:ffff:ffff:ffff");
+
+      assertEquals(index.countFreeAddresses(small), 254 - 1);
+      assertEquals(index.countFreeAddresses(large), Long.MAX_VALUE);
+      assertEquals(index.getFreeAddresses(large, 2), ImmutableList.of("2001:db8::2", "2001:db8::4"));
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testInvalidCidr() {
+      AddressIndex.create().getPortsInCidr("10.0.0.0/33");
+   }
+}
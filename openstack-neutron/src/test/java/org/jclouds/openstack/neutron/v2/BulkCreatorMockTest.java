@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.features.PortApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests chunking, merging and rollback of BulkCreator
+ */
+@Test
+public class BulkCreatorMockTest extends BaseNeutronApiMockTest {
+
+   private static final ImmutableList<Port.CreatePort> PORTS = ImmutableList.of(
+         Port.createBuilder("64239a54-dcc4-4b39-920b-b37c2144effa").name("port1").build(),
+         Port.createBuilder("e6031bc2-901a-4c66-82da-f4c32ed89406").name("port2").build(),
+         Port.createBuilder("e6031bc2-901a-4c66-82da-f4c32ed89406").name("port3").build());
+
+   public void testCreatePortsInChunks() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/port_create_bulk_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/port_create_bulk_response.json"))));
+
+      BulkCreator creator = BulkCreator.builder().chunkSize(2).maxParallelism(1).build();
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         BulkCreator.Result<Port> result = creator.createPorts(api, PORTS);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete());
+         assertFalse(result.isRolledBack());
+         assertEquals(result.getCreated().size(), 4);
+         assertEquals(result.getCreated().get(0).getName(), "port1");
+         assertEquals(result.getCreated().get(1).getName(), "port2");
+      } finally {
+         creator.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCreatePortsRollsBackOnFailure() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/port_create_bulk_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(400)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      BulkCreator creator = BulkCreator.builder().chunkSize(2).maxParallelism(1).rollbackOnFailure(true).build();
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         BulkCreator.Result<Port> result = creator.createPorts(api, PORTS);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/ports/4fa2a5b2-d758-449d-80d6-dff31df9e91e");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/ports/d3c059b8-40fd-489a-8d17-97bde9370987");
+
+         /*
+          * Check response
+          */
+         assertFalse(result.isComplete());
+         assertTrue(result.isRolledBack());
+         assertTrue(result.getCreated().isEmpty());
+         assertTrue(result.getRollbackFailures().isEmpty());
+         assertEquals(result.getFailures().size(), 1);
+         assertEquals(result.getFailures().get(0).getFromIndex(), 2);
+         assertEquals(result.getFailures().get(0).getToIndex(), 3);
+      } finally {
+         creator.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCreatePortsReportsChunkWithoutResultAsFailed()
+         throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/port_create_bulk_response.json"))));
+      // no ports in the response, the api returns null
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201).setBody("{}")));
+
+      BulkCreator creator = BulkCreator.builder().chunkSize(2).maxParallelism(1).build();
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         BulkCreator.Result<Port> result = creator.createPorts(api, PORTS);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+
+         /*
+          * Check response
+          */
+         assertFalse(result.isComplete());
+         assertFalse(result.isRolledBack());
+         assertEquals(result.getCreated().size(), 2);
+         assertEquals(result.getFailures().size(), 1);
+         assertEquals(result.getFailures().get(0).getFromIndex(), 2);
+         assertEquals(result.getFailures().get(0).getToIndex(), 3);
+      } finally {
+         creator.close();
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.FirewallPolicyPlanner.Operation;
+import org.jclouds.openstack.neutron.v2.domain.FirewallPolicy;
+import org.jclouds.openstack.neutron.v2.extensions.FWaaSApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests planning and applying of FirewallPolicyPlanner
+ */
+@Test
+public class FirewallPolicyPlannerMockTest extends BaseNeutronApiMockTest {
+
+   private static final String POLICY = "12971159-95cf-4ca1-9baa-c82298ae0918";
+
+   public void testOperationsKeepLongestOrderedRun() {
+      List<Operation> operations = FirewallPolicyPlanner.operations(ImmutableList.of("a", "b", "c", "d", "e"),
+            ImmutableList.of("b", "c", "x", "e", "a"));
+
+      assertEquals(operations, ImmutableList.of(
+            Operation.insertAfter("x", "c"),
+            Operation.remove("a"),
+            Operation.insertAfter("a", "e"),
+            Operation.remove("d")));
+   }
+
+   public void testOperationsOnEmptyPolicy() {
+      assertEquals(FirewallPolicyPlanner.operations(ImmutableList.<String> of(), ImmutableList.of("a", "b")),
+            ImmutableList.of(Operation.insertBefore("a", null), Operation.insertAfter("b", "a")));
+      assertEquals(FirewallPolicyPlanner.operations(ImmutableList.of("a", "b"), ImmutableList.of("a", "b")),
+            ImmutableList.of());
+   }
+
+   public void testReorderWithSingleUpdate() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody("{\"firewall_policy\": " + policy("a", "b", "c") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody("{\"firewall_policy\": " + policy("c", "a", "b") + "}")));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FWaaSApi api = neutronApi.getFWaaSApi("RegionOne").get();
+         FirewallPolicyPlanner planner = FirewallPolicyPlanner.builder().api(api).build();
+
+         FirewallPolicy policy = planner.reorder(POLICY, ImmutableList.of("c", "a", "b"));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/fw/firewall_policies/" + POLICY);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/" + POLICY);
+
+         /*
+          * Check response
+          */
+         assertEquals(policy.getFirewallRules(), ImmutableList.of("c", "a", "b"));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testReorderFallsBackToInsertAndRemove() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody("{\"firewall_policy\": " + policy("a", "b", "c") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(400)));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody("{\"firewall_policy\": " + policy("a", "b", "c") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(policy("a", "b"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(policy("c", "a", "b"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FWaaSApi api = neutronApi.getFWaaSApi("RegionOne").get();
+         FirewallPolicyPlanner planner = FirewallPolicyPlanner.builder().api(api).build();
+
+         FirewallPolicy policy = planner.reorder(POLICY, ImmutableList.of("c", "a", "b"));
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 7);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/fw/firewall_policies/" + POLICY);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/" + POLICY);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/fw/firewall_policies/" + POLICY);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/" + POLICY + "/remove_rule");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/" + POLICY + "/insert_rule");
+
+         /*
+          * Check response
+          */
+         assertEquals(policy.getFirewallRules(), ImmutableList.of("c", "a", "b"));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static String policy(String... rules) {
+      return "{\"id\": \"" + POLICY + "\", \"tenant_id\": \"3e00d5716204446c8d3c47a466eec25a\", "
+            + "\"name\": \"jclouds-fw-policy\", \"shared\": false, \"audited\": false, \"firewall_rules\": [\""
+            + Joiner.on("\", \"").join(rules) + "\"]}";
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.jclouds.openstack.neutron.v2.FirewallRuleAnalysis.Finding;
+import org.jclouds.openstack.neutron.v2.domain.FirewallRule;
+import org.jclouds.openstack.neutron.v2.domain.IpVersion;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+@Test(groups = "unit", testName = "FirewallRuleAnalysisTest")
+public class FirewallRuleAnalysisTest {
+
+   public void testShadowedAndRedundantRules() {
+      FirewallRule web = rule("web", "tcp", "10.0.0.0/8", "80", "allow", true);
+      FirewallRule blockHost = rule("block-host", "tcp", "10.1.2.3", "80", "deny", true);
+      FirewallRule webSubnet = rule("web-subnet", "tcp", "10.1.0.0/16", "80", "allow", true);
+      FirewallRule tls = rule("tls", "tcp", "192.168.0.0/24", "443", "allow", true);
+      FirewallRule udp = rule("udp", "udp", null, null, "deny", true);
+      FirewallRule tlsWide = rule("tls-wide", "tcp", "192.168.0.0/16", "443:443", "allow", true);
+      FirewallRule disabled = rule("disabled", null, null, null, "allow", false);
+
+      FirewallRuleAnalysis analysis = FirewallRuleAnalysis.analyze(ImmutableList.of(web, blockHost, webSubnet, tls,
+            udp, tlsWide, disabled));
+
+      List<Finding> findings = analysis.getFindings();
+      assertEquals(findings.size(), 4);
+      assertFinding(findings.get(0), blockHost, Finding.Kind.SHADOWED, web);
+      assertFinding(findings.get(1), webSubnet, Finding.Kind.REDUNDANT, web);
+      assertFinding(findings.get(2), tls, Finding.Kind.REDUNDANT, tlsWide);
+      assertFinding(findings.get(3), udp, Finding.Kind.REDUNDANT, null);
+      assertEquals(analysis.getEffectiveRuleIds(), ImmutableList.of("web", "tls-wide", "disabled"));
+   }
+
+   public void testExceptionBeforeBroaderRuleIsKept() {
+      FirewallRule denySsh = rule("deny-ssh", "tcp", "172.16.0.5", "22", "deny", true);
+      FirewallRule allowSsh = rule("allow-ssh", "tcp", null, "22", "allow", true);
+      FirewallRule allowRange = rule("allow-range", "tcp", "172.16.0.0/12", "8000:8080", "allow", true);
+      FirewallRule allowPort = rule("allow-port", "tcp", "172.16.0.0/12", "8080", "allow", true);
+
+      FirewallRuleAnalysis analysis = FirewallRuleAnalysis.analyze(ImmutableList.of(denySsh, allowSsh, allowRange,
+            allowPort));
+
+      assertEquals(analysis.getFindings().size(), 1);
+      assertFinding(analysis.getFindings().get(0), allowPort, Finding.Kind.REDUNDANT, allowRange);
+      assertEquals(analysis.getEffectiveRuleIds(), ImmutableList.of("deny-ssh", "allow-ssh", "allow-range"));
+   }
+
+   public void testIdenticalRulesReportedOnce() {
+      FirewallRule first = rule("first", "icmp", null, null, "allow", true);
+      FirewallRule second = rule("second", "icmp", null, null, "allow", true);
+
+      FirewallRuleAnalysis analysis = FirewallRuleAnalysis.analyze(ImmutableList.of(first, second));
+
+      assertEquals(analysis.getFindings().size(), 1);
+      assertFinding(analysis.getFindings().get(0), second, Finding.Kind.REDUNDANT, first);
+   }
+
+   public void testEmptyPolicy() {
+      assertTrue(FirewallRuleAnalysis.analyze(ImmutableList.<FirewallRule> of()).getFindings().isEmpty());
+   }
+
+   private static void assertFinding(Finding finding, FirewallRule rule, Finding.Kind kind, FirewallRule cause) {
+      assertEquals(finding.getRule(), rule);
+      assertEquals(finding.getKind(), kind);
+      if (cause == null) {
+         assertNull(finding.getCause());
+      }
+      else {
+         assertEquals(finding.getCause(), cause);
+      }
+   }
+
+   private static FirewallRule rule(String id, String protocol, String destination, String destinationPort,
+         String action, boolean enabled) {
+      return FirewallRule.create(id, "3e00d5716204446c8d3c47a466eec25a", id, null, null, false, protocol,
+            IpVersion.IPV4, null, destination, null, destinationPort, 0, action, enabled);
+   }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.openstack.neutron.v2.IpAddresses.Range;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "IpAddressesTest")
+public class IpAddressesTest {
+
+   public void testParse() {
+      assertEquals(IpAddresses.parseIPv4("10.0.0.1"), 0x0a000001L);
+      assertEquals(IpAddresses.parseIPv4("255.255.255.255"), 0xffffffffL);
+      assertEquals(IpAddresses.parseIPv4("10.0.0.256"), -1);
+      assertEquals(IpAddresses.parseIPv4("10.0.0"), -1);
+      assertEquals(IpAddresses.parseIPv4("2001:db8::1"), -1);
+      assertEquals(IpAddresses.parseIPv6("2001:db8::1").length, 16);
+      assertNull(IpAddresses.parseIPv6("10.0.0.1"));
+   }
+
+   public void testCanonicalCidr() {
+      assertEquals(IpAddresses.canonicalCidr("10.0.0.7/24"), "10.0.0.0/24");
+      assertEquals(IpAddresses.canonicalCidr("10.0.0.7"), "10.0.0.7/32");
+      assertEquals(IpAddresses.canonicalCidr("2001:db8:0:0::7/64"), "2001:db8::/64");
+      assertEquals(IpAddresses.canonicalCidr("2001:db8::7"), "2001:db8::7/128");
+   }
+
+   public void testRangeContainsAndOverlaps() {
+      Range wide = Range.fromCidr("10.0.0.0/8");
+      Range narrow = Range.fromCidr("10.1.0.0/16");
+      Range host = Range.fromCidrOrAddress("10.1.2.3");
+      Range other = Range.fromCidr("192.168.0.0/16");
+      Range v6 = Range.fromCidr("::/0");
+
+      assertTrue(wide.contains(narrow));
+      assertTrue(narrow.contains(host));
+      assertFalse(narrow.contains(wide));
+      assertTrue(narrow.overlaps(wide));
+      assertTrue(host.overlaps(narrow));
+      assertFalse(other.overlaps(wide));
+      assertFalse(v6.contains(host));
+      assertFalse(v6.overlaps(wide));
+      assertTrue(v6.contains(Range.fromCidrOrAddress("2001:db8::1")));
+      assertEquals(host.size(), 1);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testInvalidPrefixLength() {
+      IpAddresses.canonicalCidr("2001:db8::/129");
+   }
+}
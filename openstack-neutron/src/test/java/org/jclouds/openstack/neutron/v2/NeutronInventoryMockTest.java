@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import org.jclouds.openstack.neutron.v2.domain.Port;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests loading and write-through of NeutronInventory
+ */
+@Test
+public class NeutronInventoryMockTest extends BaseNeutronApiMockTest {
+
+   public void testRefreshIndexesRegion() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/network_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/subnet_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/port_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/router_list_response.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setBody(stringFromResource("/floatingip_list_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         NeutronInventory inventory = NeutronInventory.builder().api(neutronApi).region("RegionOne").build();
+
+         inventory.refresh();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 7);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/networks");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/subnets");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/routers");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/floatingips");
+
+         /*
+          * Check response
+          */
+         assertTrue(inventory.getRefreshedAtMillis() > 0);
+         assertEquals(inventory.getNetworks().size(), 12);
+         assertEquals(inventory.getRouters().size(), 12);
+         assertEquals(inventory.getSubnetsByNetworkId("1234567890").size(), 12);
+         assertEquals(inventory.getPortsByNetworkId("1234567890").size(), 12);
+         assertEquals(inventory.getPort("1a104cf5-cb18-4d35-9407-2fd2646d9d0b").get().getName(), "wibble");
+         assertEquals(inventory.getFloatingIPsByPortId("ce705c24-c1ef-408a-bda3-7bbd946164ab").get(0).getId(),
+               "2f245a7b-796b-4f26-9cf9-9e82d248fda7");
+         assertFalse(inventory.getSubnet("ebe69f1e-bc26-4db5-bed0-c0afb4afe3db").isPresent());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testWriteThroughPort() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setResponseCode(201).setBody(stringFromResource("/port_create_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         NeutronInventory inventory = NeutronInventory.builder().api(neutronApi).region("RegionOne").build();
+
+         Port port = inventory.createPort(Port.createBuilder("6aeaf34a-c482-4bd3-9dc3-7faf36412f12").build());
+
+         assertEquals(inventory.getPortsByFixedIp("192.168.111.4").get(0).getId(), port.getId());
+         assertEquals(inventory.getPortsByMacAddress("FA:16:3E:A6:50:C1").get(0).getId(), port.getId());
+         assertEquals(inventory.getPortsByDeviceId("d6b4d3a5-c700-476f-b609-1493dd9dadc0").size(), 1);
+         assertEquals(inventory.getPortsByNetworkId("6aeaf34a-c482-4bd3-9dc3-7faf36412f12").size(), 1);
+
+         assertTrue(inventory.deletePort(port.getId()));
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/ports/ebe69f1e-bc26-4db5-bed0-c0afb4afe3db");
+
+         /*
+          * Check response
+          */
+         assertFalse(inventory.getPort(port.getId()).isPresent());
+         assertTrue(inventory.getPortsByFixedIp("192.168.111.4").isEmpty());
+         assertTrue(inventory.getPortsByDeviceId("d6b4d3a5-c700-476f-b609-1493dd9dadc0").isEmpty());
+      } finally {
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.neutron.v2.PoolMemberReconciler.DesiredMember;
+import org.jclouds.openstack.neutron.v2.domain.lbaas.v1.Member;
+import org.jclouds.openstack.neutron.v2.extensions.lbaas.v1.LBaaSApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests planning and applying of PoolMemberReconciler
+ */
+@Test
+public class PoolMemberReconcilerMockTest extends BaseNeutronApiMockTest {
+
+   private static final String POOL = "72741b06-df4d-4715-b142-276b6bce75ab";
+
+   public void testSyncDrainsBeforeDeleting() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 1, "ACTIVE"),
+            member("b", "10.0.0.6", 1, "ACTIVE")))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody("{\"member\": " + member("c", "10.0.0.7", 1, "PENDING_CREATE") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse()
+            .setBody("{\"member\": " + member("a", "10.0.0.5", 2, "PENDING_UPDATE") + "}")));
+      // one poll for the create and the update, twice
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 2, "ACTIVE"),
+            member("b", "10.0.0.6", 1, "ACTIVE"),
+            member("c", "10.0.0.7", 1, "PENDING_CREATE")))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 2, "ACTIVE"),
+            member("b", "10.0.0.6", 1, "ACTIVE"),
+            member("c", "10.0.0.7", 1, "ACTIVE")))));
+      // then the drain, polled until active
+      server.enqueue(addCommonHeaders(new MockResponse()
+            .setBody("{\"member\": " + member("b", "10.0.0.6", 0, "PENDING_UPDATE") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 2, "ACTIVE"),
+            member("b", "10.0.0.6", 0, "PENDING_UPDATE"),
+            member("c", "10.0.0.7", 1, "ACTIVE")))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 2, "ACTIVE"),
+            member("b", "10.0.0.6", 0, "ACTIVE"),
+            member("c", "10.0.0.7", 1, "ACTIVE")))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         LBaaSApi api = neutronApi.getLBaaSApi("RegionOne").get();
+         PoolMemberReconciler reconciler = PoolMemberReconciler.builder().api(api).maxParallelism(1)
+               .pollInterval(10, TimeUnit.MILLISECONDS).drainPeriod(0, TimeUnit.SECONDS).build();
+
+         PoolMemberReconciler.Plan plan = reconciler.plan(POOL, ImmutableList.of(
+               DesiredMember.create("10.0.0.5", 80, 2, true),
+               DesiredMember.create("10.0.0.7", 80)));
+         assertEquals(plan.getUnchanged(), 0);
+         assertEquals(plan.getToCreate().size(), 1);
+         assertEquals(plan.getToCreate().get(0).getAddress(), "10.0.0.7");
+         assertEquals(Iterables.getOnlyElement(plan.getToUpdate().keySet()).getId(), "a");
+         assertEquals(Iterables.getOnlyElement(plan.getToRemove()).getId(), "b");
+
+         PoolMemberReconciler.Result result = reconciler.apply(plan);
+         reconciler.close();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 11);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/lb/members");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/a");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         // the poll that finds c active comes before b is drained
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/b");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "DELETE", uriApiVersion + "/lb/members/b");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete(), result.toString());
+         assertEquals(Iterables.getOnlyElement(result.getCreated()).getId(), "c");
+         Member updated = Iterables.getOnlyElement(result.getUpdated());
+         assertEquals(updated.getWeight(), Integer.valueOf(2));
+         assertEquals(result.getDeleted(), ImmutableList.of("b"));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testMemberNotActiveInTimeIsNotDeleted() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(member("b", "10.0.0.6", 1, "ACTIVE")))));
+      server.enqueue(addCommonHeaders(new MockResponse()
+            .setBody("{\"member\": " + member("b", "10.0.0.6", 0, "PENDING_UPDATE") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("b", "10.0.0.6", 0, "PENDING_UPDATE")))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         LBaaSApi api = neutronApi.getLBaaSApi("RegionOne").get();
+         PoolMemberReconciler reconciler = PoolMemberReconciler.builder().api(api).maxParallelism(1)
+               .timeout(0, TimeUnit.SECONDS).drainPeriod(0, TimeUnit.SECONDS).build();
+
+         PoolMemberReconciler.Result result = reconciler.sync(POOL, ImmutableList.<DesiredMember> of());
+         reconciler.close();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/lb/members/b");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+
+         /*
+          * Check response
+          */
+         assertEquals(result.getFailures().size(), 1);
+         Member drained = (Member) Iterables.getOnlyElement(result.getFailures().keySet());
+         assertEquals(drained.getId(), "b");
+         assertTrue(result.getDeleted().isEmpty());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testMembersToRemoveAreKeptWhenReplacementFails() throws IOException, InterruptedException,
+         URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200)
+            .setBody(stringFromResource("/extension_list_with_lbaas_v1_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(member("a", "10.0.0.5", 1, "ACTIVE")))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody("{\"member\": " + member("c", "10.0.0.7", 1, "PENDING_CREATE") + "}")));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(members(
+            member("a", "10.0.0.5", 1, "ACTIVE"),
+            member("c", "10.0.0.7", 1, "ERROR")))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         LBaaSApi api = neutronApi.getLBaaSApi("RegionOne").get();
+         PoolMemberReconciler reconciler = PoolMemberReconciler.builder().api(api).maxParallelism(1)
+               .pollInterval(10, TimeUnit.MILLISECONDS).drainPeriod(0, TimeUnit.SECONDS).build();
+
+         PoolMemberReconciler.Result result = reconciler.sync(POOL, ImmutableList.of(
+               DesiredMember.create("10.0.0.7", 80)));
+         reconciler.close();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 5);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/lb/members");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/lb/members?pool_id=" + POOL);
+
+         /*
+          * Check response
+          */
+         assertEquals(result.getFailures().size(), 2);
+         boolean keptReported = false;
+         for (Object key : result.getFailures().keySet()) {
+            if (key instanceof Member) {
+               assertEquals(((Member) key).getId(), "a");
+               keptReported = true;
+            }
+         }
+         assertTrue(keptReported, result.toString());
+         assertTrue(result.getDeleted().isEmpty());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static String members(String... members) {
+      return "{\"members\": [" + Joiner.on(", ").join(members) + "], \"members_links\": []}";
+   }
+
+   private static String member(String id, String address, int weight, String status) {
+      return "{\"id\": \"" + id + "\", \"pool_id\": \"" + POOL + "\", \"address\": \"" + address
+            + "\", \"protocol_port\": 80, \"weight\": " + weight + ", \"admin_state_up\": true, \"status\": \""
+            + status + "\", \"tenant_id\": \"83657cfcdfe44cd5920adaf26c48ceea\"}";
+   }
+}
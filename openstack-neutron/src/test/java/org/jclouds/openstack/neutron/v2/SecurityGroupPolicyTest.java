@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.openstack.neutron.v2.SecurityGroupPolicy.Flow;
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+@Test(groups = "unit", testName = "SecurityGroupPolicyTest")
+public class SecurityGroupPolicyTest {
+
+   private static final String WEB = "a7734e61-b545-452d-a3cd-0189cbd9747a";
+   private static final String LB = "85cc3048-abc3-43cc-89b3-377341426ac5";
+
+   private final SecurityGroupPolicy policy = SecurityGroupPolicy.compile(ImmutableList.of(
+         Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP).portRangeMin(80).portRangeMax(443)
+               .remoteGroupId(LB).build(),
+         Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP).portRangeMin(22).portRangeMax(22)
+               .remoteIpPrefix("10.1.0.0/16").build(),
+         Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.ICMP).portRangeMin(8).build(),
+         Rule.createBuilder(RuleDirection.EGRESS, WEB).ethertype(RuleEthertype.IPV4).build()));
+
+   private static Flow.Builder ingress(RuleProtocol protocol, String remoteAddress) {
+      return Flow.builder().direction(RuleDirection.INGRESS).protocol(protocol).remoteAddress(remoteAddress);
+   }
+
+   public void testRemoteGroup() {
+      assertTrue(policy.isAllowed(ingress(RuleProtocol.TCP, "192.168.0.5").port(443)
+            .remoteGroupIds(ImmutableSet.of(LB)).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.TCP, "192.168.0.5").port(443).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.TCP, "192.168.0.5").port(8080)
+            .remoteGroupIds(ImmutableSet.of(LB)).build()));
+   }
+
+   public void testRemotePrefix() {
+      assertTrue(policy.isAllowed(ingress(RuleProtocol.TCP, "10.1.200.3").port(22).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.TCP, "10.2.0.3").port(22).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.UDP, "10.1.200.3").port(22).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.TCP, "2001:db8::3").port(22).build()));
+   }
+
+   public void testIcmpAndEgress() {
+      assertTrue(policy.isAllowed(ingress(RuleProtocol.ICMP, "203.0.113.9").icmp(8, 0).build()));
+      assertFalse(policy.isAllowed(ingress(RuleProtocol.ICMP, "203.0.113.9").icmp(13, 0).build()));
+      assertTrue(policy.isAllowed(Flow.builder().direction(RuleDirection.EGRESS).protocol(RuleProtocol.UDP).port(53)
+            .remoteAddress("8.8.8.8").build()));
+      assertFalse(policy.isAllowed(Flow.builder().direction(RuleDirection.EGRESS).protocol(RuleProtocol.UDP).port(53)
+            .remoteAddress("2001:4860:4860::8888").build()));
+   }
+
+   public void testNormalizedRulesAreEqual() {
+      Rule written = Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.TCP)
+            .remoteIpPrefix("10.1.7.9/16").build();
+      Rule canonical = Rule.createBuilder(RuleDirection.INGRESS, WEB).ethertype(RuleEthertype.IPV4)
+            .protocol(RuleProtocol.TCP).portRangeMin(1).portRangeMax(65535).remoteIpPrefix("10.1.0.0/16").build();
+      assertEquals(NormalizedRule.of(written), NormalizedRule.of(canonical));
+   }
+
+   public void testRulesWithUnrecognizedProtocolsAreIgnored() {
+      Rule unrecognized = Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.UNRECOGNIZED).build();
+      SecurityGroupPolicy withUnrecognized = SecurityGroupPolicy.compile(ImmutableList.of(unrecognized));
+
+      assertFalse(NormalizedRule.isRecognized(unrecognized));
+      assertFalse(withUnrecognized.isAllowed(ingress(RuleProtocol.TCP, "10.1.200.3").port(22).build()));
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testRulesWithUnrecognizedProtocolsCannotBeNormalized() {
+      NormalizedRule.of(Rule.createBuilder(RuleDirection.INGRESS, WEB).protocol(RuleProtocol.UNRECOGNIZED).build());
+   }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import org.jclouds.openstack.neutron.v2.domain.Rule;
+import org.jclouds.openstack.neutron.v2.domain.RuleDirection;
+import org.jclouds.openstack.neutron.v2.domain.RuleEthertype;
+import org.jclouds.openstack.neutron.v2.domain.RuleProtocol;
+import org.jclouds.openstack.neutron.v2.extensions.SecurityGroupApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests planning and applying of SecurityGroupReconciler
+ */
+@Test
+public class SecurityGroupReconcilerMockTest extends BaseNeutronApiMockTest {
+
+   private static final String GROUP = "85cc3048-abc3-43cc-89b3-377341426ac5";
+
+   public void testSyncAppliesOnlyTheDifference() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+            new MockResponse().setBody(stringFromResource("/security_group_rule_list_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(201)
+            .setBody(stringFromResource("/security_group_rule_create_response.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(204)));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         SecurityGroupApi api = neutronApi.getSecurityGroupApi("RegionOne").get();
+         SecurityGroupReconciler reconciler = SecurityGroupReconciler.builder().api(api).maxParallelism(1).build();
+
+         ImmutableList<Rule.CreateRule> desired = ImmutableList.of(
+               Rule.createBuilder(RuleDirection.EGRESS, GROUP).ethertype(RuleEthertype.IPV6).build(),
+               // same as the listed egress IPv4 rule once normalized
+               Rule.createBuilder(RuleDirection.EGRESS, GROUP).remoteIpPrefix("0.0.0.0/0").build(),
+               Rule.createBuilder(RuleDirection.INGRESS, GROUP).ethertype(RuleEthertype.IPV4).remoteGroupId(GROUP)
+                     .build(),
+               Rule.createBuilder(RuleDirection.INGRESS, GROUP).protocol(RuleProtocol.TCP).portRangeMin(22)
+                     .portRangeMax(22).remoteIpPrefix("10.0.0.7/8").build());
+
+         SecurityGroupReconciler.Plan plan = reconciler.plan(ImmutableSet.of(GROUP), desired);
+         assertEquals(plan.getUnchanged(), 3);
+         assertEquals(plan.getToCreate(), ImmutableList.of(desired.get(3)));
+         assertEquals(plan.getToDelete().size(), 1);
+         assertEquals(plan.getToDelete().get(0).getId(), "c0b09f00-1d49-4e64-a0a7-8a186d928138");
+
+         SecurityGroupReconciler.Result result = reconciler.apply(plan);
+         reconciler.close();
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/security-group-rules?security_group_id=" + GROUP);
+         assertRequest(server.takeRequest(), "POST", uriApiVersion + "/security-group-rules");
+         assertRequest(server.takeRequest(), "DELETE",
+               uriApiVersion + "/security-group-rules/c0b09f00-1d49-4e64-a0a7-8a186d928138");
+
+         /*
+          * Check response
+          */
+         assertTrue(result.isComplete());
+         assertEquals(result.getCreated().size(), 1);
+         assertEquals(result.getDeleted(), ImmutableList.of("c0b09f00-1d49-4e64-a0a7-8a186d928138"));
+      } finally {
+         server.shutdown();
+      }
+   }
+}
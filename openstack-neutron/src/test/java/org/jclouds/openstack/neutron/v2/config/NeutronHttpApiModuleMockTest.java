@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Properties;
+
+import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Tests the warmup and persistence of the extensions discovered by NeutronHttpApiModule
+ */
+@Test
+public class NeutronHttpApiModuleMockTest extends BaseNeutronApiMockTest {
+
+   public void testWarmupDiscoversExtensionsOfConfiguredRegions() throws IOException, InterruptedException,
+         URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+
+      try {
+         Properties warmup = new Properties();
+         warmup.putAll(overrides);
+         warmup.setProperty(NeutronProperties.EXTENSIONS_WARMUP, "true");
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", warmup);
+
+         /*
+          * Check request
+          */
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+
+         /*
+          * Check response
+          */
+         assertTrue(neutronApi.getRouterApi("RegionOne").isPresent());
+         assertEquals(server.getRequestCount(), 2);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testExtensionsAreReadFromCacheFile() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      File cacheFile = File.createTempFile("neutron-extensions", ".json");
+      cacheFile.delete();
+
+      try {
+         Properties persistent = new Properties();
+         persistent.putAll(overrides);
+         persistent.setProperty(NeutronProperties.EXTENSIONS_CACHE_FILE, cacheFile.getAbsolutePath());
+
+         NeutronApi first = api(server.getUrl("/").toString(), "openstack-neutron", persistent);
+         assertTrue(first.getRouterApi("RegionOne").isPresent());
+         assertTrue(cacheFile.isFile());
+
+         // a new context, as in another process, finds the extensions in the file
+         NeutronApi second = api(server.getUrl("/").toString(), "openstack-neutron", persistent);
+         assertTrue(second.getRouterApi("RegionOne").isPresent());
+         assertEquals(second.getFWaaSApi("RegionOne").isPresent(), first.getFWaaSApi("RegionOne").isPresent());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertAuthentication(server);
+      } finally {
+         cacheFile.delete();
+         new File(cacheFile.getPath() + ".lock").delete();
+         server.shutdown();
+      }
+   }
+
+   public void testExtensionsSavedLongerThanTheTtlAgoAreNotRead() throws IOException, InterruptedException,
+         URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      File cacheFile = File.createTempFile("neutron-extensions", ".json");
+      cacheFile.delete();
+
+      try {
+         Properties persistent = new Properties();
+         persistent.putAll(overrides);
+         persistent.setProperty(NeutronProperties.EXTENSIONS_CACHE_FILE, cacheFile.getAbsolutePath());
+         persistent.setProperty(NeutronProperties.EXTENSIONS_CACHE_TTL, "60");
+
+         NeutronApi first = api(server.getUrl("/").toString(), "openstack-neutron", persistent);
+         assertTrue(first.getRouterApi("RegionOne").isPresent());
+
+         // the saved extensions are past the ttl
+         String saved = Files.toString(cacheFile, Charsets.UTF_8);
+         Files.write(saved.replaceAll("\"savedAt\":\\s*\\d+", "\"savedAt\":" + (System.currentTimeMillis() - 61000)),
+               cacheFile, Charsets.UTF_8);
+
+         NeutronApi second = api(server.getUrl("/").toString(), "openstack-neutron", persistent);
+         assertTrue(second.getRouterApi("RegionOne").isPresent());
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 4);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+      } finally {
+         cacheFile.delete();
+         new File(cacheFile.getPath() + ".lock").delete();
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.config;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.openstack.neutron.v2.config.NeutronHttpApiModule.SavedExtensionsExpiry;
+import org.jclouds.openstack.v2_0.domain.Extension;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+@Test(groups = "unit", testName = "SavedExtensionsExpiryTest")
+public class SavedExtensionsExpiryTest {
+
+   private static final class FakeTicker extends Ticker {
+      private final AtomicLong nanos = new AtomicLong();
+
+      @Override
+      public long read() {
+         return nanos.get();
+      }
+
+      void advance(long time, TimeUnit unit) {
+         nanos.addAndGet(unit.toNanos(time));
+      }
+   }
+
+   public void testSavedExtensionsAreReloadedOnceTheyExpire() {
+      FakeTicker ticker = new FakeTicker();
+      final AtomicInteger loads = new AtomicInteger();
+      LoadingCache<String, Set<? extends Extension>> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS)
+            .ticker(ticker)
+            .build(new CacheLoader<String, Set<? extends Extension>>() {
+               @Override
+               public Set<? extends Extension> load(String key) {
+                  loads.incrementAndGet();
+                  return ImmutableSet.of();
+               }
+            });
+      Map<String, Long> savedExpiries = Maps.newConcurrentMap();
+      SavedExtensionsExpiry extensions = new SavedExtensionsExpiry(cache, savedExpiries, ticker);
+
+      // loaded from extensions saved 59 seconds ago
+      extensions.getUnchecked("RegionOne");
+      savedExpiries.put("RegionOne", ticker.read() + TimeUnit.SECONDS.toNanos(1));
+      extensions.getUnchecked("RegionOne");
+      assertEquals(loads.get(), 1);
+
+      // a ttl after they were saved, well before a ttl after they were loaded
+      ticker.advance(1, TimeUnit.SECONDS);
+      extensions.getUnchecked("RegionOne");
+      assertEquals(loads.get(), 2);
+
+      // reloaded from the server, so only the cache ttl applies
+      ticker.advance(30, TimeUnit.SECONDS);
+      extensions.getUnchecked("RegionOne");
+      assertEquals(loads.get(), 2);
+   }
+}
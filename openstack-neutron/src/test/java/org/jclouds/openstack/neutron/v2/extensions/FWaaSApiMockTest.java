@@ -715,6 +715,67 @@ public class FWaaSApiMockTest extends BaseNeutronApiMockTest {
       }
    }
 
+   public void testInsertFirewallRuleIntoFirewallPolicyBefore() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+              new MockResponse().setResponseCode(200).setBody(stringFromResource("/firewall_policy_insert_rule_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FWaaSApi api = neutronApi.getFWaaSApi("RegionOne").get();
+
+         FirewallPolicy updatedFirewallPolicy = api.insertFirewallRuleToPolicyBefore("12345",
+               "59585143-e819-48c9-944d-f03e0f049dba", "c2b9a6a9-6b8e-4d1c-9b45-4a3bd2f3d0a8");
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/12345/insert_rule", "/firewall_policy_insert_rule_before_request.json");
+
+         /*
+          * Check response
+          */
+         assertNotNull(updatedFirewallPolicy);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testRemoveFirewallRuleFromFirewallPolicy() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/extension_list.json"))));
+      server.enqueue(addCommonHeaders(
+              new MockResponse().setResponseCode(200).setBody(stringFromResource("/firewall_policy_insert_rule_response.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         FWaaSApi api = neutronApi.getFWaaSApi("RegionOne").get();
+
+         FirewallPolicy updatedFirewallPolicy = api.removeFirewallRuleFromPolicy("12345", "59585143-e819-48c9-944d-f03e0f049dba");
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertExtensions(server, uriApiVersion + "");
+         assertRequest(server.takeRequest(), "PUT", uriApiVersion + "/fw/firewall_policies/12345/remove_rule", "/firewall_policy_insert_rule_request.json");
+
+         /*
+          * Check response
+          */
+         assertNotNull(updatedFirewallPolicy);
+      } finally {
+         server.shutdown();
+      }
+   }
+
    public void testCreateFirewallRule() throws IOException, InterruptedException, URISyntaxException {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
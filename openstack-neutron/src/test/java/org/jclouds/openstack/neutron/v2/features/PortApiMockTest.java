@@ -20,21 +20,27 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
+import org.jclouds.collect.PagedIterable;
 import org.jclouds.openstack.neutron.v2.NeutronApi;
+import org.jclouds.openstack.neutron.v2.config.NeutronProperties;
 import org.jclouds.openstack.neutron.v2.domain.AddressPair;
 import org.jclouds.openstack.neutron.v2.domain.NetworkStatus;
 import org.jclouds.openstack.neutron.v2.domain.Port;
 import org.jclouds.openstack.neutron.v2.domain.Ports;
 import org.jclouds.openstack.neutron.v2.domain.VIFType;
 import org.jclouds.openstack.neutron.v2.domain.VNICType;
+import org.jclouds.openstack.neutron.v2.functions.PrefetchingPagedIterable;
 import org.jclouds.openstack.neutron.v2.internal.BaseNeutronApiMockTest;
+import org.jclouds.openstack.neutron.v2.options.ListPortsOptions;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 import org.jclouds.rest.ResourceNotFoundException;
 import org.testng.annotations.Test;
@@ -209,6 +215,117 @@ public class PortApiMockTest extends BaseNeutronApiMockTest {
       }
    }
 
+   public void testListPagedPortWithPrefetch() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_paged1.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_paged2.json"))));
+
+      try {
+         Properties prefetching = new Properties();
+         prefetching.putAll(overrides);
+         prefetching.setProperty(NeutronProperties.PAGE_PREFETCH_DEPTH, "2");
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", prefetching);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         PagedIterable<Port> pages = api.list();
+         assertTrue(pages instanceof PrefetchingPagedIterable);
+         List<Port> ports = pages.concat().toList();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports?marker=71c1e68c-171a-4aa2-aca5-50ea153a3718");
+
+         /*
+          * Check response
+          */
+         assertEquals(ports.size(), 4);
+         assertEquals(ports.get(0).getId(), "24e6637e-c521-45fc-8b8b-d7331aa3c99f");
+         assertEquals(ports.get(3).getId(), "e54dfd9b-ce6e-47f7-af47-1609cfd1cdb0_4");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testListPagedPortCompact() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_paged1.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_paged2.json"))));
+
+      try {
+         Properties compact = new Properties();
+         compact.putAll(overrides);
+         compact.setProperty(NeutronProperties.COMPACT_PARSING, "true");
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", compact);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         List<Port> ports = api.list().concat().toList();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports?marker=71c1e68c-171a-4aa2-aca5-50ea153a3718");
+
+         /*
+          * Check response
+          */
+         assertEquals(ports.size(), 4);
+         Port first = ports.get(0);
+         Port last = ports.get(3);
+         assertEquals(first.getId(), "24e6637e-c521-45fc-8b8b-d7331aa3c99f");
+         assertEquals(first.getTenantId(), "cf1a5775e766426cb1968766d0191908");
+         assertEquals(first.getFixedIps().iterator().next().getIpAddress(), "192.168.111.3");
+         // repeated values are shared, also across pages
+         assertSame(last.getTenantId(), first.getTenantId());
+         assertSame(last.getNetworkId(), first.getNetworkId());
+         assertSame(last.getDeviceOwner(), first.getDeviceOwner());
+         assertSame(last.getFixedIps().iterator().next().getSubnetId(), first.getFixedIps().iterator().next().getSubnetId());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void testListPagedPortWithFilters() throws IOException, InterruptedException, URISyntaxException {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_fields.json"))));
+      server.enqueue(addCommonHeaders(new MockResponse().setResponseCode(200).setBody(stringFromResource("/port_list_response_paged2.json"))));
+
+      try {
+         NeutronApi neutronApi = api(server.getUrl("/").toString(), "openstack-neutron", overrides);
+         PortApi api = neutronApi.getPortApi("RegionOne");
+
+         List<Port> ports = api.list(ListPortsOptions.Builder.networkId("6aeaf34a-c482-4bd3-9dc3-7faf36412f12")
+               .deviceId("257614cc-e178-4c92-9c61-3b28d40eca44").fields("fixed_ips")).concat().toList();
+
+         /*
+          * Check request
+          */
+         assertEquals(server.getRequestCount(), 3);
+         assertAuthentication(server);
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports?network_id=6aeaf34a-c482-4bd3-9dc3-7faf36412f12&device_id=257614cc-e178-4c92-9c61-3b28d40eca44&fields=id&fields=fixed_ips");
+         assertRequest(server.takeRequest(), "GET", uriApiVersion + "/ports?network_id=6aeaf34a-c482-4bd3-9dc3-7faf36412f12&device_id=257614cc-e178-4c92-9c61-3b28d40eca44&fields=id&fields=fixed_ips&marker=24e6637e-c521-45fc-8b8b-d7331aa3c99f");
+
+         /*
+          * Check response
+          */
+         assertEquals(ports.size(), 3);
+         assertEquals(ports.get(0).getId(), "24e6637e-c521-45fc-8b8b-d7331aa3c99f");
+         assertEquals(ports.get(0).getFixedIps().iterator().next().getIpAddress(), "192.168.111.3");
+         assertNull(ports.get(0).getMacAddress());
+      } finally {
+         server.shutdown();
+      }
+   }
+
    public void testListPagedPortFail() throws IOException, InterruptedException, URISyntaxException {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(addCommonHeaders(new MockResponse().setBody(stringFromResource("/access.json"))));
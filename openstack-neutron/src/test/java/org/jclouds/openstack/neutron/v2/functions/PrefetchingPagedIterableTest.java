@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.neutron.v2.functions;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.IterableWithMarkers;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+
+@Test(groups = "unit", testName = "PrefetchingPagedIterableTest")
+public class PrefetchingPagedIterableTest {
+
+   public void testErrorWhileFetchingIsRethrownToTheCaller() {
+      final Error failure = new AssertionError("fetch failed");
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         PrefetchingPagedIterable<String> pages = PrefetchingPagedIterable.create(
+               IterableWithMarkers.from(ImmutableList.of("first"), "next"),
+               new Function<Object, IterableWithMarker<String>>() {
+                  @Override
+                  public IterableWithMarker<String> apply(Object marker) {
+                     throw failure;
+                  }
+               }, executor, 2);
+
+         Iterator<IterableWithMarker<String>> iterator = pages.iterator();
+         assertEquals(ImmutableList.copyOf(iterator.next()), ImmutableList.of("first"));
+         try {
+            iterator.next();
+            fail("error was not rethrown");
+         }
+         catch (AssertionError e) {
+            assertSame(e, failure);
+         }
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+}